@@ -0,0 +1,428 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A bounded log of console text. Only the most recent lines are held, in a ring buffer, so the
+ * memory used by the log does not grow with the length of a simulation; when the buffer is full,
+ * each new line discards the oldest. Lines longer than MAX_LINE_LENGTH are broken over several
+ * lines, so that a single long trace is also bounded.
+ *
+ * The full text may additionally be spilled to a file, in which case every appended character is
+ * written to the file, whether or not it is still held in memory.
+ *
+ * All methods are synchronized, so text may be appended from any thread.
+ */
+public class ConsoleLog
+{
+    /**
+     * System property specifying the number of lines held by a console log.
+     */
+    public static final String CAPACITY_PROPERTY = "tuataraTMSim.consoleLines";
+
+    /**
+     * The number of lines held by a console log, if not otherwise specified.
+     */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /**
+     * The maximum number of characters in a single line. Longer lines are broken.
+     */
+    public static final int MAX_LINE_LENGTH = 1024;
+
+    /**
+     * Size of the buffer used when spilling to a file, in characters.
+     */
+    private static final int SPILL_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Creates a new instance of ConsoleLog, holding the number of lines given by the
+     * CAPACITY_PROPERTY system property, or DEFAULT_CAPACITY if it is not set.
+     */
+    public ConsoleLog()
+    {
+        this(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Creates a new instance of ConsoleLog.
+     * @param capacity The number of lines to hold.
+     * @throws IllegalArgumentException If capacity is not positive.
+     */
+    public ConsoleLog(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        m_lines = new String[capacity];
+    }
+
+    /**
+     * Append text to the log. Each newline character completes the current line.
+     * @param text The text to append.
+     */
+    public synchronized void append(CharSequence text)
+    {
+        int len = text.length();
+        int begin = 0;
+        for (int i = 0; i < len; i++)
+        {
+            if (text.charAt(i) == '\n')
+            {
+                appendToLine(text, begin, i);
+                pushLine();
+                begin = i + 1;
+            }
+        }
+        appendToLine(text, begin, len);
+        spill(text);
+        m_version++;
+    }
+
+    /**
+     * Append part of a line of text to the current line, breaking it if it grows too long.
+     * @param text The text to append, containing no newlines in the given range.
+     * @param begin The index of the first character to append.
+     * @param end The index after the last character to append.
+     */
+    private void appendToLine(CharSequence text, int begin, int end)
+    {
+        while (begin < end)
+        {
+            int n = Math.min(end - begin, MAX_LINE_LENGTH - m_current.length());
+            m_current.append(text, begin, begin + n);
+            begin += n;
+            if (m_current.length() == MAX_LINE_LENGTH)
+            {
+                pushLine();
+            }
+        }
+    }
+
+    /**
+     * Complete the current line, and add it to the buffer, discarding the oldest line if the
+     * buffer is full.
+     */
+    private void pushLine()
+    {
+        int index = (m_first + m_count) % m_lines.length;
+        m_lines[index] = m_current.toString();
+        m_longest = Math.max(m_longest, m_current.length());
+        m_current.setLength(0);
+        if (m_count < m_lines.length)
+        {
+            m_count++;
+        }
+        else
+        {
+            m_first = (m_first + 1) % m_lines.length;
+            m_discarded++;
+        }
+    }
+
+    /**
+     * Write text to the spill file, if any. If writing fails, spilling is stopped, and the error
+     * is noted in the log.
+     * @param text The text to write.
+     */
+    private void spill(CharSequence text)
+    {
+        if (m_spill == null)
+        {
+            return;
+        }
+        try
+        {
+            m_spill.append(text);
+        }
+        catch (IOException e)
+        {
+            stopSpill(e);
+        }
+    }
+
+    /**
+     * Stop spilling after a write error, and note the error in the log.
+     * @param e The error which occurred.
+     */
+    private void stopSpill(IOException e)
+    {
+        String msg = String.format("Stopped writing the log to %s: %s", m_spillFile, e.getMessage());
+        closeSpill();
+        if (m_current.length() != 0)
+        {
+            pushLine();
+        }
+        appendToLine(msg, 0, msg.length());
+        pushLine();
+    }
+
+    /**
+     * Get the number of lines in the log, including the current line if it is not empty.
+     * @return The number of lines in the log.
+     */
+    public synchronized int getLineCount()
+    {
+        return m_count + (m_current.length() != 0? 1 : 0);
+    }
+
+    /**
+     * Get the length of the longest line appended since the log was last cleared. This may exceed
+     * the length of every line still held.
+     * @return The length of the longest line, in characters.
+     */
+    public synchronized int getLongestLine()
+    {
+        return Math.max(m_longest, m_current.length());
+    }
+
+    /**
+     * Get the number of lines which have been discarded from the start of the log since it was
+     * last cleared. This is the absolute line number of the first line held.
+     * @return The number of discarded lines.
+     */
+    public synchronized long getDiscardedCount()
+    {
+        return m_discarded;
+    }
+
+    /**
+     * Get a line of the log.
+     * @param index The index of the line, where 0 is the oldest line held.
+     * @return The line, without a trailing newline.
+     * @throws IndexOutOfBoundsException If index is not less than getLineCount().
+     */
+    public synchronized String getLine(int index)
+    {
+        if (index < 0 || index >= getLineCount())
+        {
+            throw new IndexOutOfBoundsException(String.format("Line %d of %d", index, getLineCount()));
+        }
+        return index < m_count? m_lines[(m_first + index) % m_lines.length] : m_current.toString();
+    }
+
+    /**
+     * Copy a range of lines of the log.
+     * @param begin The index of the first line to copy, where 0 is the oldest line held.
+     * @param dest The array to copy lines into, from index 0.
+     * @return The number of lines copied; fewer than dest.length if the log ends first.
+     */
+    public synchronized int getLines(int begin, String[] dest)
+    {
+        int n = Math.max(0, Math.min(dest.length, getLineCount() - begin));
+        for (int i = 0; i < n; i++)
+        {
+            int index = begin + i;
+            dest[i] = index < m_count? m_lines[(m_first + index) % m_lines.length]
+                                     : m_current.toString();
+        }
+        return n;
+    }
+
+    /**
+     * Get a number which changes whenever the log changes.
+     * @return The version of the log.
+     */
+    public synchronized long getVersion()
+    {
+        return m_version;
+    }
+
+    /**
+     * Get the number of lines held by this log.
+     * @return The capacity of the log.
+     */
+    public synchronized int getCapacity()
+    {
+        return m_lines.length;
+    }
+
+    /**
+     * Set the number of lines held by this log. If the log shrinks, the oldest lines are
+     * discarded.
+     * @param capacity The number of lines to hold.
+     * @throws IllegalArgumentException If capacity is not positive.
+     */
+    public synchronized void setCapacity(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int keep = Math.min(m_count, capacity);
+        String[] lines = new String[capacity];
+        for (int i = 0; i < keep; i++)
+        {
+            lines[i] = m_lines[(m_first + m_count - keep + i) % m_lines.length];
+        }
+        m_discarded += m_count - keep;
+        m_lines = lines;
+        m_first = 0;
+        m_count = keep;
+        m_version++;
+    }
+
+    /**
+     * Remove every line from the log. Text already spilled to a file is unaffected.
+     */
+    public synchronized void clear()
+    {
+        Arrays.fill(m_lines, null);
+        m_current.setLength(0);
+        m_first = 0;
+        m_count = 0;
+        m_discarded = 0;
+        m_longest = 0;
+        m_version++;
+    }
+
+    /**
+     * Begin writing all subsequently appended text to a file, in addition to holding it in
+     * memory. Any previous spill file is closed.
+     * @param file The file to write to, or null to stop spilling.
+     * @throws IOException If the file cannot be opened.
+     */
+    public synchronized void setSpillFile(File file) throws IOException
+    {
+        closeSpill();
+        if (file != null)
+        {
+            m_spill = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                        StandardCharsets.UTF_8), SPILL_BUFFER_SIZE);
+            m_spillFile = file;
+        }
+    }
+
+    /**
+     * Get the file which appended text is being written to.
+     * @return The spill file, or null if the log is not being spilled.
+     */
+    public synchronized File getSpillFile()
+    {
+        return m_spillFile;
+    }
+
+    /**
+     * Write any buffered text to the spill file.
+     */
+    public synchronized void flush()
+    {
+        if (m_spill == null)
+        {
+            return;
+        }
+        try
+        {
+            m_spill.flush();
+        }
+        catch (IOException e)
+        {
+            stopSpill(e);
+            m_version++;
+        }
+    }
+
+    /**
+     * Write any buffered text to the spill file, and stop spilling; used when the program exits.
+     */
+    public synchronized void close()
+    {
+        flush();
+        closeSpill();
+    }
+
+    /**
+     * Close the spill file, if any, ignoring errors.
+     */
+    private void closeSpill()
+    {
+        if (m_spill != null)
+        {
+            try
+            {
+                m_spill.close();
+            }
+            catch (IOException e) { }
+        }
+        m_spill = null;
+        m_spillFile = null;
+    }
+
+    /**
+     * Ring buffer of completed lines.
+     */
+    private String[] m_lines;
+
+    /**
+     * Index in m_lines of the oldest line held.
+     */
+    private int m_first;
+
+    /**
+     * The number of completed lines held.
+     */
+    private int m_count;
+
+    /**
+     * The number of lines discarded since the log was last cleared.
+     */
+    private long m_discarded;
+
+    /**
+     * The length of the longest completed line since the log was last cleared.
+     */
+    private int m_longest;
+
+    /**
+     * The current, incomplete line.
+     */
+    private final StringBuilder m_current = new StringBuilder();
+
+    /**
+     * Incremented whenever the log changes.
+     */
+    private long m_version;
+
+    /**
+     * Writer for the spill file, or null if the log is not being spilled.
+     */
+    private Writer m_spill;
+
+    /**
+     * The spill file, or null if the log is not being spilled.
+     */
+    private File m_spillFile;
+}
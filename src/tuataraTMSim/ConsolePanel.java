@@ -27,7 +27,10 @@ package tuataraTMSim;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.time.format.DateTimeFormatter;
 import java.time.LocalDateTime;
 import javax.swing.*;
@@ -35,6 +38,10 @@ import javax.swing.*;
 /**
  * A frame for machines to log information to. This panel may be written to by every machine
  * currently loaded due to the fact that the accesses are mutually exclusive.
+ *
+ * Logged text is held by a bounded ConsoleLog, and displayed by a ConsoleView which paints only
+ * the visible lines. Logging methods may be called from any thread; the view is updated at most
+ * once per frame, however much is logged.
  */
 public class ConsolePanel extends JPanel
 {
@@ -56,20 +63,61 @@ public class ConsolePanel extends JPanel
     {
         setLayout(new BorderLayout());
 
-        // Text area
-        m_text = new JTextArea();
-        m_text.setFont(Global.FONT_DIALOG);
-        m_text.setLineWrap(true);
-        m_text.setEditable(false);
-        JScrollPane scroll = new JScrollPane(m_text);
-        scroll.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+        // Log view
+        m_log = new ConsoleLog();
+        m_view = new ConsoleView(m_log);
+        m_view.setBackground(UIManager.getColor("TextArea.background"));
+        m_view.setForeground(UIManager.getColor("TextArea.foreground"));
+        JScrollPane scroll = new JScrollPane(m_view);
+        scroll.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         scroll.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
         add(scroll, BorderLayout.CENTER);
 
-        // Clear and setup any text on m_text
+        // Context menu
+        final JPopupMenu popup = new JPopupMenu();
+        popup.add(new AbstractAction("Copy Log")
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                copy();
+            }
+        });
+        popup.add(new AbstractAction("Clear Log")
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                clear();
+            }
+        });
+        m_view.addMouseListener(new MouseAdapter()
+        {
+            public void mousePressed(MouseEvent e)
+            {
+                mouseReleased(e);
+            }
+
+            public void mouseReleased(MouseEvent e)
+            {
+                if (e.isPopupTrigger())
+                {
+                    popup.show(m_view, e.getX(), e.getY());
+                }
+            }
+        });
+
+        // Clear and setup any text on the log
         clear();
     }
 
+    /**
+     * Get the log holding the text of this console.
+     * @return The log for this console.
+     */
+    public ConsoleLog getLog()
+    {
+        return m_log;
+    }
+
     /**
      * Get the current timestamp formatted as a string.
      * @return The current timestamp.
@@ -86,7 +134,8 @@ public class ConsolePanel extends JPanel
      */
     private void append(String fmt, Object... args)
     {
-        m_text.append(String.format(fmt, args));
+        m_log.append(String.format(fmt, args));
+        m_view.invalidateLog();
     }
 
     /**
@@ -96,7 +145,7 @@ public class ConsolePanel extends JPanel
      * @param fmt The format string to be logged.
      * @param args Arguments for the format string.
      */
-    public void logPartial(MachineGraphicsPanel panel, String fmt, Object... args)
+    public synchronized void logPartial(MachineGraphicsPanel panel, String fmt, Object... args)
     {
         // Last message was not partial; timestamp and log
         if (!m_partial)
@@ -129,9 +178,13 @@ public class ConsolePanel extends JPanel
     /**
      * End partial logging. This prints a newline to the end of the current log text.
      */
-    public void endPartial()
+    public synchronized void endPartial()
     {
-        if (m_partial) append("\n");
+        if (m_partial)
+        {
+            append("\n");
+            m_log.flush();
+        }
         m_panel = null;
         m_partial = false;
     }
@@ -141,28 +194,52 @@ public class ConsolePanel extends JPanel
      * @param fmt The format string to be logged.
      * @param args Arguments for the format string.
      */
-    public void log(String fmt, Object... args)
+    public synchronized void log(String fmt, Object... args)
     {
         // Finish any partial messages, then log
         endPartial();
         append("[%s] ", timestamp());
         append(fmt, args);
         append("\n");
+        m_log.flush();
     }
 
     /**
-     * Clear the text area, and draw the splash text.
+     * Clear the log, and draw the splash text.
      */
-    private void clear()
+    public synchronized void clear()
     {
         endPartial();
-        m_text.setText(SPLASH_TEXT + "\n");
+        m_log.clear();
+        append("%s\n", SPLASH_TEXT);
     }
 
     /**
-     * The underlying text area used to store the logged text.
+     * Copy every line held by the log to the system clipboard.
+     */
+    private void copy()
+    {
+        StringBuilder sb = new StringBuilder();
+        synchronized (m_log)
+        {
+            for (int i = 0; i < m_log.getLineCount(); i++)
+            {
+                sb.append(m_log.getLine(i)).append('\n');
+            }
+        }
+        StringSelection selection = new StringSelection(sb.toString());
+        getToolkit().getSystemClipboard().setContents(selection, selection);
+    }
+
+    /**
+     * The log holding the text of this console.
+     */
+    private ConsoleLog m_log;
+
+    /**
+     * The view displaying the log.
      */
-    private JTextArea m_text;
+    private ConsoleView m_view;
 
     /**
      * Panel currently logging a partial message.
@@ -0,0 +1,288 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim;
+
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * A virtualized view of a console log, for use in a scroll pane. Only the lines which intersect
+ * the visible region are fetched from the log and painted, so the cost of painting does not
+ * depend on the length of the log.
+ *
+ * Changes to the log are not displayed immediately; invalidateLog() may be called from any
+ * thread, and schedules the view to be brought up to date on the next frame, so any number of
+ * appends within a frame cost a single update. If the view was scrolled to the end of the log, it
+ * follows new lines as they arrive; otherwise it stays on the lines being read.
+ */
+public class ConsoleView extends JComponent implements Scrollable
+{
+    /**
+     * Space between the edges of the view and the text, in pixels.
+     */
+    public static final int MARGIN = 2;
+
+    /**
+     * Creates a new instance of ConsoleView.
+     * @param log The log to display.
+     */
+    public ConsoleView(ConsoleLog log)
+    {
+        m_log = log;
+        setFont(Global.FONT_MONOSPACE);
+        setOpaque(true);
+        m_timer = new Timer(SimulationExecutor.FRAME_PERIOD, new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                refresh();
+            }
+        });
+        m_timer.setRepeats(false);
+    }
+
+    /**
+     * Get the log displayed by this view.
+     * @return The displayed log.
+     */
+    public ConsoleLog getLog()
+    {
+        return m_log;
+    }
+
+    /**
+     * Schedule this view to be brought up to date with its log. May be called from any thread.
+     */
+    public void invalidateLog()
+    {
+        if (!m_scheduled.compareAndSet(false, true))
+        {
+            return;
+        }
+        // Swing timers must be started on the event dispatch thread
+        if (SwingUtilities.isEventDispatchThread())
+        {
+            m_timer.restart();
+        }
+        else
+        {
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                public void run()
+                {
+                    m_timer.restart();
+                }
+            });
+        }
+    }
+
+    /**
+     * Bring this view up to date with its log now. Must be called on the event dispatch thread.
+     */
+    public void refresh()
+    {
+        m_scheduled.set(false);
+        m_timer.stop();
+
+        long version = m_log.getVersion();
+        if (version == m_version)
+        {
+            return;
+        }
+        m_version = version;
+
+        int lines;
+        long discarded;
+        int longest;
+        synchronized (m_log)
+        {
+            lines = m_log.getLineCount();
+            discarded = m_log.getDiscardedCount();
+            longest = m_log.getLongestLine();
+        }
+
+        // Work out where the viewport should be once the view has been resized
+        FontMetrics fm = getFontMetrics(getFont());
+        int lineHeight = fm.getHeight();
+        JViewport viewport = getViewport();
+        Rectangle view = viewport != null? viewport.getViewRect() : null;
+        boolean following = view == null || view.y + view.height >= getHeight() - lineHeight;
+        long shift = discarded >= m_discarded? discarded - m_discarded : 0;
+        m_discarded = discarded;
+
+        setPreferredSize(new Dimension(longest * fm.charWidth('m') + 2 * MARGIN,
+                                       lines * lineHeight + 2 * MARGIN));
+        revalidate();
+        if (viewport != null)
+        {
+            viewport.getParent().validate();
+            Rectangle bounds = new Rectangle(view.x, 0, view.width, view.height);
+            bounds.y = following? getHeight() - view.height
+                                : (int)Math.max(0, view.y - shift * lineHeight);
+            scrollRectToVisible(bounds);
+        }
+        repaint();
+    }
+
+    /**
+     * Get the viewport containing this view.
+     * @return The viewport containing this view, or null if it is not in a viewport.
+     */
+    private JViewport getViewport()
+    {
+        Container parent = getParent();
+        return parent instanceof JViewport? (JViewport)parent : null;
+    }
+
+    /**
+     * Paint the lines of the log which intersect the clip region.
+     * @param g The graphics context to paint to.
+     */
+    protected void paintComponent(Graphics g)
+    {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+        {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        FontMetrics fm = getFontMetrics(getFont());
+        int lineHeight = fm.getHeight();
+        int first = Math.max(0, (clip.y - MARGIN) / lineHeight);
+        int last = Math.max(first, (clip.y + clip.height - MARGIN) / lineHeight);
+        if (m_visible == null || m_visible.length < last - first + 1)
+        {
+            m_visible = new String[last - first + 1];
+        }
+        int count = m_log.getLines(first, m_visible);
+
+        g.setColor(getForeground());
+        g.setFont(getFont());
+        for (int i = 0; i < count && first + i <= last; i++)
+        {
+            g.drawString(m_visible[i], MARGIN, MARGIN + (first + i) * lineHeight + fm.getAscent());
+            m_visible[i] = null;
+        }
+    }
+
+    /**
+     * Get the preferred size of the viewport for this view.
+     * @return The preferred size of this view.
+     */
+    public Dimension getPreferredScrollableViewportSize()
+    {
+        return getPreferredSize();
+    }
+
+    /**
+     * Get the distance to scroll to expose one line or column.
+     * @param visibleRect The visible region of the view.
+     * @param orientation SwingConstants.VERTICAL or SwingConstants.HORIZONTAL.
+     * @param direction Negative to scroll up or left, positive to scroll down or right.
+     * @return The distance to scroll, in pixels.
+     */
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction)
+    {
+        FontMetrics fm = getFontMetrics(getFont());
+        return orientation == SwingConstants.VERTICAL? fm.getHeight() : fm.charWidth('m');
+    }
+
+    /**
+     * Get the distance to scroll to expose one page.
+     * @param visibleRect The visible region of the view.
+     * @param orientation SwingConstants.VERTICAL or SwingConstants.HORIZONTAL.
+     * @param direction Negative to scroll up or left, positive to scroll down or right.
+     * @return The distance to scroll, in pixels.
+     */
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction)
+    {
+        return orientation == SwingConstants.VERTICAL? visibleRect.height : visibleRect.width;
+    }
+
+    /**
+     * Determine whether this view should be stretched to the width of the viewport.
+     * @return true if the viewport is wider than the text, false otherwise.
+     */
+    public boolean getScrollableTracksViewportWidth()
+    {
+        Container parent = getParent();
+        return parent instanceof JViewport && parent.getWidth() > getPreferredSize().width;
+    }
+
+    /**
+     * Determine whether this view should be stretched to the height of the viewport.
+     * @return true if the viewport is taller than the text, false otherwise.
+     */
+    public boolean getScrollableTracksViewportHeight()
+    {
+        Container parent = getParent();
+        return parent instanceof JViewport && parent.getHeight() > getPreferredSize().height;
+    }
+
+    /**
+     * The displayed log.
+     */
+    private final ConsoleLog m_log;
+
+    /**
+     * Timer which refreshes the view, one frame after the log is first invalidated.
+     */
+    private final Timer m_timer;
+
+    /**
+     * Whether a refresh has been scheduled.
+     */
+    private final AtomicBoolean m_scheduled = new AtomicBoolean();
+
+    /**
+     * The version of the log as of the last refresh.
+     */
+    private long m_version = -1;
+
+    /**
+     * The number of lines discarded from the log as of the last refresh.
+     */
+    private long m_discarded;
+
+    /**
+     * Buffer for the lines being painted; reused between paints.
+     */
+    private String[] m_visible;
+}
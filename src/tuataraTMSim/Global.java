@@ -26,11 +26,13 @@
 package tuataraTMSim;
 
 import java.awt.Font;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.function.Function;
 import javax.swing.ImageIcon;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 /**
  * A global utility class containing values and functions which are used by several distinct types,
@@ -74,7 +76,38 @@ public final class Global
     }
 
     /**
-     * Prompt the user to select an item from the given collection.
+     * Run a task on the event dispatch thread, waiting for it to complete. If called from the event
+     * dispatch thread, the task is run immediately.
+     * @param task The task to run.
+     */
+    public static void runOnEventThread(Runnable task)
+    {
+        if (SwingUtilities.isEventDispatchThread())
+        {
+            task.run();
+            return;
+        }
+        try
+        {
+            SwingUtilities.invokeAndWait(task);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (InvocationTargetException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Prompt the user to select an item from the given collection. May be called from any thread;
+     * the prompt itself is always shown on the event dispatch thread.
      * @param coll The non-null collection the user should select an item from.
      * @param promptString The string supplied to the user explaining what they are selecting.
      * @param toString A function mapping T to String, normally T::toString.
@@ -91,8 +124,16 @@ public final class Global
         }
 
         // Prompt the user to select one of these strings
-        String result = (String) JOptionPane.showInputDialog(null, promptString, 
-                "Make a selection", JOptionPane.QUESTION_MESSAGE, null, items, items[0]);
+        final String[] selection = new String[1];
+        runOnEventThread(new Runnable()
+        {
+            public void run()
+            {
+                selection[0] = (String) JOptionPane.showInputDialog(null, promptString, 
+                        "Make a selection", JOptionPane.QUESTION_MESSAGE, null, items, items[0]);
+            }
+        });
+        String result = selection[0];
 
         // User cancelled
         if (result == null)
@@ -40,6 +40,11 @@ import tuataraTMSim.machine.*;
 
 /**
  * The canvas for drawing a machine state diagram.
+ *
+ * The machine is drawn in world coordinates, scaled by the zoom factor of the panel; the spatial
+ * index and cached geometry of the machine, and the handlers of mouse events, all work in world
+ * coordinates. The panel may be panned by its scroll pane, or by dragging with the middle button,
+ * and zoomed with the mouse wheel while control is held.
  */
 public abstract class MachineGraphicsPanel<
     PREACTION extends PreAction,
@@ -54,6 +59,42 @@ public abstract class MachineGraphicsPanel<
     protected final BasicStroke DASHED_STROKE = 
         new BasicStroke( 1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10.0f, new float[] { 3.0f }, 0.0f);
 
+    /**
+     * Diameter of the marker drawn on states and transitions with breakpoints.
+     */
+    protected static final int BREAKPOINT_MARKER_SIZE = 10;
+
+    /**
+     * The smallest zoom factor.
+     */
+    public static final double MIN_ZOOM = 0.05;
+
+    /**
+     * The largest zoom factor.
+     */
+    public static final double MAX_ZOOM = 4.0;
+
+    /**
+     * The factor by which each step zooms in or out.
+     */
+    public static final double ZOOM_STEP = 1.25;
+
+    /**
+     * Margin left around the machine when zooming to fit it, or growing the world to contain it.
+     */
+    protected static final int WORLD_MARGIN = 100;
+
+    /**
+     * Time over which an automatic layout is animated into place, in milliseconds. Large machines
+     * are shown in fewer frames, rather than animated for longer.
+     */
+    protected static final int LAYOUT_DURATION = 400;
+
+    /**
+     * Delay between the frames of an automatic layout, in milliseconds.
+     */
+    protected static final int LAYOUT_FRAME_DELAY = 20;
+
     /**
      * Trigger indicating an event should never be enabled.
      */
@@ -107,6 +148,10 @@ public abstract class MachineGraphicsPanel<
         // Setup
         m_sim  = sim;
         m_file = file;
+        m_history = new ExecutionHistory(sim);
+        m_sim.addStepObserver(m_history);
+        m_breakpoints = new Breakpoints();
+        m_sim.addStepObserver(m_breakpoints);
         m_labelsUsed = m_sim.getMachine().getLabelHashset();
 
         // Create our context menu
@@ -116,6 +161,7 @@ public abstract class MachineGraphicsPanel<
         m_contextMenu.add(m_toggleStartAction);
         m_contextMenu.add(m_toggleFinalAction);
         m_contextMenu.add(m_deleteStateAction);
+        m_contextMenu.add(m_toggleBreakpointAction);
         m_contextMenu.addSeparator();
         m_contextMenu.add(m_resetLabelsAction);
         m_contextMenu.add(m_validateAction);
@@ -158,6 +204,73 @@ public abstract class MachineGraphicsPanel<
         return m_sim;
     }
 
+    /**
+     * Get the execution history of the simulator, used to step it backwards.
+     * @return The execution history for this panel.
+     */
+    public ExecutionHistory getHistory()
+    {
+        return m_history;
+    }
+
+    /**
+     * Get the commands which can be undone and redone.
+     * @return The command history for this panel.
+     */
+    public CommandHistory getCommandHistory()
+    {
+        return m_commands;
+    }
+
+    /**
+     * Get the breakpoints and watchpoints checked while simulating the machine.
+     * @return The breakpoints for this panel.
+     */
+    public Breakpoints getBreakpoints()
+    {
+        return m_breakpoints;
+    }
+
+    /**
+     * Get the current state as it should be displayed. While a simulation is active, it is owned by
+     * the simulation thread, and the state is taken from its latest snapshot.
+     * @return The displayed current state, or null if the simulation has not started.
+     */
+    public STATE getDisplayedState()
+    {
+        SimulationSnapshot snapshot = MainWindow.getInstance().getExecutor().getSnapshot();
+        if (snapshot != null && snapshot.contains(this))
+        {
+            return (STATE)snapshot.getCurrentState(this);
+        }
+        return getSimulator().getCurrentState();
+    }
+
+    /**
+     * Get the region of this panel which is painted differently depending on the simulation; that
+     * is, the highlight around the current state, and the transitions leaving it, any of which may
+     * be highlighted as a next transition.
+     * @return The region, in the coordinates of the panel, or null if the simulation has not
+     *         started.
+     */
+    public Rectangle getSimulationBounds()
+    {
+        STATE state = getDisplayedState();
+        if (state == null)
+        {
+            return null;
+        }
+        // Include the highlight, and its outline
+        Rectangle result = new Rectangle(state.getX() - 6, state.getY() - 6,
+                                         STATE.STATE_RENDERING_WIDTH + 12,
+                                         STATE.STATE_RENDERING_WIDTH + 12);
+        for (Object t : state.getTransitions())
+        {
+            result.add(((Transition)t).getBounds());
+        }
+        return worldToView(result);
+    }
+
     /**
      * Get the file associated with the machine.
      * @return The file associated with the machine.
@@ -323,6 +436,12 @@ public abstract class MachineGraphicsPanel<
     {
         m_editingEnabled = enabled;
         m_keyboardEnabled = enabled;
+        // The static layer is only used while editing is disabled
+        invalidateLayer();
+        if (enabled)
+        {
+            m_staticLayer = null;
+        }
     }
 
     /**
@@ -372,21 +491,58 @@ public abstract class MachineGraphicsPanel<
         int h = getHeight();
 
         Graphics2D g2d = (Graphics2D)g;
-        // Fill background
-        g2d.setColor(Color.WHITE);
-        g2d.fillRect(0, 0, w, h);
         g2d.setFont(Global.FONT_MONOSPACE);
 
-        STATE currentState = getSimulator().getCurrentState();
-        if (currentState != null)
+        // While a simulation is active, it is owned by the simulation thread; paint its snapshot
+        STATE currentState;
+        Collection<? extends Transition> nextTransitions;
+        SimulationExecutor executor = MainWindow.getInstance().getExecutor();
+        SimulationSnapshot snapshot = executor.getSnapshot();
+        if (snapshot != null && snapshot.contains(this))
         {
-            g2d.setColor(Color.YELLOW);
-            g2d.fill(new Ellipse2D.Float(currentState.getX() - 5, currentState.getY() - 5, STATE.STATE_RENDERING_WIDTH + 10, STATE.STATE_RENDERING_WIDTH + 10));
-            g2d.setColor(Color.BLACK);
-            g2d.draw(new Ellipse2D.Float(currentState.getX() - 5, currentState.getY() - 5, STATE.STATE_RENDERING_WIDTH + 10, STATE.STATE_RENDERING_WIDTH + 10));
+            currentState = (STATE)snapshot.getCurrentState(this);
+            nextTransitions = snapshot.getNextTransitions(this);
+        }
+        else if (executor.isActive())
+        {
+            // Finding the next transitions reads the tape, which the simulation thread owns
+            currentState = getSimulator().getCurrentState();
+            nextTransitions = Collections.<Transition>emptySet();
         }
+        else
+        {
+            currentState = getSimulator().getCurrentState();
+            nextTransitions = new HashSet<TRANSITION>(getSimulator().getNextTransitions());
+        }
+        // While executing, the machine cannot change, so blit it and paint only the simulation
+        if (!m_editingEnabled && paintStaticLayer(g2d))
+        {
+            g2d.transform(getWorldTransform());
+            paintSimulationOverlay(g2d, currentState, nextTransitions);
+        }
+        else
+        {
+            // Everything from here on is in world coordinates, including the clip
+            g2d.transform(getWorldTransform());
+            Rectangle clip = g2d.getClipBounds();
 
-        getSimulator().getMachine().paint(g, m_selectedStates, m_selectedTransitions, getSimulator());
+            // Fill background; only the clip needs to be painted
+            g2d.setColor(Color.WHITE);
+            if (clip == null)
+            {
+                g2d.fillRect(0, 0, (int)Math.ceil(w / m_zoom), (int)Math.ceil(h / m_zoom));
+            }
+            else
+            {
+                g2d.fill(clip);
+            }
+            paintHighlight(g2d, currentState);
+            getSimulator().getMachine().paint(g, m_selectedStates, m_selectedTransitions, nextTransitions);
+            if (!m_breakpoints.isEmpty())
+            {
+                paintBreakpoints(g2d, clip);
+            }
+        }
         if (m_currentMode == GUI_Mode.ADDTRANSITIONS && m_mousePressedState != null)
         {
             if (!(m_drawPosX == Integer.MIN_VALUE) || !(m_drawPosY == Integer.MIN_VALUE))
@@ -422,6 +578,405 @@ public abstract class MachineGraphicsPanel<
         }
     }
 
+    /**
+     * Render the highlight around the current state of the simulation.
+     * @param g2d The graphics object to render onto.
+     * @param currentState The current state, or null if the simulation has not started.
+     */
+    protected void paintHighlight(Graphics2D g2d, STATE currentState)
+    {
+        if (currentState != null)
+        {
+            Ellipse2D highlight = new Ellipse2D.Float(currentState.getX() - 5, currentState.getY() - 5,
+                                                      STATE.STATE_RENDERING_WIDTH + 10, STATE.STATE_RENDERING_WIDTH + 10);
+            g2d.setColor(Color.YELLOW);
+            g2d.fill(highlight);
+            g2d.setColor(Color.BLACK);
+            g2d.draw(highlight);
+        }
+    }
+
+    /**
+     * Render the static layer over the visible region of the panel, rebuilding it first if it has
+     * been invalidated, or the visible region has changed. The static layer holds the machine as it
+     * appears with no simulation in progress.
+     * @param g2d The graphics object to render onto.
+     * @return true if the layer was rendered, false if the panel is not visible.
+     */
+    protected boolean paintStaticLayer(Graphics2D g2d)
+    {
+        Rectangle view = getVisibleRect();
+        if (view.isEmpty())
+        {
+            return false;
+        }
+        if (m_staticLayer == null || m_staticLayerVersion != m_layerVersion ||
+            !view.equals(m_staticLayerBounds))
+        {
+            if (m_staticLayer == null || m_staticLayer.getWidth() != view.width ||
+                m_staticLayer.getHeight() != view.height)
+            {
+                GraphicsConfiguration gc = getGraphicsConfiguration();
+                m_staticLayer = gc != null? gc.createCompatibleImage(view.width, view.height)
+                              : new java.awt.image.BufferedImage(view.width, view.height,
+                                      java.awt.image.BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics2D lg = m_staticLayer.createGraphics();
+            lg.setColor(Color.WHITE);
+            lg.fillRect(0, 0, view.width, view.height);
+            lg.translate(-view.x, -view.y);
+            lg.transform(getWorldTransform());
+            Rectangle world = viewToWorld(view);
+            lg.setClip(world);
+            lg.setFont(Global.FONT_MONOSPACE);
+            getSimulator().getMachine().paint(lg, m_selectedStates, m_selectedTransitions,
+                                              Collections.<TRANSITION>emptySet());
+            if (!m_breakpoints.isEmpty())
+            {
+                paintBreakpoints(lg, world);
+            }
+            lg.dispose();
+            m_staticLayerBounds = view;
+            m_staticLayerVersion = m_layerVersion;
+        }
+        g2d.drawImage(m_staticLayer, view.x, view.y, null);
+        return true;
+    }
+
+    /**
+     * Render the parts of the machine which depend on the simulation over the static layer: the
+     * highlight around the current state, then the transitions and states which overlap it or
+     * leave it, so that they are drawn above the highlight as they would be without the layer.
+     * @param g2d The graphics object to render onto.
+     * @param currentState The current state, or null if the simulation has not started.
+     * @param nextTransitions The transitions the simulation may take in its next step.
+     */
+    protected void paintSimulationOverlay(Graphics2D g2d, STATE currentState,
+                                          Collection<? extends Transition> nextTransitions)
+    {
+        if (currentState == null)
+        {
+            return;
+        }
+        SpatialIndex index = getSimulator().getMachine().getSpatialIndex();
+        Rectangle highlight = new Rectangle(currentState.getX() - 6, currentState.getY() - 6,
+                                            STATE.STATE_RENDERING_WIDTH + 12,
+                                            STATE.STATE_RENDERING_WIDTH + 12);
+        paintHighlight(g2d, currentState);
+
+        // Transitions drawn over the highlight, or which may be highlighted themselves
+        LinkedHashSet<Transition> transitions = 
+            new LinkedHashSet<Transition>(index.getTransitions(highlight));
+        for (Object t : currentState.getTransitions())
+        {
+            transitions.add((Transition)t);
+        }
+        Rectangle region = new Rectangle(highlight);
+        for (Transition t : transitions)
+        {
+            t.paint(g2d, m_selectedTransitions, nextTransitions);
+            region.add(t.getBounds());
+        }
+        // States are drawn over every transition
+        for (State s : index.getStates(region))
+        {
+            s.paint(g2d, m_selectedStates);
+        }
+        if (!m_breakpoints.isEmpty())
+        {
+            paintBreakpoints(g2d, region);
+        }
+    }
+
+    /**
+     * Invalidate the static layer, so that it is rebuilt on the next paint. Must be called whenever
+     * the appearance of the machine changes while editing is disabled.
+     */
+    public void invalidateLayer()
+    {
+        m_layerVersion++;
+    }
+
+    /**
+     * Render a marker on each state and transition which has a breakpoint.
+     * @param g2d The graphics object to render onto.
+     * @param clip The region to render, or null to render the entire machine.
+     */
+    protected void paintBreakpoints(Graphics2D g2d, Rectangle clip)
+    {
+        final int size = BREAKPOINT_MARKER_SIZE;
+        MACHINE machine = getSimulator().getMachine();
+        Collection<? extends State> states = 
+            clip == null? machine.getStates() : machine.getSpatialIndex().getStates(clip);
+        Collection<? extends Transition> transitions = 
+            clip == null? machine.getTransitions() : machine.getSpatialIndex().getTransitions(clip);
+        g2d.setColor(Color.RED);
+        for (State s : states)
+        {
+            if (m_breakpoints.contains(s))
+            {
+                g2d.fill(new Ellipse2D.Float(s.getX() - size / 2, s.getY() - size / 2, size, size));
+            }
+        }
+        for (Transition t : transitions)
+        {
+            if (m_breakpoints.contains(t))
+            {
+                Point2D mid = t.getMidpoint();
+                g2d.fill(new Ellipse2D.Double(mid.getX() - size / 2, mid.getY() - size / 2,
+                                              size, size));
+            }
+        }
+    }
+
+    /**
+     * Get the zoom factor of the panel.
+     * @return The number of pixels of the panel per unit of world coordinates.
+     */
+    public double getZoom()
+    {
+        return m_zoom;
+    }
+
+    /**
+     * Set the zoom factor of the panel, keeping the center of the visible region in place.
+     * @param zoom The new zoom factor; clamped to between MIN_ZOOM and MAX_ZOOM.
+     */
+    public void setZoom(double zoom)
+    {
+        Rectangle view = getVisibleRect();
+        setZoom(zoom, new Point(view.x + view.width / 2, view.y + view.height / 2));
+    }
+
+    /**
+     * Set the zoom factor of the panel, keeping a point in place.
+     * @param zoom The new zoom factor; clamped to between MIN_ZOOM and MAX_ZOOM.
+     * @param anchor The point to keep in place, in the coordinates of the panel.
+     */
+    public void setZoom(double zoom, Point anchor)
+    {
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+        if (zoom == m_zoom)
+        {
+            return;
+        }
+        Rectangle view = getVisibleRect();
+        double worldX = anchor.x / m_zoom, worldY = anchor.y / m_zoom;
+        m_zoom = zoom;
+        updatePreferredSize();
+        invalidateLayer();
+
+        // Scroll so that the anchor is over the same point of the world
+        if (getParent() instanceof JViewport)
+        {
+            JViewport vp = (JViewport)getParent();
+            Dimension size = getPreferredSize();
+            vp.setViewSize(size);
+            int x = (int)Math.round(worldX * zoom) - (anchor.x - view.x);
+            int y = (int)Math.round(worldY * zoom) - (anchor.y - view.y);
+            x = Math.max(0, Math.min(x, size.width - vp.getExtentSize().width));
+            y = Math.max(0, Math.min(y, size.height - vp.getExtentSize().height));
+            vp.setViewPosition(new Point(x, y));
+        }
+        repaint();
+    }
+
+    /**
+     * Zoom and scroll the panel so that the whole machine is visible.
+     */
+    public void zoomToFit()
+    {
+        Rectangle bounds = getMachineBounds();
+        Rectangle view = getVisibleRect();
+        if (bounds == null || view.isEmpty())
+        {
+            setZoom(1.0);
+            return;
+        }
+        bounds.grow(WORLD_MARGIN / 2, WORLD_MARGIN / 2);
+        setZoom(Math.min((double)view.width / bounds.width, (double)view.height / bounds.height));
+        scrollRectToVisible(worldToView(bounds));
+    }
+
+    /**
+     * Get the bounds of everything painted for the machine.
+     * @return The bounds, in world coordinates, or null if the machine is empty.
+     */
+    public Rectangle getMachineBounds()
+    {
+        Rectangle result = null;
+        for (STATE s : getSimulator().getMachine().getStates())
+        {
+            if (result == null)
+            {
+                result = s.getBounds();
+            }
+            else
+            {
+                result.add(s.getBounds());
+            }
+        }
+        for (TRANSITION t : getSimulator().getMachine().getTransitions())
+        {
+            result.add(t.getBounds());
+        }
+        return result;
+    }
+
+    /**
+     * Get the size of the world, over which the machine may be laid out.
+     * @return The size of the world, in world coordinates.
+     */
+    public Dimension getWorldSize()
+    {
+        if (m_worldSize == null)
+        {
+            Dimension size = getPreferredSize();
+            return new Dimension((int)(size.width / m_zoom), (int)(size.height / m_zoom));
+        }
+        return new Dimension(m_worldSize);
+    }
+
+    /**
+     * Set the size of the world, over which the machine may be laid out. The world is grown if
+     * necessary to contain the machine.
+     * @param size The size of the world, in world coordinates.
+     */
+    public void setWorldSize(Dimension size)
+    {
+        m_worldSize = new Dimension(size);
+        Rectangle bounds = getMachineBounds();
+        if (bounds != null)
+        {
+            m_worldSize.width = Math.max(m_worldSize.width, bounds.x + bounds.width + WORLD_MARGIN);
+            m_worldSize.height = Math.max(m_worldSize.height, bounds.y + bounds.height + WORLD_MARGIN);
+        }
+        updatePreferredSize();
+    }
+
+    /**
+     * Set the preferred size of the panel to the size of the world at the current zoom factor.
+     */
+    protected void updatePreferredSize()
+    {
+        Dimension world = getWorldSize();
+        setPreferredSize(new Dimension((int)Math.ceil(world.width * m_zoom),
+                                       (int)Math.ceil(world.height * m_zoom)));
+        revalidate();
+    }
+
+    /**
+     * Get the transform from world coordinates to the coordinates of the panel.
+     * @return The transform.
+     */
+    public AffineTransform getWorldTransform()
+    {
+        return AffineTransform.getScaleInstance(m_zoom, m_zoom);
+    }
+
+    /**
+     * Convert a point from the coordinates of the panel to world coordinates.
+     * @param p The point, in the coordinates of the panel.
+     * @return The point, in world coordinates.
+     */
+    public Point viewToWorld(Point p)
+    {
+        return new Point((int)Math.floor(p.x / m_zoom), (int)Math.floor(p.y / m_zoom));
+    }
+
+    /**
+     * Convert a rectangle from the coordinates of the panel to world coordinates.
+     * @param r The rectangle, in the coordinates of the panel.
+     * @return The smallest rectangle in world coordinates which covers it.
+     */
+    public Rectangle viewToWorld(Rectangle r)
+    {
+        int x1 = (int)Math.floor(r.x / m_zoom), y1 = (int)Math.floor(r.y / m_zoom);
+        int x2 = (int)Math.ceil((r.x + r.width) / m_zoom);
+        int y2 = (int)Math.ceil((r.y + r.height) / m_zoom);
+        return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * Convert a point from world coordinates to the coordinates of the panel.
+     * @param p The point, in world coordinates.
+     * @return The point, in the coordinates of the panel.
+     */
+    public Point worldToView(Point p)
+    {
+        return new Point((int)Math.round(p.x * m_zoom), (int)Math.round(p.y * m_zoom));
+    }
+
+    /**
+     * Convert a rectangle from world coordinates to the coordinates of the panel.
+     * @param r The rectangle, in world coordinates.
+     * @return The smallest rectangle in the coordinates of the panel which covers it.
+     */
+    public Rectangle worldToView(Rectangle r)
+    {
+        int x1 = (int)Math.floor(r.x * m_zoom), y1 = (int)Math.floor(r.y * m_zoom);
+        int x2 = (int)Math.ceil((r.x + r.width) * m_zoom);
+        int y2 = (int)Math.ceil((r.y + r.height) * m_zoom);
+        return new Rectangle(x1, y1, x2 - x1 + 1, y2 - y1 + 1);
+    }
+
+    /**
+     * Dispatch a mouse event to the listeners of this panel, in world coordinates. Events from the
+     * middle button pan the panel instead.
+     * @param e The event, in the coordinates of the panel.
+     */
+    protected void processMouseEvent(MouseEvent e)
+    {
+        if (e.getButton() == MouseEvent.BUTTON2)
+        {
+            if (e.getID() == MouseEvent.MOUSE_PRESSED)
+            {
+                m_panAnchor = e.getPoint();
+            }
+            else if (e.getID() == MouseEvent.MOUSE_RELEASED)
+            {
+                m_panAnchor = null;
+            }
+            return;
+        }
+        super.processMouseEvent(toWorld(e));
+    }
+
+    /**
+     * Dispatch a mouse motion event to the listeners of this panel, in world coordinates. Drags
+     * with the middle button pan the panel instead.
+     * @param e The event, in the coordinates of the panel.
+     */
+    protected void processMouseMotionEvent(MouseEvent e)
+    {
+        if (m_panAnchor != null && (e.getModifiersEx() & MouseEvent.BUTTON2_DOWN_MASK) != 0)
+        {
+            // Moving the view moves the panel beneath the mouse, so the anchor stays where it is
+            Rectangle view = getVisibleRect();
+            view.translate(m_panAnchor.x - e.getX(), m_panAnchor.y - e.getY());
+            scrollRectToVisible(view);
+            return;
+        }
+        super.processMouseMotionEvent(toWorld(e));
+    }
+
+    /**
+     * Convert a mouse event to world coordinates.
+     * @param e The event, in the coordinates of the panel.
+     * @return An equivalent event, in world coordinates.
+     */
+    protected MouseEvent toWorld(MouseEvent e)
+    {
+        if (m_zoom == 1.0)
+        {
+            return e;
+        }
+        Point p = viewToWorld(e.getPoint());
+        return new MouseEvent(e.getComponent(), e.getID(), e.getWhen(), e.getModifiersEx(), p.x, p.y,
+                              e.getXOnScreen(), e.getYOnScreen(), e.getClickCount(),
+                              e.isPopupTrigger(), e.getButton());
+    }
+
     /** 
      * Set up the panel. Should only be called by the constructor.
      */
@@ -504,7 +1059,9 @@ public abstract class MachineGraphicsPanel<
                 {
                     return;
                 }
-                else if (e.getButton() == MouseEvent.BUTTON1)
+                // A drag must start from where the layout leaves each state
+                finishLayout();
+                if (e.getButton() == MouseEvent.BUTTON1)
                 {
                     handleMousePressed(e);
                 }
@@ -580,7 +1137,27 @@ public abstract class MachineGraphicsPanel<
                         ((TriggerAction) item.getAction()).triggerEvent(event);
                     }
 
-                    m_contextMenu.show(e.getComponent(), m_contextLocX, m_contextLocY);
+                    Point location = worldToView(new Point(m_contextLocX, m_contextLocY));
+                    m_contextMenu.show(e.getComponent(), location.x, location.y);
+                }
+            }
+        });
+
+        addMouseWheelListener(new MouseWheelListener()
+        {
+            public void mouseWheelMoved(MouseWheelEvent e)
+            {
+                if (e.isControlDown())
+                {
+                    // Zoom about the mouse
+                    double factor = Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation());
+                    setZoom(m_zoom * factor, e.getPoint());
+                }
+                else if (getParent() != null)
+                {
+                    // Let the scroll pane scroll as it would without this listener
+                    getParent().dispatchEvent(SwingUtilities.convertMouseEvent(
+                                MachineGraphicsPanel.this, e, getParent()));
                 }
             }
         });
@@ -773,7 +1350,7 @@ public abstract class MachineGraphicsPanel<
 
         // Check that this is within panel bounds.
         // This is complicated in the case where multiple items are selected
-        Dimension boundaries = getSize();
+        Dimension boundaries = getWorldSize();
         int minY = 0;
         int minX = 0;
         int maxX = (int)boundaries.getWidth() - STATE.STATE_RENDERING_WIDTH;
@@ -1105,6 +1682,100 @@ public abstract class MachineGraphicsPanel<
         }
     }
 
+    /**
+     * Determine whether an automatic layout is being animated into place.
+     * @return true if a layout is being animated, false otherwise.
+     */
+    public boolean isLayoutRunning()
+    {
+        return m_layoutTimer != null;
+    }
+
+    /**
+     * Jump an automatic layout being animated to its end, and add it to the undo stack. Called
+     * before anything else changes or executes the machine, so that the animation never
+     * overwrites or interleaves with another command.
+     */
+    public void finishLayout()
+    {
+        if (isLayoutRunning())
+        {
+            // The last frame stops the timer and records the command
+            m_layoutStart = System.currentTimeMillis() - LAYOUT_DURATION;
+            for (ActionListener l : m_layoutTimer.getActionListeners())
+            {
+                l.actionPerformed(null);
+            }
+        }
+    }
+
+    /**
+     * Animate the machine into a computed layout, and add the result to the undo stack as a single
+     * command. States and transitions removed from the machine since the layout was created are
+     * ignored; those added since are left where they are. The animation is cut short by
+     * finishLayout() if the machine is edited, undone, redone or executed meanwhile.
+     * @param layout The computed layout.
+     */
+    public void applyLayout(final MachineLayout layout)
+    {
+        if (isLayoutRunning())
+        {
+            return;
+        }
+        MACHINE machine = getSimulator().getMachine();
+        final Map<State, Point> oldPositions = new IdentityHashMap<State, Point>();
+        final Map<State, Point> newPositions = layout.getPositions();
+        newPositions.keySet().retainAll(new HashSet<State>(machine.getStates()));
+        for (State s : newPositions.keySet())
+        {
+            oldPositions.put(s, new Point(s.getX(), s.getY()));
+        }
+        final Map<Transition, Point> oldControlPoints = new IdentityHashMap<Transition, Point>();
+        final Map<Transition, Point> newControlPoints = layout.getControlPoints();
+        newControlPoints.keySet().retainAll(new HashSet<Transition>(machine.getTransitions()));
+        for (Transition t : newControlPoints.keySet())
+        {
+            Point2D cp = t.getControlPoint();
+            oldControlPoints.put(t, new Point((int)cp.getX(), (int)cp.getY()));
+        }
+
+        // Move every state and transition a step closer on each frame, then record the result
+        m_layoutTimer = new javax.swing.Timer(LAYOUT_FRAME_DELAY, new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                double f = Math.min(1.0,
+                    (double)(System.currentTimeMillis() - m_layoutStart) / LAYOUT_DURATION);
+                f = f * f * (3 - 2 * f);
+                for (Map.Entry<State, Point> entry : newPositions.entrySet())
+                {
+                    Point from = oldPositions.get(entry.getKey()), to = entry.getValue();
+                    entry.getKey().setPosition((int)Math.round(from.x + (to.x - from.x) * f),
+                                               (int)Math.round(from.y + (to.y - from.y) * f));
+                }
+                for (Map.Entry<Transition, Point> entry : newControlPoints.entrySet())
+                {
+                    Point from = oldControlPoints.get(entry.getKey()), to = entry.getValue();
+                    entry.getKey().setControlPoint((int)Math.round(from.x + (to.x - from.x) * f),
+                                                   (int)Math.round(from.y + (to.y - from.y) * f));
+                }
+                if (f >= 1.0)
+                {
+                    m_layoutTimer.stop();
+                    m_layoutTimer = null;
+                    addCommand(new LayoutCommand(layout.getName(), oldPositions, newPositions,
+                                                 oldControlPoints, newControlPoints));
+                    setModifiedSinceSave(true);
+                    setWorldSize(getWorldSize());
+                }
+                invalidateLayer();
+                repaint();
+            }
+        });
+        m_layoutStart = System.currentTimeMillis();
+        m_layoutTimer.start();
+    }
+
     // Command handing:
     /**
      * Executes a command and adds it to the undo stack. Clears the redo stack also.
@@ -1112,9 +1783,11 @@ public abstract class MachineGraphicsPanel<
      */
     public void doCommand(TMCommand command)
     {
+        finishLayout();
         command.doCommand();
-        m_undoStack.add(command);
-        m_redoStack.clear();
+        invalidateValidation(command);
+        invalidateLayer();
+        m_commands.push(command);
         setModifiedSinceSave(true);
         MainWindow.getInstance().updateUndoActions();
         repaint();
@@ -1127,8 +1800,10 @@ public abstract class MachineGraphicsPanel<
      */
     public void addCommand(TMCommand command)
     {
-        m_undoStack.add(command);
-        m_redoStack.clear();
+        finishLayout();
+        invalidateValidation(command);
+        invalidateLayer();
+        m_commands.push(command);
         MainWindow.getInstance().updateUndoActions();
         repaint();
     }
@@ -1138,11 +1813,13 @@ public abstract class MachineGraphicsPanel<
      */
     public void undoCommand()
     {
+        finishLayout();
         try
         {
-            TMCommand c = m_undoStack.removeLast();
+            TMCommand c = m_commands.undo();
             c.undoCommand();
-            m_redoStack.add(c);
+            invalidateValidation(c);
+            invalidateLayer();
             setModifiedSinceSave(true);
             MainWindow.getInstance().updateUndoActions();
             repaint();
@@ -1150,16 +1827,28 @@ public abstract class MachineGraphicsPanel<
         catch (NoSuchElementException e) { }
     }
 
+    /**
+     * Notify the validator of the machine of the states touched by a command, so that only those
+     * states are re-checked.
+     * @param command The command which has been done or undone.
+     */
+    protected void invalidateValidation(TMCommand command)
+    {
+        m_sim.getMachine().getValidator().invalidate(command.getAffectedStates());
+    }
+
     /**
      * Redoes a command.
      */
     public void redoCommand()
     {
+        finishLayout();
         try
         {
-            TMCommand c = m_redoStack.removeLast();
+            TMCommand c = m_commands.redo();
             c.doCommand();
-            m_undoStack.add(c);
+            invalidateValidation(c);
+            invalidateLayer();
             setModifiedSinceSave(true);
             MainWindow.getInstance().updateUndoActions();
             repaint();
@@ -1173,11 +1862,7 @@ public abstract class MachineGraphicsPanel<
      */
     public String undoCommandName()
     {
-        if (!m_undoStack.isEmpty())
-        {
-            return m_undoStack.getLast().getName();
-        }
-        return null;
+        return m_commands.getUndoName();
     }
 
     /** 
@@ -1186,11 +1871,7 @@ public abstract class MachineGraphicsPanel<
      */
     public String redoCommandName()
     {
-        if (!m_redoStack.isEmpty())
-        {
-            return m_redoStack.getLast().getName();
-        }
-        return null;
+        return m_commands.getRedoName();
     }
 
     /**
@@ -1440,6 +2121,64 @@ public abstract class MachineGraphicsPanel<
      */
     protected SIMULATOR m_sim;
 
+    /**
+     * The execution history of the simulator.
+     */
+    protected ExecutionHistory m_history;
+
+    /**
+     * The breakpoints and watchpoints checked while simulating.
+     */
+    protected Breakpoints m_breakpoints;
+
+    /**
+     * The machine rendered over the visible region of the panel while editing is disabled, or null
+     * if it has not been rendered.
+     */
+    protected java.awt.image.BufferedImage m_staticLayer;
+
+    /**
+     * The region of the panel covered by the static layer.
+     */
+    protected Rectangle m_staticLayerBounds;
+
+    /**
+     * The value of m_layerVersion when the static layer was rendered.
+     */
+    protected int m_staticLayerVersion;
+
+    /**
+     * Incremented whenever the static layer is invalidated.
+     */
+    protected int m_layerVersion;
+
+    /**
+     * The zoom factor; the number of pixels of the panel per unit of world coordinates.
+     */
+    protected double m_zoom = 1.0;
+
+    /**
+     * The size of the world, in world coordinates; the extent over which the machine may be laid
+     * out. Null until set.
+     */
+    protected Dimension m_worldSize;
+
+    /**
+     * The timer animating an automatic layout into place, or null if no layout is running.
+     */
+    protected javax.swing.Timer m_layoutTimer;
+
+    /**
+     * The time at which the current automatic layout started to be animated.
+     */
+    protected long m_layoutStart;
+
+    /**
+     * The location of the last middle-button drag event, in the coordinates of the panel, or null
+     * if the panel is not being panned.
+     */
+    protected Point m_panAnchor;
+
     /**
      * The underlying file.
      */
@@ -1482,14 +2221,9 @@ public abstract class MachineGraphicsPanel<
     protected int m_contextLocY;
 
     /**
-     * Stack containing commands which can be undone.
+     * The commands which can be undone and redone.
      */
-    protected LinkedList<TMCommand> m_undoStack = new LinkedList<TMCommand>();
-
-    /**
-     * Stack containing commands which can be redone.
-     */
-    protected LinkedList<TMCommand> m_redoStack = new LinkedList<TMCommand>();
+    protected CommandHistory m_commands = new CommandHistory(this);
 
     /**
      * The set of selected states.
@@ -1793,6 +2527,27 @@ public abstract class MachineGraphicsPanel<
             }
         };
 
+    /**
+     * Action which toggles a breakpoint on the selected state or transition.
+     */
+    protected Action m_toggleBreakpointAction =
+        new TriggerAction("Toggle Breakpoint", TRIGGER_STATE | TRIGGER_TRANSITION)
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                if (m_contextState != null)
+                {
+                    m_breakpoints.toggle(m_contextState);
+                }
+                else if (m_contextTransition != null)
+                {
+                    m_breakpoints.toggle(m_contextTransition);
+                }
+                invalidateLayer();
+                repaint();
+            }
+        };
+
     /**
      * Action which validates the current machine.
      */
@@ -1801,7 +2556,7 @@ public abstract class MachineGraphicsPanel<
         {
             public void actionPerformed(ActionEvent e)
             {
-                String result = m_sim.getMachine().isDeterministic();
+                String result = m_sim.getMachine().getValidator().isDeterministic();
                 if (result == null)
                 {
                     MainWindow.getInstance().getConsole().log("%s is deterministic", 
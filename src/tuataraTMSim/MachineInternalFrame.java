@@ -130,7 +130,7 @@ public class MachineInternalFrame extends JInternalFrame
     }
    
     /**
-     * Get the center of the frame viewport.
+     * Get the center of the frame viewport, in the world coordinates of the graphics panel.
      * @return The center of the frame viewport.
      */
     public Point2D getCenterOfViewPort()
@@ -141,7 +141,8 @@ public class MachineInternalFrame extends JInternalFrame
         }
         JViewport vp = m_sp.getViewport();
         Rectangle vpRect = vp.getViewRect();
-        return new Point2D.Double(vpRect.getCenterX(), vpRect.getCenterY());
+        double zoom = m_gfxPanel.getZoom();
+        return new Point2D.Double(vpRect.getCenterX() / zoom, vpRect.getCenterY() / zoom);
     }
     
     /**
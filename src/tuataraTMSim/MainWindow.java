@@ -82,6 +82,11 @@ public class MainWindow extends JFrame
      * Delay between steps for ultrafast execution speed.
      */
     protected static final int ULTRAFAST_EXECUTE_SPEED_DELAY = 10;
+
+    /**
+     * Delay which selects turbo execution speed, running as many steps as fit in each frame.
+     */
+    protected static final int TURBO_EXECUTE_SPEED_DELAY = SimulationExecutor.TURBO_DELAY;
     
     /**
      * Width of the machine canvas.
@@ -297,6 +302,24 @@ public class MainWindow extends JFrame
         return m_tape;
     }
 
+    /**
+     * Get the scheduler which coalesces repaints.
+     * @return The repaint scheduler.
+     */
+    public RepaintScheduler getRepaintScheduler()
+    {
+        return m_repaintScheduler;
+    }
+
+    /**
+     * Get the executor which runs simulations.
+     * @return The simulation executor.
+     */
+    public SimulationExecutor getExecutor()
+    {
+        return m_executor;
+    }
+
     /**
      * Get a reference to the current instance of MainWindow
      * @return A reference to the current instance of MainWindow
@@ -384,6 +407,7 @@ public class MainWindow extends JFrame
         // Set up the tape and associated controllers
         m_tape = new CA_Tape();
         m_tapeDisp = new TapeDisplayPanel(m_tape);
+        m_executor = new SimulationExecutor(m_tapeDisp);
         m_tapeDispController = 
             new TapeDisplayControllerPanel(m_tapeDisp, m_headToStartAction, m_eraseTapeAction, m_reloadTapeAction); 
         m_tapeDispController.setBounds(0, getHeight() - m_tapeDispController.getHeight(), getWidth(),100); 
@@ -396,6 +420,8 @@ public class MainWindow extends JFrame
        
         m_fcTape.setDialogTitle("Save tape");
         m_fcTape.addChoosableFileFilter(Tape.FILE_FILTER);
+
+        m_fcTapeText.addChoosableFileFilter(TextTapeFormat.FILE_FILTER);
         
         // Set up menus
         setJMenuBar(createMenus());
@@ -531,6 +557,19 @@ public class MainWindow extends JFrame
         m_addNodesMenuItem.setSelected(true);
         
 
+        // View menu
+        JMenu viewMenu = new JMenu("View");
+        viewMenu.setMnemonic(KeyEvent.VK_V);
+        menuBar.add(viewMenu);
+
+        viewMenu.add(new JMenuItem(m_zoomInAction));
+        viewMenu.add(new JMenuItem(m_zoomOutAction));
+        viewMenu.add(new JMenuItem(m_actualSizeAction));
+        viewMenu.add(new JMenuItem(m_zoomToFitAction));
+        viewMenu.addSeparator();
+        viewMenu.add(new JMenuItem(m_showMinimapAction));
+
+
         // Machine menu
         JMenu machineMenu = new JMenu("Machine");
         machineMenu.setMnemonic(KeyEvent.VK_M);
@@ -538,9 +577,15 @@ public class MainWindow extends JFrame
        
         machineMenu.add(new JMenuItem(m_validateAction));
         machineMenu.add(new JMenuItem(m_stepAction));
+        machineMenu.add(new JMenuItem(m_stepBackAction));
+        machineMenu.add(new JMenuItem(m_jumpToStepAction));
         machineMenu.add(new JMenuItem(m_fastExecuteAction));
         machineMenu.add(new JMenuItem(m_pauseExecutionAction));
         machineMenu.add(new JMenuItem(m_stopMachineAction));
+        machineMenu.add(new JMenuItem(m_recordTraceAction));
+        machineMenu.add(new JMenuItem(m_watchpointsAction));
+        machineMenu.add(new JMenuItem(m_clearBreakpointsAction));
+        machineMenu.add(new JMenuItem(m_autoLayoutAction));
         machineMenu.addSeparator();
         
         ButtonGroup executeSpeedMenuItems = new ButtonGroup();
@@ -565,6 +610,10 @@ public class MainWindow extends JFrame
         machineMenu.add(m_ultraFastExecuteSpeed);
         executeSpeedMenuItems.add(m_ultraFastExecuteSpeed);
         
+        JRadioButtonMenuItem m_turboExecuteSpeed = new JRadioButtonMenuItem(m_turboExecuteSpeedAction);
+        machineMenu.add(m_turboExecuteSpeed);
+        executeSpeedMenuItems.add(m_turboExecuteSpeed);
+        
         m_fastExecuteSpeed.setSelected(true);
         m_executionDelayTime = FAST_EXECUTE_SPEED_DELAY;
         
@@ -577,6 +626,12 @@ public class MainWindow extends JFrame
         tapeMenu.add(new JMenuItem(m_headToStartAction));
         tapeMenu.add(new JMenuItem(m_reloadTapeAction));
         tapeMenu.add(new JMenuItem(m_eraseTapeAction));
+        tapeMenu.addSeparator();
+        tapeMenu.add(new JMenuItem(m_goToTapeCellAction));
+        tapeMenu.add(new JMenuItem(m_followHeadAction));
+        tapeMenu.addSeparator();
+        tapeMenu.add(new JMenuItem(m_importTapeTextAction));
+        tapeMenu.add(new JMenuItem(m_exportTapeTextAction));
       
 
         // Config menu
@@ -585,6 +640,9 @@ public class MainWindow extends JFrame
         menuBar.add(configMenu);
 
         configMenu.add(new JMenuItem(m_configureAlphabetAction));
+        configMenu.addSeparator();
+        configMenu.add(new JMenuItem(m_consoleLogSizeAction));
+        configMenu.add(new JMenuItem(m_consoleLogFileAction));
         
         
         // Help menu
@@ -795,7 +853,7 @@ public class MainWindow extends JFrame
         gfxPanel.setUIMode(m_currentMode);
         final MachineInternalFrame returner = new MachineInternalFrame(gfxPanel, ++m_windowCount);
         gfxPanel.setFrame(returner);
-        gfxPanel.setPreferredSize(new Dimension(MACHINE_CANVAS_SIZE_X, MACHINE_CANVAS_SIZE_Y));
+        gfxPanel.setWorldSize(new Dimension(MACHINE_CANVAS_SIZE_X, MACHINE_CANVAS_SIZE_Y));
         returner.setSize(new Dimension(640, 480));
         Point2D loc = nextWindowLocation();
         returner.setLocation((int)loc.getX(), (int)loc.getY());
@@ -814,7 +872,10 @@ public class MainWindow extends JFrame
         {
             public void internalFrameClosed(InternalFrameEvent e)
             {
+                stopRecording(returner.getGfxPanel());
+                returner.getGfxPanel().getCommandHistory().close();
                 handleLostFocus();
+                m_minimap.setPanel(getSelectedGraphicsPanel());
             }
             
             public void internalFrameClosing(InternalFrameEvent e)
@@ -825,6 +886,8 @@ public class MainWindow extends JFrame
             public void internalFrameActivated(InternalFrameEvent e)
             {
                 setEnabledActionsThatRequireAMachine(true);
+                disableActionsForReadOnlyPanel(returner.getGfxPanel());
+                m_minimap.setPanel(returner.getGfxPanel());
             }
         });
         
@@ -937,6 +1000,7 @@ public class MainWindow extends JFrame
 
                 try
                 {
+                    gfxPanel.finishLayout();
                     Machine.saveMachine(machine, outFile);
                     iFrame.dispose();
                     return true;
@@ -1019,11 +1083,17 @@ public class MainWindow extends JFrame
     {
         m_stopMachineAction.setEnabled(isEnabled);
         m_pauseExecutionAction.setEnabled(isEnabled);
+        m_zoomInAction.setEnabled(isEnabled);
+        m_zoomOutAction.setEnabled(isEnabled);
+        m_actualSizeAction.setEnabled(isEnabled);
+        m_zoomToFitAction.setEnabled(isEnabled);
         
         if (isEditingEnabled() || isEnabled == false)
         {
             m_validateAction.setEnabled(isEnabled);
             m_stepAction.setEnabled(isEnabled);
+            m_stepBackAction.setEnabled(isEnabled);
+            m_jumpToStepAction.setEnabled(isEnabled);
             m_configureAlphabetAction.setEnabled(isEnabled);
             m_saveMachineAction.setEnabled(isEnabled);
             m_cutAction.setEnabled(isEnabled);
@@ -1031,6 +1101,10 @@ public class MainWindow extends JFrame
             m_pasteAction.setEnabled(isEnabled);
             m_deleteAction.setEnabled(isEnabled);
             m_fastExecuteAction.setEnabled(isEnabled);
+            m_recordTraceAction.setEnabled(isEnabled);
+            m_watchpointsAction.setEnabled(isEnabled);
+            m_clearBreakpointsAction.setEnabled(isEnabled);
+            m_autoLayoutAction.setEnabled(isEnabled);
             
             m_addNodesAction.setEnabled(isEnabled);
             m_addTransitionsAction.setEnabled(isEnabled);
@@ -1045,7 +1119,27 @@ public class MainWindow extends JFrame
             m_fastExecuteSpeedAction.setEnabled(isEnabled);
             m_superFastExecuteSpeedAction.setEnabled(isEnabled);
             m_ultraFastExecuteSpeedAction.setEnabled(isEnabled);
+            m_turboExecuteSpeedAction.setEnabled(isEnabled);
+        }
+    }
+
+    /**
+     * Disable the actions which would modify the machine of a panel, if editing is enabled but the
+     * panel itself may not be edited, as is the case for shared library submachines.
+     * @param panel The selected panel, or null if there is none.
+     */
+    private void disableActionsForReadOnlyPanel(MachineGraphicsPanel panel)
+    {
+        if (panel == null || !isEditingEnabled() || panel.isEditingEnabled())
+        {
+            return;
         }
+        m_configureAlphabetAction.setEnabled(false);
+        m_cutAction.setEnabled(false);
+        m_pasteAction.setEnabled(false);
+        m_deleteAction.setEnabled(false);
+        m_autoLayoutAction.setEnabled(false);
+        updateUndoActions();
     }
     
     /**
@@ -1056,6 +1150,11 @@ public class MainWindow extends JFrame
     {
         m_validateAction.setEnabled(isEnabled);
         m_stepAction.setEnabled(isEnabled);
+        m_stepBackAction.setEnabled(isEnabled);
+        m_jumpToStepAction.setEnabled(isEnabled);
+        m_watchpointsAction.setEnabled(isEnabled);
+        m_clearBreakpointsAction.setEnabled(isEnabled);
+        m_autoLayoutAction.setEnabled(isEnabled);
         m_configureAlphabetAction.setEnabled(isEnabled);
         m_cutAction.setEnabled(isEnabled);
         m_copyAction.setEnabled(isEnabled);
@@ -1064,6 +1163,7 @@ public class MainWindow extends JFrame
         m_redoAction.setEnabled(isEnabled);
         m_deleteAction.setEnabled(isEnabled);
         m_fastExecuteAction.setEnabled(isEnabled);
+        m_recordTraceAction.setEnabled(isEnabled);
         
         m_addNodesAction.setEnabled(isEnabled);
         m_addTransitionsAction.setEnabled(isEnabled);
@@ -1088,21 +1188,39 @@ public class MainWindow extends JFrame
         m_fastExecuteSpeedAction.setEnabled(isEnabled);
         m_superFastExecuteSpeedAction.setEnabled(isEnabled);
         m_ultraFastExecuteSpeedAction.setEnabled(isEnabled);
+        m_turboExecuteSpeedAction.setEnabled(isEnabled);
         
         m_headToStartAction.setEnabled(isEnabled);
+        m_goToTapeCellAction.setEnabled(isEnabled);
+        m_followHeadAction.setEnabled(isEnabled);
         m_eraseTapeAction.setEnabled(isEnabled);
         m_reloadTapeAction.setEnabled(isEnabled);
+        m_importTapeTextAction.setEnabled(isEnabled);
+        m_exportTapeTextAction.setEnabled(isEnabled);
     }
 
     /**
-     * Compute the next transition for every simulator currently loaded.
+     * Notify every panel which depends on a tape that it has changed. Only the tape display showing
+     * the tape, and the simulation regions of visible machine panels simulating on it, are
+     * invalidated; the repaint itself happens at the next frame.
+     * @param tape The tape which has changed.
      */
-    public void updateAllSimulators()
+    public void tapeChanged(Tape tape)
     {
         if (m_desktopPane == null)
         {
             return;
         }
+        // While a simulation is running, the executor notifies once per frame on the event
+        // dispatch thread, so changes made by the simulation thread are ignored here
+        if (!SwingUtilities.isEventDispatchThread())
+        {
+            return;
+        }
+        if (m_tapeDisp.getTape() == tape)
+        {
+            m_repaintScheduler.invalidate(m_tapeDisp);
+        }
         JInternalFrame[] gfxFrames = m_desktopPane.getAllFramesInLayer(MACHINE_WINDOW_LAYER);
         for (JInternalFrame frame : gfxFrames)
         {
@@ -1110,9 +1228,11 @@ public class MainWindow extends JFrame
             {
                 MachineInternalFrame iFrame = (MachineInternalFrame)frame;
                 MachineGraphicsPanel panel = iFrame.getGfxPanel();
-                if (panel != null)
+                // Hidden frames are repainted in full when they are next shown
+                if (panel != null && panel.getSimulator().getTape() == tape &&
+                    iFrame.isShowing() && !iFrame.isIcon())
                 {
-                    panel.repaint();
+                    m_repaintScheduler.invalidateSimulation(panel);
                 }
             }
             catch (ClassCastException e)
@@ -1129,11 +1249,124 @@ public class MainWindow extends JFrame
      */
     public boolean stopExecution()
     {
-        if (m_timerTask != null)
+        boolean wasRunning = m_executor.stop();
+        setEditingEnabled(true);
+        return wasRunning;
+    }
+
+    /**
+     * Compute an automatic layout of a machine on a background thread, then animate the machine
+     * into place. Edits made in the meantime are kept where they do not conflict with the layout.
+     * @param panel The panel whose machine is being laid out.
+     * @param layout The layout, capturing the current state of the machine.
+     */
+    public void runLayout(final MachineGraphicsPanel panel, final MachineLayout layout)
+    {
+        if (m_layoutComputing || panel.isLayoutRunning())
         {
-            return m_timerTask.cancel();
+            return;
         }
-        return false;
+        m_layoutComputing = true;
+        Thread thread = new Thread("Layout")
+        {
+            public void run()
+            {
+                final long start = System.currentTimeMillis();
+                Throwable error = null;
+                try
+                {
+                    layout.compute();
+                }
+                catch (Throwable t)
+                {
+                    error = t;
+                }
+                final Throwable failure = error;
+                SwingUtilities.invokeLater(new Runnable()
+                {
+                    public void run()
+                    {
+                        m_layoutComputing = false;
+                        if (failure != null)
+                        {
+                            m_console.log("Encountered an error when computing a layout: %s",
+                                          failure.toString());
+                            Global.showErrorMessage(layout.getName(),
+                                                    "Error computing a layout of the machine");
+                            return;
+                        }
+                        m_console.log("Laid out %d states in %d ms",
+                                      layout.getPositions().size(),
+                                      System.currentTimeMillis() - start);
+                        panel.applyLayout(layout);
+                    }
+                });
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop recording a trace of a machine, if one is being recorded, and close the trace file.
+     * @param panel The panel whose machine is being recorded.
+     */
+    private void stopRecording(MachineGraphicsPanel panel)
+    {
+        TraceRecorder recorder = panel.getSimulator().getTraceRecorder();
+        if (recorder == null)
+        {
+            return;
+        }
+        panel.getSimulator().setTraceRecorder(null);
+        try
+        {
+            recorder.close();
+            if (recorder.getError() != null)
+            {
+                throw recorder.getError();
+            }
+            m_console.log("Recorded %d steps to %s (%d bytes)", recorder.getStepCount(),
+                          recorder.getFile().toString(), recorder.getByteCount());
+        }
+        catch (IOException e)
+        {
+            m_console.log("Encountered an error when recording a trace to %s: %s",
+                          recorder.getFile().toString(), e.getMessage());
+            Global.showErrorMessage("Record Trace", "Error recording a trace to %s",
+                                    recorder.getFile().toString());
+        }
+    }
+
+    /**
+     * Format a watchpoint limit for editing.
+     * @param value The limit, or Breakpoints.NONE.
+     * @return The limit as text, or an empty string if it is not set.
+     */
+    private static String watchpointText(int value)
+    {
+        return value == Breakpoints.NONE? "" : Integer.toString(value);
+    }
+
+    /**
+     * Parse a watchpoint limit entered by the user.
+     * @param text The text entered.
+     * @return The limit, or Breakpoints.NONE if the text is blank.
+     * @throws NumberFormatException If the text is not blank or a non-negative integer.
+     */
+    private static int parseWatchpoint(String text)
+    {
+        text = text.trim();
+        if (text.isEmpty())
+        {
+            return Breakpoints.NONE;
+        }
+        int value = Integer.parseInt(text);
+        if (value < 0)
+        {
+            throw new NumberFormatException();
+        }
+        return value;
     }
 
     /**
@@ -1265,6 +1498,7 @@ public class MainWindow extends JFrame
             }
         }
         setEditingActionsEnabledState(isEnabled);
+        disableActionsForReadOnlyPanel(getSelectedGraphicsPanel());
         m_tapeDispController.setEditingEnabled(isEnabled);
     }
  
@@ -1275,6 +1509,10 @@ public class MainWindow extends JFrame
     {
         if (m_desktopPane == null)
         {
+            if (m_console != null)
+            {
+                m_console.getLog().close();
+            }
             System.exit(0);
         }
         if (!m_editingEnabled)
@@ -1307,6 +1545,8 @@ public class MainWindow extends JFrame
                 continue;
             }
         }
+        // Text logged since the last full line may still be buffered
+        m_console.getLog().close();
         System.exit(0);
     }
  
@@ -1433,7 +1673,7 @@ public class MainWindow extends JFrame
     public void updateUndoActions()
     {
         MachineGraphicsPanel panel = getSelectedGraphicsPanel();
-        if (panel != null && isEditingEnabled())
+        if (panel != null && isEditingEnabled() && panel.isEditingEnabled())
         {
             String undoCommandName = panel.undoCommandName();
             if (undoCommandName != null)
@@ -1541,6 +1781,7 @@ public class MainWindow extends JFrame
                     }
                 }
                 
+                panel.finishLayout();
                 Machine.saveMachine(machine, outFile);
                 panel.setModifiedSinceSave(false);
                 panel.setFile(outFile);
@@ -1770,17 +2011,32 @@ public class MainWindow extends JFrame
     private final JFileChooser m_fcTape = new JFileChooser();
 
     /**
-     * Internal timer for repeatedly calling m_timerTask.
+     * Dialog for choosing a file, specifically for plain text tapes.
+     */
+    private final JFileChooser m_fcTapeText = new JFileChooser();
+
+    /**
+     * Dialog for choosing a file, specifically for execution traces.
+     */
+    private final JFileChooser m_fcTrace = new JFileChooser();
+
+    /**
+     * Dialog for choosing a file, specifically for console logs.
+     */
+    private final JFileChooser m_fcConsoleLog = new JFileChooser();
+
+    /**
+     * Executor which runs simulations off the event dispatch thread.
      */
-    protected final java.util.Timer m_timer = new java.util.Timer(true);
+    private SimulationExecutor m_executor;
 
     /**
-     * Timer task used for stepping through a machine on a delay.
+     * Scheduler which coalesces repaints into at most one per frame.
      */
-    private ExecutionTimerTask m_timerTask;
+    private final RepaintScheduler m_repaintScheduler = new RepaintScheduler();
     
     /**
-     * Simulation delay associated with the machine, used by m_timerTask.
+     * Simulation delay associated with the machine, used by m_executor.
      */
     private int m_executionDelayTime;
 
@@ -1859,6 +2115,125 @@ public class MainWindow extends JFrame
      */
     private ConsolePanel m_console;
 
+    /**
+     * Minimap of the selected machine.
+     */
+    private MinimapPanel m_minimap = new MinimapPanel();
+
+    /**
+     * Window holding the minimap, or null if it has not been shown.
+     */
+    private JDialog m_minimapDialog;
+
+    /**
+     * Whether an automatic layout is being computed.
+     */
+    private boolean m_layoutComputing;
+
+    /**
+     * Action for zooming in on the selected machine.
+     */
+    public final Action m_zoomInAction = 
+        new MenuAction("Zoom In", Global.loadIcon("emptyIcon.png"), null, 
+                       KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, KeyEvent.CTRL_DOWN_MASK))
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                MachineGraphicsPanel gfxPanel = getSelectedGraphicsPanel();
+                if (gfxPanel != null)
+                {
+                    gfxPanel.setZoom(gfxPanel.getZoom() * MachineGraphicsPanel.ZOOM_STEP);
+                }
+            }
+        };
+
+    /**
+     * Action for zooming out from the selected machine.
+     */
+    public final Action m_zoomOutAction = 
+        new MenuAction("Zoom Out", Global.loadIcon("emptyIcon.png"), null, 
+                       KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, KeyEvent.CTRL_DOWN_MASK))
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                MachineGraphicsPanel gfxPanel = getSelectedGraphicsPanel();
+                if (gfxPanel != null)
+                {
+                    gfxPanel.setZoom(gfxPanel.getZoom() / MachineGraphicsPanel.ZOOM_STEP);
+                }
+            }
+        };
+
+    /**
+     * Action for showing the selected machine at its actual size.
+     */
+    public final Action m_actualSizeAction = 
+        new MenuAction("Actual Size", Global.loadIcon("emptyIcon.png"), null, 
+                       KeyStroke.getKeyStroke(KeyEvent.VK_0, KeyEvent.CTRL_DOWN_MASK))
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                MachineGraphicsPanel gfxPanel = getSelectedGraphicsPanel();
+                if (gfxPanel != null)
+                {
+                    gfxPanel.setZoom(1.0);
+                }
+            }
+        };
+
+    /**
+     * Action for zooming so that the whole of the selected machine is visible.
+     */
+    public final Action m_zoomToFitAction = 
+        new MenuAction("Zoom to Fit", Global.loadIcon("emptyIcon.png"), null, null)
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                MachineGraphicsPanel gfxPanel = getSelectedGraphicsPanel();
+                if (gfxPanel != null)
+                {
+                    gfxPanel.zoomToFit();
+                }
+            }
+        };
+
+    /**
+     * Action for laying out the selected machine automatically.
+     */
+    public final Action m_autoLayoutAction = 
+        new MenuAction("Auto Layout", Global.loadIcon("emptyIcon.png"), null, null)
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                MachineGraphicsPanel gfxPanel = getSelectedGraphicsPanel();
+                if (gfxPanel != null)
+                {
+                    runLayout(gfxPanel,
+                              new ForceDirectedLayout(gfxPanel.getSimulator().getMachine()));
+                }
+            }
+        };
+
+    /**
+     * Action for showing the minimap window.
+     */
+    public final Action m_showMinimapAction = 
+        new MenuAction("Show Minimap", Global.loadIcon("emptyIcon.png"), null, null)
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                if (m_minimapDialog == null)
+                {
+                    m_minimapDialog = new JDialog(MainWindow.this, "Minimap", false);
+                    m_minimapDialog.add(m_minimap);
+                    m_minimapDialog.pack();
+                    m_minimapDialog.setLocationRelativeTo(MainWindow.this);
+                }
+                m_minimap.setPanel(getSelectedGraphicsPanel());
+                m_minimapDialog.setVisible(true);
+            }
+        };
+
     /**
      * Action for creating a new Turing Machine.
      */
@@ -2232,7 +2607,7 @@ public class MainWindow extends JFrame
                     return;
                 }
 
-                String result = gfxPanel.getSimulator().getMachine().isDeterministic();
+                String result = gfxPanel.getSimulator().getMachine().getValidator().isDeterministic();
                 if (result == null)
                 {
                     m_console.log("%s is deterministic",
@@ -2263,63 +2638,146 @@ public class MainWindow extends JFrame
                     return;
                 }
 
+                // The step is performed on the simulation thread, after any step in progress
+                m_executor.step(gfxPanel);
+            }
+        };
+
+    /**
+     * Action for stepping the machine backwards by one step.
+     */
+    public final Action m_stepBackAction = 
+        new MenuAction("Step Back", Global.loadIcon("emptyIcon.png"), null, 
+                       KeyStroke.getKeyStroke(KeyEvent.VK_T, KeyEvent.CTRL_DOWN_MASK | KeyEvent.SHIFT_DOWN_MASK))
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                MachineGraphicsPanel gfxPanel = getSelectedGraphicsPanel();
+                if (gfxPanel == null)
+                {
+                    return;
+                }
+
+                // The history is replayed on the simulation thread, after any step in progress
+                m_executor.jumpTo(gfxPanel, -1);
+            }
+        };
+
+    /**
+     * Action for returning the machine to a previously executed step.
+     */
+    public final Action m_jumpToStepAction = 
+        new MenuAction("Jump to Step", Global.loadIcon("emptyIcon.png"), null, 
+                       KeyStroke.getKeyStroke(KeyEvent.VK_J, KeyEvent.CTRL_DOWN_MASK))
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                MachineGraphicsPanel gfxPanel = getSelectedGraphicsPanel();
+                if (gfxPanel == null)
+                {
+                    return;
+                }
+
+                ExecutionHistory history = gfxPanel.getHistory();
+                String result = (String) JOptionPane.showInputDialog(MainWindow.this,
+                        String.format("Step to jump to, from %d to %d", history.getFirstStep(),
+                                      history.getLastStep()),
+                        "Jump to Step", JOptionPane.QUESTION_MESSAGE, null, null, history.getStep());
+                if (result == null)
+                {
+                    // Cancelled by user
+                    return;
+                }
                 try
                 {
-                    Simulator sim = gfxPanel.getSimulator();
-                    // Pre-validate the machine
-                    String result = sim.getMachine().hasUndefinedSymbols();
-                    if (result != null)
+                    long step = Long.parseLong(result.trim());
+                    if (step < 0)
                     {
-                        m_console.log("Cannot simulate %s: %s", 
-                                gfxPanel.getFrame().getTitle(), result);
-                        Global.showErrorMessage("Step", "Cannot simulate: %s", result);
-                        return;
+                        throw new NumberFormatException();
                     }
-                    // If we are just starting, write out the input on the tape
-                    if (sim.getCurrentState() == null)
-                    {
-                        // Issue a minor warning to the console if the r/w head is not in the
-                        // leftmost cell; continue execution
-                        if (m_tape.headLocation() != 0)
-                        {
-                            m_console.log("Warning: Tape head has not been reset");
-                        }
-                        m_console.logPartial(gfxPanel, "Input: %s\n", 
-                                m_tape.getPartialString(m_tape.headLocation(), 
-                                                        m_tape.getLength() - m_tape.headLocation()));
-                    }
-                    sim.step();
-                    m_tapeDisp.repaint();
-                    if (sim.isHalted())
-                    {
-                        m_console.logPartial(gfxPanel, sim.getConfiguration());
-                        m_console.endPartial();
-                    }
-                    else
+                    m_executor.jumpTo(gfxPanel, step);
+                }
+                catch (NumberFormatException ex)
+                {
+                    Global.showErrorMessage("Jump to Step", "Invalid step: %s", result);
+                }
+            }
+        };
+
+    /**
+     * Action for setting the watchpoints on the tape of the machine.
+     */
+    public final Action m_watchpointsAction = 
+        new MenuAction("Watchpoints", Global.loadIcon("emptyIcon.png"), null, null)
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                MachineGraphicsPanel gfxPanel = getSelectedGraphicsPanel();
+                if (gfxPanel == null)
+                {
+                    return;
+                }
+
+                Breakpoints bp = gfxPanel.getBreakpoints();
+                JTextField head = new JTextField(watchpointText(bp.getHeadLimit()));
+                JTextField cell = new JTextField(watchpointText(bp.getWatchedCell()));
+                JTextField symbol = new JTextField(bp.getWatchedSymbol() == Breakpoints.ANY_SYMBOL?
+                                                   "" : "" + bp.getWatchedSymbol());
+                JTextField length = new JTextField(watchpointText(bp.getLengthLimit()));
+                JPanel fields = new JPanel(new GridLayout(0, 2, 5, 5));
+                fields.add(new JLabel("Head beyond cell"));
+                fields.add(head);
+                fields.add(new JLabel("Write to cell"));
+                fields.add(cell);
+                fields.add(new JLabel("Of symbol (blank for any)"));
+                fields.add(symbol);
+                fields.add(new JLabel("Tape length above"));
+                fields.add(length);
+
+                if (JOptionPane.showConfirmDialog(MainWindow.this, fields, "Watchpoints",
+                            JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE) !=
+                        JOptionPane.OK_OPTION)
+                {
+                    // Cancelled by user
+                    return;
+                }
+                try
+                {
+                    String sym = symbol.getText().trim();
+                    if (sym.length() > 1)
                     {
-                        m_console.logPartial(gfxPanel, "%s %c ", sim.getConfiguration(), Global.CONFIG_TEE);
+                        throw new NumberFormatException();
                     }
+                    int headLimit = parseWatchpoint(head.getText());
+                    int watchCell = parseWatchpoint(cell.getText());
+                    int lengthLimit = parseWatchpoint(length.getText());
+                    bp.setHeadLimit(headLimit);
+                    bp.setWatchedCell(watchCell, sym.isEmpty()? Breakpoints.ANY_SYMBOL : sym.charAt(0));
+                    bp.setLengthLimit(lengthLimit);
                 }
-                // Machine halted as expected
-                catch (ComputationCompletedException e2)
+                catch (NumberFormatException ex)
                 {
-                    String msg = gfxPanel.getErrorMessage(e2);
-                    m_console.log("Simulation of %s finished: %s", 
-                            gfxPanel.getFrame().getTitle(), msg);
-                    Global.showInfoMessage(MainWindow.HALTED_MESSAGE_TITLE_STR, 
-                            "Simulation finished: %s", msg);
-                    gfxPanel.getSimulator().resetMachine();
+                    Global.showErrorMessage("Watchpoints", "Watchpoints must be blank, or a cell " +
+                                            "and a single symbol");
                 }
-                // Machine halted unexpectedly
-                catch (Exception e2)
+            }
+        };
+
+    /**
+     * Action for removing all breakpoints and watchpoints from the machine.
+     */
+    public final Action m_clearBreakpointsAction = 
+        new MenuAction("Clear Breakpoints", Global.loadIcon("emptyIcon.png"), null, null)
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                MachineGraphicsPanel gfxPanel = getSelectedGraphicsPanel();
+                if (gfxPanel != null)
                 {
-                    String msg = gfxPanel.getErrorMessage(e2);
-                    m_console.log("Simulation of %s halted unexpectedly: %s",
-                            gfxPanel.getFrame().getTitle(), msg);
-                    Global.showErrorMessage(MainWindow.HALTED_MESSAGE_TITLE_STR,
-                            "Simulation halted unexpectedly: %s", msg);
+                    gfxPanel.getBreakpoints().clear();
+                    gfxPanel.invalidateLayer();
+                    gfxPanel.repaint();
                 }
-                repaint();
             }
         };
 
@@ -2335,13 +2793,8 @@ public class MainWindow extends JFrame
                 MachineGraphicsPanel panel = getSelectedGraphicsPanel();
                 if (panel != null)
                 {
-                    if (m_timerTask != null)
-                    {
-                        m_timerTask.cancel();
-                    }
                     setEditingEnabled(false);
-                    m_timerTask = new ExecutionTimerTask(panel, m_tapeDisp);
-                    m_timer.schedule(m_timerTask, 0, m_executionDelayTime);
+                    m_executor.start(panel, m_executionDelayTime);
                 }
             }
         };
@@ -2360,6 +2813,48 @@ public class MainWindow extends JFrame
             }
         };
 
+    /**
+     * Action for recording the steps of the current machine to a trace file, or stopping if a
+     * trace is being recorded.
+     */
+    public final Action m_recordTraceAction = 
+        new MenuAction("Record Trace", Global.loadIcon("emptyIcon.png"), null, null)
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                MachineGraphicsPanel panel = getSelectedGraphicsPanel();
+                if (panel == null)
+                {
+                    return;
+                }
+                if (panel.getSimulator().getTraceRecorder() != null)
+                {
+                    stopRecording(panel);
+                    return;
+                }
+
+                File outFile = chooseSaveFile(m_fcTrace, "Record Trace", TraceRecorder.TRACE_EXTENSION);
+                if (outFile == null)
+                {
+                    // Cancelled by user
+                    return;
+                }
+                try
+                {
+                    panel.getSimulator().setTraceRecorder(new TraceRecorder(outFile, panel.getSimulator()));
+                    m_console.log("Recording a trace of %s to %s", panel.getFrame().getTitle(),
+                                  outFile.toString());
+                }
+                catch (Exception ex)
+                {
+                    m_console.log("Encountered an error when recording a trace to %s: %s",
+                                  outFile.toString(), ex.getMessage());
+                    Global.showErrorMessage("Record Trace", "Error recording a trace to %s",
+                                            outFile.toString());
+                }
+            }
+        };
+
     /**
      * Action for stopping a simulation.
      */
@@ -2374,10 +2869,9 @@ public class MainWindow extends JFrame
                 if (gfxPanel != null)
                 {
                     // TODO: reset it even if not running
-                    if (m_timerTask == null || !wasRunning || gfxPanel == m_timerTask.getPanel())
+                    if (!wasRunning || gfxPanel == m_executor.getPanel())
                     {
-                        gfxPanel.getSimulator().resetMachine();
-                        gfxPanel.repaint();
+                        m_executor.reset(gfxPanel);
                         m_console.log("Stopped executing %s", gfxPanel.getFrame().getTitle());
                     }
                 }
@@ -2420,6 +2914,13 @@ public class MainWindow extends JFrame
         new ExecutionSpeedSelectionAction("Ultra Fast", ULTRAFAST_EXECUTE_SPEED_DELAY,
                 KeyStroke.getKeyStroke(KeyEvent.VK_5, KeyEvent.CTRL_DOWN_MASK)); 
 
+    /**
+     * Action to set execution speed to turbo.
+     */
+    public final ExecutionSpeedSelectionAction m_turboExecuteSpeedAction = 
+        new ExecutionSpeedSelectionAction("Turbo", TURBO_EXECUTE_SPEED_DELAY,
+                KeyStroke.getKeyStroke(KeyEvent.VK_6, KeyEvent.CTRL_DOWN_MASK)); 
+
     /**
      * Action for moving the read/write head to the start of the tape.
      */
@@ -2431,10 +2932,56 @@ public class MainWindow extends JFrame
             {
                 // Move r/w head to the left end of the tape
                 m_tapeDisp.getTape().resetRWHead();
+                m_tapeDisp.setFollowHead(true);
                 m_tapeDispController.repaint();
             }
         };
 
+    /**
+     * Action for scrolling the tape display to a particular cell.
+     */
+    public final Action m_goToTapeCellAction = 
+        new MenuAction("Go to Tape Cell", Global.loadIcon("emptyIcon.png"), null, 
+                       KeyStroke.getKeyStroke(KeyEvent.VK_G, KeyEvent.CTRL_DOWN_MASK))
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                String result = (String) JOptionPane.showInputDialog(MainWindow.this,
+                        "Cell to go to, counting from 0", "Go to Tape Cell",
+                        JOptionPane.QUESTION_MESSAGE, null, null, m_tapeDisp.getTape().headLocation());
+                if (result == null)
+                {
+                    // Cancelled by user
+                    return;
+                }
+                try
+                {
+                    int cell = Integer.parseInt(result.trim());
+                    if (cell < 0)
+                    {
+                        throw new NumberFormatException();
+                    }
+                    m_tapeDisp.jumpToCell(cell);
+                }
+                catch (NumberFormatException ex)
+                {
+                    Global.showErrorMessage("Go to Tape Cell", "Invalid cell: %s", result);
+                }
+            }
+        };
+
+    /**
+     * Action for making the tape display follow the read/write head again.
+     */
+    public final Action m_followHeadAction = 
+        new MenuAction("Follow Read/Write Head", Global.loadIcon("emptyIcon.png"), null, null)
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                m_tapeDisp.setFollowHead(true);
+            }
+        };
+
     /**
      * Action for reloading the tape.
      */
@@ -2508,6 +3055,71 @@ public class MainWindow extends JFrame
             }
         };
 
+    /**
+     * Action for importing the tape from a plain text file.
+     */
+    public final Action m_importTapeTextAction = 
+        new MenuAction("Import Tape Text", Global.loadIcon("emptyIcon.png"), null, null)
+        {
+            public void actionPerformed(ActionEvent e) 
+            {
+                File inFile = chooseLoadFile(m_fcTapeText, "Import Tape Text", TextTapeFormat.TEXT_EXTENSION);
+                if (inFile == null)
+                {
+                    // Cancelled by user
+                    return;
+                }
+
+                try
+                {
+                    // Stream straight into the displayed tape
+                    TextTapeFormat.read(inFile, m_tapeDisp.getTape());
+                    m_tapeDisp.setFile(null);
+                    m_tapeDispController.repaint();
+                    m_console.log("Successfully imported tape text from %s", inFile.toString());
+                }
+                catch (Exception ex)
+                {
+                    // The tape holds whatever was read before the error
+                    m_tapeDispController.repaint();
+                    m_console.log("Encountered an error when importing tape text from %s: %s",
+                                  inFile.toString(), ex.getMessage());
+                    Global.showErrorMessage("Import Tape Text", "Error importing tape text from %s",
+                                            inFile.toString());
+                }
+            }
+        };
+
+    /**
+     * Action for exporting the tape to a plain text file.
+     */
+    public final Action m_exportTapeTextAction = 
+        new MenuAction("Export Tape Text", Global.loadIcon("emptyIcon.png"), null, null)
+        {
+            public void actionPerformed(ActionEvent e) 
+            {
+                File outFile = chooseSaveFile(m_fcTapeText, "Export Tape Text", TextTapeFormat.TEXT_EXTENSION);
+                if (outFile == null)
+                {
+                    // Cancelled by user
+                    return;
+                }
+
+                try
+                {
+                    TextTapeFormat.write(m_tapeDisp.getTape(), outFile);
+                    m_console.log("Successfully exported tape text to %s", outFile.toString());
+                }
+                catch (Exception ex)
+                {
+                    m_console.log("Encountered an error when exporting tape text to %s: %s",
+                                  outFile.toString(), ex.getMessage());
+                    Global.showErrorMessage("Export Tape Text", "Error exporting tape text to %s",
+                                            outFile.toString());
+                }
+            }
+        };
+
     /**
      * Action for configuring the alphabet.
      */
@@ -2527,6 +3139,79 @@ public class MainWindow extends JFrame
             }
         };
 
+    /**
+     * Action for setting the number of lines held by the console.
+     */
+    public final Action m_consoleLogSizeAction = 
+        new MenuAction("Console Log Size", Global.loadIcon("emptyIcon.png"), null, null)
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                ConsoleLog log = m_console.getLog();
+                String result = (String) JOptionPane.showInputDialog(MainWindow.this,
+                        "Number of lines to keep in the console", "Console Log Size",
+                        JOptionPane.QUESTION_MESSAGE, null, null, log.getCapacity());
+                if (result == null)
+                {
+                    // Cancelled by user
+                    return;
+                }
+                try
+                {
+                    log.setCapacity(Integer.parseInt(result.trim()));
+                    m_console.log("Console now keeps the last %d lines", log.getCapacity());
+                }
+                catch (IllegalArgumentException ex)
+                {
+                    Global.showErrorMessage("Console Log Size", "Invalid number of lines: %s", result);
+                }
+            }
+        };
+
+    /**
+     * Action for writing the full console log to a file, or stopping if it is being written.
+     */
+    public final Action m_consoleLogFileAction = 
+        new MenuAction("Write Console Log to File", Global.loadIcon("emptyIcon.png"), null, null)
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                ConsoleLog log = m_console.getLog();
+                File current = log.getSpillFile();
+                if (current != null)
+                {
+                    try
+                    {
+                        log.setSpillFile(null);
+                    }
+                    catch (Exception ex) { }
+                    m_console.log("Stopped writing the console log to %s", current.toString());
+                    putValue(Action.NAME, "Write Console Log to File");
+                    return;
+                }
+
+                File outFile = chooseSaveFile(m_fcConsoleLog, "Write Console Log to File", ".log");
+                if (outFile == null)
+                {
+                    // Cancelled by user
+                    return;
+                }
+                try
+                {
+                    log.setSpillFile(outFile);
+                    m_console.log("Writing the console log to %s", outFile.toString());
+                    putValue(Action.NAME, "Stop Writing Console Log");
+                }
+                catch (Exception ex)
+                {
+                    m_console.log("Encountered an error when writing the console log to %s: %s",
+                                  outFile.toString(), ex.getMessage());
+                    Global.showErrorMessage("Write Console Log to File",
+                                            "Error writing the console log to %s", outFile.toString());
+                }
+            }
+        };
+
     /**
      * Action for displaying help documentation.
      */
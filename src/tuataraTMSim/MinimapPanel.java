@@ -0,0 +1,269 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import tuataraTMSim.machine.Machine;
+import tuataraTMSim.machine.SpatialIndex;
+
+/**
+ * A panel showing the whole of the machine in a graphics panel at low resolution, with the region
+ * visible in the graphics panel outlined. Clicking or dragging on the minimap scrolls the graphics
+ * panel to that point.
+ *
+ * The machine is rendered into a cached image, which is updated incrementally: the panel observes
+ * the spatial index of the machine, and re-renders only the regions which have changed.
+ */
+public class MinimapPanel extends JPanel implements SpatialIndex.Observer
+{
+    /**
+     * The preferred size of the minimap.
+     */
+    public static final Dimension MINIMAP_SIZE = new Dimension(240, 180);
+
+    /**
+     * Color of the outline of the visible region.
+     */
+    protected static final Color VIEW_COLOR = new Color(0, 120, 215);
+
+    /**
+     * Color of the panel outside the world.
+     */
+    protected static final Color BACKGROUND_COLOR = new Color(200, 200, 200);
+
+    /**
+     * Creates a new instance of MinimapPanel, not showing any machine.
+     */
+    public MinimapPanel()
+    {
+        setPreferredSize(MINIMAP_SIZE);
+        setFocusable(false);
+
+        MouseAdapter scroller = new MouseAdapter()
+        {
+            public void mousePressed(MouseEvent e)
+            {
+                scrollTo(e.getPoint());
+            }
+
+            public void mouseDragged(MouseEvent e)
+            {
+                scrollTo(e.getPoint());
+            }
+        };
+        addMouseListener(scroller);
+        addMouseMotionListener(scroller);
+    }
+
+    /**
+     * Change the graphics panel shown by the minimap.
+     * @param panel The graphics panel, or null to show nothing.
+     */
+    public void setPanel(MachineGraphicsPanel panel)
+    {
+        if (panel == m_panel)
+        {
+            return;
+        }
+        if (m_panel != null)
+        {
+            m_index.removeObserver(this);
+            if (m_viewport != null)
+            {
+                m_viewport.removeChangeListener(m_viewListener);
+            }
+        }
+        m_panel = panel;
+        m_index = null;
+        m_viewport = null;
+        m_image = null;
+        m_dirty = null;
+        if (panel != null)
+        {
+            m_index = panel.getSimulator().getMachine().getSpatialIndex();
+            m_index.addObserver(this);
+            if (panel.getParent() instanceof JViewport)
+            {
+                m_viewport = (JViewport)panel.getParent();
+                m_viewport.addChangeListener(m_viewListener);
+            }
+        }
+        repaint();
+    }
+
+    /**
+     * Get the graphics panel shown by the minimap.
+     * @return The graphics panel, or null if none is shown.
+     */
+    public MachineGraphicsPanel getPanel()
+    {
+        return m_panel;
+    }
+
+    /**
+     * Record that a region of the machine has changed, so that it is re-rendered on the next paint.
+     * @param region The region which has changed, in world coordinates.
+     */
+    public void regionChanged(Rectangle region)
+    {
+        if (m_dirty == null)
+        {
+            m_dirty = region;
+        }
+        else
+        {
+            m_dirty.add(region);
+        }
+        repaint();
+    }
+
+    /**
+     * Render the minimap.
+     * @param g The graphics object to render onto.
+     */
+    protected void paintComponent(Graphics g)
+    {
+        Graphics2D g2d = (Graphics2D)g;
+        g2d.setColor(BACKGROUND_COLOR);
+        g2d.fillRect(0, 0, getWidth(), getHeight());
+        if (m_panel == null || getWidth() <= 0 || getHeight() <= 0)
+        {
+            return;
+        }
+
+        Dimension world = m_panel.getWorldSize();
+        double scale = Math.min((double)getWidth() / world.width, (double)getHeight() / world.height);
+        int width = Math.max(1, (int)Math.ceil(world.width * scale));
+        int height = Math.max(1, (int)Math.ceil(world.height * scale));
+        if (m_image == null || m_imageScale != scale || m_image.getWidth() != width ||
+            m_image.getHeight() != height)
+        {
+            m_image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            m_imageScale = scale;
+            render(new Rectangle(0, 0, world.width, world.height));
+        }
+        else if (m_dirty != null)
+        {
+            render(m_dirty);
+        }
+        m_dirty = null;
+        g2d.drawImage(m_image, 0, 0, null);
+
+        // Outline the region visible in the graphics panel
+        Rectangle view = m_panel.viewToWorld(m_panel.getVisibleRect());
+        g2d.setColor(VIEW_COLOR);
+        g2d.drawRect((int)(view.x * scale), (int)(view.y * scale),
+                     Math.max(2, (int)(view.width * scale)), Math.max(2, (int)(view.height * scale)));
+    }
+
+    /**
+     * Re-render a region of the machine into the cached image.
+     * @param region The region to render, in world coordinates.
+     */
+    protected void render(Rectangle region)
+    {
+        // Antialiasing and rounding may spill a pixel over the edge of the region
+        Rectangle clip = new Rectangle(region);
+        int margin = (int)Math.ceil(2 / m_imageScale);
+        clip.grow(margin, margin);
+
+        Graphics2D ig = m_image.createGraphics();
+        ig.scale(m_imageScale, m_imageScale);
+        ig.setClip(clip);
+        ig.setColor(Color.WHITE);
+        ig.fill(clip);
+        ig.setFont(Global.FONT_MONOSPACE);
+        Machine machine = m_panel.getSimulator().getMachine();
+        machine.paint(ig, Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+        ig.dispose();
+    }
+
+    /**
+     * Scroll the graphics panel so that a point of the minimap is in the center of its visible
+     * region.
+     * @param p The point, in the coordinates of the minimap.
+     */
+    protected void scrollTo(Point p)
+    {
+        if (m_panel == null || m_image == null)
+        {
+            return;
+        }
+        Rectangle view = m_panel.getVisibleRect();
+        double zoom = m_panel.getZoom();
+        view.x = (int)(p.x / m_imageScale * zoom) - view.width / 2;
+        view.y = (int)(p.y / m_imageScale * zoom) - view.height / 2;
+        m_panel.scrollRectToVisible(view);
+    }
+
+    /**
+     * Repaints the minimap when the visible region of the graphics panel changes.
+     */
+    private final ChangeListener m_viewListener = new ChangeListener()
+    {
+        public void stateChanged(ChangeEvent e)
+        {
+            repaint();
+        }
+    };
+
+    /**
+     * The graphics panel shown, or null if none is shown.
+     */
+    private MachineGraphicsPanel m_panel;
+
+    /**
+     * The spatial index of the machine shown, which is observed for changes.
+     */
+    private SpatialIndex m_index;
+
+    /**
+     * The viewport of the graphics panel shown, or null if it is not in a viewport.
+     */
+    private JViewport m_viewport;
+
+    /**
+     * The machine rendered at low resolution, or null if it must be rendered in full.
+     */
+    private BufferedImage m_image;
+
+    /**
+     * The scale at which the cached image was rendered.
+     */
+    private double m_imageScale;
+
+    /**
+     * The region of the machine which has changed since the cached image was rendered, in world
+     * coordinates, or null if nothing has changed.
+     */
+    private Rectangle m_dirty;
+}
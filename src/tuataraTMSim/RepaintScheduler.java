@@ -0,0 +1,183 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim;
+
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Coalesces repaint requests from across the application, and flushes them at most once per
+ * frame. Each invalidated component accumulates a single dirty rectangle, the union of every
+ * region invalidated since the last flush, so a burst of changes to a component costs one repaint
+ * of the area which actually changed.
+ *
+ * For machine panels, invalidateSimulation() determines the region which depends on the
+ * simulation: the highlighted current state, and the transitions leaving it. Both the region
+ * painted by the previous flush and the region to be painted now are invalidated, so that
+ * highlights are erased when the current state changes.
+ */
+public class RepaintScheduler
+{
+    /**
+     * Creates a new instance of RepaintScheduler.
+     */
+    public RepaintScheduler()
+    {
+        m_timer = new Timer(SimulationExecutor.FRAME_PERIOD, new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                flush();
+            }
+        });
+        m_timer.setRepeats(false);
+    }
+
+    /**
+     * Schedule a repaint of the whole of a component. May be called from any thread.
+     * @param c The component to repaint.
+     */
+    public void invalidate(JComponent c)
+    {
+        invalidate(c, new Rectangle(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Schedule a repaint of part of a component. May be called from any thread.
+     * @param c The component to repaint.
+     * @param r The region to repaint, in the coordinates of the component.
+     */
+    public void invalidate(JComponent c, Rectangle r)
+    {
+        synchronized (m_dirty)
+        {
+            Rectangle dirty = m_dirty.get(c);
+            if (dirty == null)
+            {
+                m_dirty.put(c, new Rectangle(r));
+            }
+            else
+            {
+                dirty.add(r);
+            }
+            if (m_scheduled)
+            {
+                return;
+            }
+            m_scheduled = true;
+        }
+
+        // Swing timers must be started on the event dispatch thread
+        if (SwingUtilities.isEventDispatchThread())
+        {
+            m_timer.restart();
+        }
+        else
+        {
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                public void run()
+                {
+                    m_timer.restart();
+                }
+            });
+        }
+    }
+
+    /**
+     * Schedule a repaint of the parts of a machine panel which depend on its simulation. Must be
+     * called on the event dispatch thread.
+     * @param panel The panel to repaint.
+     */
+    public void invalidateSimulation(MachineGraphicsPanel panel)
+    {
+        Rectangle bounds = panel.getSimulationBounds();
+        Rectangle previous = bounds != null? m_painted.put(panel, bounds) : m_painted.remove(panel);
+        if (previous != null && bounds != null)
+        {
+            previous.add(bounds);
+            invalidate(panel, previous);
+        }
+        else if (previous != null || bounds != null)
+        {
+            invalidate(panel, previous != null? previous : bounds);
+        }
+    }
+
+    /**
+     * Repaint every invalidated region now. Must be called on the event dispatch thread.
+     */
+    public void flush()
+    {
+        HashMap<JComponent, Rectangle> dirty;
+        synchronized (m_dirty)
+        {
+            dirty = new HashMap<JComponent, Rectangle>(m_dirty);
+            m_dirty.clear();
+            m_scheduled = false;
+        }
+        m_timer.stop();
+
+        for (Map.Entry<JComponent, Rectangle> entry : dirty.entrySet())
+        {
+            Rectangle r = entry.getValue().intersection(
+                new Rectangle(0, 0, entry.getKey().getWidth(), entry.getKey().getHeight()));
+            if (!r.isEmpty())
+            {
+                entry.getKey().repaint(r);
+            }
+        }
+    }
+
+    /**
+     * Timer which flushes invalidated regions, one frame after the first invalidation.
+     */
+    private final Timer m_timer;
+
+    /**
+     * The dirty region of each invalidated component.
+     */
+    private final HashMap<JComponent, Rectangle> m_dirty = new HashMap<JComponent, Rectangle>();
+
+    /**
+     * The simulation region of each machine panel, as of its last invalidation; only accessed on
+     * the event dispatch thread.
+     */
+    private final WeakHashMap<MachineGraphicsPanel, Rectangle> m_painted =
+        new WeakHashMap<MachineGraphicsPanel, Rectangle>();
+
+    /**
+     * Whether a flush has been scheduled; guarded by m_dirty.
+     */
+    private boolean m_scheduled;
+}
@@ -0,0 +1,806 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import tuataraTMSim.exceptions.*;
+import tuataraTMSim.machine.Configuration;
+import tuataraTMSim.machine.ExecutionHistory;
+import tuataraTMSim.machine.Simulator;
+import tuataraTMSim.machine.Tape;
+
+/**
+ * Runs simulations on a dedicated thread, decoupled from the event dispatch thread. While a
+ * simulation is active, the simulation thread owns the simulator and the tape: every step, reset
+ * and single step is performed there, one at a time, in the order requested. The simulation thread
+ * publishes immutable SimulationSnapshot objects through a lock-free handoff, and a Swing timer
+ * repaints from the latest snapshot at a fixed frame rate, no matter how quickly the machine steps.
+ *
+ * In turbo execution, each task runs a batch of steps sized to fill FRAME_BUDGET, as tuned from
+ * the measured cost of previous batches, and console output is posted once per batch.
+ *
+ * Steps are scheduled with a fixed delay between the end of one step and the start of the next, so
+ * a step which blocks to prompt the user does not cause further steps to queue up behind it.
+ */
+public class SimulationExecutor
+{
+    /**
+     * Time between frames, in milliseconds.
+     */
+    public static final int FRAME_PERIOD = 16;
+
+    /**
+     * Delay which selects turbo execution, in which each scheduled task runs as many steps as fit
+     * in FRAME_BUDGET, rather than a single step.
+     */
+    public static final int TURBO_DELAY = 0;
+
+    /**
+     * Time spent stepping per task in turbo execution, in nanoseconds.
+     */
+    public static final long FRAME_BUDGET = FRAME_PERIOD * 1000000L;
+
+    /**
+     * Maximum number of steps per task in turbo execution.
+     */
+    public static final int MAX_BATCH_SIZE = 1 << 20;
+
+    /**
+     * Minimum number of tape cells captured either side of the read/write head in each snapshot.
+     */
+    public static final int MIN_TAPE_WINDOW = 64;
+
+    /**
+     * Creates a new instance of SimulationExecutor.
+     * @param tapeDisp The panel displaying the tape which simulations run on.
+     */
+    public SimulationExecutor(TapeDisplayPanel tapeDisp)
+    {
+        m_tapeDisp = tapeDisp;
+        m_thread = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Simulation");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        m_frameTimer = new Timer(FRAME_PERIOD, new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                renderFrame();
+            }
+        });
+    }
+
+    /**
+     * Begin executing the machine of a panel, until it halts or stop() is called. Any simulation
+     * already running is stopped first. Must be called on the event dispatch thread.
+     * @param panel The panel whose machine to execute.
+     * @param delay The delay between steps, in milliseconds, or TURBO_DELAY for turbo execution.
+     */
+    public void start(final MachineGraphicsPanel panel, int delay)
+    {
+        stop();
+        panel.finishLayout();
+        final int run = ++m_run;
+        final boolean turbo = delay == TURBO_DELAY;
+        final String title = panel.getFrame().getTitle();
+        setPanel(panel);
+        m_running = true;
+        m_batchSize = 1;
+        m_stepCost = 0;
+        beginFrames();
+        m_future = m_thread.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                // A stale run may still be scheduled briefly after stop()
+                if (!m_running || run != m_run)
+                {
+                    return;
+                }
+                if (turbo)
+                {
+                    long begin = System.nanoTime();
+                    int taken = runSteps(panel, title, run, m_batchSize);
+                    tune(taken, System.nanoTime() - begin);
+                }
+                else
+                {
+                    runSteps(panel, title, run, 1);
+                }
+            }
+        }, 0, Math.max(delay, 1), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop executing the current simulation. A step already in progress is allowed to finish. Must
+     * be called on the event dispatch thread.
+     * @return true if a simulation was running, false otherwise.
+     */
+    public boolean stop()
+    {
+        boolean wasRunning = m_running;
+        m_running = false;
+        m_run++;
+        if (m_future != null)
+        {
+            m_future.cancel(false);
+            m_future = null;
+        }
+        return wasRunning;
+    }
+
+    /**
+     * Perform a single step of the machine of a panel, on the simulation thread. Must be called on
+     * the event dispatch thread.
+     * @param panel The panel whose machine to step.
+     */
+    public void step(final MachineGraphicsPanel panel)
+    {
+        panel.finishLayout();
+        final String title = panel.getFrame().getTitle();
+        setPanel(panel);
+        submit(new Runnable()
+        {
+            public void run()
+            {
+                runSteps(panel, title, -1, 1);
+            }
+        });
+    }
+
+    /**
+     * Return the machine of a panel to a step recorded by its execution history, on the
+     * simulation thread, once any step in progress has finished. Must be called on the event
+     * dispatch thread.
+     * @param panel The panel whose machine to move.
+     * @param step The step to jump to, or -1 to step back by one step.
+     */
+    public void jumpTo(final MachineGraphicsPanel panel, final long step)
+    {
+        panel.finishLayout();
+        final String title = panel.getFrame().getTitle();
+        setPanel(panel);
+        submit(new Runnable()
+        {
+            public void run()
+            {
+                ConsolePanel console = MainWindow.getInstance().getConsole();
+                ExecutionHistory history = panel.getHistory();
+                Simulator sim = panel.getSimulator();
+                try
+                {
+                    history.jumpTo(step < 0? history.getStep() - 1 : step);
+                    m_steps = history.getStep();
+                    if (sim.getCurrentState() == null)
+                    {
+                        console.log("Returned %s to step %d", title, m_steps);
+                    }
+                    else
+                    {
+                        console.log("Returned %s to step %d: %s", title, m_steps,
+                                    sim.getConfiguration());
+                    }
+                }
+                catch (final IllegalStateException e)
+                {
+                    console.log("Cannot return %s to an earlier step: %s", title, e.getMessage());
+                    SwingUtilities.invokeLater(new Runnable()
+                    {
+                        public void run()
+                        {
+                            Global.showErrorMessage("Step Back", "%s", e.getMessage());
+                        }
+                    });
+                }
+                publish(panel, true);
+            }
+        });
+    }
+
+    /**
+     * Reset the simulator of a panel, on the simulation thread, once any step in progress has
+     * finished. Must be called on the event dispatch thread.
+     * @param panel The panel whose simulator to reset.
+     */
+    public void reset(final MachineGraphicsPanel panel)
+    {
+        panel.finishLayout();
+        m_panels = collectPanels(panel);
+        submit(new Runnable()
+        {
+            public void run()
+            {
+                panel.getSimulator().resetMachine();
+                m_steps = 0;
+                publish(panel, true);
+            }
+        });
+    }
+
+    /**
+     * Determine if a simulation is running.
+     * @return true if a simulation is running, false otherwise.
+     */
+    public boolean isRunning()
+    {
+        return m_running;
+    }
+
+    /**
+     * Determine if the simulation thread owns the simulation; that is, a simulation is running, or
+     * a single step or reset has been requested but has not yet been rendered.
+     * @return true if the simulation thread is active, false otherwise.
+     */
+    public boolean isActive()
+    {
+        return m_running || m_pending.get() > 0;
+    }
+
+    /**
+     * Get the panel whose machine was most recently executed or stepped.
+     * @return The panel, or null if no machine has been executed.
+     */
+    public MachineGraphicsPanel getPanel()
+    {
+        return m_panel;
+    }
+
+    /**
+     * Get the snapshot which painting should use in place of the live simulation.
+     * @return The latest snapshot if the simulation thread is active, otherwise null, in which case
+     *         the simulation may be read directly.
+     */
+    public SimulationSnapshot getSnapshot()
+    {
+        return isActive()? m_snapshot.get() : null;
+    }
+
+    /**
+     * Set the panel whose machine is executed or stepped. Must be called on the event dispatch
+     * thread.
+     * @param panel The panel.
+     */
+    private void setPanel(MachineGraphicsPanel panel)
+    {
+        m_panel = panel;
+        m_panels = collectPanels(panel);
+    }
+
+    /**
+     * Collect a panel and its submachine panels, on the event dispatch thread, which owns the
+     * hierarchy of panels.
+     * @param panel The panel.
+     * @return The panel, followed by its submachine panels.
+     */
+    private static List<MachineGraphicsPanel> collectPanels(MachineGraphicsPanel panel)
+    {
+        ArrayList<MachineGraphicsPanel> result = new ArrayList<MachineGraphicsPanel>();
+        result.add(panel);
+        for (int i = 0; i < result.size(); i++)
+        {
+            if (result.get(i) instanceof TMGraphicsPanel)
+            {
+                result.addAll(((TMGraphicsPanel)result.get(i)).getChildren());
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Run a task on the simulation thread, rendering frames until it has completed.
+     * @param task The task to run.
+     */
+    private void submit(final Runnable task)
+    {
+        m_pending.incrementAndGet();
+        beginFrames();
+        m_thread.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    task.run();
+                }
+                finally
+                {
+                    m_pending.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Run steps of the machine, on the simulation thread. The configuration after each step is
+     * recorded, and the records are logged to the console in a single batch. If the machine halts,
+     * the result is logged, a message box is shown, and execution is stopped.
+     * @param panel The panel whose machine to step.
+     * @param title The title of the panel's frame, as read on the event dispatch thread.
+     * @param run The run these steps belong to, or -1 for a single step.
+     * @param count The maximum number of steps to run.
+     * @return The number of steps run.
+     */
+    private int runSteps(final MachineGraphicsPanel panel, final String title, final int run,
+                         int count)
+    {
+        final MainWindow inst = MainWindow.getInstance();
+        final ConsolePanel console = inst.getConsole();
+        Simulator sim = panel.getSimulator();
+        ConfigurationBatch log = new ConfigurationBatch(console, panel);
+        int taken = 0;
+        // Any hit left over from before these steps is stale
+        takeHit(panel);
+        try
+        {
+            // Pre-validate the machine
+            final String result = sim.getMachine().getValidator().hasUndefinedSymbols();
+            if (result != null)
+            {
+                halt(run);
+                SwingUtilities.invokeLater(new Runnable()
+                {
+                    public void run()
+                    {
+                        console.log("Cannot simulate %s: %s", title, result);
+                        Global.showErrorMessage("Execute", "Cannot simulate: %s", result);
+                    }
+                });
+                return 0;
+            }
+            // If we are just starting, write out the input on the tape
+            if (sim.getCurrentState() == null)
+            {
+                m_steps = 0;
+                Tape tape = sim.getTape();
+                // Issue a minor warning to the console if the r/w head is not in the leftmost
+                // cell; continue execution
+                if (tape.headLocation() != 0)
+                {
+                    console.log("Warning: Tape head has not been reset");
+                }
+                console.logPartial(panel, "Input: %s\n", tape.getPartialString(tape.headLocation(),
+                                   tape.getLength() - tape.headLocation()));
+            }
+            while (taken < count)
+            {
+                sim.step();
+                m_steps++;
+                taken++;
+
+                log.add(sim.captureConfiguration());
+                // Hits are always taken, so that none is left to stop a later run
+                String hit = takeHit(panel);
+                if (sim.isHalted())
+                {
+                    log.post(true);
+                    break;
+                }
+                // Single steps already return to the user, so only runs stop at a hit
+                if (hit != null && run != -1)
+                {
+                    log.post(true);
+                    halt(run);
+                    console.log("Stopped %s at step %d: %s", title, m_steps, hit);
+                    publish(panel, true);
+                    return taken;
+                }
+            }
+            log.post(false);
+            publish(panel, run == -1);
+        }
+        // Machine halted as expected
+        catch (ComputationCompletedException e)
+        {
+            takeHit(panel);
+            log.post(false);
+            halt(run);
+            sim.resetMachine();
+            publish(panel, true);
+
+            final String msg = panel.getErrorMessage(e);
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                public void run()
+                {
+                    console.log("Simulation of %s finished: %s", title, msg);
+                    Global.showInfoMessage(MainWindow.HALTED_MESSAGE_TITLE_STR,
+                            "Simulation finished: %s", msg);
+                }
+            });
+        }
+        // Machine halted unexpectedly
+        catch (Exception e)
+        {
+            takeHit(panel);
+            log.post(false);
+            halt(run);
+            publish(panel, true);
+
+            final String msg = panel.getErrorMessage(e);
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                public void run()
+                {
+                    console.log("Simulation of %s halted unexpectedly: %s", title, msg);
+                    Global.showErrorMessage(MainWindow.HALTED_MESSAGE_TITLE_STR,
+                            "Simulation halted unexpectedly: %s", msg);
+                }
+            });
+        }
+        return taken;
+    }
+
+    /**
+     * Take the hits of the breakpoints of a panel and its submachine panels, on the simulation
+     * thread, so that each is cleared.
+     * @param panel The panel whose machine is being simulated.
+     * @return The description of the first hit, or null if there was none.
+     */
+    private String takeHit(MachineGraphicsPanel panel)
+    {
+        String result = null;
+        for (MachineGraphicsPanel p : getPanels(panel))
+        {
+            String hit = p.getBreakpoints().takeHit();
+            if (result == null)
+            {
+                result = hit;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get a panel and its submachine panels, as last collected on the event dispatch thread.
+     * @param panel The panel whose machine is being simulated.
+     * @return The panel, followed by its submachine panels.
+     */
+    private List<MachineGraphicsPanel> getPanels(MachineGraphicsPanel panel)
+    {
+        List<MachineGraphicsPanel> panels = m_panels;
+        return !panels.isEmpty() && panels.get(0) == panel? panels : 
+            Collections.singletonList(panel);
+    }
+
+    /**
+     * Adjust the number of steps per task in turbo execution, from the measured cost of a batch.
+     * The cost per step is smoothed over several batches, so a single slow step, such as one which
+     * prompts the user, does not collapse the batch size.
+     * @param taken The number of steps taken by the batch.
+     * @param elapsed The time taken by the batch, in nanoseconds.
+     */
+    private void tune(int taken, long elapsed)
+    {
+        if (taken == 0)
+        {
+            return;
+        }
+        long cost = Math.max(1, elapsed / taken);
+        m_stepCost = m_stepCost == 0? cost : (m_stepCost * 3 + cost) / 4;
+        m_batchSize = (int)Math.max(1, Math.min(MAX_BATCH_SIZE, FRAME_BUDGET / m_stepCost));
+    }
+
+    /**
+     * Stop a run from the simulation thread, once its machine has halted.
+     * @param run The run to stop, or -1 for a single step, which is not stopped.
+     */
+    private void halt(final int run)
+    {
+        if (run == -1)
+        {
+            return;
+        }
+        if (run == m_run)
+        {
+            m_running = false;
+        }
+        SwingUtilities.invokeLater(new Runnable()
+        {
+            public void run()
+            {
+                // The user may have started another run in the meantime
+                if (m_run <= run + 1)
+                {
+                    MainWindow.getInstance().stopExecution();
+                }
+            }
+        });
+    }
+
+    /**
+     * Publish a snapshot of a simulation, on the simulation thread. Unless forced, a snapshot is
+     * only captured if the previous one has been rendered, so at most one is captured per frame.
+     * @param panel The panel whose machine is being simulated.
+     * @param force true to always capture a snapshot, false otherwise.
+     */
+    private void publish(MachineGraphicsPanel panel, boolean force)
+    {
+        if (m_frameWanted.getAndSet(false) || force)
+        {
+            int window = Math.max(MIN_TAPE_WINDOW, m_tapeDisp.getVisibleCellCount());
+            m_snapshot.set(new SimulationSnapshot(panel, getPanels(panel),
+                                                  panel.getSimulator().getTape(), window, m_steps));
+        }
+    }
+
+    /**
+     * Start rendering frames, if not already doing so. Must be called on the event dispatch thread.
+     */
+    private void beginFrames()
+    {
+        m_frameWanted.set(true);
+        if (!m_frameTimer.isRunning())
+        {
+            m_frameTimer.start();
+        }
+    }
+
+    /**
+     * Render a frame from the latest snapshot, on the event dispatch thread. Once the simulation
+     * thread becomes idle, a final frame is rendered from the live simulation and the timer stops.
+     */
+    private void renderFrame()
+    {
+        boolean idle = !isActive();
+        SimulationSnapshot snapshot = m_snapshot.get();
+        if (snapshot != m_lastFrame || idle)
+        {
+            m_lastFrame = snapshot;
+            // Submachine panels may have been opened by the simulation since the last frame
+            if (m_panel != null)
+            {
+                m_panels = collectPanels(m_panel);
+            }
+            RepaintScheduler scheduler = MainWindow.getInstance().getRepaintScheduler();
+            MainWindow.getInstance().tapeChanged(m_tapeDisp.getTape());
+            scheduler.invalidate(m_tapeDisp);
+            scheduler.flush();
+        }
+        m_frameWanted.set(true);
+        if (idle)
+        {
+            m_frameTimer.stop();
+            m_snapshot.set(null);
+            m_lastFrame = null;
+        }
+    }
+
+    /**
+     * The panel displaying the tape which simulations run on.
+     */
+    private final TapeDisplayPanel m_tapeDisp;
+
+    /**
+     * The simulation thread.
+     */
+    private final ScheduledExecutorService m_thread;
+
+    /**
+     * Timer which renders frames on the event dispatch thread.
+     */
+    private final Timer m_frameTimer;
+
+    /**
+     * The latest snapshot published by the simulation thread.
+     */
+    private final AtomicReference<SimulationSnapshot> m_snapshot =
+        new AtomicReference<SimulationSnapshot>();
+
+    /**
+     * Whether the previous snapshot has been rendered, so a new one should be captured.
+     */
+    private final AtomicBoolean m_frameWanted = new AtomicBoolean(true);
+
+    /**
+     * The number of single steps and resets which have been requested but not yet completed.
+     */
+    private final AtomicInteger m_pending = new AtomicInteger();
+
+    /**
+     * The snapshot rendered by the previous frame; only accessed on the event dispatch thread.
+     */
+    private SimulationSnapshot m_lastFrame;
+
+    /**
+     * The scheduled steps of the current run, if any.
+     */
+    private ScheduledFuture<?> m_future;
+
+    /**
+     * Identifies the current run; incremented whenever a run starts or stops.
+     */
+    private volatile int m_run;
+
+    /**
+     * Whether a simulation is running.
+     */
+    private volatile boolean m_running;
+
+    /**
+     * The panel whose machine was most recently executed or stepped.
+     */
+    private volatile MachineGraphicsPanel m_panel;
+
+    /**
+     * The executing panel and its submachine panels, collected on the event dispatch thread.
+     */
+    private volatile List<MachineGraphicsPanel> m_panels = Collections.emptyList();
+
+    /**
+     * The number of steps taken in the current run; only accessed on the simulation thread.
+     */
+    private long m_steps;
+
+    /**
+     * The number of steps per task in turbo execution.
+     */
+    private volatile int m_batchSize;
+
+    /**
+     * The smoothed cost of a step in turbo execution, in nanoseconds, or 0 if not yet measured.
+     */
+    private volatile long m_stepCost;
+
+    /**
+     * A batch of configurations waiting to be logged to the console. Configurations are only
+     * formatted if they will be kept by the console: unless the console is writing its log to a
+     * file, configurations which would be pushed out of the console by later ones are discarded as
+     * they are added, so a batch holds at most a console's worth of text however many steps are
+     * run. Batches for consoles writing to a file are instead logged every FLUSH_SIZE steps.
+     */
+    private static class ConfigurationBatch
+    {
+        /**
+         * The number of configurations held before a batch is logged, if every configuration is
+         * kept.
+         */
+        private static final int FLUSH_SIZE = 4096;
+
+        /**
+         * Text placed between consecutive configurations.
+         */
+        private static final String SEPARATOR = String.format(" %c ", Global.CONFIG_TEE);
+
+        /**
+         * Creates a new instance of ConfigurationBatch.
+         * @param console The console to log to.
+         * @param panel The panel logging the configurations.
+         */
+        public ConfigurationBatch(ConsolePanel console, MachineGraphicsPanel panel)
+        {
+            m_console = console;
+            m_panel = panel;
+            ConsoleLog out = console.getLog();
+            m_budget = out.getSpillFile() == null?
+                (long)out.getCapacity() * ConsoleLog.MAX_LINE_LENGTH : Long.MAX_VALUE;
+        }
+
+        /**
+         * Add a configuration to the batch, discarding any which the console would not keep.
+         * @param config The configuration to add.
+         */
+        public void add(Configuration config)
+        {
+            m_configs.addLast(config);
+            m_length += config.getTextLength() + SEPARATOR.length();
+            while (m_length > m_budget && m_configs.size() > 1)
+            {
+                m_length -= m_configs.removeFirst().getTextLength() + SEPARATOR.length();
+                m_omitted++;
+            }
+            if (m_budget == Long.MAX_VALUE && m_configs.size() >= FLUSH_SIZE)
+            {
+                post(false);
+            }
+        }
+
+        /**
+         * Log the batch to the console, and empty the batch. The console may be written from this
+         * thread, and displays the batch on its next frame.
+         * @param end true to end the partial message after the batch, false to follow the last
+         *            configuration with a turnstile.
+         */
+        public void post(boolean end)
+        {
+            if (m_configs.isEmpty())
+            {
+                return;
+            }
+
+            StringBuilder text = new StringBuilder((int)Math.min(m_length + 64, Integer.MAX_VALUE - 8));
+            if (m_omitted > 0)
+            {
+                text.append(String.format("%d configurations omitted", m_omitted)).append(SEPARATOR);
+            }
+            while (!m_configs.isEmpty())
+            {
+                m_configs.removeFirst().appendTo(text);
+                if (!end || !m_configs.isEmpty())
+                {
+                    text.append(SEPARATOR);
+                }
+            }
+            m_length = 0;
+            m_omitted = 0;
+
+            m_console.logPartial(m_panel, "%s", text);
+            if (end)
+            {
+                m_console.endPartial();
+            }
+        }
+
+        /**
+         * The console to log to.
+         */
+        private final ConsolePanel m_console;
+
+        /**
+         * The panel logging the configurations.
+         */
+        private final MachineGraphicsPanel m_panel;
+
+        /**
+         * The number of characters of configurations which the console will keep.
+         */
+        private final long m_budget;
+
+        /**
+         * The configurations waiting to be logged.
+         */
+        private final ArrayDeque<Configuration> m_configs = new ArrayDeque<Configuration>();
+
+        /**
+         * The number of characters of text in the batch, including separators.
+         */
+        private long m_length;
+
+        /**
+         * The number of configurations discarded since the batch was last logged.
+         */
+        private long m_omitted;
+    }
+}
@@ -0,0 +1,224 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import tuataraTMSim.machine.Simulator;
+import tuataraTMSim.machine.State;
+import tuataraTMSim.machine.Tape;
+import tuataraTMSim.machine.Transition;
+
+/**
+ * An immutable view of a simulation, captured on the simulation thread by SimulationExecutor and
+ * rendered on the event dispatch thread. A snapshot holds everything painting needs which changes
+ * as the machine steps: the current state and next transitions of the executing panel and of any
+ * submachine panels beneath it, the position of the read/write head, and a window of tape cells
+ * around the head.
+ */
+public final class SimulationSnapshot
+{
+    /**
+     * Capture a snapshot of a simulation. Must be called on the thread which owns the simulation.
+     * @param panel The panel whose machine is being executed.
+     * @param panels The panels to capture: the executing panel and its submachine panels, as
+     *               collected on the event dispatch thread.
+     * @param tape The tape being used in the simulation.
+     * @param window The number of cells to capture either side of the read/write head.
+     * @param steps The number of steps taken so far.
+     */
+    public SimulationSnapshot(MachineGraphicsPanel panel, List<MachineGraphicsPanel> panels,
+                              Tape tape, int window, long steps)
+    {
+        m_panel = panel;
+        m_tape = tape;
+        m_steps = steps;
+        m_states = new HashMap<MachineGraphicsPanel, State>();
+        m_next = new HashMap<MachineGraphicsPanel, Set<Transition>>();
+        for (MachineGraphicsPanel p : panels)
+        {
+            capture(p);
+        }
+
+        m_headLocation = tape.headLocation();
+        m_windowStart = Math.max(0, m_headLocation - window);
+        m_window = new char[m_headLocation + window + 1 - m_windowStart];
+        tape.getSymbols(m_windowStart, m_window, 0, m_window.length);
+    }
+
+    /**
+     * Get the panel whose machine is being executed.
+     * @return The executing panel.
+     */
+    public MachineGraphicsPanel getPanel()
+    {
+        return m_panel;
+    }
+
+    /**
+     * Get the tape being used in the simulation.
+     * @return The tape.
+     */
+    public Tape getTape()
+    {
+        return m_tape;
+    }
+
+    /**
+     * Determine if this snapshot holds the simulation state of a panel.
+     * @param panel The panel to check.
+     * @return true if the panel is the executing panel, or one of its submachine panels.
+     */
+    public boolean contains(MachineGraphicsPanel panel)
+    {
+        return m_states.containsKey(panel);
+    }
+
+    /**
+     * Get the current state of a panel's simulator.
+     * @param panel The panel; see contains().
+     * @return The current state, or null if the simulator has not started.
+     */
+    public State getCurrentState(MachineGraphicsPanel panel)
+    {
+        return m_states.get(panel);
+    }
+
+    /**
+     * Get the transitions a panel's simulator may take in its next step.
+     * @param panel The panel; see contains().
+     * @return The next transitions; empty if the panel is not in this snapshot.
+     */
+    public Set<Transition> getNextTransitions(MachineGraphicsPanel panel)
+    {
+        Set<Transition> result = m_next.get(panel);
+        return result != null? result : Collections.<Transition>emptySet();
+    }
+
+    /**
+     * Get the location of the read/write head.
+     * @return The location of the read/write head, relative to the start of the tape.
+     */
+    public int getHeadLocation()
+    {
+        return m_headLocation;
+    }
+
+    /**
+     * Get the first cell captured in the tape window.
+     * @return The offset of the window from the start of the tape.
+     */
+    public int getWindowStart()
+    {
+        return m_windowStart;
+    }
+
+    /**
+     * Get the number of cells captured in the tape window.
+     * @return The length of the window.
+     */
+    public int getWindowLength()
+    {
+        return m_window.length;
+    }
+
+    /**
+     * Read a cell of the tape, as it was when the snapshot was captured.
+     * @param cell The offset of the cell from the start of the tape.
+     * @return The symbol in the cell, or a blank if the cell lies outside the window.
+     */
+    public char getSymbol(int cell)
+    {
+        int idx = cell - m_windowStart;
+        return idx >= 0 && idx < m_window.length? m_window[idx] : Tape.BLANK_SYMBOL;
+    }
+
+    /**
+     * Get the number of steps taken when the snapshot was captured.
+     * @return The number of steps taken.
+     */
+    public long getStepCount()
+    {
+        return m_steps;
+    }
+
+    /**
+     * Record the simulation state of a panel.
+     * @param panel The panel to record.
+     */
+    private void capture(MachineGraphicsPanel panel)
+    {
+        Simulator sim = panel.getSimulator();
+        m_states.put(panel, sim.getCurrentState());
+        Collection next = sim.getNextTransitions();
+        m_next.put(panel, next.isEmpty()? Collections.<Transition>emptySet() :
+                          Collections.unmodifiableSet(new HashSet<Transition>(next)));
+    }
+
+    /**
+     * The panel whose machine is being executed.
+     */
+    private final MachineGraphicsPanel m_panel;
+
+    /**
+     * The tape being used in the simulation.
+     */
+    private final Tape m_tape;
+
+    /**
+     * The number of steps taken.
+     */
+    private final long m_steps;
+
+    /**
+     * The current state of each captured panel.
+     */
+    private final HashMap<MachineGraphicsPanel, State> m_states;
+
+    /**
+     * The next transitions of each captured panel.
+     */
+    private final HashMap<MachineGraphicsPanel, Set<Transition>> m_next;
+
+    /**
+     * The location of the read/write head.
+     */
+    private final int m_headLocation;
+
+    /**
+     * The offset of the first cell in m_window.
+     */
+    private final int m_windowStart;
+
+    /**
+     * The cells around the read/write head.
+     */
+    private final char[] m_window;
+}
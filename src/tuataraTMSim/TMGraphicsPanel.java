@@ -91,6 +91,7 @@ public class TMGraphicsPanel
         // Add TM-specific context menu actions
         m_contextMenu.addSeparator();
         m_contextMenu.add(m_normalizeAction);
+        m_contextMenu.add(m_layeredLayoutAction);
         m_contextMenu.add(m_submachineAction);
 
         initialization();
@@ -175,6 +176,52 @@ public class TMGraphicsPanel
         return null;
     }
 
+    /**
+     * Determine if this panel shows a shared library submachine, which must not be edited; see
+     * SubmachineLibrary.load().
+     * @return true if the machine belongs to the library, false otherwise.
+     */
+    public boolean isLibraryMachine()
+    {
+        TM_State owner = getParentState();
+        return owner != null && owner.getSubmachineReference() != null;
+    }
+
+    /** 
+     * Set if editing of the machine is enabled. Library submachines can never be edited.
+     * @param enabled true if editing is enabled, false otherwise.
+     */
+    public void setEditingEnabled(boolean enabled)
+    {
+        super.setEditingEnabled(enabled && !isLibraryMachine());
+    }
+
+    /**
+     * Close the panel showing the submachine of a state, if there is one. The submachine itself is
+     * left unchanged.
+     * @param state The state whose submachine is shown.
+     */
+    public void closeSubmachinePanel(TM_State state)
+    {
+        TM_Machine sub = state.getSubmachine();
+        if (sub == null)
+        {
+            return;
+        }
+        for (TMGraphicsPanel child : new ArrayList<TMGraphicsPanel>(m_children))
+        {
+            if (child.getSimulator().getMachine() == sub)
+            {
+                // Detach the child first, so that closing an empty machine does not remove it
+                removeChild(child);
+                if (child.getFrame() != null)
+                {
+                    MainWindow.getInstance().removeFrame(child.getFrame());
+                }
+            }
+        }
+    }
+
     /**
      * Get the children of this panel.
      * @return The children of this panel.
@@ -244,11 +291,12 @@ public class TMGraphicsPanel
             public void internalFrameClosed(InternalFrameEvent e)
             {
                 // If we have an empty machine, destroy this frame
-                if (m_parent != null && m_sim.getMachine().getStates().size() == 0)
+                if (m_parent != null && !isLibraryMachine() && m_sim.getMachine().getStates().size() == 0)
                 {
                     // m_parent != null => getParentState() != null
                     TM_State owner = getParentState();
                     owner.setSubmachine(null);
+                    m_parent.getSimulator().getMachine().getValidator().invalidate(owner);
                     m_parent.removeChild(TMGraphicsPanel.this);
                 }
                 // Otherwise, close all children, but do not delete their references
@@ -469,11 +517,31 @@ public class TMGraphicsPanel
                     {
                         return "Normalize machine";
                     }
+
+                    public Collection<? extends State> getAffectedStates()
+                    {
+                        // Any label in the machine may have changed
+                        return null;
+                    }
                 });
                 // repaint();
             }
         };
 
+    /**
+     * Action to lay out the machine in layers, by depth from the start state. Crossings are reduced
+     * on a worker thread, and the result animated into place as a single undoable command.
+     */
+    protected Action m_layeredLayoutAction = 
+        new TriggerAction("Layered Layout", TRIGGER_NONEMPTY)
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                MainWindow.getInstance().runLayout(TMGraphicsPanel.this,
+                                                   new LayeredLayout(m_sim.getMachine()));
+            }
+        };
+
     /**
      * Action to create a panel used to edit submachines.
      */
@@ -487,8 +555,28 @@ public class TMGraphicsPanel
                 // exists.
                 MainWindow inst = MainWindow.getInstance();
 
+                // Library submachines are shared, so editing one requires a private copy
+                if (m_contextState.getSubmachineReference() != null && 
+                    m_contextState.getSubmachine() != null)
+                {
+                    String hash = m_contextState.getSubmachineReference();
+                    try
+                    {
+                        doCommand(new DetachSubmachineCommand(TMGraphicsPanel.this, m_contextState,
+                                    SubmachineLibrary.getInstance().loadCopy(hash)));
+                        inst.getConsole().log("Detached the submachine of %s from the library", 
+                                              m_contextState.getLabel());
+                    }
+                    catch (IOException ex)
+                    {
+                        inst.getConsole().log("Encountered an error when copying library machine %s: %s",
+                                              hash, ex.getMessage());
+                        Global.showErrorMessage("Edit Submachine", "Error copying library machine %s", hash);
+                        return;
+                    }
+                }
                 // Create a new machine if necessary
-                if (m_contextState.getSubmachine() == null)
+                else if (m_contextState.getSubmachine() == null)
                     switch (JOptionPane.showConfirmDialog(MainWindow.getInstance(), 
                                 "Would you like to clone an existing machine?", "Make Submachine",
                                 JOptionPane.YES_NO_CANCEL_OPTION))
@@ -503,7 +591,16 @@ public class TMGraphicsPanel
                                 // Cancel
                                 return;
                             }
-                            try { m_contextState.setSubmachine((TM_Machine) Machine.loadMachine(fc.getSelectedFile())); }
+                            // Clones are stored once in the library, and shared until edited
+                            try
+                            {
+                                String hash = SubmachineLibrary.getInstance().importMachine(fc.getSelectedFile());
+                                m_contextState.setSubmachineReference(hash);
+                                m_sim.getMachine().getValidator().invalidate(m_contextState);
+                                inst.getConsole().log("Linked %s to library machine %s", 
+                                                      m_contextState.getLabel(), hash);
+                                repaint();
+                            }
                             catch (Exception ex)
                             {
                                 MainWindow.getInstance().getConsole().log(
@@ -511,7 +608,7 @@ public class TMGraphicsPanel
                                         fc.getSelectedFile().toString(), ex.getMessage());
                                 Global.showWarningMessage("Clone Machine", "Error opening machine file %s", fc.getSelectedFile().toString());
                             }
-                            break;
+                            return;
 
                         case JOptionPane.NO_OPTION:
                             // Add a blank machine
@@ -524,6 +621,7 @@ public class TMGraphicsPanel
                             // Cancel creating a submachine
                             return;
                     }
+                m_sim.getMachine().getValidator().invalidate(m_contextState);
 
                 // Determine if a MachineInternalFrame already exists
                 MachineInternalFrame frame = null;
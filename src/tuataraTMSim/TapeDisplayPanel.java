@@ -27,7 +27,6 @@ package tuataraTMSim;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.geom.*;
 import java.io.File;
 import javax.swing.*;
 import tuataraTMSim.machine.Tape;
@@ -35,6 +34,12 @@ import tuataraTMSim.machine.Tape;
 /** 
  * A panel for displaying a Turing machine tape. Does not include any buttons, just the tape.
  * Assumes the use of a monospace font.
+ *
+ * The panel is a viewport onto the tape: only the cells which are visible are read from the tape,
+ * so painting costs the same however long the tape is. By default the viewport follows the
+ * read/write head, scrolling smoothly as it moves; it may also be scrolled with the mouse wheel,
+ * or moved to a particular cell with jumpToCell(). An overview strip beneath the cells shows the
+ * extent of the tape, the viewport and the read/write head, and may be clicked to jump to a cell.
  */
 public class TapeDisplayPanel extends JPanel
 { 
@@ -62,6 +67,41 @@ public class TapeDisplayPanel extends JPanel
      * Vertical padding around the entire tape.
      */
     protected static final int TAPEPADDING_Y = 2;
+
+    /**
+     * Width of a tape cell, including padding.
+     */
+    protected static final int CELL_WIDTH = CHAR_WIDTH + 2 * CELLPADDING_X;
+
+    /**
+     * Height of the overview strip.
+     */
+    protected static final int OVERVIEW_HEIGHT = 5;
+
+    /**
+     * Vertical gap between the tape cells and the overview strip.
+     */
+    protected static final int OVERVIEW_GAP = 4;
+
+    /**
+     * Delay between frames when scrolling, in milliseconds.
+     */
+    protected static final int SCROLL_DELAY = 15;
+
+    /**
+     * Fraction of the remaining distance covered by each frame when scrolling.
+     */
+    protected static final double SCROLL_EASING = 0.35;
+
+    /**
+     * Number of cells scrolled by each notch of the mouse wheel.
+     */
+    protected static final int WHEEL_CELLS = 3;
+
+    /**
+     * Color of the cell most recently jumped to.
+     */
+    protected static final Color MARKED_CELL_COLOR = new Color(0, 120, 215);
     
     /**
      * Creates a new instance of TapeDisplayPanel.
@@ -92,34 +132,37 @@ public class TapeDisplayPanel extends JPanel
         // TODO: Move into constructor.
         setFocusable(false);
         this.setPreferredSize(new Dimension(500,50));
+
+        m_scrollTimer = new javax.swing.Timer(SCROLL_DELAY, new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                scrollStep();
+            }
+        });
         
         addMouseListener(new MouseAdapter() 
         {
             public void mouseClicked(MouseEvent e)
-            {    
+            {
+                // Clicking on the overview strip moves the view, not the read/write head
+                if (e.getY() >= getOverviewTop())
+                {
+                    if (!isSimulating())
+                    {
+                        jumpToCell(overviewCellAt(e.getX()));
+                    }
+                    return;
+                }
+
                 if (!m_isEditingEnabled)
                 {
                     return;
                 }
 
                 // Shift r/w head to the cell that was clicked on.
-                
-                // Get the current graphics object
-                Graphics g = getGraphics();
-                Graphics2D g2d = (Graphics2D)g;
-
-                // Measure how many cells there are
-                FontMetrics metrics = g2d.getFontMetrics();
                 // Need to take into account the 1px boundary
-                int cellsFromLeft = (e.getX() - 1) / (CHAR_WIDTH + 2 * CELLPADDING_X);                
-                int visibleCells = numCellsViewable(g);
-                int startPos = m_tape.headLocation() - (visibleCells/2);
-                if (startPos < 0)
-                {
-                    startPos = -1;
-                    visibleCells--;
-                }
-                int newCell = Math.max(cellsFromLeft + startPos, 0);
+                int newCell = Math.max(cellAt(e.getX()), 0);
                 
                 while (m_tape.headLocation() < newCell)
                 {
@@ -131,9 +174,24 @@ public class TapeDisplayPanel extends JPanel
                     try { m_tape.headLeft(); }
                     catch (Exception e2) { break; }
                 }
+                m_followHead = true;
                 repaint();
             }
         });
+
+        addMouseWheelListener(new MouseWheelListener()
+        {
+            public void mouseWheelMoved(MouseWheelEvent e)
+            {
+                if (isSimulating())
+                {
+                    return;
+                }
+                m_followHead = false;
+                m_viewTarget = clampView(m_viewTarget + e.getWheelRotation() * WHEEL_CELLS);
+                startScrolling();
+            }
+        });
     }
     
     /** 
@@ -152,26 +210,58 @@ public class TapeDisplayPanel extends JPanel
     }
     
     /** 
-     * Paint the tape on the graphics object at the given location.
+     * Paint the visible cells of the tape, and the overview strip beneath them, on the graphics
+     * object at the given location.
      * @param g The graphics object to render onto.
      * @param x The X ordinate to render at.
      * @param y The Y ordinate to render at.
      */
     public void paintTape(Graphics g, int x, int y)
     {
-        // Figure out what cells to render
-        int visibleCells = numCellsViewable(g);
-        boolean drawTapeEnd = false;
-        int startPos = m_tape.headLocation() - (visibleCells/2);
-        if (startPos < 0)
+        // While a simulation is active, the tape is owned by the simulation thread; paint its
+        // snapshot instead
+        SimulationSnapshot snapshot = getSnapshot();
+        int headLocation = snapshot != null? snapshot.getHeadLocation() : m_tape.headLocation();
+
+        // Figure out what cells to render. The snapshot only holds the cells around the head, so
+        // the view follows the head while a simulation is active.
+        int visibleCells = numCellsViewable();
+        m_visibleCells = visibleCells;
+        if (m_followHead || snapshot != null)
         {
-            startPos = 0;
-            drawTapeEnd = true;
-            visibleCells--;
+            m_viewTarget = clampView(headLocation - visibleCells / 2);
         }
+        if (m_viewStart != m_viewTarget)
+        {
+            startScrolling();
+        }
+        int startPos = (int)Math.floor(m_viewStart);
+        int offset = (int)Math.round((m_viewStart - startPos) * CELL_WIDTH);
 
-        // Get the cell contents to render, including partial cells
-        String tapeStr = m_tape.getPartialString(startPos, visibleCells + 1);
+        // Get the cell contents to render, including partial cells at either end
+        int count = visibleCells + 2;
+        if (m_cells.length < count)
+        {
+            m_cells = new char[count];
+        }
+        int first = Math.max(startPos, 0);
+        int skip = first - startPos;
+        if (snapshot != null)
+        {
+            for (int i = skip; i < count; i++)
+            {
+                m_cells[i] = snapshot.getSymbol(startPos + i);
+            }
+        }
+        else
+        {
+            m_tape.getSymbols(first, m_cells, skip, count - skip);
+        }
+        if (skip > 0)
+        {
+            // The cell before the start of the tape marks its end
+            m_cells[skip - 1] = '*';
+        }
         
         // We need a monospaced font to ensure that the cells are all the same size.  This seemingly
         // cannot be set in the constructor as the graphics object has not been created until the
@@ -180,21 +270,23 @@ public class TapeDisplayPanel extends JPanel
         g2d.setFont(Global.FONT_MONOSPACE);
         FontMetrics metrics = g2d.getFontMetrics();
         
-        int height = metrics.getHeight();
         int ascent = metrics.getAscent();
         int descent = metrics.getDescent();
-        int xAccumulator = 0;
-        if (drawTapeEnd)
+        for (int i = Math.max(skip - 1, 0); i < count; i++)
         {
-            paintTapeCell(g, '*', false, x + xAccumulator, y, ascent, descent);
-            xAccumulator += CHAR_WIDTH + 2 * CELLPADDING_X;
-        }
-        for (int i = 0; i < tapeStr.length(); i++)
-        {
-            boolean isHeadLoc = m_tape.headLocation() == i + startPos;
-            paintTapeCell(g, tapeStr.charAt(i), isHeadLoc, x + xAccumulator, y, ascent, descent);
-            xAccumulator += CHAR_WIDTH + 2 * CELLPADDING_X;
+            int cell = startPos + i;
+            paintTapeCell(g, m_cells[i], headLocation == cell, x + (i * CELL_WIDTH) - offset, y,
+                          ascent, descent);
+            if (cell == m_markedCell && cell != headLocation)
+            {
+                g2d.setColor(MARKED_CELL_COLOR);
+                g2d.drawRect(x + (i * CELL_WIDTH) - offset - CELLPADDING_X + 1,
+                             y - CELLPADDING_Y - ascent + 1, CELL_WIDTH - 2,
+                             ascent + descent + CELLPADDING_Y * 2 - 2);
+            }
         }
+
+        paintOverview(g, snapshot, headLocation, getOverviewTop());
     }
     
     /** 
@@ -210,35 +302,255 @@ public class TapeDisplayPanel extends JPanel
     public void paintTapeCell(Graphics g, char c, boolean isHeadLocation, int x, int y, int ascent, int descent)
     {
         Graphics2D g2d = (Graphics2D)g;
-        FontMetrics metrics = g2d.getFontMetrics();
+        m_glyph[0] = c;
         
         g2d.setColor(Color.BLACK);
-        g2d.draw(new Rectangle2D.Float(x - CELLPADDING_X, y - CELLPADDING_Y - ascent, CHAR_WIDTH + CELLPADDING_X * 2, ascent + descent + CELLPADDING_Y * 2));
+        g2d.drawRect(x - CELLPADDING_X, y - CELLPADDING_Y - ascent, CELL_WIDTH, ascent + descent + CELLPADDING_Y * 2);
         if (!isHeadLocation)
         {
-            g2d.drawString("" + c, x, y);
+            g2d.drawChars(m_glyph, 0, 1, x, y);
         }
         else
         {
-            g2d.fill(new Rectangle2D.Float(x - CELLPADDING_X, y - CELLPADDING_Y - ascent, CHAR_WIDTH + CELLPADDING_X * 2, ascent + descent + CELLPADDING_Y * 2));
+            g2d.fillRect(x - CELLPADDING_X, y - CELLPADDING_Y - ascent, CELL_WIDTH, ascent + descent + CELLPADDING_Y * 2);
             g2d.setColor(Color.WHITE);
-            g2d.drawString("" + c, x, y);
+            g2d.drawChars(m_glyph, 0, 1, x, y);
         } 
     }
+
+    /**
+     * Paint the overview strip, showing the extent of the tape, which parts of it are not blank,
+     * the viewport, and the read/write head. The contents are sampled once per pixel, so the cost
+     * depends only on the width of the panel.
+     * @param g The graphics object to render onto.
+     * @param snapshot The snapshot of the active simulation, or null if there is none.
+     * @param headLocation The location of the read/write head.
+     * @param top The Y ordinate of the top of the strip.
+     */
+    protected void paintOverview(Graphics g, SimulationSnapshot snapshot, int headLocation, int top)
+    {
+        int width = getWidth() - 2 * TAPEPADDING_X;
+        if (width <= 0)
+        {
+            return;
+        }
+        Graphics2D g2d = (Graphics2D)g;
+
+        // The length of the tape belongs to the simulation thread while it is active, so grow the
+        // extent as the head is seen to move instead
+        int viewEnd = (int)Math.ceil(m_viewTarget) + m_visibleCells;
+        int extent = Math.max(headLocation + 1, viewEnd);
+        if (snapshot == null)
+        {
+            m_overviewExtent = Math.max(extent, m_tape.getLength());
+        }
+        else
+        {
+            m_overviewExtent = Math.max(extent, m_overviewExtent);
+        }
+        extent = Math.max(m_overviewExtent, 1);
+
+        g2d.setColor(new Color(235, 235, 235));
+        g2d.fillRect(TAPEPADDING_X, top, width, OVERVIEW_HEIGHT);
+
+        if (snapshot == null)
+        {
+            // Mark the columns whose sampled cell is not blank
+            g2d.setColor(Color.GRAY);
+            for (int i = 0; i < width; i++)
+            {
+                int cell = (int)((long)i * extent / width);
+                m_tape.getSymbols(cell, m_glyph, 0, 1);
+                if (m_glyph[0] != Tape.BLANK_SYMBOL)
+                {
+                    g2d.drawLine(TAPEPADDING_X + i, top, TAPEPADDING_X + i, top + OVERVIEW_HEIGHT - 1);
+                }
+            }
+        }
+
+        // Viewport
+        int viewX = overviewX(Math.max(m_viewStart, 0), extent, width);
+        int viewW = Math.max(overviewX(m_viewStart + m_visibleCells, extent, width) - viewX, 2);
+        g2d.setColor(Color.BLACK);
+        g2d.drawRect(viewX, top, viewW, OVERVIEW_HEIGHT - 1);
+
+        // Read/write head
+        g2d.setColor(Color.RED);
+        int headX = overviewX(headLocation, extent, width);
+        g2d.fillRect(headX, top - 1, 2, OVERVIEW_HEIGHT + 2);
+    }
+
+    /**
+     * Get the X ordinate in the overview strip of a position on the tape.
+     * @param cell The position on the tape, in cells.
+     * @param extent The number of cells the strip represents.
+     * @param width The width of the strip.
+     * @return The X ordinate.
+     */
+    private int overviewX(double cell, int extent, int width)
+    {
+        return TAPEPADDING_X + (int)Math.min(width, cell * width / extent);
+    }
+
+    /**
+     * Get the cell represented by an X ordinate in the overview strip, as of the last paint.
+     * @param x The X ordinate.
+     * @return The cell.
+     */
+    private int overviewCellAt(int x)
+    {
+        int width = Math.max(getWidth() - 2 * TAPEPADDING_X, 1);
+        int clamped = Math.max(0, Math.min(x - TAPEPADDING_X, width - 1));
+        return (int)((long)clamped * Math.max(m_overviewExtent, 1) / width);
+    }
+
+    /**
+     * Get the Y ordinate of the top of the overview strip.
+     * @return The Y ordinate.
+     */
+    private int getOverviewTop()
+    {
+        FontMetrics metrics = getFontMetrics(Global.FONT_MONOSPACE);
+        return TAPEPADDING_Y + metrics.getAscent() + metrics.getDescent() + CELLPADDING_Y + OVERVIEW_GAP;
+    }
+
+    /**
+     * Get the cell painted at an X ordinate in the tape, as of the last paint.
+     * @param x The X ordinate.
+     * @return The cell; -1 is the end of the tape.
+     */
+    private int cellAt(int x)
+    {
+        return (int)Math.floor(m_viewStart + (double)(x - TAPEPADDING_X + CELLPADDING_X) / CELL_WIDTH);
+    }
     
     /** 
      * A helper function that calculates how many cells will fit on the viewing panel at one time,
      * rounded down to the nearest whole number.
-     * @param g The graphics object used to measure text.
      * @return The number of cells that will fit on the viewing panel.
      */
-    private int numCellsViewable(Graphics g)
+    private int numCellsViewable()
     {
-        Graphics2D g2d = (Graphics2D)g;
-        FontMetrics metrics = g2d.getFontMetrics();
-        return getWidth() / (CHAR_WIDTH + 2 * CELLPADDING_X); // Integer division, rounding down.
+        return getWidth() / CELL_WIDTH; // Integer division, rounding down.
+    }
+
+    /**
+     * Clamp the first cell in view, so that no more than the end of the tape is shown before its
+     * start.
+     * @param cell The proposed first cell.
+     * @return The first cell in view.
+     */
+    private double clampView(double cell)
+    {
+        return Math.max(cell, -1);
+    }
+
+    /**
+     * Get the snapshot of the active simulation on this panel's tape.
+     * @return The snapshot, or null if the tape is not being simulated.
+     */
+    private SimulationSnapshot getSnapshot()
+    {
+        SimulationSnapshot snapshot = MainWindow.getInstance().getExecutor().getSnapshot();
+        return snapshot != null && snapshot.getTape() == m_tape? snapshot : null;
+    }
+
+    /**
+     * Determine if the tape is being used by an active simulation.
+     * @return true if the tape is being simulated, false otherwise.
+     */
+    private boolean isSimulating()
+    {
+        return getSnapshot() != null;
+    }
+
+    /**
+     * Begin scrolling the view towards its target, if not already doing so.
+     */
+    private void startScrolling()
+    {
+        if (!m_scrollTimer.isRunning())
+        {
+            m_scrollTimer.start();
+        }
+    }
+
+    /**
+     * Move the view one frame towards its target. The view eases towards the target, and jumps
+     * straight there if it is more than a screen away or close enough.
+     */
+    private void scrollStep()
+    {
+        double distance = m_viewTarget - m_viewStart;
+        if (Math.abs(distance) * CELL_WIDTH < 1 || Math.abs(distance) > Math.max(m_visibleCells, 1))
+        {
+            m_viewStart = m_viewTarget;
+            m_scrollTimer.stop();
+        }
+        else
+        {
+            m_viewStart += distance * SCROLL_EASING;
+        }
+        repaint();
+    }
+
+    /**
+     * Scroll the view to show a cell of the tape in its center, and mark the cell. The view stops
+     * following the read/write head until the head is next moved by the user, or setFollowHead()
+     * is called.
+     * @param cell The offset of the cell from the start of the tape.
+     */
+    public void jumpToCell(int cell)
+    {
+        m_followHead = false;
+        m_markedCell = cell;
+        m_viewTarget = clampView(cell - numCellsViewable() / 2);
+        startScrolling();
+    }
+
+    /**
+     * Determine whether the view follows the read/write head.
+     * @return true if the view follows the read/write head, false otherwise.
+     */
+    public boolean isFollowHead()
+    {
+        return m_followHead;
+    }
+
+    /**
+     * Set whether the view follows the read/write head. Following the head clears the marked cell.
+     * @param follow true if the view should follow the read/write head, false otherwise.
+     */
+    public void setFollowHead(boolean follow)
+    {
+        m_followHead = follow;
+        if (follow)
+        {
+            m_markedCell = -1;
+        }
+        repaint();
+    }
+
+    /**
+     * Get the first cell in view, as of the last time the panel was painted.
+     * @return The offset of the first cell in view from the start of the tape; -1 if the end of
+     *         the tape is in view.
+     */
+    public int getFirstVisibleCell()
+    {
+        return (int)Math.floor(m_viewStart);
     }
     
+    /**
+     * Get the number of cells which fit on the panel, as of the last time it was painted. May be
+     * called from any thread.
+     * @return The number of visible cells.
+     */
+    public int getVisibleCellCount()
+    {
+        return m_visibleCells;
+    }
+
     /**
      * Get the tape currently associated with this panel.
      * @return The tape associated with this panel.
@@ -258,11 +570,26 @@ public class TapeDisplayPanel extends JPanel
     }
     
     /**
-     * Handle a keystroke
+     * Handle a keystroke. Moving the read/write head makes the view follow it again.
      * @param e The generating event.
      * @return true if the event caused a change to the tape, false otherwise.
      */
     public boolean handleKeyEvent(KeyEvent e)
+    {
+       boolean result = handleKey(e);
+       if (result)
+       {
+           setFollowHead(true);
+       }
+       return result;
+    }
+
+    /**
+     * Apply a keystroke to the tape.
+     * @param e The generating event.
+     * @return true if the event caused a change to the tape, false otherwise.
+     */
+    private boolean handleKey(KeyEvent e)
     {
        char c = e.getKeyChar();
        c = Character.toUpperCase(c);
@@ -270,27 +597,23 @@ public class TapeDisplayPanel extends JPanel
        {
             getTape().write(c);
             getTape().headRight();
-            repaint();
             return true;
        }
        else if (c == ' ' || c == Tape.BLANK_SYMBOL)
        {
             getTape().write(Tape.BLANK_SYMBOL);
             getTape().headRight();
-            repaint();
             return true;
        }
        else if (e.getKeyCode() == KeyEvent.VK_LEFT)
        {
             try { getTape().headLeft(); }
             catch (Exception e2) { }
-            repaint();
             return true;
        }
        else if (e.getKeyCode() == KeyEvent.VK_RIGHT)
        {
             getTape().headRight();
-            repaint();
             return true;
        }
        else if (e.getKeyCode() == KeyEvent.VK_BACK_SPACE)
@@ -298,7 +621,6 @@ public class TapeDisplayPanel extends JPanel
            getTape().write(Tape.BLANK_SYMBOL);
            try { getTape().headLeft(); }
            catch (Exception e2) { }
-           repaint();
            return true;
        }
        return false;
@@ -336,6 +658,52 @@ public class TapeDisplayPanel extends JPanel
      */
     private Tape m_tape;
 
+    /**
+     * The number of cells which fit on the panel, as of the last paint.
+     */
+    private volatile int m_visibleCells;
+
+    /**
+     * The first cell in view, including the fraction of it scrolled out of view. -1 is the end of
+     * the tape.
+     */
+    private double m_viewStart = -1;
+
+    /**
+     * The first cell in view once scrolling has finished.
+     */
+    private double m_viewTarget = -1;
+
+    /**
+     * Whether the view follows the read/write head.
+     */
+    private boolean m_followHead = true;
+
+    /**
+     * The cell most recently jumped to, or -1 if there is none.
+     */
+    private int m_markedCell = -1;
+
+    /**
+     * The number of cells represented by the overview strip, as of the last paint.
+     */
+    private int m_overviewExtent = 1;
+
+    /**
+     * Timer driving smooth scrolling of the view.
+     */
+    private javax.swing.Timer m_scrollTimer;
+
+    /**
+     * Buffer holding the visible cells, reused between paints.
+     */
+    private char[] m_cells = new char[0];
+
+    /**
+     * Buffer holding a single cell, reused between paints.
+     */
+    private final char[] m_glyph = new char[1];
+
     /**
      * The associated file.
      */
@@ -26,7 +26,9 @@
 package tuataraTMSim.commands;
 
 import java.awt.geom.Point2D;
+import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import tuataraTMSim.Spline;
 import tuataraTMSim.MachineGraphicsPanel;
 import tuataraTMSim.machine.State;
@@ -35,8 +37,13 @@ import tuataraTMSim.machine.Transition;
 /**
  * A command which deals with adding new transitions to a machine.
  */
-public class AddTransitionCommand implements TMCommand
+public class AddTransitionCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /**
      * Number of pixels to be used as padding between multiple transitions between two states.
      */
@@ -188,6 +195,16 @@ public class AddTransitionCommand implements TMCommand
         }
     }
     
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        return Collections.singleton(m_transition.getFromState());
+    }
+    
     /**
      * Get the friendly name of this command.
      * @return The friendly name of this command.
@@ -0,0 +1,765 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.commands;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import tuataraTMSim.MachineGraphicsPanel;
+import tuataraTMSim.machine.Machine;
+import tuataraTMSim.machine.SpatialIndex;
+import tuataraTMSim.machine.State;
+import tuataraTMSim.machine.Transition;
+
+/**
+ * The undo and redo stacks of a machine panel, bounded both in the number of commands and in the
+ * memory they hold.
+ *
+ * Once the history holds more commands than its depth, the oldest are discarded. The size of each
+ * command is estimated by its serialized size, not counting the panel, machines, or the states and
+ * transitions still in the machine; this is roughly the memory which only the command keeps alive,
+ * such as the states removed by a deletion. Once the commands held in memory exceed the byte
+ * budget, the oldest are either discarded, or, if spilling is enabled, written to a temporary file
+ * and read back when they are undone. The most recent command is always kept in memory.
+ *
+ * Spilled commands are written in batches. Objects which must keep their identity when a batch is
+ * read back, namely the panel, machines, and any state or transition which is in the machine or
+ * referred to by a command still in memory, are written as references to the live object, which
+ * the batch keeps. Everything else is written in full, and so freed from memory.
+ */
+public class CommandHistory
+{
+    /**
+     * System property specifying the maximum number of commands which can be undone.
+     */
+    public static final String DEPTH_PROPERTY = "tuataraTMSim.undoDepth";
+
+    /**
+     * System property specifying the estimated size of the commands held in memory, in bytes.
+     */
+    public static final String BUDGET_PROPERTY = "tuataraTMSim.undoBytes";
+
+    /**
+     * System property which, if true, spills old commands to disk rather than discarding them.
+     */
+    public static final String SPILL_PROPERTY = "tuataraTMSim.undoSpill";
+
+    /**
+     * The maximum number of commands which can be undone, if not otherwise specified.
+     */
+    public static final int DEFAULT_DEPTH = 1000;
+
+    /**
+     * The estimated size of the commands held in memory, if not otherwise specified.
+     */
+    public static final long DEFAULT_BUDGET = 16L << 20;
+
+    /**
+     * The estimated size of a command which cannot be serialized.
+     */
+    public static final int UNMEASURED_SIZE = 256;
+
+    /**
+     * Creates a new instance of CommandHistory, with the depth, budget and spilling given by the
+     * DEPTH_PROPERTY, BUDGET_PROPERTY and SPILL_PROPERTY system properties, or their defaults.
+     * @param panel The panel whose commands are held.
+     */
+    public CommandHistory(MachineGraphicsPanel panel)
+    {
+        this(panel, Integer.getInteger(DEPTH_PROPERTY, DEFAULT_DEPTH),
+             Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET), Boolean.getBoolean(SPILL_PROPERTY));
+    }
+
+    /**
+     * Creates a new instance of CommandHistory.
+     * @param panel The panel whose commands are held.
+     * @param depth The maximum number of commands which can be undone.
+     * @param budget The estimated size of the commands held in memory, in bytes.
+     * @param spill true if old commands should be spilled to disk, false if they are discarded.
+     */
+    public CommandHistory(MachineGraphicsPanel panel, int depth, long budget, boolean spill)
+    {
+        m_panel = panel;
+        m_depth = Math.max(1, depth);
+        m_budget = Math.max(0, budget);
+        m_spill = spill;
+    }
+
+    /**
+     * Add a command which has been done to the undo stack, and clear the redo stack. The oldest
+     * commands are discarded or spilled as necessary.
+     * @param command The command which has been done.
+     */
+    public void push(TMCommand command)
+    {
+        m_redo.clear();
+        Entry entry = new Entry(command, measure(command));
+        m_undo.add(entry);
+        m_bytes += entry.size;
+
+        while (size() > m_depth)
+        {
+            discardOldest();
+        }
+        if (m_bytes > m_budget && m_spill)
+        {
+            spill();
+        }
+        while (m_bytes > m_budget && m_undo.size() > 1)
+        {
+            // Commands spilled before this one could no longer be reached
+            discardSpilled();
+            m_bytes -= m_undo.removeFirst().size;
+        }
+    }
+
+    /**
+     * Take the command at the top of the undo stack, and move it to the redo stack. The caller is
+     * responsible for undoing it.
+     * @return The command to undo.
+     * @throws NoSuchElementException If there is no command to undo.
+     */
+    public TMCommand undo()
+    {
+        if (m_undo.isEmpty() && !m_batches.isEmpty())
+        {
+            restore();
+        }
+        Entry entry = m_undo.removeLast();
+        m_bytes -= entry.size;
+        m_redo.add(entry);
+        return entry.command;
+    }
+
+    /**
+     * Take the command at the top of the redo stack, and move it to the undo stack. The caller is
+     * responsible for redoing it.
+     * @return The command to redo.
+     * @throws NoSuchElementException If there is no command to redo.
+     */
+    public TMCommand redo()
+    {
+        Entry entry = m_redo.removeLast();
+        m_undo.add(entry);
+        m_bytes += entry.size;
+        return entry.command;
+    }
+
+    /**
+     * Get the name of the command at the top of the undo stack.
+     * @return The name of the command, or null if there is no command to undo.
+     */
+    public String getUndoName()
+    {
+        if (!m_undo.isEmpty())
+        {
+            return m_undo.getLast().command.getName();
+        }
+        return m_batches.isEmpty()? null : m_batches.getLast().name;
+    }
+
+    /**
+     * Get the name of the command at the top of the redo stack.
+     * @return The name of the command, or null if there is no command to redo.
+     */
+    public String getRedoName()
+    {
+        return m_redo.isEmpty()? null : m_redo.getLast().command.getName();
+    }
+
+    /**
+     * Get the number of commands which can be undone, including those spilled to disk.
+     * @return The number of commands which can be undone.
+     */
+    public int size()
+    {
+        int result = m_undo.size();
+        for (Batch b : m_batches)
+        {
+            result += b.sizes.length - b.skip;
+        }
+        return result;
+    }
+
+    /**
+     * Get the estimated size of the commands which can be undone and are held in memory.
+     * @return The estimated size, in bytes.
+     */
+    public long getByteCount()
+    {
+        return m_bytes;
+    }
+
+    /**
+     * Discard any commands spilled to disk, and delete the spill file. The history remains usable.
+     */
+    public void close()
+    {
+        discardSpilled();
+    }
+
+    /**
+     * Discard the oldest command which can be undone.
+     */
+    private void discardOldest()
+    {
+        if (m_batches.isEmpty())
+        {
+            m_bytes -= m_undo.removeFirst().size;
+            return;
+        }
+        Batch oldest = m_batches.getFirst();
+        oldest.skip++;
+        if (oldest.skip == oldest.sizes.length)
+        {
+            m_batches.removeFirst();
+            if (m_batches.isEmpty())
+            {
+                discardSpilled();
+            }
+        }
+    }
+
+    /**
+     * Discard every command spilled to disk, and delete the spill file.
+     */
+    private void discardSpilled()
+    {
+        m_batches.clear();
+        if (m_spillFile != null)
+        {
+            try
+            {
+                m_spillFile.close();
+            }
+            catch (IOException e) { }
+            m_file.delete();
+            m_spillFile = null;
+            m_file = null;
+        }
+    }
+
+    /**
+     * Write the oldest commands in memory to the spill file, as a single batch, until at most half
+     * of the byte budget remains in memory. Spilling stops at the first command which cannot be
+     * serialized. If the batch cannot be written, nothing is spilled.
+     */
+    private void spill()
+    {
+        int count = 0;
+        long remaining = m_bytes;
+        for (Entry entry : m_undo)
+        {
+            if (remaining <= m_budget / 2 || count == m_undo.size() - 1 ||
+                !(entry.command instanceof Serializable))
+            {
+                break;
+            }
+            remaining -= entry.size;
+            count++;
+        }
+        if (count == 0)
+        {
+            return;
+        }
+
+        try
+        {
+            // Objects which must keep their identity: those in the machine, those referred to by
+            // the commands kept in memory, and those which older batches keep
+            SpatialIndex live = getLiveObjects();
+            Set<Object> anchored = 
+                Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+            ArrayList<Object> referenced = new ArrayList<Object>();
+            for (Entry entry : m_undo.subList(count, m_undo.size()))
+            {
+                collectReferences(entry.command, referenced);
+            }
+            for (Batch b : m_batches)
+            {
+                referenced.addAll(b.anchors);
+            }
+            anchorReachable(referenced, live, anchored);
+
+            Batch batch = new Batch();
+            batch.sizes = new long[count];
+            ArrayList<TMCommand> commands = new ArrayList<TMCommand>(count);
+            for (Entry entry : m_undo.subList(0, count))
+            {
+                batch.sizes[commands.size()] = entry.size;
+                commands.add(entry.command);
+            }
+            batch.name = commands.get(count - 1).getName();
+            batch.anchors = new ArrayList<Object>();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = 
+                new AnchoringOutputStream(bytes, live, anchored, batch.anchors);
+            out.writeObject(commands);
+            out.close();
+
+            if (m_spillFile == null)
+            {
+                m_file = File.createTempFile("tuatara-undo", ".tmp");
+                m_file.deleteOnExit();
+                m_spillFile = new RandomAccessFile(m_file, "rw");
+            }
+            batch.offset = m_spillFile.length();
+            batch.length = bytes.size();
+            m_spillFile.seek(batch.offset);
+            m_spillFile.write(bytes.toByteArray());
+
+            m_batches.add(batch);
+            m_undo.subList(0, count).clear();
+            m_bytes = remaining;
+        }
+        catch (IOException e)
+        {
+            // The commands will be discarded instead
+        }
+    }
+
+    /**
+     * Read the most recently spilled batch of commands back into memory. If it cannot be read,
+     * every spilled command is discarded.
+     */
+    private void restore()
+    {
+        Batch batch = m_batches.removeLast();
+        try
+        {
+            byte[] bytes = new byte[batch.length];
+            m_spillFile.seek(batch.offset);
+            m_spillFile.readFully(bytes);
+            ObjectInputStream in = 
+                new AnchoringInputStream(new ByteArrayInputStream(bytes), batch.anchors);
+            List<TMCommand> commands = (List<TMCommand>)in.readObject();
+            in.close();
+            for (int i = commands.size() - 1; i >= batch.skip; i--)
+            {
+                m_undo.addFirst(new Entry(commands.get(i), batch.sizes[i]));
+                m_bytes += batch.sizes[i];
+            }
+        }
+        catch (IOException e)
+        {
+            discardSpilled();
+            return;
+        }
+        catch (ClassNotFoundException e)
+        {
+            discardSpilled();
+            return;
+        }
+        if (m_batches.isEmpty())
+        {
+            discardSpilled();
+        }
+    }
+
+    /**
+     * Estimate the size of a command.
+     * @param command The command.
+     * @return The estimated size, in bytes.
+     */
+    private long measure(TMCommand command)
+    {
+        if (!(command instanceof Serializable))
+        {
+            return UNMEASURED_SIZE;
+        }
+        try
+        {
+            CountingOutputStream bytes = new CountingOutputStream();
+            ObjectOutputStream out = new AnchoringOutputStream(bytes, getLiveObjects(), 
+                Collections.emptySet(), new ArrayList<Object>());
+            out.writeObject(command);
+            out.close();
+            return bytes.count;
+        }
+        catch (IOException e)
+        {
+            return UNMEASURED_SIZE;
+        }
+    }
+
+    /**
+     * Add objects to a set of anchored objects, along with every state and transition reachable
+     * from them. An object reachable from an anchored one must itself be anchored, or a batch could
+     * hold a copy of it while the anchored object refers to the original. Objects in the machine
+     * are always anchored, and only reach other objects in the machine, so they are not added.
+     * @param objects The objects to anchor.
+     * @param live The index of the machine.
+     * @param anchored The set of anchored objects which are not in the machine.
+     */
+    private static void anchorReachable(List<Object> objects, SpatialIndex live, 
+        Set<Object> anchored)
+    {
+        LinkedList<Object> pending = new LinkedList<Object>(objects);
+        while (!pending.isEmpty())
+        {
+            Object obj = pending.removeLast();
+            if (isLive(obj, live) || !anchored.add(obj))
+            {
+                continue;
+            }
+            if (obj instanceof Transition)
+            {
+                pending.add(((Transition)obj).getFromState());
+                pending.add(((Transition)obj).getToState());
+            }
+            else if (obj instanceof State)
+            {
+                pending.addAll(((State)obj).getTransitions());
+            }
+        }
+    }
+
+    /**
+     * Add every state and transition which a command refers to to a list.
+     * @param command The command.
+     * @param result The list to add to.
+     */
+    private void collectReferences(TMCommand command, List<Object> result) throws IOException
+    {
+        if (!(command instanceof Serializable))
+        {
+            return;
+        }
+        ArrayList<Object> anchors = new ArrayList<Object>();
+        ObjectOutputStream out = 
+            new AnchoringOutputStream(new CountingOutputStream(), null, null, anchors);
+        out.writeObject(command);
+        out.close();
+        result.addAll(anchors);
+    }
+
+    /**
+     * Get the states and transitions currently in the machine. The machine's spatial index is kept
+     * up to date as states and transitions are added and removed, so this takes constant time.
+     * @return The spatial index of the machine.
+     */
+    private SpatialIndex getLiveObjects()
+    {
+        return m_panel.getSimulator().getMachine().getSpatialIndex();
+    }
+
+    /**
+     * Determine if an object is a state or transition currently in the machine.
+     * @param obj The object.
+     * @param live The spatial index of the machine.
+     * @return true if the object is in the machine, false otherwise.
+     */
+    private static boolean isLive(Object obj, SpatialIndex live)
+    {
+        if (obj instanceof State)
+        {
+            return live.contains((State)obj);
+        }
+        return obj instanceof Transition && live.contains((Transition)obj);
+    }
+
+    /**
+     * A command in the undo or redo stack, with its estimated size.
+     */
+    private static final class Entry
+    {
+        /**
+         * Creates a new instance of Entry.
+         * @param command The command.
+         * @param size The estimated size of the command, in bytes.
+         */
+        public Entry(TMCommand command, long size)
+        {
+            this.command = command;
+            this.size = size;
+        }
+
+        /**
+         * The command.
+         */
+        public final TMCommand command;
+
+        /**
+         * The estimated size of the command, in bytes.
+         */
+        public long size;
+    }
+
+    /**
+     * A run of consecutive commands written to the spill file.
+     */
+    private static final class Batch
+    {
+        /**
+         * The offset of the batch in the spill file.
+         */
+        public long offset;
+
+        /**
+         * The length of the batch in the spill file, in bytes.
+         */
+        public int length;
+
+        /**
+         * The estimated size of each command in the batch, oldest first.
+         */
+        public long[] sizes;
+
+        /**
+         * The number of the oldest commands in the batch which have been discarded.
+         */
+        public int skip;
+
+        /**
+         * The name of the most recent command in the batch.
+         */
+        public String name;
+
+        /**
+         * The live objects which the batch refers to, indexed by Anchor.
+         */
+        public ArrayList<Object> anchors;
+    }
+
+    /**
+     * Stands in for a live object in a serialized command.
+     */
+    private static final class Anchor implements Serializable
+    {
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates a new instance of Anchor.
+         * @param index The index of the live object in the anchors of the batch.
+         */
+        public Anchor(int index)
+        {
+            this.index = index;
+        }
+
+        /**
+         * The index of the live object in the anchors of the batch.
+         */
+        public final int index;
+    }
+
+    /**
+     * Serializes commands, writing the panel, machines, the states and transitions in the machine,
+     * and a given set of other states and transitions as anchors.
+     */
+    private static final class AnchoringOutputStream extends ObjectOutputStream
+    {
+        /**
+         * Creates a new instance of AnchoringOutputStream.
+         * @param out The stream to write to.
+         * @param live The spatial index of the machine, whose states and transitions are written as
+         *             anchors, or null to write every state and transition as an anchor.
+         * @param anchored The other states and transitions to write as anchors. Ignored if live is
+         *                 null.
+         * @param anchors Receives each anchored object, in order of its index.
+         * @throws IOException If the stream cannot be written.
+         */
+        public AnchoringOutputStream(OutputStream out, SpatialIndex live, Set<?> anchored, 
+            List<Object> anchors) throws IOException
+        {
+            super(out);
+            m_live = live;
+            m_anchored = anchored;
+            m_anchors = anchors;
+            enableReplaceObject(true);
+        }
+
+        /**
+         * Replace an object which must keep its identity with an anchor. Each object is replaced
+         * at most once; later references to it refer to the same anchor.
+         * @param obj The object to write.
+         * @return The object to write in its place.
+         */
+        protected Object replaceObject(Object obj)
+        {
+            boolean anchor = obj instanceof MachineGraphicsPanel || obj instanceof Machine;
+            if (obj instanceof State || obj instanceof Transition)
+            {
+                anchor = m_live == null || isLive(obj, m_live) || m_anchored.contains(obj);
+            }
+            if (!anchor)
+            {
+                return obj;
+            }
+            m_anchors.add(obj);
+            return new Anchor(m_anchors.size() - 1);
+        }
+
+        /**
+         * The spatial index of the machine, or null to anchor every state and transition.
+         */
+        private SpatialIndex m_live;
+
+        /**
+         * The other states and transitions to write as anchors.
+         */
+        private Set<?> m_anchored;
+
+        /**
+         * The anchored objects, in order of their index.
+         */
+        private List<Object> m_anchors;
+    }
+
+    /**
+     * Deserializes commands written by AnchoringOutputStream, replacing anchors with the live
+     * objects they stand in for.
+     */
+    private static final class AnchoringInputStream extends ObjectInputStream
+    {
+        /**
+         * Creates a new instance of AnchoringInputStream.
+         * @param in The stream to read from.
+         * @param anchors The live objects, indexed by anchor.
+         * @throws IOException If the stream cannot be read.
+         */
+        public AnchoringInputStream(InputStream in, List<Object> anchors) throws IOException
+        {
+            super(in);
+            m_anchors = anchors;
+            enableResolveObject(true);
+        }
+
+        /**
+         * Replace an anchor with the live object it stands in for.
+         * @param obj The object read.
+         * @return The object to use in its place.
+         */
+        protected Object resolveObject(Object obj)
+        {
+            return obj instanceof Anchor? m_anchors.get(((Anchor)obj).index) : obj;
+        }
+
+        /**
+         * The live objects, indexed by anchor.
+         */
+        private List<Object> m_anchors;
+    }
+
+    /**
+     * An output stream which discards its output, counting its length.
+     */
+    private static final class CountingOutputStream extends OutputStream
+    {
+        /**
+         * Count a byte.
+         * @param b The byte.
+         */
+        public void write(int b)
+        {
+            count++;
+        }
+
+        /**
+         * Count an array of bytes.
+         * @param b The bytes.
+         * @param off The offset of the first byte.
+         * @param len The number of bytes.
+         */
+        public void write(byte[] b, int off, int len)
+        {
+            count += len;
+        }
+
+        /**
+         * The number of bytes written.
+         */
+        public long count;
+    }
+
+    /**
+     * The panel whose commands are held.
+     */
+    private MachineGraphicsPanel m_panel;
+
+    /**
+     * The maximum number of commands which can be undone.
+     */
+    private int m_depth;
+
+    /**
+     * The estimated size of the commands held in memory, in bytes, beyond which old commands are
+     * spilled or discarded.
+     */
+    private long m_budget;
+
+    /**
+     * Whether old commands are spilled to disk, rather than discarded.
+     */
+    private boolean m_spill;
+
+    /**
+     * Commands which can be undone and are held in memory, oldest first.
+     */
+    private LinkedList<Entry> m_undo = new LinkedList<Entry>();
+
+    /**
+     * Commands which can be redone, oldest first.
+     */
+    private LinkedList<Entry> m_redo = new LinkedList<Entry>();
+
+    /**
+     * The estimated size of the commands in m_undo, in bytes.
+     */
+    private long m_bytes;
+
+    /**
+     * Batches of commands spilled to disk, oldest first; all older than the commands in m_undo.
+     */
+    private LinkedList<Batch> m_batches = new LinkedList<Batch>();
+
+    /**
+     * The spill file, or null if nothing has been spilled.
+     */
+    private File m_file;
+
+    /**
+     * The open spill file, or null if nothing has been spilled.
+     */
+    private RandomAccessFile m_spillFile;
+}
@@ -25,6 +25,8 @@
 
 package tuataraTMSim.commands;
 
+import java.util.Collection;
+import java.util.HashSet;
 import tuataraTMSim.MachineGraphicsPanel;
 import tuataraTMSim.machine.State;
 import tuataraTMSim.machine.Transition;
@@ -65,4 +67,19 @@ abstract class CommandUtils
             panel.deselectSymbol();
         }
     }
+
+    /**
+     * Get the set of states which the given transitions are leaving.
+     * @param transitions The transitions to inspect.
+     * @return A new set containing the from state of each transition.
+     */
+    public static HashSet<State> getFromStates(Collection<? extends Transition> transitions)
+    {
+        HashSet<State> result = new HashSet<State>();
+        for (Transition t : transitions)
+        {
+            result.add(t.getFromState());
+        }
+        return result;
+    }
 }
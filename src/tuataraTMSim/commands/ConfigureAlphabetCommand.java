@@ -25,14 +25,22 @@
 
 package tuataraTMSim.commands;
 
+import java.io.Serializable;
+import java.util.Collection;
 import tuataraTMSim.machine.Alphabet;
 import tuataraTMSim.MachineGraphicsPanel;
+import tuataraTMSim.machine.State;
 
 /**
  * A command which deals with manipulating the tape alphabet.
  */
-public class ConfigureAlphabetCommand implements TMCommand
+public class ConfigureAlphabetCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /**
      * Creates a new instance of ConfigureAlphabetCommand.
      * @param panel The current graphics panel.
@@ -62,6 +70,17 @@ public class ConfigureAlphabetCommand implements TMCommand
         m_panel.getSimulator().getMachine().setAlphabet(m_beforeAlphabet);
     }
     
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        // Every transition must be checked against the new alphabet
+        return null;
+    }
+    
     /**
      * Get the friendly name of this command.
      * @return The friendly name of this command.
@@ -25,6 +25,8 @@
 
 package tuataraTMSim.commands;
 
+import java.io.Serializable;
+import java.util.Collection;
 import java.util.HashSet;
 import tuataraTMSim.MachineGraphicsPanel;
 import tuataraTMSim.machine.State;
@@ -33,8 +35,13 @@ import tuataraTMSim.machine.Transition;
 /**
  * A command which deals with deleting all selected states, and related transitions, from a machine.
  */
-public class DeleteAllSelectedCommand implements TMCommand
+public class DeleteAllSelectedCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /** 
      * Creates a new instance of DeleteAllSelectedCommand.
      * @param panel The current graphics panel.
@@ -105,6 +112,19 @@ public class DeleteAllSelectedCommand implements TMCommand
         }
     }
     
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        HashSet<State> result = CommandUtils.getFromStates(m_selectedTransitions);
+        result.addAll(CommandUtils.getFromStates(m_borderTransitions));
+        result.addAll(m_selectedStates);
+        return result;
+    }
+    
     /**
      *  Get the friendly name of this command.
      *  @return The friendly name of this command.
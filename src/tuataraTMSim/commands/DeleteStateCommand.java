@@ -25,8 +25,10 @@
 
 package tuataraTMSim.commands;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import tuataraTMSim.MachineGraphicsPanel;
 import tuataraTMSim.machine.State;
 import tuataraTMSim.machine.Transition;
@@ -34,8 +36,13 @@ import tuataraTMSim.machine.Transition;
 /**
  * A command which deals with deleting a state from a machine.
  */
-public class DeleteStateCommand implements TMCommand
+public class DeleteStateCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /**
      * Creates a new instance of DeleteStateCommand.
      * @param panel The current graphics panel.
@@ -82,6 +89,18 @@ public class DeleteStateCommand implements TMCommand
             m_panel.getSimulator().getMachine().addTransition(t);
     }
     
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        HashSet<State> result = CommandUtils.getFromStates(m_inTransitions);
+        result.add(m_state);
+        return result;
+    }
+    
     /**
      * Get the friendly name of this command.
      * @return The friendly name of this command.
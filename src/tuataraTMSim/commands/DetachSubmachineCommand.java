@@ -0,0 +1,118 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.commands;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import tuataraTMSim.TMGraphicsPanel;
+import tuataraTMSim.machine.State;
+import tuataraTMSim.machine.TM.TM_Machine;
+import tuataraTMSim.machine.TM.TM_State;
+
+/**
+ * A command which replaces the library submachine of a state with a private copy, so that it may be
+ * edited.
+ */
+public class DetachSubmachineCommand implements TMCommand, Serializable
+{
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new instance of DetachSubmachineCommand.
+     * @param panel The current graphics panel.
+     * @param state The state whose submachine is detached.
+     * @param copy A private copy of the library submachine.
+     */
+    public DetachSubmachineCommand(TMGraphicsPanel panel, TM_State state, TM_Machine copy)
+    {
+        m_panel = panel;
+        m_state = state;
+        m_copy = copy;
+        m_hash = state.getSubmachineReference();
+    }
+
+    /**
+     * Replace the library submachine with the copy.
+     */
+    public void doCommand()
+    {
+        // Any panel showing the shared machine no longer belongs to the state
+        m_panel.closeSubmachinePanel(m_state);
+        m_state.setSubmachine(m_copy);
+    }
+
+    /**
+     * Link the state to the library submachine again.
+     */
+    public void undoCommand()
+    {
+        m_panel.closeSubmachinePanel(m_state);
+        m_state.setSubmachineReference(m_hash);
+    }
+
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        return Collections.singleton(m_state);
+    }
+
+    /**
+     * Get the friendly name of this command.
+     * @return The friendly name of this command.
+     */
+    public String getName()
+    {
+        return "Edit Submachine";
+    }
+
+    /**
+     * The current graphics panel.
+     */
+    private TMGraphicsPanel m_panel;
+
+    /**
+     * The state whose submachine is detached.
+     */
+    private TM_State m_state;
+
+    /**
+     * The private copy of the submachine.
+     */
+    private TM_Machine m_copy;
+
+    /**
+     * The hash of the library submachine.
+     */
+    private String m_hash;
+}
@@ -25,11 +25,21 @@
 
 package tuataraTMSim.commands;
 
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import tuataraTMSim.machine.State;
+
 /**
  * A command which deals with joining arbitrarily many commands into a single unified command.
  */
-public class JoinCommand implements TMCommand
+public class JoinCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /** 
      * Creates a new instance of JoinCommand.
      * @param first The first command to run.
@@ -59,6 +69,24 @@ public class JoinCommand implements TMCommand
         m_first.undoCommand();
     }
     
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        Collection<? extends State> first = m_first.getAffectedStates();
+        Collection<? extends State> second = m_second.getAffectedStates();
+        if (first == null || second == null)
+        {
+            return null;
+        }
+        HashSet<State> result = new HashSet<State>(first);
+        result.addAll(second);
+        return result;
+    }
+    
     /**
      * Get the friendly name of this command.
      * @return The friendly name of this command.
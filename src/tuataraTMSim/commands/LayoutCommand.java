@@ -0,0 +1,145 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.commands;
+
+import java.awt.Point;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import tuataraTMSim.machine.State;
+import tuataraTMSim.machine.Transition;
+
+/**
+ * A command which deals with moving every state and transition of a machine to an automatically
+ * computed layout.
+ */
+public class LayoutCommand implements TMCommand, Serializable
+{
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new instance of LayoutCommand.
+     * @param name The friendly name of the layout.
+     * @param oldPositions The position of each state before the layout.
+     * @param newPositions The position of each state after the layout.
+     * @param oldControlPoints The control point of each transition before the layout.
+     * @param newControlPoints The control point of each transition after the layout.
+     */
+    public LayoutCommand(String name, Map<State, Point> oldPositions,
+                         Map<State, Point> newPositions, Map<Transition, Point> oldControlPoints,
+                         Map<Transition, Point> newControlPoints)
+    {
+        m_name = name;
+        m_oldPositions = oldPositions;
+        m_newPositions = newPositions;
+        m_oldControlPoints = oldControlPoints;
+        m_newControlPoints = newControlPoints;
+    }
+
+    /**
+     * Move every state and transition to its position in the layout.
+     */
+    public void doCommand()
+    {
+        apply(m_newPositions, m_newControlPoints);
+    }
+
+    /**
+     * Move every state and transition back to its position before the layout.
+     */
+    public void undoCommand()
+    {
+        apply(m_oldPositions, m_oldControlPoints);
+    }
+
+    /**
+     * Move states and transitions to the given positions.
+     * @param positions The position of each state.
+     * @param controlPoints The control point of each transition.
+     */
+    private static void apply(Map<State, Point> positions, Map<Transition, Point> controlPoints)
+    {
+        for (Map.Entry<State, Point> entry : positions.entrySet())
+        {
+            Point p = entry.getValue();
+            entry.getKey().setPosition(p.x, p.y);
+        }
+        for (Map.Entry<Transition, Point> entry : controlPoints.entrySet())
+        {
+            Point p = entry.getValue();
+            entry.getKey().setControlPoint(p.x, p.y);
+        }
+    }
+
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        // Layout does not affect validity
+        return Collections.emptySet();
+    }
+
+    /**
+     * Get the friendly name of this command.
+     * @return The friendly name of this command.
+     */
+    public String getName()
+    {
+        return m_name;
+    }
+
+    /**
+     * The friendly name of the layout.
+     */
+    private String m_name;
+
+    /**
+     * The position of each state before the layout.
+     */
+    private Map<State, Point> m_oldPositions;
+
+    /**
+     * The position of each state after the layout.
+     */
+    private Map<State, Point> m_newPositions;
+
+    /**
+     * The control point of each transition before the layout.
+     */
+    private Map<Transition, Point> m_oldControlPoints;
+
+    /**
+     * The control point of each transition after the layout.
+     */
+    private Map<Transition, Point> m_newControlPoints;
+}
@@ -25,15 +25,24 @@
 
 package tuataraTMSim.commands;
 
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import tuataraTMSim.MachineGraphicsPanel;
 import tuataraTMSim.machine.PreAction;
+import tuataraTMSim.machine.State;
 import tuataraTMSim.machine.Transition;
 
 /**
  * A command which deals with changing the action of a transition.
  */
-public class ModifyTransitionActionCommand implements TMCommand
+public class ModifyTransitionActionCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /**
      * Creates a new instance of ModifyTransitionActionCommand.
      * @param panel The current graphics panel.
@@ -65,6 +74,16 @@ public class ModifyTransitionActionCommand implements TMCommand
         m_transition.setAction(m_oldAction);
     }
    
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        return Collections.singleton(m_transition.getFromState());
+    }
+    
     /**
      * Get the friendly name of this command.
      * @return The friendly name of this command.
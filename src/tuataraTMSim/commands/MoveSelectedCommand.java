@@ -26,7 +26,9 @@
 package tuataraTMSim.commands;
 
 import java.awt.geom.Point2D;
+import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import tuataraTMSim.Spline;
 import tuataraTMSim.MachineGraphicsPanel;
 import tuataraTMSim.machine.State;
@@ -35,8 +37,13 @@ import tuataraTMSim.machine.Transition;
 /**
  * A command which deals with moving a set of states and transitions.
  */
-public class MoveSelectedCommand implements TMCommand
+public class MoveSelectedCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /**
      * Creates a new instance of MoveSelectedCommand.
      * @param panel The current graphics panel.
@@ -139,6 +146,17 @@ public class MoveSelectedCommand implements TMCommand
         }
     }
     
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        // Layout does not affect validity
+        return Collections.emptySet();
+    }
+    
     /**
      * Get the friendly name of this command.
      * @return The friendly name of this command.
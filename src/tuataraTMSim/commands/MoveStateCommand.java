@@ -25,8 +25,10 @@
 
 package tuataraTMSim.commands;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import tuataraTMSim.MachineGraphicsPanel;
 import tuataraTMSim.machine.State;
 import tuataraTMSim.machine.Transition;
@@ -34,8 +36,13 @@ import tuataraTMSim.machine.Transition;
 /**
  * A comand which deals with moving a state.
  */
-public class MoveStateCommand implements TMCommand
+public class MoveStateCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /**
      * Creates a new instance of MoveStateCommand.
      * @param panel The current graphics panel.
@@ -74,6 +81,17 @@ public class MoveStateCommand implements TMCommand
         m_state.setPosition(m_state.getX() - m_moveX, m_state.getY() - m_moveY);
     }
     
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        // Layout does not affect validity
+        return Collections.emptySet();
+    }
+    
     /**
      * Get the friendly name of this command.
      * @return The friendly name of this command.
@@ -26,15 +26,24 @@
 package tuataraTMSim.commands;
 
 import java.awt.geom.Point2D;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import tuataraTMSim.Spline;
 import tuataraTMSim.MachineGraphicsPanel;
+import tuataraTMSim.machine.State;
 import tuataraTMSim.machine.Transition;
 
 /**
  * A command which deals with moving a transition
  */
-public class MoveTransitionCommand implements TMCommand
+public class MoveTransitionCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /**
      * Creates a new instance of MoveTransitionCommand.
      * @param panel The current graphics panel.
@@ -76,6 +85,17 @@ public class MoveTransitionCommand implements TMCommand
         m_transition.setControlPoint((int)newCP.getX(), (int)newCP.getY());
     }
 
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        // Layout does not affect validity
+        return Collections.emptySet();
+    }
+    
     /**
      * Get the friendly name of this command.
      * @return The friendly name of this command.
@@ -25,16 +25,23 @@
 
 package tuataraTMSim.commands;
 
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashSet;
 import tuataraTMSim.MachineGraphicsPanel;
+import tuataraTMSim.machine.State;
 import tuataraTMSim.machine.Transition;
 
 /**
  * A command which deals with a set of transitions which are deemed inconsistent with the alphabet.
  */
-public class RemoveInconsistentTransitionsCommand implements TMCommand
+public class RemoveInconsistentTransitionsCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /**
      * Creates a new instance of RemoveInconsistentTransitionsCommand.
      * @param panel The current graphics panel.
@@ -68,6 +75,16 @@ public class RemoveInconsistentTransitionsCommand implements TMCommand
         }
     }
     
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        return CommandUtils.getFromStates(m_purge);
+    }
+    
     /**
      * Get the friendly name of this command.
      * @return The friendly name of this command.
@@ -25,14 +25,22 @@
 
 package tuataraTMSim.commands;
 
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
 import tuataraTMSim.MachineGraphicsPanel;
 import tuataraTMSim.machine.State;
 
 /**
  * A command which deals with changing the label of a state.
  */
-public class RenameStateCommand implements TMCommand
+public class RenameStateCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /**
      * Creates a new instance of RenameStateCommand.
      * @param panel The current graphics panel.
@@ -67,6 +75,20 @@ public class RenameStateCommand implements TMCommand
         m_state.setLabel(m_oldLabel);
     }
     
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        // Diagnostics of transitions into this state mention its label
+        HashSet<State> result = 
+            CommandUtils.getFromStates(m_panel.getSimulator().getMachine().getTransitionsTo(m_state));
+        result.add(m_state);
+        return result;
+    }
+    
     /**
      * Get the friendly name of this command.
      * @return The friendly name of this command.
@@ -25,6 +25,7 @@
 
 package tuataraTMSim.commands;
 
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashMap;
 import tuataraTMSim.MachineGraphicsPanel;
@@ -33,8 +34,13 @@ import tuataraTMSim.machine.State;
 /**
  * A command which resets the labels of all states in the machine.
  */
-public class ResetLabelCommand implements TMCommand
+public class ResetLabelCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /**
      * Creates a new instance of ResetLabelCommand.
      * @param panel The current graphics panel.
@@ -84,6 +90,17 @@ public class ResetLabelCommand implements TMCommand
         }
     }
     
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        // Any label in the machine may have changed
+        return null;
+    }
+    
     /**
      * Get the friendly name of this command.
      * @return The friendly name of this command.
@@ -25,8 +25,14 @@
 
 package tuataraTMSim.commands;
 
+import java.util.Collection;
+import tuataraTMSim.machine.State;
+
 /**
- * Represents an action which can be done and undone.
+ * Represents an action which can be done and undone. Commands should also be Serializable, so that
+ * CommandHistory can measure them and spill them to disk; the panel, machines, and live states and
+ * transitions which they refer to are replaced by references when serialized, so they need not be
+ * marked transient.
  */
 public interface TMCommand 
 {
@@ -45,4 +51,11 @@ public interface TMCommand
      * @return The friendly name of this command.
      */
     public String getName();
+
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it. Used to re-check only the touched parts of a machine.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates();
 }
@@ -25,14 +25,22 @@
 
 package tuataraTMSim.commands;
 
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import tuataraTMSim.MachineGraphicsPanel;
 import tuataraTMSim.machine.State;
 
 /**
  * A command which deals with changing the final state of a machine.
  */
-public class ToggleFinalStateCommand implements TMCommand
+public class ToggleFinalStateCommand implements TMCommand, Serializable
 {
+    /**
+     * Serialization version.
+     */
+    public static final long serialVersionUID = 1L;
+
     /**
      * Creates a new instance of ToggleFinalCommand.
      * @param panel The current graphics panel.
@@ -60,6 +68,16 @@ public class ToggleFinalStateCommand implements TMCommand
         m_state.setFinalState(!m_state.isFinalState());
     }
     
+    /**
+     * Get the states whose validity may have been affected by this command, either by doing or by
+     * undoing it.
+     * @return The affected states, or null if the entire machine may have been affected.
+     */
+    public Collection<? extends State> getAffectedStates()
+    {
+        return Collections.singleton(m_state);
+    }
+    
     /**
      * Get the friendly name of this command.
      * @return The friendly name of this command.
@@ -0,0 +1,808 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.awt.geom.Point2D;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import tuataraTMSim.machine.DFSA.*;
+import tuataraTMSim.machine.TM.*;
+
+/**
+ * Reads and writes machines in a compact, versioned binary format. Unlike Java serialization, the
+ * format does not depend on the class layout of the machine objects, and can be parsed in a single
+ * pass over an in-memory buffer.
+ *
+ * All values are big-endian. A file consists of the following sections, in order:
+ * <pre>
+ * Header:
+ *   int    MAGIC
+ *   short  VERSION
+ *   byte   flags; FLAG_LAYOUT if a layout section is present
+ * String table:
+ *   int    count
+ *   count x { short length; byte[length] UTF-8 }
+ * Machines; the first is the root machine, followed by every distinct submachine:
+ *   int    count
+ *   count x {
+ *     byte   type; TYPE_TM or TYPE_DFSA
+ *     long   alphabet; bits 0-25 are A-Z, bits 26-35 are 0-9, bit 36 is the blank
+ *     int    states
+ *     states x { int label; byte flags; [int submachine, if STATE_SUBMACHINE is set];
+ *                [int hash, if STATE_LIBRARY is set] }
+ *     int    transitions
+ *     transitions x { int from; int to; byte direction; char input; char output }
+ *   }
+ * Layout, if FLAG_LAYOUT is set; one entry per state and transition, in the order above:
+ *   machines x { states x { int x; int y }; transitions x { int ctrlX; int ctrlY } }
+ * </pre>
+ * States and transitions are referred to by their index within their machine, labels by their
+ * index in the string table, and submachines by their index in the machine section, or by the
+ * string table index of their hash within the SubmachineLibrary. Shared
+ * submachines are written once, and remain shared when read. As layout is stored last, the
+ * executable structure can be read without touching it; see readCompiled().
+ */
+public abstract class BinaryMachineFormat
+{
+    /**
+     * Identifies a binary machine file; the characters "TTMB".
+     */
+    public static final int MAGIC = 0x54544D42;
+
+    /**
+     * The current version of the format.
+     */
+    public static final short VERSION = 2;
+
+    /**
+     * Header flag set when a layout section is present.
+     */
+    public static final byte FLAG_LAYOUT = 0x01;
+
+    /**
+     * Machine type of a Turing machine.
+     */
+    public static final byte TYPE_TM = 0;
+
+    /**
+     * Machine type of a DFSA.
+     */
+    public static final byte TYPE_DFSA = 1;
+
+    /**
+     * State flag set for a start state.
+     */
+    public static final byte STATE_START = 0x01;
+
+    /**
+     * State flag set for a final state.
+     */
+    public static final byte STATE_FINAL = 0x02;
+
+    /**
+     * State flag set when the state has a submachine.
+     */
+    public static final byte STATE_SUBMACHINE = 0x04;
+
+    /**
+     * State flag set when the state refers to a submachine in the SubmachineLibrary; since
+     * version 2.
+     */
+    public static final byte STATE_LIBRARY = 0x08;
+
+    /**
+     * The size of an encoded transition, in bytes.
+     */
+    private static final int TRANSITION_SIZE = 13;
+
+    /**
+     * Determine if the given file is in the binary machine format.
+     * @param file The file to check.
+     * @return true if the file begins with MAGIC, false otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isBinaryFile(File file) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try
+        {
+            return in.readInt() == MAGIC;
+        }
+        catch (EOFException e)
+        {
+            return false;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Write a machine, its submachines, and its layout to a file.
+     * @param machine The machine to write.
+     * @param file The file to write to.
+     * @throws IOException If an underlying stream exception occurs.
+     */
+    public static void write(Machine machine, File file) throws IOException
+    {
+        OutputStream out = Files.newOutputStream(file.toPath());
+        try
+        {
+            write(machine, out);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Write a machine, its submachines, and its layout to a stream. The stream is flushed, but not
+     * closed.
+     * @param machine The machine to write.
+     * @param stream The stream to write to.
+     * @throws IOException If an underlying stream exception occurs.
+     */
+    public static void write(Machine machine, OutputStream stream) throws IOException
+    {
+        // Gather every distinct machine, root first
+        ArrayList<Machine> machines = new ArrayList<Machine>();
+        HashMap<Machine, Integer> machineIndex = new HashMap<Machine, Integer>();
+        machines.add(machine);
+        machineIndex.put(machine, 0);
+        for (int i = 0; i < machines.size(); i++)
+        {
+            for (Object st : machines.get(i).getStates())
+            {
+                // Library submachines are referred to by hash, rather than being written
+                if (machines.get(i).getSubmachineReference((State)st) != null)
+                {
+                    continue;
+                }
+                Machine sub = machines.get(i).getSubmachine((State)st);
+                if (sub != null && !machineIndex.containsKey(sub))
+                {
+                    machineIndex.put(sub, machines.size());
+                    machines.add(sub);
+                }
+            }
+        }
+
+        // Build the string table
+        ArrayList<String> strings = new ArrayList<String>();
+        HashMap<String, Integer> stringIndex = new HashMap<String, Integer>();
+        for (Machine m : machines)
+        {
+            for (Object st : m.getStates())
+            {
+                addString(((State)st).getLabel(), strings, stringIndex);
+                String ref = m.getSubmachineReference((State)st);
+                if (ref != null)
+                {
+                    addString(ref, strings, stringIndex);
+                }
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+
+        // Header
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeByte(FLAG_LAYOUT);
+
+        // String table
+        out.writeInt(strings.size());
+        for (String str : strings)
+        {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF)
+            {
+                throw new IOException(String.format("State label is too long: %.20s...", str));
+            }
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+
+        // Machines
+        out.writeInt(machines.size());
+        for (Machine m : machines)
+        {
+            writeMachine(out, m, stringIndex, machineIndex);
+        }
+
+        // Layout
+        for (Machine m : machines)
+        {
+            for (Object obj : m.getStates())
+            {
+                State st = (State)obj;
+                out.writeInt(st.getX());
+                out.writeInt(st.getY());
+            }
+            for (Object obj : m.getTransitions())
+            {
+                Point2D ctrl = ((Transition)obj).getControlPoint();
+                out.writeInt((int)ctrl.getX());
+                out.writeInt((int)ctrl.getY());
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Read a machine, its submachines, and its layout from a file.
+     * @param file The file to read from.
+     * @return The machine stored in the file.
+     * @throws IOException If the file cannot be read, or is not a valid machine file.
+     */
+    public static Machine read(File file) throws IOException
+    {
+        return read(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Read a machine, its submachines, and its layout from an encoded machine.
+     * @param content The contents of a machine file.
+     * @return The machine stored in the content.
+     * @throws IOException If the content is not a valid machine file.
+     */
+    public static Machine read(byte[] content) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.wrap(content);
+        try
+        {
+            byte flags = readHeader(buf);
+            String[] strings = readStrings(buf);
+
+            int count = buf.getInt();
+            Machine[] machines = new Machine[count];
+            int[][] submachines = new int[count][];
+            for (int i = 0; i < count; i++)
+            {
+                machines[i] = readMachine(buf, strings, submachines, i);
+            }
+
+            // Resolve submachine references, now that every machine exists
+            for (int i = 0; i < count; i++)
+            {
+                ArrayList states = (ArrayList)machines[i].getStates();
+                for (int j = 0; j < submachines[i].length; j++)
+                {
+                    int sub = submachines[i][j];
+                    if (sub < 0)
+                    {
+                        continue;
+                    }
+                    if (sub >= count || !(machines[sub] instanceof TM_Machine))
+                    {
+                        throw new IOException("Invalid submachine reference");
+                    }
+                    ((TM_State)states.get(j)).setSubmachine((TM_Machine)machines[sub]);
+                }
+            }
+
+            if ((flags & FLAG_LAYOUT) != 0)
+            {
+                for (Machine m : machines)
+                {
+                    for (Object obj : m.getStates())
+                    {
+                        ((State)obj).setPosition(buf.getInt(), buf.getInt());
+                    }
+                    for (Object obj : m.getTransitions())
+                    {
+                        ((Transition)obj).setControlPoint(buf.getInt(), buf.getInt());
+                    }
+                }
+            }
+
+            return machines[0];
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IOException("Machine file is truncated");
+        }
+    }
+
+    /**
+     * Read only the executable structure of a machine and its submachines from a file, directly
+     * into compiled form. The layout section is never read, and no State or Transition objects are
+     * created.
+     * @param file The file to read from.
+     * @return The compiled machine stored in the file.
+     * @throws IOException If the file cannot be read, or is not a valid machine file.
+     */
+    public static CompiledMachine readCompiled(File file) throws IOException
+    {
+        return readCompiled(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Read only the executable structure of a machine and its submachines from an encoded
+     * machine, directly into compiled form.
+     * @param content The contents of a machine file.
+     * @return The compiled machine stored in the content.
+     * @throws IOException If the content is not a valid machine file.
+     */
+    public static CompiledMachine readCompiled(byte[] content) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.wrap(content);
+        try
+        {
+            readHeader(buf);
+            String[] strings = readStrings(buf);
+
+            int count = buf.getInt();
+            CompiledMachine[] machines = new CompiledMachine[count];
+            int[][] submachines = new int[count][];
+            for (int i = 0; i < count; i++)
+            {
+                byte type = buf.get();
+                if (type != TYPE_TM && type != TYPE_DFSA)
+                {
+                    throw new IOException(String.format("Unsupported machine type %d", type));
+                }
+                // The alphabet is only used for validation
+                buf.getLong();
+
+                int stateCount = buf.getInt();
+                String[] labels = new String[stateCount];
+                byte[] stateFlags = new byte[stateCount];
+                String[] references = new String[stateCount];
+                submachines[i] = new int[stateCount];
+                for (int j = 0; j < stateCount; j++)
+                {
+                    labels[j] = getString(strings, buf.getInt());
+                    stateFlags[j] = buf.get();
+                    submachines[i][j] = (stateFlags[j] & STATE_SUBMACHINE) != 0? buf.getInt() : -1;
+                    references[j] = (stateFlags[j] & STATE_LIBRARY) != 0?
+                                    getString(strings, buf.getInt()) : null;
+                }
+
+                int transitionCount = buf.getInt();
+                int[] transFrom = new int[transitionCount];
+                int[] transTo = new int[transitionCount];
+                byte[] transDir = new byte[transitionCount];
+                char[] transInput = new char[transitionCount];
+                char[] transOutput = new char[transitionCount];
+                for (int j = 0; j < transitionCount; j++)
+                {
+                    transFrom[j] = buf.getInt();
+                    transTo[j] = buf.getInt();
+                    if (transFrom[j] < 0 || transFrom[j] >= stateCount ||
+                        transTo[j] < 0 || transTo[j] >= stateCount)
+                    {
+                        throw new IOException("Invalid state reference");
+                    }
+                    transDir[j] = buf.get();
+                    transInput[j] = buf.getChar();
+                    transOutput[j] = buf.getChar();
+                }
+
+                machines[i] = new CompiledMachine(type, labels, stateFlags, transFrom, transTo,
+                                                  transDir, transInput, transOutput);
+                for (int j = 0; j < stateCount; j++)
+                {
+                    if (references[j] != null)
+                    {
+                        machines[i].setSubmachineReference(j, references[j]);
+                    }
+                }
+            }
+
+            // Resolve submachine references, now that every machine exists
+            for (int i = 0; i < count; i++)
+            {
+                for (int j = 0; j < submachines[i].length; j++)
+                {
+                    int sub = submachines[i][j];
+                    if (sub >= count)
+                    {
+                        throw new IOException("Invalid submachine reference");
+                    }
+                    if (sub >= 0)
+                    {
+                        machines[i].setSubmachine(j, machines[sub]);
+                    }
+                }
+            }
+            return machines[0];
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IOException("Machine file is truncated");
+        }
+    }
+
+    /**
+     * Compute the content hash of the logic of an encoded machine; that is, the string table and
+     * the machines, but not the header or the layout section. Two files which differ only in
+     * layout have the same logic hash.
+     * @param content The contents of a machine file.
+     * @return The SHA-256 hash of the logic, in lowercase hexadecimal.
+     * @throws IOException If the content is not a valid machine file.
+     */
+    public static String hashLogic(byte[] content) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.wrap(content);
+        try
+        {
+            readHeader(buf);
+            int start = buf.position();
+
+            // Skip the string table
+            int stringCount = buf.getInt();
+            for (int i = 0; i < stringCount; i++)
+            {
+                int length = buf.getShort() & 0xFFFF;
+                buf.position(buf.position() + length);
+            }
+
+            // Skip the machines; only states have a variable length
+            int count = buf.getInt();
+            for (int i = 0; i < count; i++)
+            {
+                buf.position(buf.position() + 9);
+                int stateCount = buf.getInt();
+                for (int j = 0; j < stateCount; j++)
+                {
+                    buf.position(buf.position() + 4);
+                    byte flags = buf.get();
+                    int extra = ((flags & STATE_SUBMACHINE) != 0? 4 : 0) +
+                                ((flags & STATE_LIBRARY) != 0? 4 : 0);
+                    buf.position(buf.position() + extra);
+                }
+                int transitionCount = buf.getInt();
+                buf.position(buf.position() + TRANSITION_SIZE * transitionCount);
+            }
+            return SubmachineLibrary.hash(content, start, buf.position() - start);
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            throw new IOException("Machine file is truncated");
+        }
+    }
+
+    /**
+     * Convert a machine file written using Java serialization into the binary format.
+     * @param legacy The serialized machine file.
+     * @param file The file to write the converted machine to; may be the same as legacy.
+     * @throws IOException If an underlying stream exception occurs.
+     * @throws ClassNotFoundException If the serialized object is not recognized.
+     */
+    public static void convertLegacy(File legacy, File file) throws IOException, ClassNotFoundException
+    {
+        write(Machine.loadLegacyMachine(legacy), file);
+    }
+
+    /**
+     * Convert serialized machine files into the binary format from the command line.
+     * @param args Either a single file to convert in place, or the file to convert followed by the
+     *             file to write to.
+     */
+    public static void main(String[] args)
+    {
+        if (args.length < 1 || args.length > 2)
+        {
+            System.err.println("Usage: BinaryMachineFormat <legacy machine> [output machine]");
+            System.exit(1);
+        }
+        File legacy = new File(args[0]);
+        File file = new File(args.length == 2? args[1] : args[0]);
+        try
+        {
+            convertLegacy(legacy, file);
+        }
+        catch (Exception e)
+        {
+            System.err.printf("Error converting %s: %s\n", legacy, e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Read and verify the header.
+     * @param buf The buffer to read from.
+     * @return The header flags.
+     * @throws IOException If the header is not valid.
+     */
+    static byte readHeader(ByteBuffer buf) throws IOException
+    {
+        if (buf.remaining() < 4 || buf.getInt() != MAGIC)
+        {
+            throw new IOException("Not a binary machine file");
+        }
+        short version = buf.getShort();
+        if (version < 1 || version > VERSION)
+        {
+            throw new IOException(String.format("Unsupported machine file version %d", version));
+        }
+        return buf.get();
+    }
+
+    /**
+     * Read the string table.
+     * @param buf The buffer to read from.
+     * @return The strings, in table order.
+     */
+    static String[] readStrings(ByteBuffer buf)
+    {
+        String[] strings = new String[buf.getInt()];
+        for (int i = 0; i < strings.length; i++)
+        {
+            int length = buf.getShort() & 0xFFFF;
+            strings[i] = new String(buf.array(), buf.arrayOffset() + buf.position(), length,
+                                    StandardCharsets.UTF_8);
+            buf.position(buf.position() + length);
+        }
+        return strings;
+    }
+
+    /**
+     * Add a string to the string table, if not already present.
+     * @param str The string to add.
+     * @param strings The string table.
+     * @param stringIndex The index of each string in the string table.
+     */
+    private static void addString(String str, ArrayList<String> strings, HashMap<String, Integer> stringIndex)
+    {
+        if (!stringIndex.containsKey(str))
+        {
+            stringIndex.put(str, strings.size());
+            strings.add(str);
+        }
+    }
+
+    /**
+     * Get a string by index, verifying the index.
+     * @param strings The string table.
+     * @param idx The index of the string.
+     * @return The string at the given index.
+     * @throws IOException If the index is out of range.
+     */
+    static String getString(String[] strings, int idx) throws IOException
+    {
+        if (idx < 0 || idx >= strings.length)
+        {
+            throw new IOException("Invalid string reference");
+        }
+        return strings[idx];
+    }
+
+    /**
+     * Encode an alphabet as a bit set.
+     * @param alph The alphabet to encode.
+     * @return The encoded alphabet.
+     */
+    static long encodeAlphabet(Alphabet alph)
+    {
+        long result = 0;
+        for (int i = 0; i < 26; i++)
+        {
+            if (alph.containsSymbol((char)('A' + i)))
+            {
+                result |= 1L << i;
+            }
+        }
+        for (int i = 0; i < 10; i++)
+        {
+            if (alph.containsSymbol((char)('0' + i)))
+            {
+                result |= 1L << (26 + i);
+            }
+        }
+        if (alph.containsSymbol(Tape.BLANK_SYMBOL))
+        {
+            result |= 1L << 36;
+        }
+        return result;
+    }
+
+    /**
+     * Decode an alphabet from a bit set.
+     * @param bits The encoded alphabet.
+     * @return The decoded alphabet.
+     */
+    static Alphabet decodeAlphabet(long bits)
+    {
+        Alphabet result = new Alphabet();
+        for (int i = 0; i < 26; i++)
+        {
+            result.setSymbol((char)('A' + i), (bits & (1L << i)) != 0);
+        }
+        for (int i = 0; i < 10; i++)
+        {
+            result.setSymbol((char)('0' + i), (bits & (1L << (26 + i))) != 0);
+        }
+        result.setSymbol(Tape.BLANK_SYMBOL, (bits & (1L << 36)) != 0);
+        return result;
+    }
+
+    /**
+     * Write the logical structure of a single machine.
+     * @param out The stream to write to.
+     * @param m The machine to write.
+     * @param stringIndex The index of each label in the string table.
+     * @param machineIndex The index of each machine in the machine section.
+     * @throws IOException If an underlying stream exception occurs.
+     */
+    private static void writeMachine(DataOutputStream out, Machine m, HashMap<String, Integer> stringIndex,
+                                     HashMap<Machine, Integer> machineIndex) throws IOException
+    {
+        if (m instanceof TM_Machine)
+        {
+            out.writeByte(TYPE_TM);
+        }
+        else if (m instanceof DFSA_Machine)
+        {
+            out.writeByte(TYPE_DFSA);
+        }
+        else
+        {
+            throw new IOException(String.format("Unsupported machine type %s", m.getClass().getName()));
+        }
+        out.writeLong(encodeAlphabet(m.getAlphabet()));
+
+        Collection states = m.getStates();
+        HashMap<State, Integer> stateIndex = new HashMap<State, Integer>();
+        out.writeInt(states.size());
+        for (Object obj : states)
+        {
+            State st = (State)obj;
+            String ref = m.getSubmachineReference(st);
+            Machine sub = ref == null? m.getSubmachine(st) : null;
+            stateIndex.put(st, stateIndex.size());
+            out.writeInt(stringIndex.get(st.getLabel()));
+            out.writeByte((st.isStartState()? STATE_START : 0) |
+                          (st.isFinalState()? STATE_FINAL : 0) |
+                          (sub != null? STATE_SUBMACHINE : 0) |
+                          (ref != null? STATE_LIBRARY : 0));
+            if (sub != null)
+            {
+                out.writeInt(machineIndex.get(sub));
+            }
+            if (ref != null)
+            {
+                out.writeInt(stringIndex.get(ref));
+            }
+        }
+
+        Collection transitions = m.getTransitions();
+        out.writeInt(transitions.size());
+        for (Object obj : transitions)
+        {
+            Transition tr = (Transition)obj;
+            PreAction act = tr.getAction();
+            out.writeInt(stateIndex.get(tr.getFromState()));
+            out.writeInt(stateIndex.get(tr.getToState()));
+            out.writeByte(act.getDirection());
+            out.writeChar(act.getInputChar());
+            out.writeChar(act.getOutputChar());
+        }
+    }
+
+    /**
+     * Read the logical structure of a single machine. Submachine references are recorded, but not
+     * resolved.
+     * @param buf The buffer to read from.
+     * @param strings The string table.
+     * @param submachines Receives the submachine index of each state, or -1 for none.
+     * @param idx The index of this machine.
+     * @return The machine read.
+     * @throws IOException If the machine is not valid.
+     */
+    private static Machine readMachine(ByteBuffer buf, String[] strings, int[][] submachines, int idx)
+        throws IOException
+    {
+        byte type = buf.get();
+        Alphabet alph = decodeAlphabet(buf.getLong());
+        int stateCount = buf.getInt();
+        submachines[idx] = new int[stateCount];
+
+        if (type == TYPE_TM)
+        {
+            ArrayList<TM_State> states = new ArrayList<TM_State>(stateCount);
+            for (int i = 0; i < stateCount; i++)
+            {
+                String label = getString(strings, buf.getInt());
+                byte flags = buf.get();
+                submachines[idx][i] = (flags & STATE_SUBMACHINE) != 0? buf.getInt() : -1;
+                TM_State st = new TM_State(label, (flags & STATE_START) != 0, (flags & STATE_FINAL) != 0);
+                if ((flags & STATE_LIBRARY) != 0)
+                {
+                    st.setSubmachineReference(getString(strings, buf.getInt()));
+                }
+                states.add(st);
+            }
+            int transitionCount = buf.getInt();
+            ArrayList<TM_Transition> transitions = new ArrayList<TM_Transition>(transitionCount);
+            for (int i = 0; i < transitionCount; i++)
+            {
+                TM_State from = getState(states, buf.getInt());
+                TM_State to = getState(states, buf.getInt());
+                TM_Action act = new TM_Action(buf.get(), buf.getChar(), buf.getChar());
+                TM_Transition tr = new TM_Transition(from, to, act);
+                from.addTransition(tr);
+                transitions.add(tr);
+            }
+            return new TM_Machine(states, transitions, alph);
+        }
+        else if (type == TYPE_DFSA)
+        {
+            ArrayList<DFSA_State> states = new ArrayList<DFSA_State>(stateCount);
+            for (int i = 0; i < stateCount; i++)
+            {
+                String label = getString(strings, buf.getInt());
+                byte flags = buf.get();
+                if ((flags & (STATE_SUBMACHINE | STATE_LIBRARY)) != 0)
+                {
+                    throw new IOException("Invalid submachine reference");
+                }
+                submachines[idx][i] = -1;
+                states.add(new DFSA_State(label, (flags & STATE_START) != 0, (flags & STATE_FINAL) != 0));
+            }
+            int transitionCount = buf.getInt();
+            ArrayList<DFSA_Transition> transitions = new ArrayList<DFSA_Transition>(transitionCount);
+            for (int i = 0; i < transitionCount; i++)
+            {
+                DFSA_State from = getState(states, buf.getInt());
+                DFSA_State to = getState(states, buf.getInt());
+                buf.get();
+                DFSA_Action act = new DFSA_Action(buf.getChar());
+                buf.getChar();
+                DFSA_Transition tr = new DFSA_Transition(from, to, act);
+                from.addTransition(tr);
+                transitions.add(tr);
+            }
+            return new DFSA_Machine(states, transitions, alph);
+        }
+        throw new IOException(String.format("Unsupported machine type %d", type));
+    }
+
+    /**
+     * Get a state by index, verifying the index.
+     * @param states The states of the machine.
+     * @param idx The index of the state.
+     * @return The state at the given index.
+     * @throws IOException If the index is out of range.
+     */
+    private static <STATE> STATE getState(ArrayList<STATE> states, int idx) throws IOException
+    {
+        if (idx < 0 || idx >= states.size())
+        {
+            throw new IOException("Invalid state reference");
+        }
+        return states.get(idx);
+    }
+}
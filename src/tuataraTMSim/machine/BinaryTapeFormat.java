@@ -0,0 +1,430 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes tapes in a compact, versioned, streamable binary format. Unlike Java
+ * serialization, which stores the entire padded tape array, only the cells between the first and
+ * last non-blank cells are stored. Tapes are written and read one block at a time, so neither
+ * direction needs the whole tape as a String or byte array, and memory use is bounded by
+ * BLOCK_SIZE regardless of the length of the tape.
+ *
+ * Integers marked varint are unsigned LEB128: seven bits per byte, least significant first, with
+ * the high bit set on every byte but the last. A file consists of the following sections:
+ * <pre>
+ * Header:
+ *   int    MAGIC
+ *   short  VERSION
+ *   varint start; the number of leading blank cells which are not stored
+ * Blocks, until a block with a symbol count of zero:
+ *   byte   flags; BLOCK_WIDE, BLOCK_COMPRESSED
+ *   varint symbols; the number of cells in the block, at most BLOCK_SIZE
+ *   varint length; the number of bytes which follow
+ *   byte[length] data
+ * </pre>
+ * The data of a block holds one byte per cell, or one varint per cell if BLOCK_WIDE is set, and is
+ * deflated if BLOCK_COMPRESSED is set. Compression is only kept for blocks it makes smaller.
+ */
+public abstract class BinaryTapeFormat
+{
+    /**
+     * Identifies a binary tape file; the characters "TTTP".
+     */
+    public static final int MAGIC = 0x54545450;
+
+    /**
+     * The current version of the format.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * Block flag set when cells are encoded as varints rather than single bytes.
+     */
+    public static final byte BLOCK_WIDE = 0x01;
+
+    /**
+     * Block flag set when the block data is deflated.
+     */
+    public static final byte BLOCK_COMPRESSED = 0x02;
+
+    /**
+     * The maximum number of cells in a block.
+     */
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Determine if the given file is in the binary tape format.
+     * @param file The file to check.
+     * @return true if the file begins with MAGIC, false otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isBinaryFile(File file) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try
+        {
+            return in.readInt() == MAGIC;
+        }
+        catch (EOFException e)
+        {
+            return false;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Write a tape to a file, compressing blocks where this makes them smaller.
+     * @param tape The tape to write.
+     * @param file The file to write to.
+     * @throws IOException If an underlying stream exception occurs.
+     */
+    public static void write(Tape tape, File file) throws IOException
+    {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+        try
+        {
+            write(tape, out, true);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Write a tape to a stream. The stream is flushed, but not closed. The tape must not be
+     * modified while it is being written.
+     * @param tape The tape to write.
+     * @param out The stream to write to.
+     * @param compress true to compress blocks where this makes them smaller, false to never
+     *                 compress.
+     * @throws IOException If an underlying stream exception occurs.
+     */
+    public static void write(Tape tape, OutputStream out, boolean compress) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(out);
+        int length = tape.getLength();
+        char[] cells = new char[BLOCK_SIZE];
+
+        // Find the first non-blank cell, one block at a time
+        int start = 0;
+        scan:
+        while (start < length)
+        {
+            int count = Math.min(BLOCK_SIZE, length - start);
+            tape.getSymbols(start, cells, 0, count);
+            for (int i = 0; i < count; i++)
+            {
+                if (cells[i] != Tape.BLANK_SYMBOL)
+                {
+                    start += i;
+                    break scan;
+                }
+            }
+            start += count;
+        }
+
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        writeVarint(data, start);
+
+        // Worst case of three bytes per cell, plus deflate overhead
+        byte[] encoded = new byte[BLOCK_SIZE * 3];
+        byte[] deflated = new byte[BLOCK_SIZE * 3 + 64];
+        Deflater deflater = compress? new Deflater(Deflater.BEST_SPEED) : null;
+        try
+        {
+            for (int pos = start; pos < length; )
+            {
+                int count = Math.min(BLOCK_SIZE, length - pos);
+                tape.getSymbols(pos, cells, 0, count);
+                pos += count;
+
+                byte flags = 0;
+                int size = 0;
+                for (int i = 0; i < count && flags == 0; i++)
+                {
+                    if (cells[i] > 0xFF)
+                    {
+                        flags = BLOCK_WIDE;
+                    }
+                }
+                if (flags == BLOCK_WIDE)
+                {
+                    for (int i = 0; i < count; i++)
+                    {
+                        size = putVarint(encoded, size, cells[i]);
+                    }
+                }
+                else
+                {
+                    for (int i = 0; i < count; i++)
+                    {
+                        encoded[size++] = (byte)cells[i];
+                    }
+                }
+
+                byte[] block = encoded;
+                if (deflater != null)
+                {
+                    deflater.reset();
+                    deflater.setInput(encoded, 0, size);
+                    deflater.finish();
+                    int compressed = deflater.deflate(deflated);
+                    if (deflater.finished() && compressed < size)
+                    {
+                        flags |= BLOCK_COMPRESSED;
+                        block = deflated;
+                        size = compressed;
+                    }
+                }
+
+                data.writeByte(flags);
+                writeVarint(data, count);
+                writeVarint(data, size);
+                data.write(block, 0, size);
+            }
+        }
+        finally
+        {
+            if (deflater != null)
+            {
+                deflater.end();
+            }
+        }
+
+        // Terminating block
+        data.writeByte(0);
+        writeVarint(data, 0);
+        data.flush();
+    }
+
+    /**
+     * Read a tape from a file.
+     * @param file The file to read from.
+     * @return The tape stored in the file, with the read/write head at the start of the tape.
+     * @throws IOException If the file cannot be read, or is not a valid tape file.
+     */
+    public static Tape read(File file) throws IOException
+    {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()));
+        try
+        {
+            Tape result = new CA_Tape();
+            read(in, result);
+            return result;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Read a tape from a stream into an existing tape, replacing its contents. The stream is not
+     * closed. Once the header has been read, the tape is cleared and each block is written to it as
+     * it is read, so if an error occurs, the tape holds the blocks read before it.
+     * @param in The stream to read from.
+     * @param tape The tape to read into; its read/write head is reset to the start of the tape.
+     * @throws IOException If the stream cannot be read, or does not hold a valid tape.
+     */
+    public static void read(InputStream in, Tape tape) throws IOException
+    {
+        DataInputStream data = new DataInputStream(in);
+        try
+        {
+            if (data.readInt() != MAGIC)
+            {
+                throw new IOException("Not a tape file");
+            }
+            short version = data.readShort();
+            if (version > VERSION)
+            {
+                throw new IOException(String.format("Unsupported tape file version %d", version));
+            }
+
+            tape.clearTape();
+            long pos = readVarint(data);
+            if (pos < 0)
+            {
+                throw new IOException("Tape is too long");
+            }
+            char[] cells = new char[BLOCK_SIZE];
+            byte[] block = new byte[BLOCK_SIZE * 3 + 64];
+            byte[] inflated = new byte[BLOCK_SIZE * 3];
+            Inflater inflater = new Inflater();
+            try
+            {
+                while (true)
+                {
+                    byte flags = data.readByte();
+                    int count = readVarint(data);
+                    if (count == 0)
+                    {
+                        break;
+                    }
+                    int size = readVarint(data);
+                    if (count > BLOCK_SIZE || size > block.length)
+                    {
+                        throw new IOException("Tape block is too large");
+                    }
+                    if (pos + count > Integer.MAX_VALUE)
+                    {
+                        throw new IOException("Tape is too long");
+                    }
+                    data.readFully(block, 0, size);
+
+                    byte[] encoded = block;
+                    if ((flags & BLOCK_COMPRESSED) != 0)
+                    {
+                        inflater.reset();
+                        inflater.setInput(block, 0, size);
+                        size = inflater.inflate(inflated);
+                        if (!inflater.finished())
+                        {
+                            throw new IOException("Tape block is corrupt");
+                        }
+                        encoded = inflated;
+                    }
+
+                    if ((flags & BLOCK_WIDE) != 0)
+                    {
+                        int offset = 0;
+                        for (int i = 0; i < count; i++)
+                        {
+                            int c = 0;
+                            for (int shift = 0; ; shift += 7)
+                            {
+                                if (offset >= size || shift > 14)
+                                {
+                                    throw new IOException("Tape block is corrupt");
+                                }
+                                byte b = encoded[offset++];
+                                c |= (b & 0x7F) << shift;
+                                if ((b & 0x80) == 0)
+                                {
+                                    break;
+                                }
+                            }
+                            cells[i] = (char)c;
+                        }
+                    }
+                    else
+                    {
+                        if (size != count)
+                        {
+                            throw new IOException("Tape block is corrupt");
+                        }
+                        for (int i = 0; i < count; i++)
+                        {
+                            cells[i] = (char)(encoded[i] & 0xFF);
+                        }
+                    }
+
+                    tape.setSymbols((int)pos, cells, 0, count);
+                    pos += count;
+                }
+            }
+            finally
+            {
+                inflater.end();
+            }
+            tape.resetRWHead();
+        }
+        catch (EOFException e)
+        {
+            throw new IOException("Tape file is truncated");
+        }
+        catch (DataFormatException e)
+        {
+            throw new IOException("Tape block is corrupt");
+        }
+    }
+
+    /**
+     * Write an unsigned varint to a stream.
+     * @param out The stream to write to.
+     * @param value The value to write; must not be negative.
+     * @throws IOException If an underlying stream exception occurs.
+     */
+    static void writeVarint(DataOutput out, int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Read an unsigned varint from a stream.
+     * @param in The stream to read from.
+     * @return The value read.
+     * @throws IOException If the stream cannot be read, or the value does not fit in an int.
+     */
+    static int readVarint(DataInput in) throws IOException
+    {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            byte b = in.readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Encode an unsigned varint into an array.
+     * @param dest The array to write to.
+     * @param offset The offset to write at.
+     * @param value The value to write; must not be negative.
+     * @return The offset after the value.
+     */
+    private static int putVarint(byte[] dest, int offset, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            dest[offset++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dest[offset++] = (byte)value;
+        return offset;
+    }
+}
@@ -0,0 +1,454 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A set of breakpoints on the states and transitions of a machine, and watchpoints on its tape,
+ * checked after each step of a simulator. Breakpoints are compiled into an immutable snapshot
+ * whenever they change, so that checking them costs a single read while none are set, and a few
+ * comparisons per step otherwise. Watchpoints trigger when their condition becomes true, so a
+ * simulation stopped by one can be continued.
+ */
+public class Breakpoints implements StepObserver
+{
+    /**
+     * Symbol to watch for to trigger on any symbol written at the watched cell.
+     */
+    public static final char ANY_SYMBOL = '\0';
+
+    /**
+     * Value of a watchpoint limit which is not set.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Toggle a breakpoint on a state.
+     * @param state The state to break on entry to.
+     * @return true if the state now has a breakpoint, false otherwise.
+     */
+    public synchronized boolean toggle(State state)
+    {
+        return toggle(m_states, state);
+    }
+
+    /**
+     * Toggle a breakpoint on a transition.
+     * @param transition The transition to break after taking.
+     * @return true if the transition now has a breakpoint, false otherwise.
+     */
+    public synchronized boolean toggle(Transition transition)
+    {
+        return toggle(m_transitions, transition);
+    }
+
+    /**
+     * Determine if a state has a breakpoint.
+     * @param state The state to check.
+     * @return true if the state has a breakpoint, false otherwise.
+     */
+    public synchronized boolean contains(State state)
+    {
+        return m_states.contains(state);
+    }
+
+    /**
+     * Determine if a transition has a breakpoint.
+     * @param transition The transition to check.
+     * @return true if the transition has a breakpoint, false otherwise.
+     */
+    public synchronized boolean contains(Transition transition)
+    {
+        return m_transitions.contains(transition);
+    }
+
+    /**
+     * Get the states which have breakpoints.
+     * @return A copy of the states with breakpoints.
+     */
+    public synchronized Collection<State> getStates()
+    {
+        return new java.util.ArrayList<State>(m_states);
+    }
+
+    /**
+     * Get the transitions which have breakpoints.
+     * @return A copy of the transitions with breakpoints.
+     */
+    public synchronized Collection<Transition> getTransitions()
+    {
+        return new java.util.ArrayList<Transition>(m_transitions);
+    }
+
+    /**
+     * Get the head location watched for.
+     * @return The location the head must move beyond to trigger, or NONE.
+     */
+    public synchronized int getHeadLimit()
+    {
+        return m_headLimit;
+    }
+
+    /**
+     * Set the head location watched for.
+     * @param limit The location the head must move beyond to trigger, or NONE.
+     */
+    public synchronized void setHeadLimit(int limit)
+    {
+        m_headLimit = Math.max(NONE, limit);
+        compile();
+    }
+
+    /**
+     * Get the cell watched for writes.
+     * @return The watched cell, or NONE.
+     */
+    public synchronized int getWatchedCell()
+    {
+        return m_watchCell;
+    }
+
+    /**
+     * Get the symbol watched for at the watched cell.
+     * @return The watched symbol, or ANY_SYMBOL.
+     */
+    public synchronized char getWatchedSymbol()
+    {
+        return m_watchSymbol;
+    }
+
+    /**
+     * Watch a cell for writes of a symbol.
+     * @param cell The cell to watch, or NONE.
+     * @param symbol The symbol to watch for, or ANY_SYMBOL to trigger on any change to the cell.
+     */
+    public synchronized void setWatchedCell(int cell, char symbol)
+    {
+        m_watchCell = Math.max(NONE, cell);
+        m_watchSymbol = symbol;
+        compile();
+    }
+
+    /**
+     * Get the tape length watched for.
+     * @return The length the tape must grow beyond to trigger, or NONE.
+     */
+    public synchronized int getLengthLimit()
+    {
+        return m_lengthLimit;
+    }
+
+    /**
+     * Set the tape length watched for.
+     * @param limit The length the tape must grow beyond to trigger, or NONE.
+     */
+    public synchronized void setLengthLimit(int limit)
+    {
+        m_lengthLimit = Math.max(NONE, limit);
+        compile();
+    }
+
+    /**
+     * Determine if any breakpoint or watchpoint is set.
+     * @return true if there is nothing to check, false otherwise.
+     */
+    public boolean isEmpty()
+    {
+        return m_compiled == null;
+    }
+
+    /**
+     * Remove all breakpoints and watchpoints.
+     */
+    public synchronized void clear()
+    {
+        m_states.clear();
+        m_transitions.clear();
+        m_headLimit = NONE;
+        m_watchCell = NONE;
+        m_watchSymbol = ANY_SYMBOL;
+        m_lengthLimit = NONE;
+        compile();
+    }
+
+    /**
+     * Get and clear the description of the last breakpoint or watchpoint hit. Must be called on the
+     * thread stepping the simulator.
+     * @return A description of the hit since the last call, or null if there was none.
+     */
+    public String takeHit()
+    {
+        String hit = m_hit;
+        m_hit = null;
+        return hit;
+    }
+
+    /**
+     * Record the head location and tape length before a step, if they are being watched.
+     * @param sim The simulator about to step.
+     */
+    public void beforeStep(Simulator sim)
+    {
+        Compiled c = m_compiled;
+        if (c == null || !c.watchesTape)
+        {
+            return;
+        }
+        Tape tape = sim.getTape();
+        m_version = tape.getVersion();
+        m_head = tape.headLocation();
+        m_length = c.lengthLimit == NONE? 0 : tape.getLength();
+        m_symbol = m_head == c.watchCell? tape.read() : ANY_SYMBOL;
+    }
+
+    /**
+     * Check the breakpoints and watchpoints after a step, recording the first hit. Watchpoints are
+     * checked whenever the tape has changed, even if no transition was taken, as when the step ran
+     * a step of a submachine.
+     * @param sim The simulator which has stepped.
+     * @param taken The transition taken by the step, or null if no transition was taken.
+     */
+    public void afterStep(Simulator sim, Transition taken)
+    {
+        Compiled c = m_compiled;
+        if (c == null)
+        {
+            return;
+        }
+        if (taken != null)
+        {
+            if (c.transitions.contains(taken))
+            {
+                m_hit = String.format("Breakpoint on transition %s", taken);
+                return;
+            }
+            Object state = sim.getCurrentState();
+            if (state != null && c.states.contains(state))
+            {
+                m_hit = String.format("Breakpoint on state %s", ((State)state).getLabel());
+                return;
+            }
+        }
+        if (!c.watchesTape)
+        {
+            return;
+        }
+        Tape tape = sim.getTape();
+        if (tape.getVersion() == m_version)
+        {
+            return;
+        }
+        int head = tape.headLocation();
+        if (c.headLimit != NONE && head > c.headLimit && m_head <= c.headLimit)
+        {
+            m_hit = String.format("Head moved beyond cell %d", c.headLimit);
+            return;
+        }
+        // Writes happen under the head, so the cell can only have changed if the head was on it
+        if (m_head == c.watchCell)
+        {
+            char[] sym = m_buffer;
+            tape.getSymbols(c.watchCell, sym, 0, 1);
+            if (sym[0] != m_symbol && (c.watchSymbol == ANY_SYMBOL || sym[0] == c.watchSymbol))
+            {
+                m_hit = String.format("Symbol %c written at cell %d", sym[0], c.watchCell);
+                return;
+            }
+        }
+        if (c.lengthLimit != NONE && m_length <= c.lengthLimit &&
+            tape.getLength() > c.lengthLimit)
+        {
+            m_hit = String.format("Tape length exceeded %d", c.lengthLimit);
+        }
+    }
+
+    /**
+     * Toggle the membership of an object in a set.
+     * @param set The set to modify.
+     * @param o The object to add or remove.
+     * @return true if the object is now in the set, false otherwise.
+     */
+    private <T> boolean toggle(Set<T> set, T o)
+    {
+        boolean added = set.add(o) || !set.remove(o);
+        compile();
+        return added;
+    }
+
+    /**
+     * Rebuild the compiled snapshot of the breakpoints and watchpoints.
+     */
+    private void compile()
+    {
+        if (m_states.isEmpty() && m_transitions.isEmpty() && m_headLimit == NONE &&
+            m_watchCell == NONE && m_lengthLimit == NONE)
+        {
+            m_compiled = null;
+        }
+        else
+        {
+            m_compiled = new Compiled(this);
+        }
+    }
+
+    /**
+     * An immutable snapshot of a set of breakpoints, read by the stepping thread without locking.
+     */
+    private static class Compiled
+    {
+        /**
+         * Creates a new snapshot of a set of breakpoints.
+         * @param bp The breakpoints to snapshot; must be locked by the caller.
+         */
+        public Compiled(Breakpoints bp)
+        {
+            states = identitySet(bp.m_states);
+            transitions = identitySet(bp.m_transitions);
+            headLimit = bp.m_headLimit;
+            watchCell = bp.m_watchCell;
+            watchSymbol = bp.m_watchSymbol;
+            lengthLimit = bp.m_lengthLimit;
+            watchesTape = headLimit != NONE || watchCell != NONE || lengthLimit != NONE;
+        }
+
+        /**
+         * Copy a set into a new set compared by identity.
+         * @param src The set to copy.
+         * @return An unmodifiable copy of the set.
+         */
+        private static <T> Set<T> identitySet(Set<T> src)
+        {
+            Set<T> result = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+            result.addAll(src);
+            return Collections.unmodifiableSet(result);
+        }
+
+        /**
+         * States with breakpoints.
+         */
+        public final Set<State> states;
+
+        /**
+         * Transitions with breakpoints.
+         */
+        public final Set<Transition> transitions;
+
+        /**
+         * The head location watched for, or NONE.
+         */
+        public final int headLimit;
+
+        /**
+         * The cell watched for writes, or NONE.
+         */
+        public final int watchCell;
+
+        /**
+         * The symbol watched for, or ANY_SYMBOL.
+         */
+        public final char watchSymbol;
+
+        /**
+         * The tape length watched for, or NONE.
+         */
+        public final int lengthLimit;
+
+        /**
+         * Whether any watchpoint on the tape is set.
+         */
+        public final boolean watchesTape;
+    }
+
+    /**
+     * States with breakpoints, compared by identity.
+     */
+    private Set<State> m_states = Collections.newSetFromMap(new IdentityHashMap<State, Boolean>());
+
+    /**
+     * Transitions with breakpoints, compared by identity.
+     */
+    private Set<Transition> m_transitions =
+        Collections.newSetFromMap(new IdentityHashMap<Transition, Boolean>());
+
+    /**
+     * The head location watched for, or NONE.
+     */
+    private int m_headLimit = NONE;
+
+    /**
+     * The cell watched for writes, or NONE.
+     */
+    private int m_watchCell = NONE;
+
+    /**
+     * The symbol watched for at the watched cell, or ANY_SYMBOL.
+     */
+    private char m_watchSymbol = ANY_SYMBOL;
+
+    /**
+     * The tape length watched for, or NONE.
+     */
+    private int m_lengthLimit = NONE;
+
+    /**
+     * The compiled snapshot of the breakpoints, or null if none are set.
+     */
+    private volatile Compiled m_compiled;
+
+    /**
+     * Description of the last hit, or null if there is none.
+     */
+    private volatile String m_hit;
+
+    /**
+     * The version of the tape before the current step.
+     */
+    private long m_version;
+
+    /**
+     * The head location before the current step.
+     */
+    private int m_head;
+
+    /**
+     * The tape length before the current step.
+     */
+    private int m_length;
+
+    /**
+     * The symbol under the watched cell before the current step, if the head was on it.
+     */
+    private char m_symbol;
+
+    /**
+     * Buffer used to read the watched cell.
+     */
+    private final char[] m_buffer = new char[1];
+}
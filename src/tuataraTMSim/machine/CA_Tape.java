@@ -27,6 +27,7 @@ package tuataraTMSim.machine;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
 import tuataraTMSim.exceptions.ComputationFailedException;
 import tuataraTMSim.MainWindow;
 
@@ -55,7 +56,7 @@ public class CA_Tape extends Tape implements Serializable
     public CA_Tape(String initialTape)
     {
         setToString(initialTape);
-        MainWindow.getInstance().updateAllSimulators();
+        notifyChanged();
     }
     
     /**
@@ -79,7 +80,7 @@ public class CA_Tape extends Tape implements Serializable
             resetRWHead();
             throw new ComputationFailedException("Read/write head fell off the tape");
         }
-        MainWindow.getInstance().updateAllSimulators();
+        notifyChanged();
     }
     
     /** 
@@ -102,7 +103,7 @@ public class CA_Tape extends Tape implements Serializable
             }
             m_tapeArray = newArray;
         }
-        MainWindow.getInstance().updateAllSimulators();
+        notifyChanged();
     }
     
     /**
@@ -112,7 +113,22 @@ public class CA_Tape extends Tape implements Serializable
     public void write(char c)
     {
         m_tapeArray[m_headLoc] = c;
-        MainWindow.getInstance().updateAllSimulators();
+        // Keep the cached length up to date, rather than rescanning the tape
+        if (m_length >= 0)
+        {
+            if (c != Tape.BLANK_SYMBOL && m_headLoc >= m_length)
+            {
+                m_length = m_headLoc + 1;
+            }
+            else if (c == Tape.BLANK_SYMBOL && m_headLoc == m_length - 1)
+            {
+                while (m_length > 0 && m_tapeArray[m_length - 1] == Tape.BLANK_SYMBOL)
+                {
+                    m_length--;
+                }
+            }
+        }
+        notifyChanged();
     }
     
     /**
@@ -121,7 +137,7 @@ public class CA_Tape extends Tape implements Serializable
     public void resetRWHead()
     {
         m_headLoc = 0;
-        MainWindow.getInstance().updateAllSimulators();
+        notifyChanged();
     }
     
     /**
@@ -140,17 +156,26 @@ public class CA_Tape extends Tape implements Serializable
      */
     public int getLength()
     {
-        // TODO: Make this more efficient
-        for (int len = m_tapeArray.length; len > 0; len--)
+        // The length is cached, and only recomputed after bulk changes to the tape
+        if (m_length < 0)
         {
-            if (m_tapeArray[len - 1] != Tape.BLANK_SYMBOL)
+            m_length = m_tapeArray.length;
+            while (m_length > 0 && m_tapeArray[m_length - 1] == Tape.BLANK_SYMBOL)
             {
-                return len;
+                m_length--;
             }
         }
-        return 0;
-    
-        // return m_tapeArray.length;
+        return m_length;
+    }
+
+    /**
+     * Get a number which changes whenever the contents of the tape or the position of the
+     * read/write head change.
+     * @return The version of the tape.
+     */
+    public long getVersion()
+    {
+        return m_version;
     }
 
     /**
@@ -191,6 +216,40 @@ public class CA_Tape extends Tape implements Serializable
         return new String(returnCA);
     }
     
+    /**
+     * Copy cells from the tape into an array, without building a String. Cells beyond the end of
+     * the tape are blank.
+     * @param begin The offset from the start of the tape.
+     * @param dest The array to copy into.
+     * @param offset The offset in dest of the first cell.
+     * @param length How many cells to copy.
+     */
+    public void getSymbols(int begin, char[] dest, int offset, int length)
+    {
+        int stored = Math.max(0, Math.min(length, m_tapeArray.length - begin));
+        if (stored > 0)
+        {
+            System.arraycopy(m_tapeArray, begin, dest, offset, stored);
+        }
+        Arrays.fill(dest, offset + stored, offset + length, Tape.BLANK_SYMBOL);
+    }
+
+    /**
+     * Overwrite cells of the tape from an array, extending the tape if necessary. The read/write
+     * head is not moved.
+     * @param begin The offset from the start of the tape.
+     * @param src The array to copy from.
+     * @param offset The offset in src of the first cell.
+     * @param length How many cells to copy.
+     */
+    public void setSymbols(int begin, char[] src, int offset, int length)
+    {
+        ensureCapacity(begin + length);
+        System.arraycopy(src, offset, m_tapeArray, begin, length);
+        m_length = -1;
+        notifyChanged();
+    }
+
     /**
      * Get the location of the read/write head, relative to the start of the tape.
      * @return The location of the read/write head.
@@ -199,6 +258,18 @@ public class CA_Tape extends Tape implements Serializable
     {
         return m_headLoc;
     }
+
+    /**
+     * Move the read/write head directly to a cell, rather than one cell at a time; used to restore
+     * a recorded configuration.
+     * @param location The cell to move the head to, which must not be negative.
+     */
+    void setHeadLocation(int location)
+    {
+        ensureCapacity(location + 1);
+        m_headLoc = location;
+        notifyChanged();
+    }
     
     /**
      * Set this tape to be the empty tape.
@@ -212,7 +283,8 @@ public class CA_Tape extends Tape implements Serializable
             m_tapeArray[i] = Tape.BLANK_SYMBOL;
         }
         m_headLoc = 0;
-        MainWindow.getInstance().updateAllSimulators();
+        m_length = 0;
+        notifyChanged();
     }
     
     /**
@@ -222,8 +294,13 @@ public class CA_Tape extends Tape implements Serializable
      */
     public void copyOther(Tape other)
     {
-        setToString(other.toString());
-        MainWindow.getInstance().updateAllSimulators();
+        // Copy the cells directly, rather than through a String
+        int length = other.getLength();
+        m_tapeArray = new char[100 + length];
+        other.getSymbols(0, m_tapeArray, 0, m_tapeArray.length);
+        m_headLoc = 0;
+        m_length = -1;
+        notifyChanged();
     }
    
     /**
@@ -244,8 +321,39 @@ public class CA_Tape extends Tape implements Serializable
             m_tapeArray[i] = Tape.BLANK_SYMBOL;
         }
         m_headLoc = 0;
+        m_length = -1;
     }
     
+    /**
+     * Grow the tape array, if necessary, so that it holds at least the given number of cells. New
+     * cells are blank.
+     * @param capacity The number of cells required.
+     */
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > m_tapeArray.length)
+        {
+            int oldLength = m_tapeArray.length;
+            m_tapeArray = Arrays.copyOf(m_tapeArray, Math.max(capacity, oldLength * 2));
+            Arrays.fill(m_tapeArray, oldLength, m_tapeArray.length, Tape.BLANK_SYMBOL);
+        }
+    }
+
+    /**
+     * Advance the version of the tape, and notify the main window, if any, that the tape has
+     * changed. Tapes may also be used without the graphical interface, e.g. by
+     * CompiledSimulator.
+     */
+    private void notifyChanged()
+    {
+        m_version++;
+        MainWindow inst = MainWindow.getInstance();
+        if (inst != null)
+        {
+            inst.tapeChanged(this);
+        }
+    }
+
     /**
      * Read a CA_Tape into this object from the given stream.
      * @param in The stream to read.
@@ -256,12 +364,23 @@ public class CA_Tape extends Tape implements Serializable
     {
         in.defaultReadObject();
         m_headLoc = 0;
+        m_length = -1;
     }
     
     /**
      * The position of the read/write head as an offset to the head of the tape.
      */
     private transient int m_headLoc = 0;
+
+    /**
+     * The length of the string on the tape, or -1 if it must be recomputed.
+     */
+    private transient int m_length = -1;
+
+    /**
+     * Incremented whenever the tape changes.
+     */
+    private transient long m_version;
     
     /**
      * Memory used to store the tape data.
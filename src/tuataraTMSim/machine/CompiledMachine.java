@@ -0,0 +1,580 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import tuataraTMSim.machine.DFSA.DFSA_Machine;
+
+/**
+ * The executable structure of a machine, flattened into arrays for use by CompiledSimulator.
+ * States and transitions are identified by their index within the machine they were compiled
+ * from, and the transition to take for each state and tape symbol is precomputed into a single
+ * dispatch table. No layout or rendering information is kept.
+ *
+ * A compiled machine is expected to be deterministic. Where it is not, an exact input match is
+ * preferred over a lambda edge, which is preferred over an otherwise edge, and amongst equals the
+ * first transition is taken.
+ */
+public class CompiledMachine
+{
+    /**
+     * Creates a new instance of CompiledMachine. Submachines are attached afterwards through
+     * setSubmachine().
+     * @param type The type of machine; one of BinaryMachineFormat.TYPE_TM or TYPE_DFSA.
+     * @param labels The label of each state.
+     * @param stateFlags The flags of each state, using BinaryMachineFormat.STATE_START and
+     *                   STATE_FINAL.
+     * @param transFrom The from state of each transition.
+     * @param transTo The to state of each transition.
+     * @param transDir The head direction of each transition.
+     * @param transInput The input symbol of each transition.
+     * @param transOutput The output symbol of each transition.
+     */
+    public CompiledMachine(byte type, String[] labels, byte[] stateFlags, int[] transFrom,
+                           int[] transTo, byte[] transDir, char[] transInput, char[] transOutput)
+    {
+        m_type = type;
+        m_labels = labels;
+        m_stateFlags = stateFlags;
+        m_transFrom = transFrom;
+        m_transTo = transTo;
+        m_transDir = transDir;
+        m_transInput = transInput;
+        m_transOutput = transOutput;
+        m_submachines = new CompiledMachine[labels.length];
+
+        // Locate the start state
+        m_startState = -1;
+        for (int i = 0; i < labels.length; i++)
+        {
+            if ((stateFlags[i] & BinaryMachineFormat.STATE_START) != 0)
+            {
+                m_startState = i;
+                break;
+            }
+        }
+
+        buildDispatchTable();
+    }
+
+    /**
+     * Creates a new instance of CompiledMachine, with a dispatch table which has already been
+     * built; used by CompiledMachineCache.
+     * @param type The type of machine; one of BinaryMachineFormat.TYPE_TM or TYPE_DFSA.
+     * @param labels The label of each state.
+     * @param stateFlags The flags of each state.
+     * @param transFrom The from state of each transition.
+     * @param transTo The to state of each transition.
+     * @param transDir The head direction of each transition.
+     * @param transInput The input symbol of each transition.
+     * @param transOutput The output symbol of each transition.
+     * @param symbolIndex The dispatch table column of each symbol.
+     * @param dispatch The dispatch table.
+     */
+    CompiledMachine(byte type, String[] labels, byte[] stateFlags, int[] transFrom, int[] transTo,
+                    byte[] transDir, char[] transInput, char[] transOutput, short[] symbolIndex,
+                    int[] dispatch)
+    {
+        m_type = type;
+        m_labels = labels;
+        m_stateFlags = stateFlags;
+        m_transFrom = transFrom;
+        m_transTo = transTo;
+        m_transDir = transDir;
+        m_transInput = transInput;
+        m_transOutput = transOutput;
+        m_submachines = new CompiledMachine[labels.length];
+        m_symbolIndex = symbolIndex;
+        m_symbolCount = labels.length == 0? 1 : dispatch.length / labels.length;
+        m_dispatch = dispatch;
+
+        m_startState = -1;
+        for (int i = 0; i < labels.length; i++)
+        {
+            if ((stateFlags[i] & BinaryMachineFormat.STATE_START) != 0)
+            {
+                m_startState = i;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Compile a machine, and any submachines. Submachines shared between states are compiled once.
+     * @param machine The machine to compile.
+     * @return The compiled machine.
+     */
+    public static CompiledMachine compile(Machine machine)
+    {
+        return compile(machine, new HashMap<Machine, CompiledMachine>());
+    }
+
+    /**
+     * Compile a machine, and any submachines which have not been compiled yet.
+     * @param machine The machine to compile.
+     * @param compiled Machines which have already been compiled.
+     * @return The compiled machine.
+     */
+    private static CompiledMachine compile(Machine machine, HashMap<Machine, CompiledMachine> compiled)
+    {
+        ArrayList<State> states = new ArrayList<State>(machine.getStates());
+        HashMap<State, Integer> stateIndex = new HashMap<State, Integer>();
+        String[] labels = new String[states.size()];
+        byte[] stateFlags = new byte[states.size()];
+        for (int i = 0; i < labels.length; i++)
+        {
+            State st = states.get(i);
+            stateIndex.put(st, i);
+            labels[i] = st.getLabel();
+            stateFlags[i] = (byte)((st.isStartState()? BinaryMachineFormat.STATE_START : 0) |
+                                   (st.isFinalState()? BinaryMachineFormat.STATE_FINAL : 0));
+        }
+
+        Collection transitions = machine.getTransitions();
+        int count = transitions.size();
+        int[] transFrom = new int[count];
+        int[] transTo = new int[count];
+        byte[] transDir = new byte[count];
+        char[] transInput = new char[count];
+        char[] transOutput = new char[count];
+        int i = 0;
+        for (Object obj : transitions)
+        {
+            Transition tr = (Transition)obj;
+            transFrom[i] = stateIndex.get(tr.getFromState());
+            transTo[i] = stateIndex.get(tr.getToState());
+            transDir[i] = (byte)tr.getAction().getDirection();
+            transInput[i] = tr.getAction().getInputChar();
+            transOutput[i] = tr.getAction().getOutputChar();
+            i++;
+        }
+
+        byte type = machine instanceof DFSA_Machine? BinaryMachineFormat.TYPE_DFSA
+                                                     : BinaryMachineFormat.TYPE_TM;
+        CompiledMachine result = new CompiledMachine(type, labels, stateFlags, transFrom, transTo,
+                                                     transDir, transInput, transOutput);
+        compiled.put(machine, result);
+
+        // Compile any submachines; library submachines are compiled on first use
+        for (i = 0; i < labels.length; i++)
+        {
+            String ref = machine.getSubmachineReference(states.get(i));
+            if (ref != null)
+            {
+                result.setSubmachineReference(i, ref);
+                continue;
+            }
+            Machine sub = machine.getSubmachine(states.get(i));
+            if (sub != null)
+            {
+                CompiledMachine compiledSub = compiled.get(sub);
+                result.setSubmachine(i, compiledSub != null? compiledSub : compile(sub, compiled));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the type of this machine.
+     * @return One of BinaryMachineFormat.TYPE_TM or TYPE_DFSA.
+     */
+    public byte getType()
+    {
+        return m_type;
+    }
+
+    /**
+     * Get the number of states in this machine.
+     * @return The number of states.
+     */
+    public int getStateCount()
+    {
+        return m_labels.length;
+    }
+
+    /**
+     * Get the number of transitions in this machine.
+     * @return The number of transitions.
+     */
+    public int getTransitionCount()
+    {
+        return m_transTo.length;
+    }
+
+    /**
+     * Get the result of validating the machine this was compiled from.
+     * @return null if the machine was valid when compiled, or was not validated, otherwise a
+     *         description of the problem.
+     */
+    public String getProblem()
+    {
+        return m_problem;
+    }
+
+    /**
+     * Set the result of validating the machine this was compiled from.
+     * @param problem null if the machine was valid, otherwise a description of the problem.
+     */
+    void setProblem(String problem)
+    {
+        m_problem = problem;
+    }
+
+    /**
+     * Get the index of the start state.
+     * @return The index of the first start state, or -1 if there is no start state.
+     */
+    public int getStartState()
+    {
+        return m_startState;
+    }
+
+    /**
+     * Get the label of a state.
+     * @param state The index of the state.
+     * @return The label of the state.
+     */
+    public String getLabel(int state)
+    {
+        return m_labels[state];
+    }
+
+    /**
+     * Determine if a state is a start state.
+     * @param state The index of the state.
+     * @return true if the state is a start state, false otherwise.
+     */
+    public boolean isStartState(int state)
+    {
+        return (m_stateFlags[state] & BinaryMachineFormat.STATE_START) != 0;
+    }
+
+    /**
+     * Determine if a state is a final state.
+     * @param state The index of the state.
+     * @return true if the state is a final state, false otherwise.
+     */
+    public boolean isFinalState(int state)
+    {
+        return (m_stateFlags[state] & BinaryMachineFormat.STATE_FINAL) != 0;
+    }
+
+    /**
+     * Get the submachine of a state.
+     * @param state The index of the state.
+     * @return The submachine of the state, or null if it has none.
+     */
+    public CompiledMachine getSubmachine(int state)
+    {
+        CompiledMachine sub = m_submachines[state];
+        if (sub == null && m_references != null && m_references[state] != null)
+        {
+            // Shared, and loaded on first use
+            sub = SubmachineLibrary.getInstance().loadCompiled(m_references[state]);
+            m_submachines[state] = sub;
+        }
+        return sub;
+    }
+
+    /**
+     * Get the hash of the library submachine of a state.
+     * @param state The index of the state.
+     * @return The hash of the submachine within the SubmachineLibrary, or null.
+     */
+    public String getSubmachineReference(int state)
+    {
+        return m_references != null? m_references[state] : null;
+    }
+
+    /**
+     * Set the library submachine of a state. Should only be used while building the machine.
+     * @param state The index of the state.
+     * @param hash The hash of the submachine within the SubmachineLibrary.
+     */
+    void setSubmachineReference(int state, String hash)
+    {
+        if (m_references == null)
+        {
+            m_references = new String[m_labels.length];
+        }
+        m_references[state] = hash;
+    }
+
+    /**
+     * Set the submachine of a state. Should only be used while building the machine.
+     * @param state The index of the state.
+     * @param sub The submachine of the state.
+     */
+    void setSubmachine(int state, CompiledMachine sub)
+    {
+        m_submachines[state] = sub;
+    }
+
+    /**
+     * Get the state a transition leaves.
+     * @param trans The index of the transition.
+     * @return The index of the state the transition leaves.
+     */
+    public int getTransitionFrom(int trans)
+    {
+        return m_transFrom[trans];
+    }
+
+    /**
+     * Get the state a transition arrives at.
+     * @param trans The index of the transition.
+     * @return The index of the state the transition arrives at.
+     */
+    public int getTransitionTo(int trans)
+    {
+        return m_transTo[trans];
+    }
+
+    /**
+     * Get the head direction of a transition.
+     * @param trans The index of the transition.
+     * @return -1 for left, 1 for right, or 0 if the transition does not move the head.
+     */
+    public int getTransitionDirection(int trans)
+    {
+        return m_transDir[trans];
+    }
+
+    /**
+     * Get the input symbol of a transition.
+     * @param trans The index of the transition.
+     * @return The input symbol of the transition.
+     */
+    public char getTransitionInput(int trans)
+    {
+        return m_transInput[trans];
+    }
+
+    /**
+     * Get the output symbol of a transition.
+     * @param trans The index of the transition.
+     * @return The output symbol of the transition.
+     */
+    public char getTransitionOutput(int trans)
+    {
+        return m_transOutput[trans];
+    }
+
+    /**
+     * Get the transition to take from a state, given the symbol under the read/write head.
+     * @param state The index of the current state.
+     * @param symbol The symbol under the read/write head.
+     * @return The index of the transition to take, or -1 if no transition is defined.
+     */
+    public int getNextTransition(int state, char symbol)
+    {
+        int sym = symbol < m_symbolIndex.length? m_symbolIndex[symbol] : 0;
+        return m_dispatch[state * m_symbolCount + sym];
+    }
+
+    /**
+     * Get the flags of a state.
+     * @param state The index of the state.
+     * @return The flags of the state, using BinaryMachineFormat.STATE_START and STATE_FINAL.
+     */
+    byte getStateFlags(int state)
+    {
+        return m_stateFlags[state];
+    }
+
+    /**
+     * Get the dispatch table column of each symbol.
+     * @return The symbol index; must not be modified.
+     */
+    short[] getSymbolIndex()
+    {
+        return m_symbolIndex;
+    }
+
+    /**
+     * Get the transition to take for each state and column.
+     * @return The dispatch table; must not be modified.
+     */
+    int[] getDispatchTable()
+    {
+        return m_dispatch;
+    }
+
+    /**
+     * Build the symbol index and the dispatch table. Each exact input symbol used by any transition
+     * is given its own column, with column zero used for every other symbol.
+     */
+    private void buildDispatchTable()
+    {
+        // Assign a column to each exact input symbol
+        char maxSymbol = 0;
+        for (char c : m_transInput)
+        {
+            if (isExactSymbol(c) && c > maxSymbol)
+            {
+                maxSymbol = c;
+            }
+        }
+        m_symbolIndex = new short[maxSymbol + 1];
+        m_symbolCount = 1;
+        for (char c : m_transInput)
+        {
+            if (isExactSymbol(c) && m_symbolIndex[c] == 0)
+            {
+                m_symbolIndex[c] = (short)m_symbolCount++;
+            }
+        }
+
+        // Default for each state; a lambda edge, otherwise an otherwise edge, otherwise nothing
+        int states = m_labels.length;
+        int[] lambda = new int[states];
+        int[] otherwise = new int[states];
+        Arrays.fill(lambda, -1);
+        Arrays.fill(otherwise, -1);
+        for (int t = 0; t < m_transInput.length; t++)
+        {
+            int from = m_transFrom[t];
+            if (m_transInput[t] == Machine.EMPTY_INPUT_SYMBOL && lambda[from] == -1)
+            {
+                lambda[from] = t;
+            }
+            else if (m_transInput[t] == Machine.OTHERWISE_SYMBOL && otherwise[from] == -1)
+            {
+                otherwise[from] = t;
+            }
+        }
+
+        m_dispatch = new int[states * m_symbolCount];
+        boolean[] exact = new boolean[m_dispatch.length];
+        for (int s = 0; s < states; s++)
+        {
+            Arrays.fill(m_dispatch, s * m_symbolCount, (s + 1) * m_symbolCount,
+                        lambda[s] != -1? lambda[s] : otherwise[s]);
+        }
+        for (int t = 0; t < m_transInput.length; t++)
+        {
+            char c = m_transInput[t];
+            if (isExactSymbol(c))
+            {
+                int idx = m_transFrom[t] * m_symbolCount + m_symbolIndex[c];
+                if (!exact[idx])
+                {
+                    m_dispatch[idx] = t;
+                    exact[idx] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Determine if an input symbol must be matched exactly.
+     * @param c The input symbol.
+     * @return true if the symbol is not a special symbol, false otherwise.
+     */
+    private static boolean isExactSymbol(char c)
+    {
+        return c != Machine.EMPTY_INPUT_SYMBOL && c != Machine.OTHERWISE_SYMBOL &&
+               c != Machine.UNDEFINED_SYMBOL;
+    }
+
+    /**
+     * The type of machine.
+     */
+    private byte m_type;
+
+    /**
+     * The label of each state.
+     */
+    private String[] m_labels;
+
+    /**
+     * The flags of each state.
+     */
+    private byte[] m_stateFlags;
+
+    /**
+     * The submachine of each state, or null.
+     */
+    private CompiledMachine[] m_submachines;
+
+    /**
+     * The hash of the library submachine of each state, or null if no state has one.
+     */
+    private String[] m_references;
+
+    /**
+     * The index of the start state, or -1.
+     */
+    private int m_startState;
+
+    /**
+     * The from state of each transition.
+     */
+    private int[] m_transFrom;
+
+    /**
+     * The to state of each transition.
+     */
+    private int[] m_transTo;
+
+    /**
+     * The head direction of each transition.
+     */
+    private byte[] m_transDir;
+
+    /**
+     * The input symbol of each transition.
+     */
+    private char[] m_transInput;
+
+    /**
+     * The output symbol of each transition.
+     */
+    private char[] m_transOutput;
+
+    /**
+     * The dispatch table column of each symbol; symbols beyond the end of the array use column 0.
+     */
+    private short[] m_symbolIndex;
+
+    /**
+     * The number of columns in the dispatch table.
+     */
+    private int m_symbolCount;
+
+    /**
+     * The transition to take for each state and column, or -1.
+     */
+    private int[] m_dispatch;
+
+    /**
+     * The result of validating the machine this was compiled from.
+     */
+    private String m_problem;
+}
@@ -0,0 +1,489 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * A persistent, on-disk cache of compiled machines. Each entry is keyed by the logic hash of the
+ * machine it was compiled from (see BinaryMachineFormat.hashLogic()), so editing a machine's logic
+ * automatically misses the old entry, while moving its states does not. Entries also record the
+ * result of validating the machine, so that a cache hit skips both loading and validation.
+ * Entries written by an older version of the cache are discarded when read, and the least recently
+ * used entries are evicted whenever the cache grows beyond its size limit.
+ */
+public class CompiledMachineCache
+{
+    /**
+     * System property which may be used to override the cache directory.
+     */
+    public static final String DIRECTORY_PROPERTY = "tuataraTMSim.cache";
+
+    /**
+     * System property which may be used to override the maximum size of the cache, in bytes.
+     */
+    public static final String SIZE_PROPERTY = "tuataraTMSim.cacheSize";
+
+    /**
+     * Default maximum size of the cache, in bytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * File extension of entries within the cache.
+     */
+    public static final String CACHE_EXT = ".tmc";
+
+    /**
+     * Magic number at the start of every cache entry; "TTMC" in ASCII.
+     */
+    public static final int MAGIC = 0x54544D43;
+
+    /**
+     * Version of the entry format. Entries with any other version are treated as stale.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * Creates a new instance of CompiledMachineCache.
+     * @param dir The directory the cache is stored in; created when first written to.
+     * @param maxSize The maximum total size of the entries, in bytes.
+     */
+    public CompiledMachineCache(File dir, long maxSize)
+    {
+        m_dir = dir;
+        m_maxSize = maxSize;
+    }
+
+    /**
+     * Get the shared cache, stored in the directory given by DIRECTORY_PROPERTY, or in the user's
+     * home directory if unset.
+     * @return The shared cache.
+     */
+    public static synchronized CompiledMachineCache getInstance()
+    {
+        if (m_instance == null)
+        {
+            String dir = System.getProperty(DIRECTORY_PROPERTY);
+            m_instance = new CompiledMachineCache(dir != null? new File(dir) :
+                    new File(System.getProperty("user.home"), ".tuatara" + File.separator + "cache"),
+                    Long.getLong(SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+        }
+        return m_instance;
+    }
+
+    /**
+     * Get the directory the cache is stored in.
+     * @return The cache directory.
+     */
+    public File getDirectory()
+    {
+        return m_dir;
+    }
+
+    /**
+     * Get the maximum total size of the entries.
+     * @return The maximum size of the cache, in bytes.
+     */
+    public long getMaxSize()
+    {
+        return m_maxSize;
+    }
+
+    /**
+     * Get the compiled form of the machine stored in a file, compiling and validating it only if
+     * it is not already cached.
+     * @param file The machine file; either format accepted by Machine.loadMachine().
+     * @return The compiled machine; see CompiledMachine.getProblem() for the validation result.
+     * @throws IOException If the machine could not be read.
+     * @throws ClassNotFoundException If the serialized object is not recognized.
+     */
+    public CompiledMachine load(File file) throws IOException, ClassNotFoundException
+    {
+        byte[] content = Files.readAllBytes(file.toPath());
+        boolean binary = content.length >= 4 &&
+                         ByteBuffer.wrap(content).getInt() == BinaryMachineFormat.MAGIC;
+
+        // Legacy files have no separate layout section, so the whole file is hashed
+        String key = binary? BinaryMachineFormat.hashLogic(content) : SubmachineLibrary.hash(content);
+        CompiledMachine result = lookup(key);
+        if (result == null)
+        {
+            Machine machine = binary? BinaryMachineFormat.read(content) : Machine.loadMachine(file);
+            result = compile(machine);
+            store(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Remove every entry from the cache.
+     */
+    public synchronized void clear()
+    {
+        for (File f : getEntries())
+        {
+            f.delete();
+        }
+    }
+
+    /**
+     * Compile and validate a machine.
+     * @param machine The machine to compile.
+     * @return The compiled machine, with its validation result set.
+     */
+    private static CompiledMachine compile(Machine machine)
+    {
+        CompiledMachine result = CompiledMachine.compile(machine);
+        result.setProblem(machine.getValidator().isDeterministic());
+        return result;
+    }
+
+    /**
+     * Read an entry from the cache, marking it as recently used. Stale or unreadable entries are
+     * deleted.
+     * @param key The logic hash of the machine.
+     * @return The compiled machine, or null if it is not cached.
+     */
+    private synchronized CompiledMachine lookup(String key)
+    {
+        File file = getFile(key);
+        if (!file.exists())
+        {
+            return null;
+        }
+        try
+        {
+            CompiledMachine result = readEntry(key, Files.readAllBytes(file.toPath()));
+            if (result == null)
+            {
+                file.delete();
+            }
+            else
+            {
+                file.setLastModified(System.currentTimeMillis());
+            }
+            return result;
+        }
+        catch (IOException e)
+        {
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Write an entry to the cache, then evict the least recently used entries if it has grown too
+     * large. Failing to write is not an error; the machine is simply compiled again next time.
+     * @param key The logic hash of the machine.
+     * @param machine The compiled machine.
+     */
+    private synchronized void store(String key, CompiledMachine machine)
+    {
+        File temp = null;
+        try
+        {
+            // Write to a temporary file first, so that a partially written entry is never visible
+            m_dir.mkdirs();
+            temp = File.createTempFile(key, ".tmp", m_dir);
+            Files.write(temp.toPath(), writeEntry(key, machine));
+            Files.move(temp.toPath(), getFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            return;
+        }
+        finally
+        {
+            if (temp != null)
+            {
+                temp.delete();
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Delete the least recently used entries until the cache is within its size limit.
+     */
+    private void evict()
+    {
+        File[] entries = getEntries();
+        long total = 0;
+        for (File f : entries)
+        {
+            total += f.length();
+        }
+        if (total <= m_maxSize)
+        {
+            return;
+        }
+
+        Arrays.sort(entries, new Comparator<File>()
+        {
+            public int compare(File a, File b)
+            {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (int i = 0; i < entries.length && total > m_maxSize; i++)
+        {
+            long length = entries[i].length();
+            if (entries[i].delete())
+            {
+                total -= length;
+            }
+        }
+    }
+
+    /**
+     * Encode a compiled machine and its submachines as a cache entry.
+     * @param key The logic hash of the machine.
+     * @param machine The compiled machine.
+     * @return The encoded entry.
+     * @throws IOException If the machine could not be encoded.
+     */
+    private static byte[] writeEntry(String key, CompiledMachine machine) throws IOException
+    {
+        // Number every embedded machine, root first
+        ArrayList<CompiledMachine> machines = new ArrayList<CompiledMachine>();
+        HashMap<CompiledMachine, Integer> index = new HashMap<CompiledMachine, Integer>();
+        machines.add(machine);
+        index.put(machine, 0);
+        for (int i = 0; i < machines.size(); i++)
+        {
+            CompiledMachine m = machines.get(i);
+            for (int j = 0; j < m.getStateCount(); j++)
+            {
+                CompiledMachine sub = m.getSubmachineReference(j) == null? m.getSubmachine(j) : null;
+                if (sub != null && !index.containsKey(sub))
+                {
+                    index.put(sub, machines.size());
+                    machines.add(sub);
+                }
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeUTF(key);
+        out.writeUTF(machine.getProblem() == null? "" : machine.getProblem());
+
+        out.writeInt(machines.size());
+        for (CompiledMachine m : machines)
+        {
+            out.writeByte(m.getType());
+            out.writeInt(m.getStateCount());
+            for (int j = 0; j < m.getStateCount(); j++)
+            {
+                String ref = m.getSubmachineReference(j);
+                CompiledMachine sub = ref == null? m.getSubmachine(j) : null;
+                out.writeUTF(m.getLabel(j));
+                out.writeByte(m.getStateFlags(j));
+                out.writeInt(sub == null? -1 : index.get(sub));
+                out.writeUTF(ref == null? "" : ref);
+            }
+
+            out.writeInt(m.getTransitionCount());
+            for (int j = 0; j < m.getTransitionCount(); j++)
+            {
+                out.writeInt(m.getTransitionFrom(j));
+                out.writeInt(m.getTransitionTo(j));
+                out.writeByte(m.getTransitionDirection(j));
+                out.writeChar(m.getTransitionInput(j));
+                out.writeChar(m.getTransitionOutput(j));
+            }
+
+            short[] symbolIndex = m.getSymbolIndex();
+            out.writeInt(symbolIndex.length);
+            for (short s : symbolIndex)
+            {
+                out.writeShort(s);
+            }
+            int[] dispatch = m.getDispatchTable();
+            out.writeInt(dispatch.length);
+            for (int d : dispatch)
+            {
+                out.writeInt(d);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a cache entry.
+     * @param key The logic hash the entry is expected to hold.
+     * @param content The encoded entry.
+     * @return The compiled machine, or null if the entry is stale.
+     * @throws IOException If the entry is truncated or corrupt.
+     */
+    private static CompiledMachine readEntry(String key, byte[] content) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+        if (in.readInt() != MAGIC || in.readShort() != VERSION || !in.readUTF().equals(key))
+        {
+            return null;
+        }
+        String problem = in.readUTF();
+
+        int count = in.readInt();
+        CompiledMachine[] machines = new CompiledMachine[count];
+        int[][] submachines = new int[count][];
+        for (int i = 0; i < count; i++)
+        {
+            byte type = in.readByte();
+            int stateCount = in.readInt();
+            String[] labels = new String[stateCount];
+            byte[] stateFlags = new byte[stateCount];
+            String[] references = new String[stateCount];
+            submachines[i] = new int[stateCount];
+            for (int j = 0; j < stateCount; j++)
+            {
+                labels[j] = in.readUTF();
+                stateFlags[j] = in.readByte();
+                submachines[i][j] = in.readInt();
+                references[j] = in.readUTF();
+            }
+
+            int transitionCount = in.readInt();
+            int[] transFrom = new int[transitionCount];
+            int[] transTo = new int[transitionCount];
+            byte[] transDir = new byte[transitionCount];
+            char[] transInput = new char[transitionCount];
+            char[] transOutput = new char[transitionCount];
+            for (int j = 0; j < transitionCount; j++)
+            {
+                transFrom[j] = in.readInt();
+                transTo[j] = in.readInt();
+                transDir[j] = in.readByte();
+                transInput[j] = in.readChar();
+                transOutput[j] = in.readChar();
+            }
+
+            short[] symbolIndex = new short[in.readInt()];
+            for (int j = 0; j < symbolIndex.length; j++)
+            {
+                symbolIndex[j] = in.readShort();
+            }
+            int[] dispatch = new int[in.readInt()];
+            for (int j = 0; j < dispatch.length; j++)
+            {
+                dispatch[j] = in.readInt();
+            }
+
+            machines[i] = new CompiledMachine(type, labels, stateFlags, transFrom, transTo, transDir,
+                                              transInput, transOutput, symbolIndex, dispatch);
+            for (int j = 0; j < stateCount; j++)
+            {
+                if (!references[j].isEmpty())
+                {
+                    machines[i].setSubmachineReference(j, references[j]);
+                }
+            }
+        }
+
+        // Resolve submachine indices, now that every machine exists
+        for (int i = 0; i < count; i++)
+        {
+            for (int j = 0; j < submachines[i].length; j++)
+            {
+                int sub = submachines[i][j];
+                if (sub >= count)
+                {
+                    throw new IOException("Invalid submachine reference");
+                }
+                if (sub >= 0)
+                {
+                    machines[i].setSubmachine(j, machines[sub]);
+                }
+            }
+        }
+
+        if (count == 0)
+        {
+            throw new IOException("Cache entry is empty");
+        }
+        machines[0].setProblem(problem.isEmpty()? null : problem);
+        return machines[0];
+    }
+
+    /**
+     * Get every entry in the cache.
+     * @return The entry files; empty if the cache directory does not exist.
+     */
+    private File[] getEntries()
+    {
+        File[] result = m_dir.listFiles(new FilenameFilter()
+        {
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(CACHE_EXT);
+            }
+        });
+        return result != null? result : new File[0];
+    }
+
+    /**
+     * Get the file an entry is stored in.
+     * @param key The logic hash of the machine.
+     * @return The file the entry is, or would be, stored in.
+     */
+    private File getFile(String key)
+    {
+        return new File(m_dir, key + CACHE_EXT);
+    }
+
+    /**
+     * The shared cache.
+     */
+    private static CompiledMachineCache m_instance;
+
+    /**
+     * The directory the cache is stored in.
+     */
+    private File m_dir;
+
+    /**
+     * The maximum total size of the entries, in bytes.
+     */
+    private long m_maxSize;
+}
@@ -0,0 +1,349 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.io.File;
+import tuataraTMSim.exceptions.*;
+
+/**
+ * Executes a CompiledMachine against a tape, without any of the graphical machinery required by
+ * Simulator. Nondeterminism is resolved as described by CompiledMachine rather than by prompting
+ * the user, so machines should be validated before they are compiled.
+ */
+public class CompiledSimulator
+{
+    /**
+     * Creates a new instance of CompiledSimulator.
+     * @param machine The machine to simulate.
+     * @param tape The tape which the machine will read from.
+     */
+    public CompiledSimulator(CompiledMachine machine, Tape tape)
+    {
+        m_machine = machine;
+        m_tape = tape;
+        m_state = -1;
+    }
+
+    /**
+     * Gets the machine that is being simulated.
+     * @return The machine being simulated.
+     */
+    public CompiledMachine getMachine()
+    {
+        return m_machine;
+    }
+
+    /**
+     * Get the tape being used in this simulation.
+     * @return The current tape.
+     */
+    public Tape getTape()
+    {
+        return m_tape;
+    }
+
+    /**
+     * Gets the current state that the machine is in.
+     * @return The index of the current state, or -1 if the machine has not been started.
+     */
+    public int getCurrentState()
+    {
+        return m_state;
+    }
+
+    /**
+     * Get the simulator of the submachine currently being executed, if any.
+     * @return The simulator of the active submachine, or null.
+     */
+    public CompiledSimulator getChild()
+    {
+        return m_state != -1 && m_machine.getSubmachine(m_state) != null? m_child : null;
+    }
+
+    /**
+     * Get the number of steps taken since the machine was last reset.
+     * @return The number of steps taken.
+     */
+    public long getStepCount()
+    {
+        return m_steps;
+    }
+
+    /** 
+     * Determine if the machine has finished executing.
+     * @return true if the machine is has finished executing, false otherwise.
+     */
+    public boolean isHalted()
+    {
+        if (m_state == -1)
+        {
+            return false;
+        }
+        return m_machine.getType() == BinaryMachineFormat.TYPE_DFSA?
+               m_tape.read() == Tape.BLANK_SYMBOL : m_machine.isFinalState(m_state);
+    }
+
+    /**
+     * Perform an iteration of the machine. If the machine is stopped, loads the start state.
+     * @throws ComputationCompletedException If execution halts successfully.
+     * @throws ComputationFailedException If execution halts unexpectedly.
+     */
+    public void step() throws ComputationCompletedException, ComputationFailedException
+    {
+        m_steps++;
+
+        // Machine has just started
+        if (m_state == -1)
+        {
+            m_state = m_machine.getStartState();
+            if (m_state == -1)
+            {
+                throw new ComputationFailedException("No start state");
+            }
+            return;
+        }
+
+        CompiledMachine sub = m_machine.getSubmachine(m_state);
+        if (sub == null && m_machine.getSubmachineReference(m_state) != null)
+        {
+            throw new ComputationFailedException(String.format(
+                    "The submachine of state %s is missing from the library",
+                    m_machine.getLabel(m_state)));
+        }
+        if (sub != null)
+        {
+            if (m_child == null || m_child.m_machine != sub)
+            {
+                m_child = new CompiledSimulator(sub, m_tape);
+            }
+            // Continue submachine execution until it halts, then carry on in this machine
+            if (!m_child.isHalted())
+            {
+                try
+                {
+                    m_child.step();
+                }
+                catch (ComputationCompletedException e)
+                {
+                    // Submachines should not complete the computation
+                }
+                return;
+            }
+            m_child.resetMachine();
+        }
+
+        int trans = m_machine.getNextTransition(m_state, m_tape.read());
+        if (m_machine.getType() == BinaryMachineFormat.TYPE_DFSA)
+        {
+            stepDFSA(trans);
+        }
+        else
+        {
+            stepTM(trans);
+        }
+    }
+
+    /**
+     * Runs until the machine halts, or a step limit is reached.
+     * @param maxSteps The maximum number of iterations allowed for the computation. A value of zero
+     *                 represents no limit.
+     * @return The number of steps taken.
+     * @throws ComputationCompletedException If execution halts successfully.
+     * @throws ComputationFailedException If execution halts unexpectedly.
+     */
+    public long run(long maxSteps) throws ComputationCompletedException, ComputationFailedException
+    {
+        long start = m_steps;
+        while (maxSteps == 0 || m_steps - start < maxSteps)
+        {
+            step();
+        }
+        return m_steps - start;
+    }
+
+    /** 
+     * End the current computation, if any, and reset to initial state.
+     */
+    public void resetMachine()
+    {
+        m_state = -1;
+        m_steps = 0;
+        if (m_child != null)
+        {
+            m_child.resetMachine();
+        }
+    }
+
+    /**
+     * Perform an iteration of a Turing machine; see TM_Machine.step().
+     * @param trans The transition to take, or -1 if none is defined.
+     * @throws ComputationCompletedException If, after this step, the machine halts.  
+     * @throws ComputationFailedException If the machine halts unexpectedly.
+     */
+    private void stepTM(int trans) throws ComputationCompletedException, ComputationFailedException
+    {
+        // Not finished yet
+        if (trans != -1)
+        {
+            int dir = m_machine.getTransitionDirection(trans);
+            if (dir == -1)
+            {
+                m_tape.headLeft();
+            }
+            else if (dir == 1)
+            {
+                m_tape.headRight();
+            }
+            else if (m_machine.getTransitionOutput(trans) != Machine.EMPTY_ACTION_SYMBOL)
+            {
+                m_tape.write(m_machine.getTransitionOutput(trans));
+            }
+            m_state = m_machine.getTransitionTo(trans);
+            return;
+        }
+
+        boolean parked = m_tape.isParked();
+        boolean accepted = m_machine.isFinalState(m_state);
+        if (parked && accepted)
+        {
+            throw new ComputationCompletedException("The machine halted with the r/w head parked");
+        }
+        else if (!parked && !accepted)
+        {
+            throw new ComputationFailedException(
+                    "The machine halted, but the r/w head was not parked, " +
+                    "and the last state was not a final state");
+        }
+        else if (!parked)
+        {
+            throw new ComputationFailedException(
+                    "The machine halted in a final state, but the r/w head was not parked");
+        }
+        throw new ComputationFailedException(
+                "The machine halted with the r/w head parked, but was not in a final state");
+    }
+
+    /**
+     * Perform an iteration of a DFSA; see DFSA_Machine.step().
+     * @param trans The transition to take, or -1 if none is defined.
+     * @throws ComputationCompletedException If, after this step, the machine halts.  
+     * @throws ComputationFailedException If the machine halts unexpectedly.
+     */
+    private void stepDFSA(int trans) throws ComputationCompletedException, ComputationFailedException
+    {
+        // Lambda edges can be run even if nothing on the tape
+        if (trans != -1 && m_machine.getTransitionInput(trans) == Machine.EMPTY_INPUT_SYMBOL)
+        {
+            m_state = m_machine.getTransitionTo(trans);
+        }
+        else if (m_tape.read() == Tape.BLANK_SYMBOL)
+        {
+            // For convenience, reset after finishing
+            m_tape.resetRWHead();
+            throw new ComputationCompletedException(m_machine.isFinalState(m_state)?
+                    "The input string was accepted" : "The input string was not accepted");
+        }
+        else if (trans == -1)
+        {
+            throw new ComputationFailedException("Undefined transition");
+        }
+        else
+        {
+            m_tape.headRight();
+            m_state = m_machine.getTransitionTo(trans);
+        }
+    }
+
+    /**
+     * Run a machine file without the graphical interface, and print the result. The compiled
+     * machine is taken from the CompiledMachineCache, so repeated runs of an unchanged machine do
+     * not compile or validate it again.
+     * @param args The machine file, followed optionally by the initial tape contents and the
+     *             maximum number of steps.
+     */
+    public static void main(String[] args)
+    {
+        if (args.length < 1 || args.length > 3)
+        {
+            System.err.println("Usage: CompiledSimulator <machine> [tape] [max steps]");
+            System.exit(1);
+        }
+        try
+        {
+            CompiledMachine machine = CompiledMachineCache.getInstance().load(new File(args[0]));
+            if (machine.getProblem() != null)
+            {
+                System.err.printf("Warning: %s\n", machine.getProblem());
+            }
+            Tape tape = new CA_Tape(args.length > 1? args[1] : "");
+            CompiledSimulator sim = new CompiledSimulator(machine, tape);
+            try
+            {
+                sim.run(args.length > 2? Long.parseLong(args[2]) : 0);
+                System.out.printf("Step limit reached after %d steps\n", sim.getStepCount());
+            }
+            catch (ComputationCompletedException e)
+            {
+                System.out.printf("Finished after %d steps: %s\n", sim.getStepCount(), e.getMessage());
+            }
+            catch (ComputationFailedException e)
+            {
+                System.out.printf("Failed after %d steps: %s\n", sim.getStepCount(), e.getMessage());
+            }
+            System.out.println(tape.getPartialString(0, tape.getLength()));
+        }
+        catch (Exception e)
+        {
+            System.err.printf("Error running %s: %s\n", args[0], e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The machine being simulated.
+     */
+    private CompiledMachine m_machine;
+
+    /**
+     * The current tape.
+     */
+    private Tape m_tape;
+
+    /**
+     * The index of the current state, or -1.
+     */
+    private int m_state;
+
+    /**
+     * The simulator for the most recently entered submachine.
+     */
+    private CompiledSimulator m_child;
+
+    /**
+     * The number of steps taken since the last reset.
+     */
+    private long m_steps;
+}
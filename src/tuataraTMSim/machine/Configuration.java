@@ -0,0 +1,238 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+/**
+ * A record of the configuration of a machine at one step of a simulation: the current state, and
+ * the tape around the read/write head. Recording a configuration copies at most a fixed window of
+ * cells either side of the head, so its cost does not depend on the length of the tape; the
+ * configuration is only formatted into text when it is displayed.
+ *
+ * Configurations of machines without a tape to display, such as DFSAs, consist of the state
+ * alone.
+ */
+public class Configuration
+{
+    /**
+     * System property specifying the number of cells either side of the read/write head recorded
+     * in a configuration.
+     */
+    public static final String WINDOW_PROPERTY = "tuataraTMSim.configWindow";
+
+    /**
+     * The number of cells either side of the read/write head recorded in a configuration, if not
+     * otherwise specified.
+     */
+    public static final int DEFAULT_WINDOW = 32;
+
+    /**
+     * Window size which records the whole of the tape.
+     */
+    public static final int WHOLE_TAPE = 0;
+
+    /**
+     * Symbol displayed in place of an empty string.
+     */
+    public static final char LAMBDA = '\u03BB';
+
+    /**
+     * Symbol displayed in place of cells outside of the recorded window.
+     */
+    public static final char ELLIPSIS = '\u2026';
+
+    /**
+     * Get the window size to use for new simulators.
+     * @return The value of the WINDOW_PROPERTY system property, or DEFAULT_WINDOW if it is not
+     *         set.
+     */
+    public static int getDefaultWindow()
+    {
+        return Math.max(WHOLE_TAPE, Integer.getInteger(WINDOW_PROPERTY, DEFAULT_WINDOW));
+    }
+
+    /**
+     * Creates a new instance of Configuration, consisting of a state alone.
+     * @param label The label of the current state.
+     */
+    public Configuration(String label)
+    {
+        m_label = label;
+        m_cells = null;
+        m_head = 0;
+        m_begin = 0;
+        m_length = 0;
+        m_tapeVersion = 0;
+    }
+
+    /**
+     * Creates a new instance of Configuration, recording the tape around the read/write head.
+     * @param label The label of the current state.
+     * @param tape The tape being simulated.
+     * @param window The number of cells to record either side of the read/write head, or
+     *               WHOLE_TAPE to record the whole tape.
+     */
+    public Configuration(String label, Tape tape, int window)
+    {
+        m_label = label;
+        m_head = tape.headLocation();
+        m_length = tape.getLength();
+        m_tapeVersion = tape.getVersion();
+
+        // The tape to the left of the head, and the input from the head to the end of the string
+        int end = Math.max(m_head, m_length);
+        if (window > WHOLE_TAPE)
+        {
+            m_begin = Math.max(0, m_head - window);
+            end = Math.min(end, m_head + window);
+        }
+        else
+        {
+            m_begin = 0;
+        }
+        m_cells = new char[end - m_begin];
+        tape.getSymbols(m_begin, m_cells, 0, m_cells.length);
+    }
+
+    /**
+     * Get the label of the current state.
+     * @return The label of the current state.
+     */
+    public String getLabel()
+    {
+        return m_label;
+    }
+
+    /**
+     * Get the location of the read/write head.
+     * @return The location of the read/write head, or 0 if no tape was recorded.
+     */
+    public int getHeadLocation()
+    {
+        return m_head;
+    }
+
+    /**
+     * Get the version of the tape when this configuration was recorded.
+     * @return The version of the tape, or 0 if no tape was recorded.
+     */
+    public long getTapeVersion()
+    {
+        return m_tapeVersion;
+    }
+
+    /**
+     * Determine the number of characters in the text of this configuration, without formatting it.
+     * @return The length of toString().
+     */
+    public int getTextLength()
+    {
+        if (m_cells == null)
+        {
+            return m_label.length();
+        }
+        int left = m_head - m_begin, right = m_cells.length - left;
+        return "(, , )".length() + m_label.length()
+            + Math.max(left, 1) + (m_begin > 0? 1 : 0)
+            + Math.max(right, 1) + (m_begin + m_cells.length < m_length? 1 : 0);
+    }
+
+    /**
+     * Format this configuration as (left, state, right), where left is the tape to the left of the
+     * read/write head, and right is the tape from the head to the end of the string. Cells outside
+     * of the recorded window are elided.
+     * @param sb The buffer to append to.
+     * @return sb.
+     */
+    public StringBuilder appendTo(StringBuilder sb)
+    {
+        if (m_cells == null)
+        {
+            return sb.append(m_label);
+        }
+        int left = m_head - m_begin, right = m_cells.length - left;
+
+        sb.append('(');
+        if (m_begin > 0)
+        {
+            sb.append(ELLIPSIS);
+        }
+        if (left == 0)
+        {
+            sb.append(LAMBDA);
+        }
+        sb.append(m_cells, 0, left);
+        sb.append(", ").append(m_label).append(", ");
+        sb.append(m_cells, left, right);
+        if (right == 0)
+        {
+            sb.append(LAMBDA);
+        }
+        if (m_begin + m_cells.length < m_length)
+        {
+            sb.append(ELLIPSIS);
+        }
+        return sb.append(')');
+    }
+
+    /**
+     * Format this configuration as text.
+     * @return The text of this configuration.
+     */
+    public String toString()
+    {
+        return appendTo(new StringBuilder(getTextLength())).toString();
+    }
+
+    /**
+     * The label of the current state.
+     */
+    private final String m_label;
+
+    /**
+     * The recorded cells, or null if no tape was recorded.
+     */
+    private final char[] m_cells;
+
+    /**
+     * The location of the first recorded cell.
+     */
+    private final int m_begin;
+
+    /**
+     * The location of the read/write head.
+     */
+    private final int m_head;
+
+    /**
+     * The length of the string on the tape.
+     */
+    private final int m_length;
+
+    /**
+     * The version of the tape when this configuration was recorded.
+     */
+    private final long m_tapeVersion;
+}
@@ -84,61 +84,93 @@ public class DFSA_Machine extends Machine<DFSA_Action, DFSA_Transition, DFSA_Sta
         int startCount = 0;
         for (DFSA_State state : m_states)
         {
-            // Ensure a unique start state; note we use int to reduce LOC
-            if (state.isStartState() && startCount++ > 0)
+            if (state.isStartState())
             {
-                return "Machine has more than one start state";
+                startCount++;
             }
 
-            // Check to see if there are any transitions with the same input
-            HashSet<Character> matched = new HashSet<Character>();
-            for (DFSA_Transition trans : state.getTransitions())
+            String result = validateState(state);
+            if (result != null)
             {
-                // Get the input char to match
-                char inp = trans.getAction().getInputChar();
+                return result;
+            }
+        }
+
+        return validateStateCounts(startCount, 0);
+    }
+
+    /**
+     * Determine whether a single state, and the transitions leaving it, are valid in terms of the
+     * formal definition of this machine.
+     * @param state The state to check.
+     * @return null if the state is valid, otherwise a description of the problem.
+     */
+    public String validateState(DFSA_State state)
+    {
+        // Check to see if there are any transitions with the same input
+        HashSet<Character> matched = new HashSet<Character>();
+        for (DFSA_Transition trans : state.getTransitions())
+        {
+            // Get the input char to match
+            char inp = trans.getAction().getInputChar();
 
-                // Undefined input
-                if (inp == UNDEFINED_SYMBOL)
-                {
-                    return String.format("Transition %s has undefined input", trans.toString());
-                }
-                // Lambda edge
-                if (inp == EMPTY_INPUT_SYMBOL)
-                {
-                    return String.format("Transition %s uses a lambda edge", trans.toString());
-                }
-                // Duplicate
-                if (matched.contains(inp))
-                {
-                    return String.format("State %s has more than one transition with input %c", 
-                                         state.getLabel(), inp);
-                }
-                // Input not in alphabet
-                if (!m_alphabet.containsSymbol(inp))
-                {
-                    return String.format("Transition %s has an input which is not in the alphabet",
-                                         trans.toString());
-                }
-                // Keep track of this symbol
-                matched.add(inp);
+            // Undefined input
+            if (inp == UNDEFINED_SYMBOL)
+            {
+                return String.format("Transition %s has undefined input", trans.toString());
+            }
+            // Lambda edge
+            if (inp == EMPTY_INPUT_SYMBOL)
+            {
+                return String.format("Transition %s uses a lambda edge", trans.toString());
+            }
+            // Duplicate
+            if (matched.contains(inp))
+            {
+                return String.format("State %s has more than one transition with input %c", 
+                                     state.getLabel(), inp);
             }
+            // Input not in alphabet
+            if (!m_alphabet.containsSymbol(inp))
+            {
+                return String.format("Transition %s has an input which is not in the alphabet",
+                                     trans.toString());
+            }
+            // Keep track of this symbol
+            matched.add(inp);
+        }
 
-            // Ensure we matched the entire alphabet
-            for (char c : m_alphabet.getSymbols())
+        // Ensure we matched the entire alphabet
+        for (char c : m_alphabet.getSymbols())
+        {
+            if (!matched.contains(c))
             {
-                if (!matched.contains(c))
-                {
-                    return String.format("State %s does not have a transition for input %c", 
-                                         state.getLabel(), c);
-                }
+                return String.format("State %s does not have a transition for input %c", 
+                                     state.getLabel(), c);
             }
         }
+        return null;
+    }
+
+    /**
+     * Determine whether the number of start states is valid; a DFSA requires a unique start state,
+     * and may have any number of final states.
+     * @param startCount The number of start states.
+     * @param finalCount The number of final states.
+     * @return null if the counts are valid, otherwise a description of the problem.
+     */
+    public String validateStateCounts(int startCount, int finalCount)
+    {
+        // Ensure a unique start state
+        if (startCount > 1)
+        {
+            return "Machine has more than one start state";
+        }
         // Did we find a single start state
         if (startCount == 0)
         {
             return "Machine has no start state";
         }
-
         return null;
     }
 
@@ -230,6 +262,7 @@ public class DFSA_Machine extends Machine<DFSA_Action, DFSA_Transition, DFSA_Sta
     public void addState(DFSA_State state)
     {
         m_states.add(state);
+        addToIndex(state);
     }
 
     /**
@@ -241,6 +274,7 @@ public class DFSA_Machine extends Machine<DFSA_Action, DFSA_Transition, DFSA_Sta
     {
         if (m_states.remove(state))
         {
+            removeFromIndex(state);
             removeTransitionsConnectedTo(state);
             return true;
         }
@@ -255,6 +289,7 @@ public class DFSA_Machine extends Machine<DFSA_Action, DFSA_Transition, DFSA_Sta
     {
         m_transitions.add(transition);
         transition.getFromState().addTransition(transition);
+        addToIndex(transition);
     }
 
     /**
@@ -267,6 +302,7 @@ public class DFSA_Machine extends Machine<DFSA_Action, DFSA_Transition, DFSA_Sta
         if (m_transitions.remove(transition))
         {
             transition.getFromState().removeTransition(transition);
+            removeFromIndex(transition);
             return true;
         }
         return false;
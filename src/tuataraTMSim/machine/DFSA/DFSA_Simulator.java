@@ -94,12 +94,12 @@ public class DFSA_Simulator extends Simulator<DFSA_Action, DFSA_Transition, DFSA
     }
  
     /**
-     * Gets a string representation of the current configuration of the machine.
-     * @return A string representation of the current configuration.
+     * Record the current configuration of the machine, which is just the current state.
+     * @return The current configuration.
      */
-    public String getConfiguration()
+    public Configuration captureConfiguration()
     {
-        return m_state.getLabel();
+        return new Configuration(m_state.getLabel());
     }
  
     /**
@@ -107,7 +107,7 @@ public class DFSA_Simulator extends Simulator<DFSA_Action, DFSA_Transition, DFSA
      * @throws ComputationCompletedException If execution halts successfully.
      * @throws ComputationFailedException If execution halts unexpectedly.
      */
-    public void step() 
+    protected void stepMachine() 
         throws ComputationCompletedException, ComputationFailedException
     {
         // Machine has just started
@@ -151,15 +151,15 @@ public class DFSA_Simulator extends Simulator<DFSA_Action, DFSA_Transition, DFSA
             {
                 // t could be null if the user cancels, if so this simply halts execution
                 DFSA_Transition t = Global.promptSelection(next, "Please select which transition to use, if any", DFSA_Transition::toString);
-                m_state = m_machine.step(m_tape, m_state, t);
+                m_state = takeTransition(m_state, t);
             }
             else if (next.size() == 0)
             {
-                m_state = m_machine.step(m_tape, m_state, null);
+                m_state = takeTransition(m_state, null);
             }
             else if (next.size() == 1)
             {
-                m_state = m_machine.step(m_tape, m_state, next.get(0));
+                m_state = takeTransition(m_state, next.get(0));
             }
             else
             {
@@ -168,7 +168,7 @@ public class DFSA_Simulator extends Simulator<DFSA_Action, DFSA_Transition, DFSA
                 {
                     throw new ComputationFailedException("No transition chosen");
                 }
-                m_state = m_machine.step(m_tape, m_state, t);
+                m_state = takeTransition(m_state, t);
             }
         }
     }
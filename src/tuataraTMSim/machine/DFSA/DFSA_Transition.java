@@ -68,8 +68,8 @@ public class DFSA_Transition extends Transition<DFSA_Action, DFSA_State, DFSA_Ma
      */
     public Rectangle2D getInputSymbolBoundingBox(Graphics g)
     {
-        Point2D mid = getActionLocation();
-        FontMetrics metric = g.getFontMetrics(g.getFont());
+        Point2D mid = getGeometry().actionLocation;
+        FontMetrics metric = GlyphCache.getMetrics(g);
         int width = metric.charWidth('_');
         int height = metric.getAscent();
         return new Rectangle2D.Double(
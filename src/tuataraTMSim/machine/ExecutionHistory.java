@@ -0,0 +1,521 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Records the steps of a simulation in memory, so that the simulation can be stepped backwards,
+ * or jumped to any recorded step. Once attached to a simulator as a step observer, each step
+ * appends an entry to an undo log: the location of the read/write head, the state, and the symbol
+ * under the head, both before and after the step.
+ *
+ * The log is divided into segments, each beginning with a checkpoint of the whole tape. A jump is
+ * performed either by undoing or redoing steps from the current step, or by restoring the nearest
+ * earlier checkpoint and redoing steps from there, whichever is shorter; so a jump costs at most
+ * one checkpoint restore and the replay of one segment. A new segment is begun every checkpoint
+ * spacing steps, but no more often than the length of the tape in steps, so that checkpoints use
+ * no more memory than the log itself. Once the log holds more steps than its capacity, the oldest
+ * segments are discarded.
+ *
+ * The history is cleared if the tape or current state is changed other than by a step. Steps of
+ * submachines are recorded, but since the states of submachines are not, the history cannot go
+ * back past a step which ran a submachine.
+ */
+public class ExecutionHistory implements StepObserver
+{
+    /**
+     * System property specifying the maximum number of steps held by a history.
+     */
+    public static final String CAPACITY_PROPERTY = "tuataraTMSim.historySteps";
+
+    /**
+     * System property specifying the number of steps between checkpoints.
+     */
+    public static final String SPACING_PROPERTY = "tuataraTMSim.historySpacing";
+
+    /**
+     * The maximum number of steps held by a history, if not otherwise specified.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    /**
+     * The number of steps between checkpoints, if not otherwise specified.
+     */
+    public static final int DEFAULT_SPACING = 1 << 12;
+
+    /**
+     * Creates a new instance of ExecutionHistory, with the capacity and spacing given by the
+     * CAPACITY_PROPERTY and SPACING_PROPERTY system properties, or their defaults.
+     * @param sim The simulator whose steps are recorded.
+     */
+    public ExecutionHistory(Simulator sim)
+    {
+        this(sim, Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY),
+             Integer.getInteger(SPACING_PROPERTY, DEFAULT_SPACING));
+    }
+
+    /**
+     * Creates a new instance of ExecutionHistory. The history must be attached to the simulator
+     * with Simulator.addStepObserver() to record steps.
+     * @param sim The simulator whose steps are recorded.
+     * @param capacity The maximum number of steps held.
+     * @param spacing The number of steps between checkpoints.
+     */
+    public ExecutionHistory(Simulator sim, int capacity, int spacing)
+    {
+        m_sim = sim;
+        m_capacity = Math.max(1, capacity);
+        m_spacing = Math.max(1, spacing);
+    }
+
+    /**
+     * Get the step which the simulation is at.
+     * @return The current step.
+     */
+    public synchronized long getStep()
+    {
+        return m_step;
+    }
+
+    /**
+     * Get the earliest step which can be jumped to.
+     * @return The earliest recorded step.
+     */
+    public synchronized long getFirstStep()
+    {
+        return m_segments.isEmpty()? m_step : m_segments.get(0).first;
+    }
+
+    /**
+     * Get the latest step which can be jumped to. This is later than the current step if the
+     * simulation has been stepped backwards.
+     * @return The latest recorded step.
+     */
+    public synchronized long getLastStep()
+    {
+        return m_segments.isEmpty()? m_step : last().end();
+    }
+
+    /**
+     * Determine if the simulation can be stepped backwards.
+     * @return true if there is an earlier step to go back to, false otherwise.
+     */
+    public synchronized boolean canStepBack()
+    {
+        return isConsistent() && m_step > getFirstStep();
+    }
+
+    /**
+     * Step the simulation backwards by one step. Must not be called while the simulation is
+     * stepping.
+     * @throws IllegalStateException If there is no earlier step to go back to.
+     */
+    public synchronized void stepBack()
+    {
+        jumpTo(m_step - 1);
+    }
+
+    /**
+     * Restore the simulation to the configuration it had at a recorded step. Must not be called
+     * while the simulation is stepping.
+     * @param step The step to jump to, between getFirstStep() and getLastStep().
+     * @throws IllegalStateException If the step has not been recorded, or the simulation has
+     *                               changed since it was.
+     */
+    public synchronized void jumpTo(long step)
+    {
+        if (!isConsistent())
+        {
+            clear();
+        }
+        if (step < getFirstStep() || step > getLastStep())
+        {
+            throw new IllegalStateException(String.format(
+                        "Step %d has not been recorded; steps %d to %d are available",
+                        step, getFirstStep(), getLastStep()));
+        }
+
+        // The target configuration; state and head are those before the step at the target
+        Segment target = segmentOf(step);
+        Object state = step < target.end()? target.states[(int)(step - target.first)] : m_lastState;
+        int head = step < target.end()? target.heads[(int)(step - target.first)] : m_lastHead;
+        if (state != null && !m_sim.getMachine().getStates().contains(state))
+        {
+            throw new IllegalStateException("The machine has changed since the step was recorded");
+        }
+
+        Tape tape = m_sim.getTape();
+        if (Math.abs(m_step - step) <= step - target.first)
+        {
+            // Undo or redo from the current step
+            for (long k = m_step - 1; k >= step; k--)
+            {
+                Segment s = segmentOf(k);
+                int i = (int)(k - s.first);
+                tape.setSymbols(s.heads[i], s.before, i, 1);
+            }
+            for (long k = m_step; k < step; k++)
+            {
+                Segment s = segmentOf(k);
+                int i = (int)(k - s.first);
+                tape.setSymbols(s.heads[i], s.after, i, 1);
+            }
+        }
+        else
+        {
+            // Restore the checkpoint of the segment, and redo from there
+            tape.clearTape();
+            tape.setSymbols(0, target.tape, 0, target.tape.length);
+            for (int i = 0; i < step - target.first; i++)
+            {
+                tape.setSymbols(target.heads[i], target.after, i, 1);
+            }
+        }
+        tape.setHeadLocation(head);
+        m_sim.setCurrentState((State)state);
+
+        m_step = step;
+        m_state = state;
+        m_tape = tape;
+        m_version = tape.getVersion();
+    }
+
+    /**
+     * Discard every recorded step. The current step is kept.
+     */
+    public synchronized void clear()
+    {
+        m_segments.clear();
+        m_size = 0;
+        m_tape = null;
+    }
+
+    /**
+     * Note the configuration of the simulation before it steps. If the simulation has changed
+     * since the last step, the history is cleared; if it was stepped backwards, the steps after the
+     * current step are discarded.
+     * @param sim The simulator about to step.
+     */
+    public synchronized void beforeStep(Simulator sim)
+    {
+        Tape tape = sim.getTape();
+        Object state = sim.getCurrentState();
+        if (!isConsistent())
+        {
+            clear();
+            // A new run begins at step zero
+            if (state == null)
+            {
+                m_step = 0;
+            }
+        }
+        if (m_step < getLastStep())
+        {
+            truncate();
+        }
+
+        // Begin a new segment if the last is full, and long enough to pay for the checkpoint
+        Segment s = m_segments.isEmpty()? null : last();
+        int length = tape.getLength();
+        if (s == null || (s.count >= m_spacing && s.count >= length))
+        {
+            s = new Segment(m_step, tape, length);
+            m_segments.add(s);
+        }
+
+        m_head = tape.headLocation();
+        m_symbol = tape.read();
+        m_state = state;
+    }
+
+    /**
+     * Record the effects of a step.
+     * @param sim The simulator which has stepped.
+     * @param taken The transition taken by the step, or null if no transition was taken.
+     */
+    public synchronized void afterStep(Simulator sim, Transition taken)
+    {
+        Tape tape = sim.getTape();
+        Object state = sim.getCurrentState();
+        // Steps which failed without doing anything are not recorded
+        if (taken == null && state == m_state && tape.getVersion() == m_version)
+        {
+            return;
+        }
+
+        // The symbol written to the cell which was under the head
+        char written = m_symbol;
+        if (tape.headLocation() == m_head)
+        {
+            written = tape.read();
+        }
+        else if (m_head < tape.getLength())
+        {
+            tape.getSymbols(m_head, m_cell, 0, 1);
+            written = m_cell[0];
+        }
+
+        // Submachine states are not recorded, so the history cannot go back past this step
+        boolean submachine = m_state != null && sim.getMachine().getSubmachine((State)m_state) != null;
+
+        last().add(m_head, m_symbol, written, m_state);
+        m_size++;
+        m_step++;
+        m_lastHead = tape.headLocation();
+        m_lastState = state;
+        if (submachine)
+        {
+            clear();
+        }
+        m_state = state;
+        m_tape = tape;
+        m_version = tape.getVersion();
+
+        // Discard the oldest segments once over capacity
+        while (m_size > m_capacity && m_segments.size() > 1)
+        {
+            m_size -= m_segments.remove(0).count;
+        }
+    }
+
+    /**
+     * Determine if the simulation is in the configuration recorded for the current step.
+     * @return true if the simulation has not been changed other than by a step, false otherwise.
+     */
+    private boolean isConsistent()
+    {
+        return m_tape != null && m_sim.getTape() == m_tape && m_tape.getVersion() == m_version
+            && m_sim.getCurrentState() == m_state;
+    }
+
+    /**
+     * Get the most recent segment.
+     * @return The last segment.
+     */
+    private Segment last()
+    {
+        return m_segments.get(m_segments.size() - 1);
+    }
+
+    /**
+     * Find the segment holding a step.
+     * @param step A recorded step.
+     * @return The last segment beginning at or before the step.
+     */
+    private Segment segmentOf(long step)
+    {
+        int low = 0, high = m_segments.size() - 1;
+        while (low < high)
+        {
+            int mid = (low + high + 1) >>> 1;
+            if (m_segments.get(mid).first <= step)
+            {
+                low = mid;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+        return m_segments.get(low);
+    }
+
+    /**
+     * Discard every step after the current step.
+     */
+    private void truncate()
+    {
+        while (m_segments.size() > 1 && last().first > m_step)
+        {
+            m_size -= m_segments.remove(m_segments.size() - 1).count;
+        }
+        Segment s = last();
+        int count = (int)(m_step - s.first);
+        m_size -= s.count - count;
+        s.count = count;
+        m_lastHead = m_sim.getTape().headLocation();
+        m_lastState = m_state;
+    }
+
+    /**
+     * A checkpoint of the tape, followed by the steps which succeeded it.
+     */
+    private static class Segment
+    {
+        /**
+         * Creates a new segment, beginning with a checkpoint of a tape.
+         * @param first The step at which the segment begins.
+         * @param tape The tape to checkpoint.
+         * @param length The length of the string on the tape.
+         */
+        public Segment(long first, Tape tape, int length)
+        {
+            this.first = first;
+            this.tape = new char[length];
+            tape.getSymbols(0, this.tape, 0, length);
+        }
+
+        /**
+         * Get the step after the last step of the segment.
+         * @return The end of the segment.
+         */
+        public long end()
+        {
+            return first + count;
+        }
+
+        /**
+         * Add a step to the segment.
+         * @param head The location of the head before the step.
+         * @param before The symbol under the head before the step.
+         * @param after The symbol in the same cell after the step.
+         * @param state The state before the step.
+         */
+        public void add(int head, char before, char after, Object state)
+        {
+            if (count == heads.length)
+            {
+                int capacity = Math.max(16, count * 2);
+                heads = Arrays.copyOf(heads, capacity);
+                this.before = Arrays.copyOf(this.before, capacity);
+                this.after = Arrays.copyOf(this.after, capacity);
+                states = Arrays.copyOf(states, capacity);
+            }
+            heads[count] = head;
+            this.before[count] = before;
+            this.after[count] = after;
+            states[count] = state;
+            count++;
+        }
+
+        /**
+         * The step at which the segment begins.
+         */
+        public final long first;
+
+        /**
+         * The tape at the beginning of the segment, up to the end of its string.
+         */
+        public final char[] tape;
+
+        /**
+         * The number of steps in the segment.
+         */
+        public int count;
+
+        /**
+         * The location of the head before each step.
+         */
+        public int[] heads = new int[0];
+
+        /**
+         * The symbol under the head before each step.
+         */
+        public char[] before = new char[0];
+
+        /**
+         * The symbol in the same cell after each step.
+         */
+        public char[] after = new char[0];
+
+        /**
+         * The state before each step.
+         */
+        public Object[] states = new Object[0];
+    }
+
+    /**
+     * The simulator whose steps are recorded.
+     */
+    private final Simulator m_sim;
+
+    /**
+     * The maximum number of steps held.
+     */
+    private final int m_capacity;
+
+    /**
+     * The number of steps between checkpoints.
+     */
+    private final int m_spacing;
+
+    /**
+     * The recorded segments, oldest first.
+     */
+    private final ArrayList<Segment> m_segments = new ArrayList<Segment>();
+
+    /**
+     * The number of steps held across every segment.
+     */
+    private long m_size;
+
+    /**
+     * The current step.
+     */
+    private long m_step;
+
+    /**
+     * The tape as of the current step, or null if nothing has been recorded.
+     */
+    private Tape m_tape;
+
+    /**
+     * The version of the tape as of the current step.
+     */
+    private long m_version;
+
+    /**
+     * The state as of the current step.
+     */
+    private Object m_state;
+
+    /**
+     * The location of the head after the last recorded step.
+     */
+    private int m_lastHead;
+
+    /**
+     * The state after the last recorded step.
+     */
+    private Object m_lastState;
+
+    /**
+     * The location of the head before the step in progress.
+     */
+    private int m_head;
+
+    /**
+     * The symbol under the head before the step in progress.
+     */
+    private char m_symbol;
+
+    /**
+     * Buffer for reading a single cell.
+     */
+    private final char[] m_cell = new char[1];
+}
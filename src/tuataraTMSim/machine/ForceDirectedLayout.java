@@ -0,0 +1,630 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A force-directed layout, after Fruchterman and Reingold: states repel each other, transitions
+ * pull the states they join together, and the layout settles as the distance each state may move
+ * in an iteration cools. Repulsion between every pair of states is approximated with a Barnes-Hut
+ * quadtree, in which distant groups of states act as a single mass, so that each iteration takes
+ * O(n log n) time; the forces are computed in parallel across the available processors.
+ *
+ * States which share a position, as imported and generated machines often do, are first scattered
+ * around that position, so that the forces between them are defined.
+ */
+public class ForceDirectedLayout extends MachineLayout
+{
+    /**
+     * The preferred distance between states joined by a transition.
+     */
+    public static final double IDEAL_DISTANCE = 120;
+
+    /**
+     * The number of iterations of the layout.
+     */
+    public static final int ITERATIONS = 200;
+
+    /**
+     * The Barnes-Hut accuracy parameter; a group of states is treated as a single mass when its
+     * size is less than THETA times its distance. Smaller values are more accurate, and slower.
+     */
+    public static final double THETA = 1.0;
+
+    /**
+     * Strength of the pull of every state towards the center of the layout, which keeps
+     * unconnected parts of the machine from drifting apart.
+     */
+    public static final double GRAVITY = 0.02;
+
+    /**
+     * The number of states below which forces are computed on a single thread.
+     */
+    public static final int PARALLEL_THRESHOLD = 2000;
+
+    /**
+     * Creates a new instance of ForceDirectedLayout, capturing the current layout of a machine.
+     * @param machine The machine to lay out.
+     */
+    public ForceDirectedLayout(Machine machine)
+    {
+        super(machine);
+    }
+
+    /**
+     * Get the friendly name of this layout.
+     * @return The friendly name of this layout.
+     */
+    public String getName()
+    {
+        return "Auto Layout";
+    }
+
+    /**
+     * Compute the layout.
+     */
+    public void compute()
+    {
+        final int n = m_states.length;
+        if (n == 0)
+        {
+            return;
+        }
+        scatterCoincident();
+
+        final double[] dispX = new double[n];
+        final double[] dispY = new double[n];
+        final BarnesHutTree tree = new BarnesHutTree(n);
+        int threads = n < PARALLEL_THRESHOLD? 1 : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = threads == 1? null : Executors.newFixedThreadPool(threads,
+            new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "Layout");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+        try
+        {
+            // Split the states into more chunks than threads, to balance uneven work
+            int chunks = threads == 1? 1 : threads * 4;
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (int c = 0; c < chunks; c++)
+            {
+                final int begin = (int)((long)n * c / chunks);
+                final int end = (int)((long)n * (c + 1) / chunks);
+                tasks.add(new Callable<Void>()
+                {
+                    public Void call()
+                    {
+                        int[] stack = new int[64];
+                        for (int i = begin; i < end; i++)
+                        {
+                            stack = tree.repulse(i, m_x, m_y, dispX, dispY, stack);
+                        }
+                        return null;
+                    }
+                });
+            }
+
+            double start = IDEAL_DISTANCE * Math.sqrt(n) / 4;
+            for (int iteration = 0; iteration < ITERATIONS; iteration++)
+            {
+                double temperature = start * (1 - (double)iteration / ITERATIONS) + 1;
+                Arrays.fill(dispX, 0);
+                Arrays.fill(dispY, 0);
+
+                tree.build(m_x, m_y);
+                if (pool == null)
+                {
+                    tasks.get(0).call();
+                }
+                else
+                {
+                    for (Future<Void> f : pool.invokeAll(tasks))
+                    {
+                        f.get();
+                    }
+                }
+                attract(dispX, dispY);
+                move(dispX, dispY, temperature);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException(e.getCause());
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            if (pool != null)
+            {
+                pool.shutdownNow();
+            }
+        }
+
+        normalize();
+        routeTransitions();
+    }
+
+    /**
+     * Scatter each group of states which share a position randomly over a square around it, large
+     * enough to give each state its ideal distance from the others.
+     */
+    private void scatterCoincident()
+    {
+        HashMap<Long, List<Integer>> groups = new HashMap<Long, List<Integer>>();
+        for (int i = 0; i < m_states.length; i++)
+        {
+            Long key = ((long)Math.round(m_x[i]) << 32) ^ (Math.round(m_y[i]) & 0xffffffffL);
+            List<Integer> group = groups.get(key);
+            if (group == null)
+            {
+                group = new ArrayList<Integer>(1);
+                groups.put(key, group);
+            }
+            group.add(i);
+        }
+
+        // A fixed seed, so that the same machine is always laid out the same way
+        Random random = new Random(m_states.length);
+        for (List<Integer> group : groups.values())
+        {
+            if (group.size() < 2)
+            {
+                continue;
+            }
+            double side = IDEAL_DISTANCE * Math.sqrt(group.size());
+            for (int i : group)
+            {
+                m_x[i] += (random.nextDouble() - 0.5) * side;
+                m_y[i] += (random.nextDouble() - 0.5) * side;
+            }
+        }
+    }
+
+    /**
+     * Add the attraction along each transition, and the pull of gravity, to the displacements.
+     * @param dispX The displacement of each state in X.
+     * @param dispY The displacement of each state in Y.
+     */
+    private void attract(double[] dispX, double[] dispY)
+    {
+        for (int t = 0; t < m_from.length; t++)
+        {
+            int a = m_from[t], b = m_to[t];
+            if (a == b)
+            {
+                continue;
+            }
+            double dx = m_x[a] - m_x[b], dy = m_y[a] - m_y[b];
+            double f = Math.hypot(dx, dy) / IDEAL_DISTANCE;
+            dispX[a] -= dx * f;
+            dispY[a] -= dy * f;
+            dispX[b] += dx * f;
+            dispY[b] += dy * f;
+        }
+
+        double cx = 0, cy = 0;
+        for (int i = 0; i < m_x.length; i++)
+        {
+            cx += m_x[i];
+            cy += m_y[i];
+        }
+        cx /= m_x.length;
+        cy /= m_y.length;
+        for (int i = 0; i < m_x.length; i++)
+        {
+            dispX[i] -= (m_x[i] - cx) * GRAVITY;
+            dispY[i] -= (m_y[i] - cy) * GRAVITY;
+        }
+    }
+
+    /**
+     * Move each state by its displacement, limited to the temperature.
+     * @param dispX The displacement of each state in X.
+     * @param dispY The displacement of each state in Y.
+     * @param temperature The furthest a state may move.
+     */
+    private void move(double[] dispX, double[] dispY, double temperature)
+    {
+        for (int i = 0; i < m_x.length; i++)
+        {
+            double length = Math.hypot(dispX[i], dispY[i]);
+            if (length > temperature)
+            {
+                dispX[i] *= temperature / length;
+                dispY[i] *= temperature / length;
+            }
+            m_x[i] += dispX[i];
+            m_y[i] += dispY[i];
+        }
+    }
+
+    /**
+     * A quadtree holding the total mass and center of mass of the states in each node, stored in
+     * flat arrays so that it can be rebuilt every iteration without allocating.
+     */
+    private static final class BarnesHutTree
+    {
+        /**
+         * Marks an internal node; a leaf holds the index of its state instead.
+         */
+        private static final int INTERNAL = -1;
+
+        /**
+         * Marks a leaf holding several states too close together to separate.
+         */
+        private static final int AGGREGATE = -2;
+
+        /**
+         * Nodes smaller than this are not subdivided.
+         */
+        private static final double MIN_SIZE = 1e-3;
+
+        /**
+         * The smallest squared distance used to compute a repulsion.
+         */
+        private static final double MIN_DISTANCE_SQ = 1;
+
+        /**
+         * Creates a new, empty tree.
+         * @param n The number of states it will hold.
+         */
+        public BarnesHutTree(int n)
+        {
+            allocate(Math.max(16, n * 2));
+        }
+
+        /**
+         * Rebuild the tree to hold states at the given positions.
+         * @param x The X ordinate of each state.
+         * @param y The Y ordinate of each state.
+         */
+        public void build(double[] x, double[] y)
+        {
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < x.length; i++)
+            {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+            m_count = 0;
+            newNode(minX, minY, Math.max(maxX - minX, maxY - minY) + 1);
+            for (int i = 0; i < x.length; i++)
+            {
+                insert(i, x[i], y[i]);
+            }
+        }
+
+        /**
+         * Add the repulsion on a state from every other state to its displacement.
+         * @param i The index of the state.
+         * @param x The X ordinate of each state.
+         * @param y The Y ordinate of each state.
+         * @param dispX The displacement of each state in X.
+         * @param dispY The displacement of each state in Y.
+         * @param stack Scratch space for the traversal.
+         * @return The scratch space, which may have been grown.
+         */
+        public int[] repulse(int i, double[] x, double[] y, double[] dispX, double[] dispY,
+                             int[] stack)
+        {
+            final double k2 = IDEAL_DISTANCE * IDEAL_DISTANCE;
+            final double theta2 = THETA * THETA;
+            double fx = 0, fy = 0;
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0)
+            {
+                int node = stack[--top];
+                int body = m_body[node];
+                double mass = m_mass[node];
+                if (mass == 0 || body == i)
+                {
+                    continue;
+                }
+                double dx = x[i] - m_comX[node], dy = y[i] - m_comY[node];
+                double d2 = dx * dx + dy * dy;
+                double size = m_size[node];
+                if (body != INTERNAL || size * size < theta2 * d2)
+                {
+                    if (body == AGGREGATE && contains(node, x[i], y[i]))
+                    {
+                        // Do not repel a state from itself
+                        mass -= 1;
+                    }
+                    if (d2 < MIN_DISTANCE_SQ)
+                    {
+                        // Push coincident states apart in a direction particular to each
+                        double angle = i * 2.399963;
+                        dx = Math.cos(angle);
+                        dy = Math.sin(angle);
+                        d2 = MIN_DISTANCE_SQ;
+                    }
+                    double f = k2 * mass / d2;
+                    fx += dx * f;
+                    fy += dy * f;
+                    continue;
+                }
+                if (top + 4 > stack.length)
+                {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                for (int q = 0; q < 4; q++)
+                {
+                    int child = m_children[node * 4 + q];
+                    if (child >= 0)
+                    {
+                        stack[top++] = child;
+                    }
+                }
+            }
+            dispX[i] += fx;
+            dispY[i] += fy;
+            return stack;
+        }
+
+        /**
+         * Determine whether a position lies within a node.
+         * @param node The node.
+         * @param x The X ordinate.
+         * @param y The Y ordinate.
+         * @return true if the position lies within the node, false otherwise.
+         */
+        private boolean contains(int node, double x, double y)
+        {
+            return x >= m_x[node] && x <= m_x[node] + m_size[node] &&
+                   y >= m_y[node] && y <= m_y[node] + m_size[node];
+        }
+
+        /**
+         * Insert a state into the tree.
+         * @param i The index of the state.
+         * @param x The X ordinate of the state.
+         * @param y The Y ordinate of the state.
+         */
+        private void insert(int i, double x, double y)
+        {
+            int node = 0;
+            while (true)
+            {
+                if (m_mass[node] == 0)
+                {
+                    // An empty leaf
+                    m_body[node] = i;
+                    addMass(node, x, y);
+                    return;
+                }
+                if (m_body[node] == AGGREGATE)
+                {
+                    addMass(node, x, y);
+                    return;
+                }
+                if (m_body[node] >= 0)
+                {
+                    if (m_size[node] < MIN_SIZE)
+                    {
+                        m_body[node] = AGGREGATE;
+                        addMass(node, x, y);
+                        return;
+                    }
+                    // Split the leaf, moving its state into a child
+                    int j = m_body[node];
+                    double jx = m_comX[node], jy = m_comY[node];
+                    m_body[node] = INTERNAL;
+                    int child = child(node, quadrant(node, jx, jy));
+                    m_body[child] = j;
+                    addMass(child, jx, jy);
+                }
+                addMass(node, x, y);
+                node = child(node, quadrant(node, x, y));
+            }
+        }
+
+        /**
+         * Add a state to the mass of a node.
+         * @param node The node.
+         * @param x The X ordinate of the state.
+         * @param y The Y ordinate of the state.
+         */
+        private void addMass(int node, double x, double y)
+        {
+            double mass = m_mass[node] + 1;
+            m_comX[node] += (x - m_comX[node]) / mass;
+            m_comY[node] += (y - m_comY[node]) / mass;
+            m_mass[node] = mass;
+        }
+
+        /**
+         * Determine which quadrant of a node a position lies in.
+         * @param node The node.
+         * @param x The X ordinate.
+         * @param y The Y ordinate.
+         * @return The quadrant; bit 0 is set for the right half, bit 1 for the bottom half.
+         */
+        private int quadrant(int node, double x, double y)
+        {
+            double half = m_size[node] / 2;
+            return (x >= m_x[node] + half? 1 : 0) | (y >= m_y[node] + half? 2 : 0);
+        }
+
+        /**
+         * Get a child of a node, creating it if necessary.
+         * @param node The node.
+         * @param q The quadrant of the child.
+         * @return The child.
+         */
+        private int child(int node, int q)
+        {
+            int child = m_children[node * 4 + q];
+            if (child < 0)
+            {
+                double half = m_size[node] / 2;
+                child = newNode(m_x[node] + ((q & 1) != 0? half : 0),
+                                m_y[node] + ((q & 2) != 0? half : 0), half);
+                m_children[node * 4 + q] = child;
+            }
+            return child;
+        }
+
+        /**
+         * Create an empty node.
+         * @param x The X ordinate of the top left of the node.
+         * @param y The Y ordinate of the top left of the node.
+         * @param size The width and height of the node.
+         * @return The node.
+         */
+        private int newNode(double x, double y, double size)
+        {
+            if (m_count == m_size.length)
+            {
+                allocate(m_size.length * 2);
+            }
+            int node = m_count++;
+            m_x[node] = x;
+            m_y[node] = y;
+            m_size[node] = size;
+            m_mass[node] = 0;
+            m_comX[node] = 0;
+            m_comY[node] = 0;
+            m_body[node] = INTERNAL;
+            Arrays.fill(m_children, node * 4, node * 4 + 4, -1);
+            return node;
+        }
+
+        /**
+         * Grow the arrays holding the nodes.
+         * @param capacity The number of nodes to hold.
+         */
+        private void allocate(int capacity)
+        {
+            int count = m_size == null? 0 : m_count;
+            m_x = copy(m_x, capacity, count);
+            m_y = copy(m_y, capacity, count);
+            m_size = copy(m_size, capacity, count);
+            m_mass = copy(m_mass, capacity, count);
+            m_comX = copy(m_comX, capacity, count);
+            m_comY = copy(m_comY, capacity, count);
+            int[] body = new int[capacity];
+            int[] children = new int[capacity * 4];
+            if (count > 0)
+            {
+                System.arraycopy(m_body, 0, body, 0, count);
+                System.arraycopy(m_children, 0, children, 0, count * 4);
+            }
+            m_body = body;
+            m_children = children;
+        }
+
+        /**
+         * Copy an array into a larger one.
+         * @param a The array, or null.
+         * @param capacity The length of the new array.
+         * @param count The number of elements to copy.
+         * @return The new array.
+         */
+        private static double[] copy(double[] a, int capacity, int count)
+        {
+            double[] result = new double[capacity];
+            if (a != null)
+            {
+                System.arraycopy(a, 0, result, 0, count);
+            }
+            return result;
+        }
+
+        /**
+         * The X ordinate of the top left of each node.
+         */
+        private double[] m_x;
+
+        /**
+         * The Y ordinate of the top left of each node.
+         */
+        private double[] m_y;
+
+        /**
+         * The width and height of each node.
+         */
+        private double[] m_size;
+
+        /**
+         * The number of states in each node.
+         */
+        private double[] m_mass;
+
+        /**
+         * The X ordinate of the center of mass of each node.
+         */
+        private double[] m_comX;
+
+        /**
+         * The Y ordinate of the center of mass of each node.
+         */
+        private double[] m_comY;
+
+        /**
+         * The state held by each leaf, or INTERNAL or AGGREGATE.
+         */
+        private int[] m_body;
+
+        /**
+         * The four children of each node, or -1 where there is none.
+         */
+        private int[] m_children;
+
+        /**
+         * The number of nodes in use.
+         */
+        private int m_count;
+    }
+}
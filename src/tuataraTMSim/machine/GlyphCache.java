@@ -0,0 +1,217 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of the metrics of fonts, and of the glyphs and bounds of the short strings drawn on
+ * machines, such as state labels and transition actions. Measuring text through a Graphics object
+ * is slow, and the same few strings are measured on every paint and every hit-test.
+ *
+ * Strings are cached per font and font render context, up to MAX_STRINGS per context and
+ * MAX_CONTEXTS per font, discarding the least recently used. The cache may be used from any thread.
+ */
+public final class GlyphCache
+{
+    /**
+     * The maximum number of strings cached for each font.
+     */
+    public static final int MAX_STRINGS = 4096;
+
+    /**
+     * The maximum number of render contexts, such as zoom levels, cached for each font.
+     */
+    public static final int MAX_CONTEXTS = 8;
+
+    /**
+     * The glyphs and measurements of a string in a particular font.
+     */
+    public static final class Text
+    {
+        /**
+         * Creates the layout of a string.
+         * @param font The font the string is drawn in.
+         * @param frc The render context the string is drawn in.
+         * @param metrics The metrics of the font.
+         * @param text The string.
+         */
+        private Text(Font font, FontRenderContext frc, FontMetrics metrics, String text)
+        {
+            glyphs = font.createGlyphVector(frc, text);
+            bounds = font.getStringBounds(text, frc);
+            width = metrics.stringWidth(text);
+        }
+
+        /**
+         * The glyphs of the string, to be drawn with Graphics2D.drawGlyphVector().
+         */
+        public final GlyphVector glyphs;
+
+        /**
+         * The logical bounds of the string, relative to the start of its baseline, as given by
+         * FontMetrics.getStringBounds().
+         */
+        public final Rectangle2D bounds;
+
+        /**
+         * The advance width of the string, as given by FontMetrics.stringWidth().
+         */
+        public final int width;
+    }
+
+    /**
+     * Get the metrics of the current font of a graphics object.
+     * @param g The graphics object.
+     * @return The metrics of its font.
+     */
+    public static FontMetrics getMetrics(Graphics g)
+    {
+        return getFontEntry(g).metrics;
+    }
+
+    /**
+     * Get the layout of a string in the current font of a graphics object.
+     * @param g The graphics object.
+     * @param text The string.
+     * @return The layout of the string; must not be modified.
+     */
+    public static Text getText(Graphics g, String text)
+    {
+        FontEntry entry = getFontEntry(g);
+        synchronized (entry)
+        {
+            Text result = entry.texts.get(text);
+            if (result == null)
+            {
+                result = new Text(entry.font, entry.frc, entry.metrics, text);
+                entry.texts.put(text, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Get the cached entry for the current font and render context of a graphics object, creating
+     * it if necessary.
+     * @param g The graphics object.
+     * @return The entry for its font and render context.
+     */
+    private static FontEntry getFontEntry(Graphics g)
+    {
+        Font font = g.getFont();
+        FontRenderContext frc = ((Graphics2D)g).getFontRenderContext();
+        synchronized (m_fonts)
+        {
+            Map<FontRenderContext, FontEntry> contexts = m_fonts.get(font);
+            if (contexts == null)
+            {
+                contexts = new LinkedHashMap<FontRenderContext, FontEntry>(16, 0.75f, true)
+                {
+                    protected boolean removeEldestEntry(Map.Entry<FontRenderContext, FontEntry> eldest)
+                    {
+                        return size() > MAX_CONTEXTS;
+                    }
+                };
+                m_fonts.put(font, contexts);
+            }
+            FontEntry entry = contexts.get(frc);
+            if (entry == null)
+            {
+                entry = new FontEntry(font, frc, g.getFontMetrics(font));
+                contexts.put(frc, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * The metrics and cached strings of a font in a render context.
+     */
+    private static class FontEntry
+    {
+        /**
+         * Creates a new, empty entry.
+         * @param font The font.
+         * @param frc The render context.
+         * @param metrics The metrics of the font.
+         */
+        public FontEntry(Font font, FontRenderContext frc, FontMetrics metrics)
+        {
+            this.font = font;
+            this.frc = frc;
+            this.metrics = metrics;
+        }
+
+        /**
+         * The font.
+         */
+        public final Font font;
+
+        /**
+         * The render context.
+         */
+        public final FontRenderContext frc;
+
+        /**
+         * The metrics of the font.
+         */
+        public final FontMetrics metrics;
+
+        /**
+         * The cached strings, in order of least recent use.
+         */
+        public final Map<String, Text> texts = new LinkedHashMap<String, Text>(64, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry<String, Text> eldest)
+            {
+                return size() > MAX_STRINGS;
+            }
+        };
+    }
+
+    /**
+     * Private constructor; this class only has static members.
+     */
+    private GlyphCache()
+    {
+    }
+
+    /**
+     * The entries for each font, by render context.
+     */
+    private static final HashMap<Font, Map<FontRenderContext, FontEntry>> m_fonts =
+        new HashMap<Font, Map<FontRenderContext, FontEntry>>();
+}
@@ -0,0 +1,602 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * A layered layout, after Sugiyama: states are placed in horizontal layers by their breadth-first
+ * depth from the start state, so that the structure of a machine reads from top to bottom, and the
+ * order of the states within each layer is chosen to reduce the number of transitions which cross.
+ *
+ * Crossings are reduced by sweeping up and down the layers, sorting each by the barycenter of the
+ * neighbours of its states in the previous layer, and keeping the best ordering found; crossings
+ * between each pair of layers are counted in O(e log n) time, so that large machines remain
+ * tractable. Transitions which skip layers, or join states in the same layer which are not
+ * adjacent, are bent through the gaps between states so as not to pass through them.
+ */
+public class LayeredLayout extends MachineLayout
+{
+    /**
+     * Distance between the layers.
+     */
+    public static final int LAYER_SPACING = 120;
+
+    /**
+     * The smallest distance between states in the same layer.
+     */
+    public static final int STATE_SPACING = 80;
+
+    /**
+     * The largest number of sweeps used to reduce crossings.
+     */
+    public static final int MAX_SWEEPS = 24;
+
+    /**
+     * The number of sweeps without improvement after which crossing reduction stops.
+     */
+    public static final int PATIENCE = 4;
+
+    /**
+     * The number of passes used to straighten transitions once states have been ordered.
+     */
+    public static final int COORDINATE_PASSES = 4;
+
+    /**
+     * Creates a new instance of LayeredLayout, capturing the current layout of a machine.
+     * @param machine The machine to lay out.
+     */
+    public LayeredLayout(Machine machine)
+    {
+        super(machine);
+        m_start = -1;
+        for (int i = 0; i < m_states.length; i++)
+        {
+            if (m_states[i].isStartState())
+            {
+                m_start = i;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get the friendly name of this layout.
+     * @return The friendly name of this layout.
+     */
+    public String getName()
+    {
+        return "Layered Layout";
+    }
+
+    /**
+     * Compute the layout.
+     */
+    public void compute()
+    {
+        if (m_states.length == 0)
+        {
+            return;
+        }
+        assignLayers();
+        buildAdjacency();
+        orderLayers();
+        assignCoordinates();
+        normalize();
+        routeTransitions();
+        routeAroundStates();
+    }
+
+    /**
+     * Assign each state to a layer by its breadth-first depth from the start state. States which
+     * cannot be reached from the start state are laid out from the first of them, and so on.
+     */
+    private void assignLayers()
+    {
+        final int n = m_states.length;
+        int[] outStart = new int[n + 1];
+        int[] outList = new int[m_from.length];
+        for (int t = 0; t < m_from.length; t++)
+        {
+            outStart[m_from[t] + 1]++;
+        }
+        for (int i = 0; i < n; i++)
+        {
+            outStart[i + 1] += outStart[i];
+        }
+        int[] fill = Arrays.copyOf(outStart, n);
+        for (int t = 0; t < m_from.length; t++)
+        {
+            outList[fill[m_from[t]]++] = m_to[t];
+        }
+
+        m_layer = new int[n];
+        Arrays.fill(m_layer, -1);
+        int[] queue = new int[n];
+        int head = 0, tail = 0, layers = 0;
+        int root = m_start >= 0? m_start : 0;
+        int nextRoot = 0;
+        while (true)
+        {
+            m_layer[root] = 0;
+            queue[tail++] = root;
+            while (head < tail)
+            {
+                int s = queue[head++];
+                layers = Math.max(layers, m_layer[s] + 1);
+                for (int e = outStart[s]; e < outStart[s + 1]; e++)
+                {
+                    int t = outList[e];
+                    if (m_layer[t] < 0)
+                    {
+                        m_layer[t] = m_layer[s] + 1;
+                        queue[tail++] = t;
+                    }
+                }
+            }
+            while (nextRoot < n && m_layer[nextRoot] >= 0)
+            {
+                nextRoot++;
+            }
+            if (nextRoot == n)
+            {
+                break;
+            }
+            root = nextRoot;
+        }
+
+        // Initially order each layer by the order in which its states were reached
+        int[] counts = new int[layers];
+        for (int i = 0; i < n; i++)
+        {
+            counts[m_layer[i]]++;
+        }
+        m_order = new int[layers][];
+        for (int l = 0; l < layers; l++)
+        {
+            m_order[l] = new int[counts[l]];
+            counts[l] = 0;
+        }
+        m_position = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            int s = queue[i];
+            int l = m_layer[s];
+            m_position[s] = counts[l];
+            m_order[l][counts[l]++] = s;
+        }
+    }
+
+    /**
+     * Build the lists of the neighbours of each state in the layers above and below it, which are
+     * the only transitions considered when ordering the layers.
+     */
+    private void buildAdjacency()
+    {
+        final int n = m_states.length;
+        m_upStart = new int[n + 1];
+        m_downStart = new int[n + 1];
+        for (int t = 0; t < m_from.length; t++)
+        {
+            int upper = upperOf(t);
+            if (upper >= 0)
+            {
+                m_downStart[upper + 1]++;
+                m_upStart[lowerOf(t) + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++)
+        {
+            m_upStart[i + 1] += m_upStart[i];
+            m_downStart[i + 1] += m_downStart[i];
+        }
+        m_upList = new int[m_upStart[n]];
+        m_downList = new int[m_downStart[n]];
+        int[] upFill = Arrays.copyOf(m_upStart, n);
+        int[] downFill = Arrays.copyOf(m_downStart, n);
+        for (int t = 0; t < m_from.length; t++)
+        {
+            int upper = upperOf(t);
+            if (upper >= 0)
+            {
+                int lower = lowerOf(t);
+                m_downList[downFill[upper]++] = lower;
+                m_upList[upFill[lower]++] = upper;
+            }
+        }
+    }
+
+    /**
+     * Get the upper state of a transition which joins adjacent layers.
+     * @param t The index of the transition.
+     * @return The upper state, or -1 if the transition does not join adjacent layers.
+     */
+    private int upperOf(int t)
+    {
+        int a = m_from[t], b = m_to[t];
+        return m_layer[b] == m_layer[a] + 1? a : m_layer[a] == m_layer[b] + 1? b : -1;
+    }
+
+    /**
+     * Get the lower state of a transition which joins adjacent layers.
+     * @param t The index of the transition.
+     * @return The lower state.
+     */
+    private int lowerOf(int t)
+    {
+        return upperOf(t) == m_from[t]? m_to[t] : m_from[t];
+    }
+
+    /**
+     * Order the states in each layer to reduce the number of crossing transitions.
+     */
+    private void orderLayers()
+    {
+        long best = countCrossings();
+        int[][] bestOrder = copyOrder();
+        int stale = 0;
+        for (int sweep = 0; sweep < MAX_SWEEPS && best > 0 && stale < PATIENCE; sweep++)
+        {
+            if (sweep % 2 == 0)
+            {
+                for (int l = 1; l < m_order.length; l++)
+                {
+                    sortByBarycenter(m_order[l], m_upStart, m_upList);
+                }
+            }
+            else
+            {
+                for (int l = m_order.length - 2; l >= 0; l--)
+                {
+                    sortByBarycenter(m_order[l], m_downStart, m_downList);
+                }
+            }
+            long crossings = countCrossings();
+            if (crossings < best)
+            {
+                best = crossings;
+                bestOrder = copyOrder();
+                stale = 0;
+            }
+            else
+            {
+                stale++;
+            }
+        }
+
+        m_order = bestOrder;
+        for (int[] layer : m_order)
+        {
+            for (int p = 0; p < layer.length; p++)
+            {
+                m_position[layer[p]] = p;
+            }
+        }
+    }
+
+    /**
+     * Sort a layer by the mean position of the neighbours of each state in an adjacent layer.
+     * States without such neighbours keep their position.
+     * @param layer The states of the layer, in order.
+     * @param start The offset into list of the neighbours of each state.
+     * @param list The neighbours of each state.
+     */
+    private void sortByBarycenter(int[] layer, int[] start, int[] list)
+    {
+        final double[] barycenter = new double[m_states.length];
+        Integer[] sorted = new Integer[layer.length];
+        for (int p = 0; p < layer.length; p++)
+        {
+            int s = layer[p];
+            sorted[p] = s;
+            if (start[s] == start[s + 1])
+            {
+                barycenter[s] = p;
+                continue;
+            }
+            double sum = 0;
+            for (int e = start[s]; e < start[s + 1]; e++)
+            {
+                sum += m_position[list[e]];
+            }
+            barycenter[s] = sum / (start[s + 1] - start[s]);
+        }
+        Arrays.sort(sorted, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return Double.compare(barycenter[a], barycenter[b]);
+            }
+        });
+        for (int p = 0; p < layer.length; p++)
+        {
+            layer[p] = sorted[p];
+            m_position[layer[p]] = p;
+        }
+    }
+
+    /**
+     * Count the number of transitions between adjacent layers which cross, by counting inversions
+     * in the order of their lower ends, after Barth, Juenger and Mutzel.
+     * @return The number of crossings.
+     */
+    private long countCrossings()
+    {
+        long crossings = 0;
+        for (int l = 0; l + 1 < m_order.length; l++)
+        {
+            int[] lower = new int[m_order[l + 1].length + 1];
+            int[] ends = new int[0];
+            for (int s : m_order[l])
+            {
+                int count = m_downStart[s + 1] - m_downStart[s];
+                if (ends.length < count)
+                {
+                    ends = new int[count];
+                }
+                for (int e = 0; e < count; e++)
+                {
+                    ends[e] = m_position[m_downList[m_downStart[s] + e]];
+                }
+                Arrays.sort(ends, 0, count);
+
+                // A Fenwick tree of the lower ends seen so far; each crosses those to its right
+                for (int e = 0; e < count; e++)
+                {
+                    int seen = 0;
+                    for (int i = lower.length - 1; i > 0; i -= i & -i)
+                    {
+                        seen += lower[i];
+                    }
+                    for (int i = ends[e] + 1; i > 0; i -= i & -i)
+                    {
+                        seen -= lower[i];
+                    }
+                    crossings += seen;
+                }
+                for (int e = 0; e < count; e++)
+                {
+                    for (int i = ends[e] + 1; i < lower.length; i += i & -i)
+                    {
+                        lower[i]++;
+                    }
+                }
+            }
+        }
+        return crossings;
+    }
+
+    /**
+     * Copy the order of every layer.
+     * @return The copy.
+     */
+    private int[][] copyOrder()
+    {
+        int[][] result = new int[m_order.length][];
+        for (int l = 0; l < m_order.length; l++)
+        {
+            result[l] = m_order[l].clone();
+        }
+        return result;
+    }
+
+    /**
+     * Place each state in its layer, moving it towards its neighbours to straighten transitions
+     * while keeping the order of the layer and the spacing between its states.
+     */
+    private void assignCoordinates()
+    {
+        for (int[] layer : m_order)
+        {
+            for (int p = 0; p < layer.length; p++)
+            {
+                m_x[layer[p]] = (p - (layer.length - 1) / 2.0) * STATE_SPACING;
+                m_y[layer[p]] = m_layer[layer[p]] * LAYER_SPACING;
+            }
+        }
+        for (int pass = 0; pass < COORDINATE_PASSES; pass++)
+        {
+            if (pass % 2 == 0)
+            {
+                for (int l = 1; l < m_order.length; l++)
+                {
+                    straighten(m_order[l], m_upStart, m_upList);
+                }
+            }
+            else
+            {
+                for (int l = m_order.length - 2; l >= 0; l--)
+                {
+                    straighten(m_order[l], m_downStart, m_downList);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the states of a layer towards the mean position of their neighbours in an adjacent
+     * layer. The states are packed against each other from the left and from the right, and each
+     * is placed midway between the two, which keeps them at least STATE_SPACING apart.
+     * @param layer The states of the layer, in order.
+     * @param start The offset into list of the neighbours of each state.
+     * @param list The neighbours of each state.
+     */
+    private void straighten(int[] layer, int[] start, int[] list)
+    {
+        int count = layer.length;
+        double[] desired = new double[count];
+        for (int p = 0; p < count; p++)
+        {
+            int s = layer[p];
+            desired[p] = m_x[s];
+            if (start[s] < start[s + 1])
+            {
+                double sum = 0;
+                for (int e = start[s]; e < start[s + 1]; e++)
+                {
+                    sum += m_x[list[e]];
+                }
+                desired[p] = sum / (start[s + 1] - start[s]);
+            }
+        }
+        double[] left = new double[count];
+        double[] right = new double[count];
+        for (int p = 0; p < count; p++)
+        {
+            left[p] = p == 0? desired[p] : Math.max(desired[p], left[p - 1] + STATE_SPACING);
+        }
+        for (int p = count - 1; p >= 0; p--)
+        {
+            right[p] = p == count - 1?
+                desired[p] : Math.min(desired[p], right[p + 1] - STATE_SPACING);
+        }
+        for (int p = 0; p < count; p++)
+        {
+            m_x[layer[p]] = (left[p] + right[p]) / 2;
+        }
+    }
+
+    /**
+     * Bend the transitions which skip layers through the gap between states nearest their middle,
+     * and arc those joining states in the same layer which are not adjacent over or under the
+     * layer, depending on their direction.
+     */
+    private void routeAroundStates()
+    {
+        final double half = State.STATE_RENDERING_WIDTH / 2.0;
+        HashMap<Long, Integer> parallel = new HashMap<Long, Integer>();
+        for (int t = 0; t < m_transitions.length; t++)
+        {
+            int a = m_from[t], b = m_to[t];
+            int span = Math.abs(m_layer[a] - m_layer[b]);
+            if (a == b || span == 1 ||
+                (span == 0 && Math.abs(m_position[a] - m_position[b]) == 1))
+            {
+                continue;
+            }
+            Long key = ((long)a << 32) | b;
+            Integer count = parallel.get(key);
+            int k = count == null? 0 : count;
+            parallel.put(key, k + 1);
+            double offset = ((k + 1) / 2) * PARALLEL_SPACING * (k % 2 == 0? 1 : -1);
+
+            double fromX = m_x[a] + half, fromY = m_y[a] + half;
+            double toX = m_x[b] + half, toY = m_y[b] + half;
+            double midX, midY;
+            if (span == 0)
+            {
+                // Over the layer from left to right, and under it from right to left
+                double height = LAYER_SPACING * 0.4 + Math.abs(offset);
+                midX = (fromX + toX) / 2;
+                midY = fromY + (m_position[a] < m_position[b]? -height : height);
+            }
+            else
+            {
+                int[] middle = m_order[(m_layer[a] + m_layer[b]) / 2];
+                midY = m_y[middle[0]] + half;
+                double lineX = fromX + (toX - fromX) * (midY - fromY) / (toY - fromY);
+                midX = nearestGap(middle, lineX - half) + half + offset;
+            }
+            m_controlX[t] = 2 * midX - (fromX + toX) / 2;
+            m_controlY[t] = 2 * midY - (fromY + toY) / 2;
+        }
+    }
+
+    /**
+     * Find the gap between the states of a layer which a position lies in.
+     * @param layer The states of the layer, in order.
+     * @param x The X ordinate of the position.
+     * @return The X ordinate of the middle of the gap, midway between two states, or half of
+     *         STATE_SPACING beyond either end of the layer.
+     */
+    private double nearestGap(int[] layer, double x)
+    {
+        int lo = 0, hi = layer.length;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (m_x[layer[mid]] < x)
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        if (lo == 0)
+        {
+            return m_x[layer[0]] - STATE_SPACING / 2.0;
+        }
+        if (lo == layer.length)
+        {
+            return m_x[layer[lo - 1]] + STATE_SPACING / 2.0;
+        }
+        return (m_x[layer[lo - 1]] + m_x[layer[lo]]) / 2;
+    }
+
+    /**
+     * The index of the start state, or -1 if there is none.
+     */
+    private int m_start;
+
+    /**
+     * The layer of each state.
+     */
+    private int[] m_layer;
+
+    /**
+     * The states of each layer, in order from left to right.
+     */
+    private int[][] m_order;
+
+    /**
+     * The position of each state within its layer.
+     */
+    private int[] m_position;
+
+    /**
+     * The offset into m_upList of the neighbours of each state in the layer above.
+     */
+    private int[] m_upStart;
+
+    /**
+     * The neighbours of each state in the layer above.
+     */
+    private int[] m_upList;
+
+    /**
+     * The offset into m_downList of the neighbours of each state in the layer below.
+     */
+    private int[] m_downStart;
+
+    /**
+     * The neighbours of each state in the layer below.
+     */
+    private int[] m_downList;
+}
@@ -69,6 +69,12 @@ public abstract class Machine<
      * Epsilon; Represents a do-nothing action.
      **/
     public static final char EMPTY_ACTION_SYMBOL = (char)0x03B5;
+
+    /**
+     * The smallest scale at which the labels of states and the arrowheads and actions of
+     * transitions are rendered; below it, text is too small to read.
+     */
+    public static final double DETAIL_SCALE = 0.5;
  
     /**
      * Creates an instance of Machine.
@@ -209,11 +215,11 @@ public abstract class Machine<
         Rectangle2D container = new Rectangle2D.Float(
                 topLeftX - STATE.STATE_RENDERING_WIDTH, topLeftY - STATE.STATE_RENDERING_WIDTH,
                 width + STATE.STATE_RENDERING_WIDTH, height + STATE.STATE_RENDERING_WIDTH);
-        for (STATE s : getStates())
+        for (State s : getSpatialIndex().getStates(container.getBounds()))
         {
             if (container.contains(s.getX(), s.getY()))
             {
-                result.add(s);
+                result.add((STATE)s);
             }
         }
         return result;
@@ -228,11 +234,11 @@ public abstract class Machine<
     public STATE getStateClickedOn(int clickX, int clickY)
     {
         STATE result = null;
-        for (STATE s : getStates())
+        for (State s : getSpatialIndex().getStates(new Rectangle(clickX, clickY, 0, 0)))
         {
             if (s.containsPoint(clickX, clickY))
             {
-                result = s;
+                result = (STATE)s;
             }
         }
         return result;
@@ -248,11 +254,11 @@ public abstract class Machine<
     public STATE getStateLabelClickedOn(Graphics g, int clickX, int clickY)
     {
         STATE result = null;
-        for (STATE s : getStates())
+        for (State s : getSpatialIndex().getStates(new Rectangle(clickX, clickY, 0, 0)))
         {
             if (s.nameContainsPoint(g, clickX, clickY))
             {
-                result = s;
+                result = (STATE)s;
             }
         }
         return result;
@@ -268,12 +274,12 @@ public abstract class Machine<
     public TRANSITION getTransitionClickedOn(int clickX, int clickY, Graphics g)
     {
         TRANSITION result = null;
-        for (TRANSITION t : getTransitions())
+        for (Transition t : getSpatialIndex().getTransitions(new Rectangle(clickX, clickY, 0, 0)))
         {
             if (t.actionContainsPoint(clickX, clickY, g) || 
                 t.arrowContainsPoint(clickX, clickY, g))
             {
-                result = t;
+                result = (TRANSITION)t;
             }
         }
         return result;
@@ -322,56 +328,87 @@ public abstract class Machine<
     }
 
     /** 
-     * Render the machine to a graphics object.
+     * Render the machine to a graphics object. Only the states and transitions which intersect the
+     * clip of the graphics object are rendered, and labels and arrowheads are omitted when it is
+     * scaled below DETAIL_SCALE.
      * @param g The graphics object to render to.
      * @param selectedStates The set of states which are selected by the user.
      * @param selectedTransitions The set of transitions which are selected by the user.
-     * @param simulator The current machine simulator.
+     * @param nextTransitions The set of transitions the simulator may take in its next step.
      */
     public void paint(Graphics g, Collection<STATE> selectedStates,
-                      Collection<TRANSITION> selectedTransitions, SIMULATOR simulator)
+                      Collection<TRANSITION> selectedTransitions,
+                      Collection<? extends Transition> nextTransitions)
     {
         Graphics2D g2d = (Graphics2D)g;
         g2d.setColor(Color.BLUE);
 
-        for (TRANSITION tr : getTransitions())
+        AffineTransform at = g2d.getTransform();
+        boolean detailed = Math.min(Math.hypot(at.getScaleX(), at.getShearY()),
+                                    Math.hypot(at.getShearX(), at.getScaleY())) >= DETAIL_SCALE;
+        Rectangle clip = g.getClipBounds();
+        Collection<? extends Transition> transitions = 
+            clip == null? getTransitions() : getSpatialIndex().getTransitions(clip);
+        Collection<? extends State> states = 
+            clip == null? getStates() : getSpatialIndex().getStates(clip);
+
+        for (Transition tr : transitions)
         {
-            tr.paint(g, selectedTransitions, simulator);
+            tr.paint(g, selectedTransitions, nextTransitions, detailed);
         }
 
-        for (STATE state : getStates())
+        for (State state : states)
         {
-            state.paint(g, selectedStates);
+            state.paint(g, selectedStates, detailed);
         }
     }
 
     /** 
-     * Serialize a machine, and write it to persistent storage.
-     * @param machine The machine to serialize.
+     * Write a machine to persistent storage, using BinaryMachineFormat.
+     * @param machine The machine to write.
      * @param file The file to write to.
-     * @return true if the machine is saved successfully, false otherwise.
      * @throws IOException If an underlying stream exception occurs.
      */
     public static final void saveMachine(Machine machine, File file) throws IOException
     {
-        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
-        out.writeObject(machine);
-        out.close();
+        BinaryMachineFormat.write(machine, file);
+    }
+
+    /**
+     * Load a machine from persistent storage. Both BinaryMachineFormat files and legacy serialized
+     * files are accepted.
+     * @param file The file where the machine was written to.
+     * @return The loaded machine.
+     * @throws IOException If an underlying stream exception occurs.
+     * @throws ClassNotFoundException If the serialized object is not recognized.
+     */
+    public static final Machine loadMachine(File file) throws IOException, ClassNotFoundException
+    {
+        if (BinaryMachineFormat.isBinaryFile(file))
+        {
+            return BinaryMachineFormat.read(file);
+        }
+        return loadLegacyMachine(file);
     }
 
     /**
-     * Load and deserialize a machine from persistent storage.
+     * Load and deserialize a machine written using Java serialization, as done by earlier versions.
      * @param file The file where the machine was serialized and written to.
      * @return The deserialized machine.
      * @throws IOException If an underlying stream exception occurs.
      * @throws ClassNotFoundException If the serialized object is not recognized.
      */
-    public static final Machine loadMachine(File file) throws IOException, ClassNotFoundException
+    public static final Machine loadLegacyMachine(File file) throws IOException, ClassNotFoundException
     {
-        ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
-        Machine result = (Machine)in.readObject();
-        in.close();
-        return result;
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            return (Machine)in.readObject();
+        }
+        finally
+        {
+            in.close();
+        }
     }
 
     /**
@@ -382,7 +419,26 @@ public abstract class Machine<
      */
     public String hasUndefinedSymbols()
     {
-        for (TRANSITION t : getTransitions())
+        for (STATE state : getStates())
+        {
+            String result = hasUndefinedSymbols(state);
+            if (result != null)
+            {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determine if any transition leaving the given state contains undefined symbols.
+     * @param state The state to check.
+     * @return null if there are no undefined symbols, otherwise a description of the object which
+     *         is undefined in the machine.
+     */
+    public String hasUndefinedSymbols(STATE state)
+    {
+        for (TRANSITION t : state.getTransitions())
         {
             if (t.getAction().getInputChar() == UNDEFINED_SYMBOL)
             {
@@ -405,6 +461,123 @@ public abstract class Machine<
      */
     public abstract String isDeterministic();
 
+    /**
+     * Determine whether a single state, and the transitions leaving it, are valid in terms of the
+     * formal definition of this machine. Properties of the machine as a whole, such as the number of
+     * start states, and the validity of any submachines, are not considered.
+     * @param state The state to check.
+     * @return null if the state is valid, otherwise a description of the problem.
+     */
+    public abstract String validateState(STATE state);
+
+    /**
+     * Determine whether the number of start and final states is valid in terms of the formal
+     * definition of this machine.
+     * @param startCount The number of start states.
+     * @param finalCount The number of final states.
+     * @return null if the counts are valid, otherwise a description of the problem.
+     */
+    public abstract String validateStateCounts(int startCount, int finalCount);
+
+    /**
+     * Get the submachine nested within the given state, if any.
+     * @param state The state to check.
+     * @return The submachine of the state, or null if it has none.
+     */
+    public Machine getSubmachine(STATE state)
+    {
+        return null;
+    }
+
+    /**
+     * Get the hash of the SubmachineLibrary machine nested within the given state, if any.
+     * @param state The state to check.
+     * @return The hash of the submachine of the state, or null if it has no library submachine.
+     */
+    public String getSubmachineReference(STATE state)
+    {
+        return null;
+    }
+
+    /**
+     * Get the validator which caches diagnostics for this machine. Any command which modifies the
+     * machine should notify the validator of the states it touched.
+     * @return The validator for this machine.
+     */
+    public synchronized MachineValidator getValidator()
+    {
+        if (m_validator == null)
+        {
+            m_validator = new MachineValidator(this);
+        }
+        return m_validator;
+    }
+
+    /**
+     * Get the spatial index of the states and transitions of this machine, used for hit-testing.
+     * The index is kept current as elements are added, deleted, moved and relabelled.
+     * @return The spatial index for this machine.
+     */
+    public synchronized SpatialIndex getSpatialIndex()
+    {
+        if (m_index == null)
+        {
+            m_index = new SpatialIndex(this);
+        }
+        return m_index;
+    }
+
+    /**
+     * Add a state to the spatial index, if it has been built. Must be called by addState().
+     * @param state The state which has been added.
+     */
+    protected void addToIndex(STATE state)
+    {
+        if (m_index != null)
+        {
+            m_index.add(state);
+        }
+    }
+
+    /**
+     * Add a transition to the spatial index, if it has been built. Must be called by
+     * addTransition().
+     * @param transition The transition which has been added.
+     */
+    protected void addToIndex(TRANSITION transition)
+    {
+        if (m_index != null)
+        {
+            m_index.add(transition);
+        }
+    }
+
+    /**
+     * Remove a state, and the transitions connected to it, from the spatial index, if it has been
+     * built. Must be called by deleteState().
+     * @param state The state which has been deleted.
+     */
+    protected void removeFromIndex(STATE state)
+    {
+        if (m_index != null)
+        {
+            m_index.remove(state);
+        }
+    }
+
+    /**
+     * Remove a transition from the spatial index, if it has been built. Must be called by
+     * deleteTransition().
+     * @param transition The transition which has been deleted.
+     */
+    protected void removeFromIndex(TRANSITION transition)
+    {
+        if (m_index != null)
+        {
+            m_index.remove(transition);
+        }
+    }
+
     /** 
      * Given a current state and tape, determine the next state the machine should move to, and
      * perform any relevant actions.
@@ -476,4 +649,14 @@ public abstract class Machine<
      * The alphabet for the machine.
      */
     protected Alphabet m_alphabet;
+
+    /**
+     * The cached validator for the machine; built on demand.
+     */
+    private transient MachineValidator m_validator;
+
+    /**
+     * The spatial index of the machine; built on demand.
+     */
+    private transient SpatialIndex m_index;
 }
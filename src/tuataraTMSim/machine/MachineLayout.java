@@ -0,0 +1,244 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.awt.Point;
+import java.awt.geom.Point2D;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * An automatic layout of a machine. The positions of the states and the control points of the
+ * transitions are captured when the layout is created, on the thread which owns the machine; the
+ * layout may then be computed on any thread, since it works only on its own copy. The results are
+ * applied to the machine by the caller, typically as a single undoable command.
+ *
+ * Positions are those returned by State.getX() and State.getY(), the top left of the state.
+ */
+public abstract class MachineLayout
+{
+    /**
+     * Distance between the midpoints of transitions which join the same pair of states.
+     */
+    public static final int PARALLEL_SPACING = 24;
+
+    /**
+     * Distance of the top left of the layout from the origin.
+     */
+    public static final int LAYOUT_MARGIN = 50;
+
+    /**
+     * Creates a new instance of MachineLayout, capturing the current layout of a machine.
+     * @param machine The machine to lay out.
+     */
+    protected MachineLayout(Machine machine)
+    {
+        m_states = (State[])machine.getStates().toArray(new State[0]);
+        m_transitions = (Transition[])machine.getTransitions().toArray(new Transition[0]);
+
+        IdentityHashMap<State, Integer> indices = new IdentityHashMap<State, Integer>();
+        m_x = new double[m_states.length];
+        m_y = new double[m_states.length];
+        for (int i = 0; i < m_states.length; i++)
+        {
+            indices.put(m_states[i], i);
+            m_x[i] = m_states[i].getX();
+            m_y[i] = m_states[i].getY();
+        }
+        m_originalX = m_x.clone();
+        m_originalY = m_y.clone();
+
+        m_from = new int[m_transitions.length];
+        m_to = new int[m_transitions.length];
+        m_controlX = new double[m_transitions.length];
+        m_controlY = new double[m_transitions.length];
+        for (int i = 0; i < m_transitions.length; i++)
+        {
+            m_from[i] = indices.get(m_transitions[i].getFromState());
+            m_to[i] = indices.get(m_transitions[i].getToState());
+            Point2D cp = m_transitions[i].getControlPoint();
+            m_controlX[i] = cp.getX();
+            m_controlY[i] = cp.getY();
+        }
+    }
+
+    /**
+     * Compute the layout. May be called on any thread, and must not access the machine.
+     */
+    public abstract void compute();
+
+    /**
+     * Get the friendly name of this layout.
+     * @return The friendly name of this layout.
+     */
+    public abstract String getName();
+
+    /**
+     * Get the computed position of each state.
+     * @return The new position of each state, by identity.
+     */
+    public Map<State, Point> getPositions()
+    {
+        Map<State, Point> result = new IdentityHashMap<State, Point>();
+        for (int i = 0; i < m_states.length; i++)
+        {
+            result.put(m_states[i], new Point((int)Math.round(m_x[i]), (int)Math.round(m_y[i])));
+        }
+        return result;
+    }
+
+    /**
+     * Get the computed control point of each transition.
+     * @return The new control point of each transition, by identity.
+     */
+    public Map<Transition, Point> getControlPoints()
+    {
+        Map<Transition, Point> result = new IdentityHashMap<Transition, Point>();
+        for (int i = 0; i < m_transitions.length; i++)
+        {
+            result.put(m_transitions[i], new Point((int)Math.round(m_controlX[i]),
+                                                   (int)Math.round(m_controlY[i])));
+        }
+        return result;
+    }
+
+    /**
+     * Translate the layout so that its top left lies at LAYOUT_MARGIN from the origin.
+     */
+    protected void normalize()
+    {
+        if (m_states.length == 0)
+        {
+            return;
+        }
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        for (int i = 0; i < m_states.length; i++)
+        {
+            minX = Math.min(minX, m_x[i]);
+            minY = Math.min(minY, m_y[i]);
+        }
+        for (int i = 0; i < m_states.length; i++)
+        {
+            m_x[i] += LAYOUT_MARGIN - minX;
+            m_y[i] += LAYOUT_MARGIN - minY;
+        }
+    }
+
+    /**
+     * Route every transition for the computed positions of the states. Transitions between two
+     * states are drawn straight, unless several join the same pair of states, in either direction,
+     * in which case they are bent apart by PARALLEL_SPACING. Loops keep their shape, moving with
+     * their state.
+     */
+    protected void routeTransitions()
+    {
+        HashMap<Long, Integer> parallel = new HashMap<Long, Integer>();
+        final double half = State.STATE_RENDERING_WIDTH / 2.0;
+        for (int i = 0; i < m_transitions.length; i++)
+        {
+            int a = m_from[i], b = m_to[i];
+            if (a == b)
+            {
+                m_controlX[i] += m_x[a] - m_originalX[a];
+                m_controlY[i] += m_y[a] - m_originalY[a];
+                continue;
+            }
+
+            // Number the transitions joining this pair of states, alternating either side
+            Long key = ((long)Math.min(a, b) << 32) | Math.max(a, b);
+            Integer count = parallel.get(key);
+            int k = count == null? 0 : count;
+            parallel.put(key, k + 1);
+            double offset = ((k + 1) / 2) * PARALLEL_SPACING * (k % 2 == 0? 1 : -1);
+
+            // Offsets are measured from the lower-numbered state, so that transitions in opposite
+            // directions are spread consistently
+            double fromX = m_x[Math.min(a, b)] + half, fromY = m_y[Math.min(a, b)] + half;
+            double toX = m_x[Math.max(a, b)] + half, toY = m_y[Math.max(a, b)] + half;
+            double dx = toX - fromX, dy = toY - fromY;
+            double length = Math.max(Math.hypot(dx, dy), 1e-9);
+            double midX = (fromX + toX) / 2 - dy / length * offset;
+            double midY = (fromY + toY) / 2 + dx / length * offset;
+
+            // The control point of a quadratic curve through the midpoint
+            m_controlX[i] = 2 * midX - (fromX + toX) / 2;
+            m_controlY[i] = 2 * midY - (fromY + toY) / 2;
+        }
+    }
+
+    /**
+     * The states of the machine.
+     */
+    protected final State[] m_states;
+
+    /**
+     * The transitions of the machine.
+     */
+    protected final Transition[] m_transitions;
+
+    /**
+     * The X ordinate of each state; initially its current position, and its computed position
+     * once the layout has been computed.
+     */
+    protected final double[] m_x;
+
+    /**
+     * The Y ordinate of each state; see m_x.
+     */
+    protected final double[] m_y;
+
+    /**
+     * The X ordinate of each state before the layout.
+     */
+    protected final double[] m_originalX;
+
+    /**
+     * The Y ordinate of each state before the layout.
+     */
+    protected final double[] m_originalY;
+
+    /**
+     * The index in m_states of the source of each transition.
+     */
+    protected final int[] m_from;
+
+    /**
+     * The index in m_states of the target of each transition.
+     */
+    protected final int[] m_to;
+
+    /**
+     * The X ordinate of the control point of each transition; initially its current control point,
+     * and its computed control point once the layout has been computed.
+     */
+    protected final double[] m_controlX;
+
+    /**
+     * The Y ordinate of the control point of each transition; see m_controlX.
+     */
+    protected final double[] m_controlY;
+}
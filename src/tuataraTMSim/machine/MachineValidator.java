@@ -0,0 +1,280 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Caches the diagnostics of a machine on a per-state basis. Rather than walking every state and
+ * transition each time the machine is validated, only the states which have been marked as touched
+ * since the last query are re-checked; the combined results are then available immediately until
+ * the machine is next modified. Submachines are validated by their own validators.
+ */
+public class MachineValidator
+{
+    /**
+     * Creates a new instance of MachineValidator. Every state is considered unchecked.
+     * @param machine The machine to validate.
+     */
+    public MachineValidator(Machine machine)
+    {
+        m_machine = machine;
+    }
+
+    /**
+     * Mark a state as touched, so that it is re-checked on the next query.
+     * @param state The touched state.
+     */
+    public synchronized void invalidate(State state)
+    {
+        m_dirty.add(state);
+        m_upToDate = false;
+    }
+
+    /**
+     * Mark a collection of states as touched, so that they are re-checked on the next query.
+     * @param states The touched states, or null if the entire machine may have been modified.
+     */
+    public synchronized void invalidate(Collection<? extends State> states)
+    {
+        if (states == null)
+        {
+            invalidateAll();
+            return;
+        }
+        if (!states.isEmpty())
+        {
+            m_dirty.addAll(states);
+            m_upToDate = false;
+        }
+    }
+
+    /**
+     * Discard all cached diagnostics, so that every state is re-checked on the next query.
+     */
+    public synchronized void invalidateAll()
+    {
+        m_cache.clear();
+        m_dirty.clear();
+        m_upToDate = false;
+    }
+
+    /**
+     * Determine if this machine contains any undefined symbols.
+     * @return null if there are no undefined symbols, otherwise a description of the object which
+     *         is undefined in the machine.
+     * @see Machine#hasUndefinedSymbols()
+     */
+    public synchronized String hasUndefinedSymbols()
+    {
+        update();
+        return m_undefined;
+    }
+
+    /**
+     * Determine whether this machine, and any submachines, are valid in terms of their formal
+     * definition.
+     * @return null if there are no nondeterministic features in the machine, otherwise a
+     *         description of the object which is undefined in the machine.
+     * @see Machine#isDeterministic()
+     */
+    public synchronized String isDeterministic()
+    {
+        update();
+        for (Machine sub : m_submachines)
+        {
+            String result = sub.getValidator().isDeterministic();
+            if (result != null)
+            {
+                return result;
+            }
+        }
+        return m_problems.isEmpty()? null : m_problems.get(0);
+    }
+
+    /**
+     * Get every problem currently known in this machine and its submachines, in state order.
+     * @return A non-null list of problem descriptions, empty if the machine is valid.
+     */
+    public synchronized List<String> getProblems()
+    {
+        update();
+        ArrayList<String> result = new ArrayList<String>();
+        for (Machine sub : m_submachines)
+        {
+            result.addAll(sub.getValidator().getProblems());
+        }
+        result.addAll(m_problems);
+        return result;
+    }
+
+    /**
+     * Re-check any touched or previously unseen states, and rebuild the combined results. States
+     * which are no longer part of the machine are dropped from the cache.
+     */
+    private void update()
+    {
+        if (m_upToDate)
+        {
+            return;
+        }
+
+        HashMap<State, Diagnostic> cache = new HashMap<State, Diagnostic>();
+        ArrayList<String> problems = new ArrayList<String>();
+        ArrayList<Machine> submachines = new ArrayList<Machine>();
+        String undefined = null;
+        int startCount = 0,
+            finalCount = 0;
+
+        for (Object obj : m_machine.getStates())
+        {
+            State st = (State)obj;
+            Diagnostic diag = m_cache.get(st);
+            if (diag == null || m_dirty.contains(st))
+            {
+                diag = new Diagnostic(st);
+            }
+            cache.put(st, diag);
+
+            if (diag.m_startState)
+            {
+                startCount++;
+            }
+            if (diag.m_finalState)
+            {
+                finalCount++;
+            }
+            if (diag.m_submachine != null)
+            {
+                submachines.add(diag.m_submachine);
+            }
+            if (undefined == null)
+            {
+                undefined = diag.m_undefined;
+            }
+            if (diag.m_problem != null)
+            {
+                problems.add(diag.m_problem);
+            }
+        }
+
+        String counts = m_machine.validateStateCounts(startCount, finalCount);
+        if (counts != null)
+        {
+            problems.add(counts);
+        }
+
+        m_cache = cache;
+        m_dirty.clear();
+        m_problems = problems;
+        m_submachines = submachines;
+        m_undefined = undefined;
+        m_upToDate = true;
+    }
+
+    /**
+     * The cached diagnostics for a single state.
+     */
+    private class Diagnostic
+    {
+        /**
+         * Check the given state.
+         * @param st The state to check.
+         */
+        public Diagnostic(State st)
+        {
+            m_startState = st.isStartState();
+            m_finalState = st.isFinalState();
+            m_submachine = m_machine.getSubmachine(st);
+            m_undefined = m_machine.hasUndefinedSymbols(st);
+            m_problem = m_machine.validateState(st);
+        }
+
+        /**
+         * Whether the state was a start state.
+         */
+        public boolean m_startState;
+
+        /**
+         * Whether the state was a final state.
+         */
+        public boolean m_finalState;
+
+        /**
+         * The submachine of the state, or null if it has none.
+         */
+        public Machine m_submachine;
+
+        /**
+         * The undefined symbol found leaving the state, or null if there were none.
+         */
+        public String m_undefined;
+
+        /**
+         * The problem found with the state, or null if it is valid.
+         */
+        public String m_problem;
+    }
+
+    /**
+     * The machine being validated.
+     */
+    private Machine m_machine;
+
+    /**
+     * Cached diagnostics, keyed by state.
+     */
+    private HashMap<State, Diagnostic> m_cache = new HashMap<State, Diagnostic>();
+
+    /**
+     * States touched since the last query.
+     */
+    private HashSet<State> m_dirty = new HashSet<State>();
+
+    /**
+     * Whether the combined results reflect the current machine.
+     */
+    private boolean m_upToDate = false;
+
+    /**
+     * The combined problems in this machine, excluding submachines.
+     */
+    private ArrayList<String> m_problems = new ArrayList<String>();
+
+    /**
+     * The submachines nested within this machine.
+     */
+    private ArrayList<Machine> m_submachines = new ArrayList<Machine>();
+
+    /**
+     * The first undefined symbol found in this machine, or null if there are none.
+     */
+    private String m_undefined;
+}
@@ -128,15 +128,33 @@ public abstract class PreAction implements Serializable
         
         g2d.setColor(Color.BLACK);
         
-        String outputStr = toString();
-        FontMetrics metrics = g.getFontMetrics(g.getFont());
+        GlyphCache.Text text = GlyphCache.getText(g, getText());
+        FontMetrics metrics = GlyphCache.getMetrics(g);
         
         // Re-adjust position
-        Rectangle2D bounds = metrics.getStringBounds(outputStr, g);
+        Rectangle2D bounds = text.bounds;
         x -= bounds.getWidth() / 2;
         y += metrics.getAscent() / 2;
         
-        g2d.drawString(outputStr, x, y);
+        g2d.drawGlyphVector(text.glyphs, x, y);
+    }
+
+    /**
+     * Get the text drawn for this action, as given by toString(). The text is cached until the
+     * action is changed.
+     * @return The text of this action.
+     */
+    protected String getText()
+    {
+        if (m_text == null || m_textInput != m_inputChar || m_textOutput != m_outputChar ||
+            m_textDirection != m_direction)
+        {
+            m_textInput = m_inputChar;
+            m_textOutput = m_outputChar;
+            m_textDirection = m_direction;
+            m_text = toString();
+        }
+        return m_text;
     }
  
     /** 
@@ -166,4 +184,24 @@ public abstract class PreAction implements Serializable
      * The character that should be written to the tape.
      */
     protected char m_outputChar;
+
+    /**
+     * The cached text of this action, or null if it has not been built.
+     */
+    private transient String m_text;
+
+    /**
+     * The input character the cached text was built for.
+     */
+    private transient char m_textInput;
+
+    /**
+     * The output character the cached text was built for.
+     */
+    private transient char m_textOutput;
+
+    /**
+     * The direction the cached text was built for.
+     */
+    private transient int m_textDirection;
 }
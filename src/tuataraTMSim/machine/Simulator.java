@@ -26,6 +26,7 @@
 package tuataraTMSim.machine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import tuataraTMSim.exceptions.*;
 import tuataraTMSim.machine.Machine;
 
@@ -147,15 +148,144 @@ public abstract class Simulator<
      * Gets a string representation of the current configuration of the machine.
      * @return A string representation of the current configuration.
      */
-    public abstract String getConfiguration();
+    public String getConfiguration()
+    {
+        return captureConfiguration().toString();
+    }
+
+    /**
+     * Record the current configuration of the machine, without formatting it. At most
+     * getConfigurationWindow() cells either side of the read/write head are recorded.
+     * @return The current configuration.
+     */
+    public abstract Configuration captureConfiguration();
+
+    /**
+     * Get the number of cells either side of the read/write head recorded in a configuration.
+     * @return The configuration window, or Configuration.WHOLE_TAPE if the whole tape is recorded.
+     */
+    public int getConfigurationWindow()
+    {
+        return m_configWindow;
+    }
+
+    /**
+     * Set the number of cells either side of the read/write head recorded in a configuration.
+     * @param window The configuration window, or Configuration.WHOLE_TAPE to record the whole
+     *               tape.
+     */
+    public void setConfigurationWindow(int window)
+    {
+        m_configWindow = Math.max(Configuration.WHOLE_TAPE, window);
+    }
  
     /**
      * Perform an iteration of the machine. If the machine is stopped, loads the unique start state.
+     * Every step observer is notified of the iteration.
+     * @throws ComputationCompletedException If execution halts successfully.
+     * @throws ComputationFailedException If execution halts unexpectedly.
+     */
+    public void step() 
+        throws ComputationCompletedException, ComputationFailedException
+    {
+        StepObserver[] observers = m_observers;
+        if (observers.length == 0)
+        {
+            stepMachine();
+            return;
+        }
+
+        for (StepObserver observer : observers)
+        {
+            observer.beforeStep(this);
+        }
+        m_taken = null;
+        try
+        {
+            stepMachine();
+        }
+        finally
+        {
+            for (StepObserver observer : observers)
+            {
+                observer.afterStep(this, m_taken);
+            }
+        }
+    }
+
+    /**
+     * Attach an observer, to be notified of each step.
+     * @param observer The observer to attach.
+     */
+    public synchronized void addStepObserver(StepObserver observer)
+    {
+        StepObserver[] observers = Arrays.copyOf(m_observers, m_observers.length + 1);
+        observers[m_observers.length] = observer;
+        m_observers = observers;
+    }
+
+    /**
+     * Detach an observer.
+     * @param observer The observer to detach.
+     */
+    public synchronized void removeStepObserver(StepObserver observer)
+    {
+        ArrayList<StepObserver> observers = new ArrayList<StepObserver>(Arrays.asList(m_observers));
+        observers.remove(observer);
+        m_observers = observers.toArray(new StepObserver[observers.size()]);
+    }
+
+    /**
+     * Perform an iteration of the machine, as described by step(). Transitions must be taken
+     * through takeTransition().
      * @throws ComputationCompletedException If execution halts successfully.
      * @throws ComputationFailedException If execution halts unexpectedly.
      */
-    public abstract void step() 
+    protected abstract void stepMachine() 
         throws ComputationCompletedException, ComputationFailedException;
+
+    /**
+     * Take a transition from the current state, performing its action on the tape.
+     * @param current The current state.
+     * @param t The transition to take, or null if there is no transition to take.
+     * @return The state the machine is in after taking the transition.
+     * @throws ComputationCompletedException If execution halts successfully.
+     * @throws ComputationFailedException If execution halts unexpectedly.
+     */
+    protected STATE takeTransition(STATE current, TRANSITION t)
+        throws ComputationCompletedException, ComputationFailedException
+    {
+        STATE next = getMachine().step(m_tape, current, t);
+        m_taken = t;
+        return next;
+    }
+
+    /**
+     * Get the recorder which the steps of this simulation are being written to.
+     * @return The trace recorder, or null if no trace is being recorded.
+     */
+    public TraceRecorder getTraceRecorder()
+    {
+        return m_recorder;
+    }
+
+    /**
+     * Set the recorder which the steps of this simulation are written to. The recorder is not
+     * closed when it is replaced.
+     * @param recorder The trace recorder, or null to stop recording.
+     */
+    public synchronized void setTraceRecorder(TraceRecorder recorder)
+    {
+        if (m_recorder != null)
+        {
+            removeStepObserver(m_recorder);
+        }
+        m_recorder = recorder;
+        if (recorder != null)
+        {
+            addStepObserver(recorder);
+        }
+    }
  
     /** 
      * Runs until the machine halts.
@@ -177,4 +307,24 @@ public abstract class Simulator<
      * The current tape.
      */
     protected Tape m_tape;
+
+    /**
+     * The number of cells either side of the read/write head recorded in a configuration.
+     */
+    private int m_configWindow = Configuration.getDefaultWindow();
+
+    /**
+     * The observers notified of each step.
+     */
+    private volatile StepObserver[] m_observers = new StepObserver[0];
+
+    /**
+     * The recorder which steps are written to, if any.
+     */
+    private volatile TraceRecorder m_recorder;
+
+    /**
+     * The transition taken by the current step, if any.
+     */
+    private TRANSITION m_taken;
 }
@@ -0,0 +1,695 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * An index of the bounds of the states and transitions of a machine, used to find the elements at
+ * a point or within a region without testing every element. Each kind of element is held in a
+ * loose quadtree, in which an element is stored in the smallest node whose bounds, expanded by half
+ * the node's size on each side, contain it; this keeps small elements near the leaves regardless
+ * of where they lie.
+ *
+ * The index is built by Machine.getSpatialIndex(), is kept current by the machine as elements are
+ * added and deleted, and by the elements themselves as they are moved or relabelled. Results are
+ * returned in the order the elements were added, which is the order they are painted in.
+ *
+ * Observers may be registered to learn which regions of the machine have changed, so that views of
+ * the machine can be updated incrementally.
+ */
+public class SpatialIndex
+{
+    /**
+     * The smallest size of a node of the quadtree, in pixels. Elements are not separated further
+     * than this.
+     */
+    public static final int MIN_NODE_SIZE = 64;
+
+    /**
+     * An observer of the regions of a machine which change.
+     */
+    public interface Observer
+    {
+        /**
+         * Called when an element is added, removed, moved or changes appearance.
+         * @param region The region which has changed, covering the element before and after the
+         *               change.
+         */
+        public void regionChanged(Rectangle region);
+    }
+
+    /**
+     * Creates a new instance of SpatialIndex, containing every state and transition of a machine.
+     * @param machine The machine to index.
+     */
+    public SpatialIndex(Machine machine)
+    {
+        for (Object s : machine.getStates())
+        {
+            add((State)s);
+        }
+        for (Object t : machine.getTransitions())
+        {
+            add((Transition)t);
+        }
+    }
+
+    /**
+     * Add a state to the index.
+     * @param state The state to add.
+     */
+    public void add(State state)
+    {
+        Rectangle bounds = state.getBounds();
+        m_states.insert(state, bounds);
+        state.m_index = this;
+        notify(bounds);
+    }
+
+    /**
+     * Add a transition to the index.
+     * @param transition The transition to add.
+     */
+    public void add(Transition transition)
+    {
+        Rectangle bounds = transition.getBounds();
+        m_transitions.insert(transition, bounds);
+        attach(transition.getFromState(), transition);
+        attach(transition.getToState(), transition);
+        transition.m_index = this;
+        notify(bounds);
+    }
+
+    /**
+     * Remove a state from the index, along with every transition connected to it.
+     * @param state The state to remove.
+     */
+    public void remove(State state)
+    {
+        notify(m_states.remove(state));
+        if (state.m_index == this)
+        {
+            state.m_index = null;
+        }
+        ArrayList<Transition> connected = m_connected.get(state);
+        if (connected != null)
+        {
+            for (Transition t : new ArrayList<Transition>(connected))
+            {
+                remove(t);
+            }
+        }
+    }
+
+    /**
+     * Remove a transition from the index.
+     * @param transition The transition to remove.
+     */
+    public void remove(Transition transition)
+    {
+        notify(m_transitions.remove(transition));
+        detach(transition.getFromState(), transition);
+        detach(transition.getToState(), transition);
+        if (transition.m_index == this)
+        {
+            transition.m_index = null;
+        }
+    }
+
+    /**
+     * Update the bounds of a state which has been moved or has otherwise changed appearance, along
+     * with the transitions connected to it.
+     * @param state The state which has changed.
+     */
+    public void moved(State state)
+    {
+        Rectangle bounds = state.getBounds();
+        Rectangle region = union(m_states.update(state, bounds), bounds);
+        ArrayList<Transition> connected = m_connected.get(state);
+        if (connected != null)
+        {
+            for (Transition t : connected)
+            {
+                Rectangle tBounds = t.getBounds();
+                region = union(region, m_transitions.update(t, tBounds));
+                region = union(region, tBounds);
+            }
+        }
+        notify(region);
+    }
+
+    /**
+     * Update the bounds of a transition which has been moved.
+     * @param transition The transition which has changed.
+     */
+    public void moved(Transition transition)
+    {
+        Rectangle bounds = transition.getBounds();
+        notify(union(m_transitions.update(transition, bounds), bounds));
+    }
+
+    /**
+     * Determine if a state is in the index. Takes constant time.
+     * @param state The state.
+     * @return true if the state is in the index, false otherwise.
+     */
+    public boolean contains(State state)
+    {
+        return state.m_index == this;
+    }
+
+    /**
+     * Determine if a transition is in the index. Takes constant time.
+     * @param transition The transition.
+     * @return true if the transition is in the index, false otherwise.
+     */
+    public boolean contains(Transition transition)
+    {
+        return transition.m_index == this;
+    }
+
+    /**
+     * Register an observer of the regions which change.
+     * @param observer The observer to add.
+     */
+    public void addObserver(Observer observer)
+    {
+        m_observers.add(observer);
+    }
+
+    /**
+     * Unregister an observer of the regions which change.
+     * @param observer The observer to remove.
+     */
+    public void removeObserver(Observer observer)
+    {
+        m_observers.remove(observer);
+    }
+
+    /**
+     * Notify every observer that a region has changed.
+     * @param region The region, or null if nothing has changed.
+     */
+    private void notify(Rectangle region)
+    {
+        if (region == null)
+        {
+            return;
+        }
+        for (Observer o : new ArrayList<Observer>(m_observers))
+        {
+            o.regionChanged(new Rectangle(region));
+        }
+    }
+
+    /**
+     * Get the union of two rectangles, either of which may be null.
+     * @param a The first rectangle.
+     * @param b The second rectangle.
+     * @return The union, or null if both are null.
+     */
+    private static Rectangle union(Rectangle a, Rectangle b)
+    {
+        if (a == null)
+        {
+            return b;
+        }
+        return b == null? a : a.union(b);
+    }
+
+    /**
+     * Get the states whose bounds intersect a region.
+     * @param area The region to search.
+     * @return The states found, in the order they are painted.
+     */
+    public List<State> getStates(Rectangle area)
+    {
+        return (List<State>)m_states.query(area);
+    }
+
+    /**
+     * Get the transitions whose bounds intersect a region.
+     * @param area The region to search.
+     * @return The transitions found, in the order they are painted.
+     */
+    public List<Transition> getTransitions(Rectangle area)
+    {
+        return (List<Transition>)m_transitions.query(area);
+    }
+
+    /**
+     * Record that a transition is connected to a state.
+     * @param state The state.
+     * @param transition The transition connected to it.
+     */
+    private void attach(State state, Transition transition)
+    {
+        ArrayList<Transition> connected = m_connected.get(state);
+        if (connected == null)
+        {
+            connected = new ArrayList<Transition>(2);
+            m_connected.put(state, connected);
+        }
+        if (!connected.contains(transition))
+        {
+            connected.add(transition);
+        }
+    }
+
+    /**
+     * Record that a transition is no longer connected to a state.
+     * @param state The state.
+     * @param transition The transition formerly connected to it.
+     */
+    private void detach(State state, Transition transition)
+    {
+        ArrayList<Transition> connected = m_connected.get(state);
+        if (connected != null)
+        {
+            connected.remove(transition);
+            if (connected.isEmpty())
+            {
+                m_connected.remove(state);
+            }
+        }
+    }
+
+    /**
+     * An element held by a quadtree.
+     */
+    private static class Entry
+    {
+        /**
+         * Creates a new entry.
+         * @param item The element.
+         * @param order The position of the element in painting order.
+         */
+        public Entry(Object item, long order)
+        {
+            this.item = item;
+            this.order = order;
+        }
+
+        /**
+         * The element.
+         */
+        public final Object item;
+
+        /**
+         * The position of the element in painting order.
+         */
+        public final long order;
+
+        /**
+         * The bounds of the element when it was last placed.
+         */
+        public Rectangle bounds;
+
+        /**
+         * The node holding the element.
+         */
+        public Node node;
+    }
+
+    /**
+     * A square node of a quadtree.
+     */
+    private static class Node
+    {
+        /**
+         * Creates a new node.
+         * @param parent The parent node, or null for the root.
+         * @param quadrant The quadrant of the parent this node occupies.
+         * @param x The X ordinate of the top-left corner.
+         * @param y The Y ordinate of the top-left corner.
+         * @param size The width and height of the node.
+         */
+        public Node(Node parent, int quadrant, int x, int y, int size)
+        {
+            this.parent = parent;
+            this.quadrant = quadrant;
+            this.x = x;
+            this.y = y;
+            this.size = size;
+        }
+
+        /**
+         * Determine if this node is empty, and so can be removed from its parent.
+         * @return true if the node holds no entries and has no children, false otherwise.
+         */
+        public boolean isEmpty()
+        {
+            if (!entries.isEmpty())
+            {
+                return false;
+            }
+            if (children != null)
+            {
+                for (Node c : children)
+                {
+                    if (c != null)
+                    {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The parent node, or null for the root.
+         */
+        public Node parent;
+
+        /**
+         * The quadrant of the parent this node occupies.
+         */
+        public int quadrant;
+
+        /**
+         * The X ordinate of the top-left corner.
+         */
+        public final int x;
+
+        /**
+         * The Y ordinate of the top-left corner.
+         */
+        public final int y;
+
+        /**
+         * The width and height of the node.
+         */
+        public final int size;
+
+        /**
+         * The children of this node, indexed by quadrant, or null if none have been created.
+         */
+        public Node[] children;
+
+        /**
+         * The entries held directly by this node.
+         */
+        public ArrayList<Entry> entries = new ArrayList<Entry>(2);
+    }
+
+    /**
+     * A loose quadtree of elements and their bounds.
+     */
+    private static class Tree
+    {
+        /**
+         * Add an element, or update its bounds if it is already present.
+         * @param item The element.
+         * @param bounds The bounds of the element.
+         */
+        public void insert(Object item, Rectangle bounds)
+        {
+            Entry e = m_entries.get(item);
+            if (e != null)
+            {
+                update(item, bounds);
+                return;
+            }
+            e = new Entry(item, m_order++);
+            e.bounds = bounds;
+            m_entries.put(item, e);
+            place(e);
+        }
+
+        /**
+         * Update the bounds of an element, if it is present.
+         * @param item The element.
+         * @param bounds The new bounds of the element.
+         * @return The previous bounds of the element, or null if it is not present.
+         */
+        public Rectangle update(Object item, Rectangle bounds)
+        {
+            Entry e = m_entries.get(item);
+            if (e == null)
+            {
+                return null;
+            }
+            Rectangle previous = e.bounds;
+            if (!previous.equals(bounds))
+            {
+                unplace(e);
+                e.bounds = bounds;
+                place(e);
+            }
+            return previous;
+        }
+
+        /**
+         * Remove an element, if it is present.
+         * @param item The element.
+         * @return The bounds of the element, or null if it is not present.
+         */
+        public Rectangle remove(Object item)
+        {
+            Entry e = m_entries.remove(item);
+            if (e == null)
+            {
+                return null;
+            }
+            unplace(e);
+            return e.bounds;
+        }
+
+        /**
+         * Find the elements whose bounds intersect a region.
+         * @param area The region to search.
+         * @return The elements found, in the order they were added.
+         */
+        public List<?> query(Rectangle area)
+        {
+            ArrayList<Entry> found = new ArrayList<Entry>();
+            if (m_root != null)
+            {
+                ArrayList<Node> pending = new ArrayList<Node>();
+                pending.add(m_root);
+                while (!pending.isEmpty())
+                {
+                    Node n = pending.remove(pending.size() - 1);
+                    // Entries may overhang a node by half its size on each side
+                    int half = n.size / 2;
+                    if (!intersects(area, n.x - half, n.y - half, n.size * 2L, n.size * 2L))
+                    {
+                        continue;
+                    }
+                    for (Entry e : n.entries)
+                    {
+                        Rectangle b = e.bounds;
+                        if (intersects(area, b.x, b.y, b.width, b.height))
+                        {
+                            found.add(e);
+                        }
+                    }
+                    if (n.children != null)
+                    {
+                        for (Node c : n.children)
+                        {
+                            if (c != null)
+                            {
+                                pending.add(c);
+                            }
+                        }
+                    }
+                }
+            }
+            Collections.sort(found, ORDER);
+            ArrayList<Object> result = new ArrayList<Object>(found.size());
+            for (Entry e : found)
+            {
+                result.add(e.item);
+            }
+            return result;
+        }
+
+        /**
+         * Store an entry in the smallest node which can hold it, growing the tree if necessary.
+         * @param e The entry to store.
+         */
+        private void place(Entry e)
+        {
+            Rectangle b = e.bounds;
+            if (m_root == null)
+            {
+                int size = MIN_NODE_SIZE;
+                while (size < Math.max(b.width, b.height) && size < (1 << 30))
+                {
+                    size *= 2;
+                }
+                m_root = new Node(null, 0, Math.floorDiv(b.x, MIN_NODE_SIZE) * MIN_NODE_SIZE,
+                                  Math.floorDiv(b.y, MIN_NODE_SIZE) * MIN_NODE_SIZE, size);
+            }
+            while (!contains(m_root, b) && m_root.size < (1 << 30))
+            {
+                grow(b);
+            }
+
+            // Descend while the entry fits within the loose bounds of a child
+            Node n = m_root;
+            int cx = b.x + b.width / 2;
+            int cy = b.y + b.height / 2;
+            while (n.size / 2 >= MIN_NODE_SIZE && Math.max(b.width, b.height) <= n.size / 2)
+            {
+                int half = n.size / 2;
+                int q = (cx >= n.x + half? 1 : 0) | (cy >= n.y + half? 2 : 0);
+                if (n.children == null)
+                {
+                    n.children = new Node[4];
+                }
+                if (n.children[q] == null)
+                {
+                    n.children[q] = new Node(n, q, n.x + ((q & 1) != 0? half : 0),
+                                             n.y + ((q & 2) != 0? half : 0), half);
+                }
+                n = n.children[q];
+            }
+            n.entries.add(e);
+            e.node = n;
+        }
+
+        /**
+         * Remove an entry from its node, and remove any nodes left empty.
+         * @param e The entry to remove.
+         */
+        private void unplace(Entry e)
+        {
+            Node n = e.node;
+            n.entries.remove(e);
+            e.node = null;
+            while (n.parent != null && n.isEmpty())
+            {
+                n.parent.children[n.quadrant] = null;
+                n = n.parent;
+            }
+        }
+
+        /**
+         * Double the size of the root, towards a rectangle which it does not contain.
+         * @param b The rectangle to grow towards.
+         */
+        private void grow(Rectangle b)
+        {
+            Node old = m_root;
+            int size = old.size;
+            boolean left = b.x < old.x;
+            boolean up = b.y < old.y;
+            Node root = new Node(null, 0, left? old.x - size : old.x, up? old.y - size : old.y,
+                                 size * 2);
+            if (!old.isEmpty())
+            {
+                old.quadrant = (left? 1 : 0) | (up? 2 : 0);
+                old.parent = root;
+                root.children = new Node[4];
+                root.children[old.quadrant] = old;
+            }
+            m_root = root;
+        }
+
+        /**
+         * Determine if a node contains a rectangle.
+         * @param n The node.
+         * @param b The rectangle.
+         * @return true if the rectangle lies entirely within the node, false otherwise.
+         */
+        private static boolean contains(Node n, Rectangle b)
+        {
+            return b.x >= n.x && b.y >= n.y &&
+                   (long)b.x + b.width <= (long)n.x + n.size &&
+                   (long)b.y + b.height <= (long)n.y + n.size;
+        }
+
+        /**
+         * Determine if a region intersects a rectangle, treating a region of zero size as a point.
+         * @param area The region.
+         * @param x The X ordinate of the rectangle.
+         * @param y The Y ordinate of the rectangle.
+         * @param w The width of the rectangle.
+         * @param h The height of the rectangle.
+         * @return true if they intersect, false otherwise.
+         */
+        private static boolean intersects(Rectangle area, long x, long y, long w, long h)
+        {
+            return area.x <= x + w && x <= (long)area.x + area.width &&
+                   area.y <= y + h && y <= (long)area.y + area.height;
+        }
+
+        /**
+         * Orders entries by the order they were added.
+         */
+        private static final Comparator<Entry> ORDER = new Comparator<Entry>()
+        {
+            public int compare(Entry a, Entry b)
+            {
+                return Long.compare(a.order, b.order);
+            }
+        };
+
+        /**
+         * The root node, or null if nothing has been added.
+         */
+        private Node m_root;
+
+        /**
+         * The entry for each element, by identity.
+         */
+        private IdentityHashMap<Object, Entry> m_entries = new IdentityHashMap<Object, Entry>();
+
+        /**
+         * The order to give the next element added.
+         */
+        private long m_order;
+    }
+
+    /**
+     * The states of the machine.
+     */
+    private Tree m_states = new Tree();
+
+    /**
+     * The transitions of the machine.
+     */
+    private Tree m_transitions = new Tree();
+
+    /**
+     * The transitions connected to each state, by identity.
+     */
+    private IdentityHashMap<State, ArrayList<Transition>> m_connected =
+        new IdentityHashMap<State, ArrayList<Transition>>();
+
+    /**
+     * The observers of the regions which change.
+     */
+    private ArrayList<Observer> m_observers = new ArrayList<Observer>();
+}
@@ -54,6 +54,22 @@ public abstract class State<
      */
     public static final int TEXT_DISTANCE = 15; 
 
+    /**
+     * An upper bound on the width of a character of a state label, used to bound the label without
+     * measuring it; labels are drawn in a 12 point font.
+     */
+    public static final int LABEL_CHAR_WIDTH = 12;
+
+    /**
+     * An upper bound on the height of a state label, above and below its baseline.
+     */
+    public static final int LABEL_HEIGHT = 16;
+
+    /**
+     * The color of a state.
+     */
+    protected static final Color STATE_COLOR = new Color(255, 100, 100);
+
     public State(String label, boolean startState, boolean finalState, int windowX, int windowY)
     {
         m_label = label;
@@ -79,6 +95,7 @@ public abstract class State<
     public void setStartState(boolean value)
     {
         m_startState = value;
+        updateIndex();
     }
 
     /**
@@ -97,6 +114,7 @@ public abstract class State<
     public void setFinalState(boolean value)
     {
         m_finalState = value;
+        updateIndex();
     }
 
     /** 
@@ -115,6 +133,7 @@ public abstract class State<
     public void setLabel(String name)
     {
         m_label = name;
+        updateIndex();
     }
 
     /**
@@ -144,6 +163,36 @@ public abstract class State<
     {
         m_windowX = x;
         m_windowY = y;
+        updateIndex();
+    }
+
+    /**
+     * Notify the spatial index of the machine, if any, that this state has moved or changed
+     * appearance. Must be called by any method which changes how the state is painted.
+     */
+    protected void updateIndex()
+    {
+        if (m_index != null)
+        {
+            m_index.moved(this);
+        }
+    }
+
+    /**
+     * Get a rectangle which contains everything painted for this state, including the arrow into a
+     * start state and the label. The width of the label is estimated from its length.
+     * @return A rectangle containing the rendered state.
+     */
+    public Rectangle getBounds()
+    {
+        Rectangle result = new Rectangle(m_windowX - STATE_RENDERING_WIDTH, m_windowY,
+                                         STATE_RENDERING_WIDTH * 2, STATE_RENDERING_WIDTH);
+        int labelWidth = (m_label == null? 0 : m_label.length()) * LABEL_CHAR_WIDTH;
+        result.add(new Rectangle(m_windowX + (STATE_RENDERING_WIDTH - labelWidth) / 2,
+                                 m_windowY + STATE_RENDERING_WIDTH + TEXT_DISTANCE - LABEL_HEIGHT,
+                                 labelWidth, LABEL_HEIGHT * 2));
+        result.grow(1, 1);
+        return result;
     }
 
     /**
@@ -152,7 +201,7 @@ public abstract class State<
      */
     protected Paint getPaint()
     {
-        return new Color(255, 100, 100);
+        return STATE_COLOR;
     }
 
     /**
@@ -161,41 +210,50 @@ public abstract class State<
      * @param selectedStates The set of states selected by the user.
      */
     public void paint(Graphics g, Collection<? extends State> selectedStates)
+    {
+        paint(g, selectedStates, true);
+    }
+
+    /**
+     * Render the state to a graphics object, optionally omitting its label.
+     * @param g The graphics object to render onto.
+     * @param selectedStates The set of states selected by the user.
+     * @param detailed true to render the label, false to render only the state itself.
+     */
+    public void paint(Graphics g, Collection<? extends State> selectedStates, boolean detailed)
     {
         Graphics2D g2d = (Graphics2D)g;
 
         // Paint the state
-        Ellipse2D.Float stateCircle = new Ellipse2D.Float(m_windowX, m_windowY, STATE_RENDERING_WIDTH, STATE_RENDERING_WIDTH);
+        validateShapes();
         g2d.setPaint(getPaint());
-        g2d.fill(stateCircle);
+        g2d.fill(m_circle);
 
         // Determine the color we should paint the edge
         g2d.setColor(selectedStates.contains(this)? Color.RED : Color.BLACK);
-        g2d.draw(stateCircle);
+        g2d.draw(m_circle);
 
         // If final, draw a small rim on the interior
         if (isFinalState())
         {
-            g2d.draw(new Ellipse2D.Float(m_windowX + 5, m_windowY + 5, STATE_RENDERING_WIDTH - 10, STATE_RENDERING_WIDTH - 10));
+            g2d.draw(m_rim);
         }
 
         // If start, draw a curved arrow into the state
-        // TODO: Do we really need the curvature, or is this excessive
         if (isStartState())
         {
-            g2d.draw(new Line2D.Float(m_windowX - STATE_RENDERING_WIDTH/2, m_windowY + STATE_RENDERING_WIDTH/2, m_windowX, m_windowY + STATE_RENDERING_WIDTH/2));
-            g2d.draw(new Line2D.Float(m_windowX - STATE_RENDERING_WIDTH/4, m_windowY + STATE_RENDERING_WIDTH/4, m_windowX, m_windowY + STATE_RENDERING_WIDTH/2));
-            g2d.draw(new Line2D.Float(m_windowX - STATE_RENDERING_WIDTH/4, m_windowY + STATE_RENDERING_WIDTH*3/4, m_windowX, m_windowY + STATE_RENDERING_WIDTH/2));
-            // Tail
-            g2d.draw(new QuadCurve2D.Float(m_windowX - STATE_RENDERING_WIDTH/2, m_windowY +
-                        STATE_RENDERING_WIDTH/2, m_windowX - STATE_RENDERING_WIDTH*3/4, m_windowY + STATE_RENDERING_WIDTH/2,
-                        m_windowX - STATE_RENDERING_WIDTH*2/3, m_windowY + STATE_RENDERING_WIDTH/3));
+            g2d.draw(m_startArrow);
+        }
+
+        if (!detailed)
+        {
+            return;
         }
 
         // Draw in the state name below
-        FontMetrics metrics = g.getFontMetrics(g.getFont());
-        int textTranslationX = -metrics.stringWidth(m_label) / 2;
-        g2d.drawString(m_label, m_windowX + STATE_RENDERING_WIDTH/2 + textTranslationX, m_windowY + STATE_RENDERING_WIDTH + TEXT_DISTANCE);
+        GlyphCache.Text label = GlyphCache.getText(g, m_label);
+        int textTranslationX = -label.width / 2;
+        g2d.drawGlyphVector(label.glyphs, m_windowX + STATE_RENDERING_WIDTH/2 + textTranslationX, m_windowY + STATE_RENDERING_WIDTH + TEXT_DISTANCE);
     }
 
     /**
@@ -206,8 +264,36 @@ public abstract class State<
      */
     public boolean containsPoint(int x, int y)
     {
-        return new Ellipse2D.Float(m_windowX, m_windowY, STATE_RENDERING_WIDTH, STATE_RENDERING_WIDTH)
-            .contains(x, y);
+        validateShapes();
+        return m_circle.contains(x, y);
+    }
+
+    /**
+     * Rebuild the cached shapes of this state if it has moved since they were last built.
+     */
+    protected void validateShapes()
+    {
+        if (m_circle != null && m_shapeX == m_windowX && m_shapeY == m_windowY)
+        {
+            return;
+        }
+        final int x = m_windowX, y = m_windowY, w = STATE_RENDERING_WIDTH;
+
+        // Build the arrow first; the circle marks the shapes as valid for this position
+        // TODO: Do we really need the curvature, or is this excessive
+        GeneralPath arrow = new GeneralPath();
+        arrow.append(new Line2D.Float(x - w/2, y + w/2, x, y + w/2), false);
+        arrow.append(new Line2D.Float(x - w/4, y + w/4, x, y + w/2), false);
+        arrow.append(new Line2D.Float(x - w/4, y + w*3/4, x, y + w/2), false);
+        // Tail
+        arrow.append(new QuadCurve2D.Float(x - w/2, y + w/2, x - w*3/4, y + w/2,
+                                           x - w*2/3, y + w/3), false);
+
+        m_startArrow = arrow;
+        m_rim = new Ellipse2D.Float(x + 5, y + 5, w - 10, w - 10);
+        m_shapeX = x;
+        m_shapeY = y;
+        m_circle = new Ellipse2D.Float(x, y, w, w);
     }
 
     /**
@@ -219,11 +305,10 @@ public abstract class State<
      */
     public boolean nameContainsPoint(Graphics g, int x, int y)
     {
-        Graphics2D g2d = (Graphics2D)g;
-        FontMetrics metrics = g.getFontMetrics(g.getFont());
-        int textTranslationX = -metrics.stringWidth(m_label) / 2;
+        GlyphCache.Text label = GlyphCache.getText(g, m_label);
+        int textTranslationX = -label.width / 2;
 
-        Rectangle2D boundingbox = metrics.getStringBounds(m_label,g);
+        Rectangle2D boundingbox = label.bounds;
 
         // Translate x and y to bounding box coordinate system.
         x -= (m_windowX + STATE_RENDERING_WIDTH/2 + textTranslationX);
@@ -283,4 +368,34 @@ public abstract class State<
      * The Y ordinate of this state, representing the upper-left, relative to the window.
      */
     protected int m_windowY;
+
+    /**
+     * The spatial index holding this state, notified when it moves, or null if it is not indexed.
+     */
+    transient SpatialIndex m_index;
+
+    /**
+     * The cached circle of this state, or null if its shapes have not been built.
+     */
+    private transient Ellipse2D m_circle;
+
+    /**
+     * The cached rim drawn inside a final state.
+     */
+    private transient Ellipse2D m_rim;
+
+    /**
+     * The cached arrow drawn into a start state.
+     */
+    private transient GeneralPath m_startArrow;
+
+    /**
+     * The X ordinate the cached shapes were built for.
+     */
+    private transient int m_shapeX;
+
+    /**
+     * The Y ordinate the cached shapes were built for.
+     */
+    private transient int m_shapeY;
 }
@@ -0,0 +1,47 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+/**
+ * An object notified of each step performed by a simulator, such as a trace recorder. Observers
+ * are called on the thread performing the step, and are attached with
+ * Simulator.addStepObserver().
+ */
+public interface StepObserver
+{
+    /**
+     * Called before a simulator performs a step.
+     * @param sim The simulator about to step.
+     */
+    public void beforeStep(Simulator sim);
+
+    /**
+     * Called after a simulator has performed a step, whether or not it succeeded.
+     * @param sim The simulator which has stepped.
+     * @param taken The transition taken by the step, or null if no transition was taken.
+     */
+    public void afterStep(Simulator sim, Transition taken);
+}
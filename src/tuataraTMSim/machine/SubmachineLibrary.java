@@ -0,0 +1,277 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import tuataraTMSim.machine.TM.TM_Machine;
+
+/**
+ * A content-addressed store of machines, used as submachines. Each machine is stored once, under
+ * the SHA-256 hash of its BinaryMachineFormat encoding, and states refer to it by that hash; see
+ * TM_State.setSubmachineReference(). Machines are loaded lazily on first use, and a single instance
+ * of each is shared between every state and simulation which refers to it. Shared instances must be
+ * treated as read-only; use loadCopy() to obtain a machine which may be edited.
+ */
+public class SubmachineLibrary
+{
+    /**
+     * System property which may be used to override the library directory.
+     */
+    public static final String DIRECTORY_PROPERTY = "tuataraTMSim.library";
+
+    /**
+     * File extension of machines within the library.
+     */
+    public static final String LIBRARY_EXT = ".tm";
+
+    /**
+     * Creates a new instance of SubmachineLibrary.
+     * @param dir The directory the library is stored in; created when first written to.
+     */
+    public SubmachineLibrary(File dir)
+    {
+        m_dir = dir;
+    }
+
+    /**
+     * Get the shared library, stored in the directory given by DIRECTORY_PROPERTY, or in the user's
+     * home directory if unset.
+     * @return The shared library.
+     */
+    public static synchronized SubmachineLibrary getInstance()
+    {
+        if (m_instance == null)
+        {
+            String dir = System.getProperty(DIRECTORY_PROPERTY);
+            m_instance = new SubmachineLibrary(dir != null? new File(dir) : 
+                    new File(System.getProperty("user.home"), ".tuatara" + File.separator + "library"));
+        }
+        return m_instance;
+    }
+
+    /**
+     * Get the directory the library is stored in.
+     * @return The library directory.
+     */
+    public File getDirectory()
+    {
+        return m_dir;
+    }
+
+    /**
+     * Compute the content hash of an encoded machine.
+     * @param content The encoded machine.
+     * @return The SHA-256 hash of the content, in lowercase hexadecimal.
+     */
+    public static String hash(byte[] content)
+    {
+        return hash(content, 0, content.length);
+    }
+
+    /**
+     * Compute the content hash of part of an encoded machine.
+     * @param content The encoded machine.
+     * @param offset The offset of the first byte to hash.
+     * @param length The number of bytes to hash.
+     * @return The SHA-256 hash of the content, in lowercase hexadecimal.
+     */
+    public static String hash(byte[] content, int offset, int length)
+    {
+        try
+        {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(content, offset, length);
+            byte[] digest = md.digest();
+            StringBuilder result = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+            {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Determine if the library contains a machine.
+     * @param hash The hash of the machine.
+     * @return true if the machine is stored in the library, false otherwise.
+     */
+    public boolean contains(String hash)
+    {
+        return getFile(hash).exists();
+    }
+
+    /**
+     * Store a machine in the library. If an identical machine is already stored, nothing is written.
+     * @param machine The machine to store.
+     * @return The hash the machine is stored under.
+     * @throws IOException If the machine could not be written.
+     */
+    public synchronized String store(Machine machine) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryMachineFormat.write(machine, bytes);
+        byte[] content = bytes.toByteArray();
+        String hash = hash(content);
+
+        File file = getFile(hash);
+        if (!file.exists())
+        {
+            // Write to a temporary file first, so that a partially written machine is never visible
+            m_dir.mkdirs();
+            File temp = File.createTempFile(hash, ".tmp", m_dir);
+            try
+            {
+                Files.write(temp.toPath(), content);
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            finally
+            {
+                temp.delete();
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Store the machine in the given file in the library.
+     * @param file The machine file to import; either format accepted by Machine.loadMachine().
+     * @return The hash the machine is stored under.
+     * @throws IOException If the machine could not be read or written.
+     * @throws ClassNotFoundException If the serialized object is not recognized.
+     */
+    public String importMachine(File file) throws IOException, ClassNotFoundException
+    {
+        Machine machine = Machine.loadMachine(file);
+        if (!(machine instanceof TM_Machine))
+        {
+            throw new IOException("Only Turing machines may be used as submachines");
+        }
+        return store(machine);
+    }
+
+    /**
+     * Get the shared instance of a machine, loading it if necessary. The result must not be modified.
+     * @param hash The hash of the machine.
+     * @return The shared machine, or null if it is not in the library or cannot be loaded.
+     */
+    public synchronized TM_Machine load(String hash)
+    {
+        TM_Machine result = m_machines.get(hash);
+        if (result == null)
+        {
+            try
+            {
+                result = loadCopy(hash);
+                m_machines.put(hash, result);
+            }
+            catch (IOException e)
+            {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Load a private copy of a machine, which may be modified freely.
+     * @param hash The hash of the machine.
+     * @return A new instance of the machine.
+     * @throws IOException If the machine is not in the library, or cannot be loaded.
+     */
+    public TM_Machine loadCopy(String hash) throws IOException
+    {
+        Machine result = BinaryMachineFormat.read(getFile(hash));
+        if (!(result instanceof TM_Machine))
+        {
+            throw new IOException(String.format("Library machine %s is not a Turing machine", hash));
+        }
+        return (TM_Machine)result;
+    }
+
+    /**
+     * Get the shared compiled form of a machine, loading it if necessary. Layout is not loaded.
+     * @param hash The hash of the machine.
+     * @return The shared compiled machine, or null if it is not in the library or cannot be loaded.
+     */
+    public synchronized CompiledMachine loadCompiled(String hash)
+    {
+        CompiledMachine result = m_compiled.get(hash);
+        if (result == null)
+        {
+            try
+            {
+                result = BinaryMachineFormat.readCompiled(getFile(hash));
+                m_compiled.put(hash, result);
+            }
+            catch (IOException e)
+            {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the file a machine is stored in.
+     * @param hash The hash of the machine.
+     * @return The file the machine is, or would be, stored in.
+     */
+    private File getFile(String hash)
+    {
+        return new File(m_dir, hash + LIBRARY_EXT);
+    }
+
+    /**
+     * The shared library.
+     */
+    private static SubmachineLibrary m_instance;
+
+    /**
+     * The directory the library is stored in.
+     */
+    private File m_dir;
+
+    /**
+     * Machines which have been loaded, keyed by hash.
+     */
+    private HashMap<String, TM_Machine> m_machines = new HashMap<String, TM_Machine>();
+
+    /**
+     * Compiled machines which have been loaded, keyed by hash.
+     */
+    private HashMap<String, CompiledMachine> m_compiled = new HashMap<String, CompiledMachine>();
+}
@@ -89,9 +89,6 @@ public class TM_Machine extends Machine<TM_Action, TM_Transition, TM_State, TM_S
 
         for (TM_State st : m_states)
         {
-            // List of transitions for this state
-            ArrayList<TM_Transition> transitions = st.getTransitions();
-
             // Ensure submachines are valid
             if (st.getSubmachine() != null)
             {
@@ -101,68 +98,110 @@ public class TM_Machine extends Machine<TM_Action, TM_Transition, TM_State, TM_S
                     return result;
                 }
             }
-            
-            // Duplicate start state
-            if (st.isStartState() && startCount++ > 0)
+
+            if (st.isStartState())
             {
-                return "Machine has more than one start state";
+                startCount++;
             }
-
-            // Ensure a unique final state
             if (st.isFinalState())
             {
-                // Duplicate final state
-                if (finalCount++ > 0)
-                {
-                    return "Machine has more than one final state";
-                }
-                // Final states cannot have edges leaving them
-                if (transitions.size() != 0)
-                {
-                    return String.format("Machine has a transition leaving the final state leaving %s",
-                                         st.getLabel()); 
-                }
+                finalCount++;
             }
 
-            // Ensure no transitions are undefined (TM_Machine.UNDEFINED_SYMBOL), no duplicate transitions,
-            // no transitions outside of our alphabet.
-            ArrayList<Character> usedSymbols = new ArrayList<Character>();
-            for (TM_Transition tr : transitions)
+            String result = validateState(st);
+            if (result != null)
             {
-                // Get input/output for this transition
-                char inp = tr.getAction().getInputChar();
-                char out = tr.getAction().getOutputChar();
+                return result;
+            }
+        }
 
-                // Undefined input
-                if (inp == UNDEFINED_SYMBOL)
-                {
-                    return String.format("Transition %s has an undefined input", tr.toString());
-                }
-                // Undefined output
-                if (out == UNDEFINED_SYMBOL)
-                {
-                    return String.format("Transition %s has an undefined action", tr.toString());
-                }
-                // Duplicate input
-                if (usedSymbols.contains(inp))
-                {
-                    return String.format("State %s has more than one transition with input %c", st.getLabel(), inp);
-                }
-                // Input not in the alphabet
-                if (!m_alphabet.containsSymbol(inp) && inp != OTHERWISE_SYMBOL)
-                {
-                    return String.format("Transition %s has an input which is not in the alphabet", tr.toString());
-                }
-                // Output not in the alphabet
-                if (!tr.getAction().movesHead() && !m_alphabet.containsSymbol(out) && out != EMPTY_ACTION_SYMBOL)
-                {
-                    return String.format("Transition %s has an action which is not in the alphabet", tr.toString());
-                }
-                // Keep track of this symbol, to check for duplicate inputs.
-                usedSymbols.add(inp);
+        return validateStateCounts(startCount, finalCount);
+    }
+
+    /**
+     * Determine whether a single state, and the transitions leaving it, are valid in terms of the
+     * formal definition of this machine. Submachines are not considered.
+     * @param st The state to check.
+     * @return null if the state is valid, otherwise a description of the problem.
+     */
+    public String validateState(TM_State st)
+    {
+        // List of transitions for this state
+        ArrayList<TM_Transition> transitions = st.getTransitions();
+
+        // Library submachines must be available
+        if (st.getSubmachineReference() != null && st.getSubmachine() == null)
+        {
+            return String.format("State %s refers to a submachine missing from the library",
+                                 st.getLabel());
+        }
+
+        // Final states cannot have edges leaving them
+        if (st.isFinalState() && transitions.size() != 0)
+        {
+            return String.format("Machine has a transition leaving the final state leaving %s",
+                                 st.getLabel()); 
+        }
+
+        // Ensure no transitions are undefined (TM_Machine.UNDEFINED_SYMBOL), no duplicate transitions,
+        // no transitions outside of our alphabet.
+        ArrayList<Character> usedSymbols = new ArrayList<Character>();
+        for (TM_Transition tr : transitions)
+        {
+            // Get input/output for this transition
+            char inp = tr.getAction().getInputChar();
+            char out = tr.getAction().getOutputChar();
+
+            // Undefined input
+            if (inp == UNDEFINED_SYMBOL)
+            {
+                return String.format("Transition %s has an undefined input", tr.toString());
+            }
+            // Undefined output
+            if (out == UNDEFINED_SYMBOL)
+            {
+                return String.format("Transition %s has an undefined action", tr.toString());
+            }
+            // Duplicate input
+            if (usedSymbols.contains(inp))
+            {
+                return String.format("State %s has more than one transition with input %c", st.getLabel(), inp);
             }
+            // Input not in the alphabet
+            if (!m_alphabet.containsSymbol(inp) && inp != OTHERWISE_SYMBOL)
+            {
+                return String.format("Transition %s has an input which is not in the alphabet", tr.toString());
+            }
+            // Output not in the alphabet
+            if (!tr.getAction().movesHead() && !m_alphabet.containsSymbol(out) && out != EMPTY_ACTION_SYMBOL)
+            {
+                return String.format("Transition %s has an action which is not in the alphabet", tr.toString());
+            }
+            // Keep track of this symbol, to check for duplicate inputs.
+            usedSymbols.add(inp);
         }
+        return null;
+    }
 
+    /**
+     * Determine whether the number of start and final states is valid; a Turing machine requires a
+     * unique start state and a unique final state.
+     * @param startCount The number of start states.
+     * @param finalCount The number of final states.
+     * @return null if the counts are valid, otherwise a description of the problem.
+     */
+    public String validateStateCounts(int startCount, int finalCount)
+    {
+        // Duplicate start state
+        if (startCount > 1)
+        {
+            return "Machine has more than one start state";
+        }
+        // Duplicate final state
+        if (finalCount > 1)
+        {
+            return "Machine has more than one final state";
+        }
         // No start
         if (startCount == 0)
         {
@@ -177,6 +216,26 @@ public class TM_Machine extends Machine<TM_Action, TM_Transition, TM_State, TM_S
         // Valid
         return null;
     }
+
+    /**
+     * Get the submachine nested within the given state, if any.
+     * @param state The state to check.
+     * @return The submachine of the state, or null if it has none.
+     */
+    public TM_Machine getSubmachine(TM_State state)
+    {
+        return state.getSubmachine();
+    }
+
+    /**
+     * Get the hash of the SubmachineLibrary machine nested within the given state, if any.
+     * @param state The state to check.
+     * @return The hash of the submachine of the state, or null if it has no library submachine.
+     */
+    public String getSubmachineReference(TM_State state)
+    {
+        return state.getSubmachineReference();
+    }
     
     /**
       * Given a current state and tape, determine the next state the machine should move to, and
@@ -261,6 +320,7 @@ public class TM_Machine extends Machine<TM_Action, TM_Transition, TM_State, TM_S
     public void addState(TM_State state)
     {
         m_states.add(state);
+        addToIndex(state);
     }
     
     /**
@@ -272,6 +332,7 @@ public class TM_Machine extends Machine<TM_Action, TM_Transition, TM_State, TM_S
     {
         if (m_states.remove(state))
         {
+            removeFromIndex(state);
             removeTransitionsConnectedTo(state);
             return true;
         }
@@ -287,6 +348,7 @@ public class TM_Machine extends Machine<TM_Action, TM_Transition, TM_State, TM_S
     {
         m_transitions.add(transition);
         transition.getFromState().addTransition(transition);
+        addToIndex(transition);
     }
     
     /**
@@ -303,6 +365,7 @@ public class TM_Machine extends Machine<TM_Action, TM_Transition, TM_State, TM_S
         if (m_transitions.remove(transition))
         {
             transition.getFromState().removeTransition(transition);
+            removeFromIndex(transition);
             return true;
         }
         return false;
@@ -109,18 +109,13 @@ public class TM_Simulator extends Simulator<TM_Action, TM_Transition, TM_State,
     }
 
     /**
-     * Gets a string representation of the current configuration of the machine.
-     * @return A string representation of the current configuration.
+     * Record the current configuration of the machine: the tape to the left of the read/write
+     * head, the current state, and the tape from the head to the end of the string.
+     * @return The current configuration.
      */
-    public String getConfiguration()
+    public Configuration captureConfiguration()
     {
-        final String LAMBDA = "\u03BB";
-        String head = m_tape.getPartialString(0, m_tape.headLocation());
-        String tail = m_tape.getPartialString(m_tape.headLocation(), m_tape.getLength() - m_tape.headLocation());
-        return String.format("(%s, %s, %s)", 
-                head.length() == 0? LAMBDA : head,
-                m_state.getLabel(),
-                tail.length() == 0? LAMBDA : tail);
+        return new Configuration(m_state.getLabel(), m_tape, getConfigurationWindow());
     }
 
     /**
@@ -128,7 +123,7 @@ public class TM_Simulator extends Simulator<TM_Action, TM_Transition, TM_State,
      * @throws ComputationCompletedException If execution halts successfully.
      * @throws ComputationFailedException If execution halts unexpectedly.
      */
-    public void step()
+    protected void stepMachine()
         throws ComputationCompletedException, ComputationFailedException
     {
         // Machine has just started
@@ -158,16 +153,22 @@ public class TM_Simulator extends Simulator<TM_Action, TM_Transition, TM_State,
         {
             ArrayList<TM_Transition> next = getNextTransitions();
 
+            if (m_state.getSubmachineReference() != null && m_state.getSubmachine() == null)
+            {
+                throw new ComputationFailedException(String.format(
+                        "The submachine of state %s is missing from the library", m_state.getLabel()));
+            }
+
             // No problems with regular states
             if (m_state.getSubmachine() == null)
             {
                 if (next.size() == 0)
                 {
-                    m_state = m_machine.step(m_tape, m_state, null);
+                    m_state = takeTransition(m_state, null);
                 }
                 else if (next.size() == 1)
                 {
-                    m_state = m_machine.step(m_tape, m_state, next.get(0));
+                    m_state = takeTransition(m_state, next.get(0));
                 }
                 else
                 {
@@ -176,13 +177,13 @@ public class TM_Simulator extends Simulator<TM_Action, TM_Transition, TM_State,
                     {
                         throw new ComputationFailedException("No transition chosen");
                     }
-                    m_state = m_machine.step(m_tape, m_state, t);
+                    m_state = takeTransition(m_state, t);
                 }
             }
             // Search for the frame for this submachine; if nonexistent, create one
             else
             {
-                MainWindow inst = MainWindow.getInstance();
+                final MainWindow inst = MainWindow.getInstance();
                 TMGraphicsPanel gfx = null;
                 for (TMGraphicsPanel child : m_panel.getChildren())
                 {
@@ -195,10 +196,22 @@ public class TM_Simulator extends Simulator<TM_Action, TM_Transition, TM_State,
 
                 if (gfx == null)
                 {
-                    gfx = new TMGraphicsPanel(m_state.getSubmachine(), inst.getTape(), null);
-                    m_panel.addChild(gfx);
-                    MachineInternalFrame frame = inst.newMachineWindow(gfx);
-                    gfx.setFrame(frame);
+                    // Simulations run off the event dispatch thread, so create the frame there
+                    final TMGraphicsPanel[] created = new TMGraphicsPanel[1];
+                    final TM_Machine sub = m_state.getSubmachine();
+                    Global.runOnEventThread(new Runnable()
+                    {
+                        public void run()
+                        {
+                            created[0] = new TMGraphicsPanel(sub, inst.getTape(), null);
+                            m_panel.addChild(created[0]);
+                            // Library submachines are shared, so their panels are never editable
+                            created[0].setEditingEnabled(inst.isEditingEnabled());
+                            MachineInternalFrame frame = inst.newMachineWindow(created[0]);
+                            created[0].setFrame(frame);
+                        }
+                    });
+                    gfx = created[0];
                 }
 
                 // No reason to actually display the frame; the user may opt to show it if they wish
@@ -208,11 +221,11 @@ public class TM_Simulator extends Simulator<TM_Action, TM_Transition, TM_State,
                 {
                     if (next == null)
                     {
-                        m_state = m_machine.step(m_tape, m_state, null);
+                        m_state = takeTransition(m_state, null);
                     }
                     else if (next.size() == 1)
                     {
-                        m_state = m_machine.step(m_tape, m_state, next.get(0));
+                        m_state = takeTransition(m_state, next.get(0));
                     }
                     else
                     {
@@ -221,7 +234,7 @@ public class TM_Simulator extends Simulator<TM_Action, TM_Transition, TM_State,
                         {
                             throw new ComputationFailedException("No transition chosen");
                         }
-                        m_state = m_machine.step(m_tape, m_state, t);
+                        m_state = takeTransition(m_state, t);
                     }
                     gfx.getSimulator().resetMachine();
                 }
@@ -52,6 +52,11 @@ public class TM_State extends State<TM_Action, TM_Transition, TM_Machine, TM_Sim
      * Distance of graphical text below picture of the state.
      */
     public static final int TEXT_DISTANCE = 15; 
+
+    /**
+     * The color of a state with a submachine.
+     */
+    protected static final Color SUBMACHINE_COLOR = new Color(100, 100, 255);
  
     /**
      * Creates a new instance of TM_State, with a specified location.
@@ -84,7 +89,9 @@ public class TM_State extends State<TM_Action, TM_Transition, TM_Machine, TM_Sim
      */
     protected Paint getPaint()
     {
-        return m_subMachine != null? new Color(100, 100, 255) : super.getPaint();
+        // NOTE: Library submachines are not loaded just to paint the state
+        return m_subMachine != null || m_submachineHash != null? 
+            SUBMACHINE_COLOR : super.getPaint();
     }
 
     /**
@@ -93,16 +100,54 @@ public class TM_State extends State<TM_Action, TM_Transition, TM_Machine, TM_Sim
      */
     public TM_Machine getSubmachine()
     {
+        if (m_subMachine == null && m_submachineHash != null)
+        {
+            // Shared, and loaded on first use; a missing machine is not looked for again
+            if (!m_librarySubmachineLoaded)
+            {
+                m_librarySubmachine = SubmachineLibrary.getInstance().load(m_submachineHash);
+                m_librarySubmachineLoaded = true;
+            }
+            return m_librarySubmachine;
+        }
         return m_subMachine;
     }
 
     /**
-     * Set the submachine associated with this state.
+     * Set the submachine associated with this state. Any library reference is removed.
      * @param mac The new submachine associated with this state.
      */
     public void setSubmachine(TM_Machine mac)
     {
         m_subMachine = mac;
+        m_submachineHash = null;
+        m_librarySubmachine = null;
+        m_librarySubmachineLoaded = false;
+        updateIndex();
+    }
+
+    /**
+     * Get the hash of the library submachine associated with this state.
+     * @return The hash of the submachine within the SubmachineLibrary, or null if this state does
+     *         not refer to a library submachine.
+     */
+    public String getSubmachineReference()
+    {
+        return m_submachineHash;
+    }
+
+    /**
+     * Associate this state with a submachine stored in the SubmachineLibrary. The submachine is
+     * shared, and must not be modified.
+     * @param hash The hash of the submachine within the library.
+     */
+    public void setSubmachineReference(String hash)
+    {
+        m_subMachine = null;
+        m_submachineHash = hash;
+        m_librarySubmachine = null;
+        m_librarySubmachineLoaded = false;
+        updateIndex();
     }
 
     /**
@@ -153,4 +198,19 @@ public class TM_State extends State<TM_Action, TM_Transition, TM_Machine, TM_Sim
      * The submachine associated with this state.
      */
     protected TM_Machine m_subMachine;
+
+    /**
+     * The hash of the library submachine associated with this state.
+     */
+    protected String m_submachineHash;
+
+    /**
+     * The shared library submachine, once it has been looked up.
+     */
+    protected transient TM_Machine m_librarySubmachine;
+
+    /**
+     * Whether the library submachine has been looked up, successfully or not.
+     */
+    protected transient boolean m_librarySubmachineLoaded;
 }
@@ -71,8 +71,8 @@ public class TM_Transition extends Transition<TM_Action, TM_State, TM_Machine, T
      */
     public Rectangle2D getInputSymbolBoundingBox(Graphics g)
     {
-        Point2D mid = getActionLocation();
-        FontMetrics metric = g.getFontMetrics(g.getFont());
+        Point2D mid = getGeometry().actionLocation;
+        FontMetrics metric = GlyphCache.getMetrics(g);
         int width = metric.charWidth('_');
         int height = metric.getAscent();
         return new Rectangle2D.Double(
@@ -87,8 +87,8 @@ public class TM_Transition extends Transition<TM_Action, TM_State, TM_Machine, T
      */
     public Rectangle2D getOutputSymbolBoundingBox(Graphics g)
     {
-        Point2D mid = getActionLocation();
-        FontMetrics metric = g.getFontMetrics(g.getFont());
+        Point2D mid = getGeometry().actionLocation;
+        FontMetrics metric = GlyphCache.getMetrics(g);
         int width = metric.charWidth('_');
         int height = metric.getAscent();
         return new Rectangle2D.Double(
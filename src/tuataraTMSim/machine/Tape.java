@@ -123,12 +123,47 @@ public abstract class Tape implements Serializable
      */
     public abstract String getPartialString(int begin, int length);
 
+    /**
+     * Copy cells from the tape into an array, without building a String. Cells beyond the end of
+     * the tape are blank.
+     * @param begin The offset from the start of the tape.
+     * @param dest The array to copy into.
+     * @param offset The offset in dest of the first cell.
+     * @param length How many cells to copy.
+     */
+    public abstract void getSymbols(int begin, char[] dest, int offset, int length);
+
+    /**
+     * Overwrite cells of the tape from an array, extending the tape if necessary. The read/write
+     * head is not moved.
+     * @param begin The offset from the start of the tape.
+     * @param src The array to copy from.
+     * @param offset The offset in src of the first cell.
+     * @param length How many cells to copy.
+     */
+    public abstract void setSymbols(int begin, char[] src, int offset, int length);
+
     /**
      * Get the location of the read/write head, relative to the start of the tape.
      * @return The location of the read/write head.
      */
     public abstract int headLocation();
 
+    /**
+     * Move the read/write head directly to a cell, rather than one cell at a time; used to restore
+     * a recorded configuration.
+     * @param location The cell to move the head to, which must not be negative.
+     */
+    abstract void setHeadLocation(int location);
+
+    /**
+     * Get a number which changes whenever the contents of the tape or the position of the
+     * read/write head change. Two observations of the same tape with the same version see the
+     * same tape.
+     * @return The version of the tape.
+     */
+    public abstract long getVersion();
+
     /**
      * Set this tape to be the empty tape.
      */
@@ -142,29 +177,31 @@ public abstract class Tape implements Serializable
     public abstract void copyOther(Tape other);
 
     /**
-     * Serialize a tape, and write it to persistent storage.
-     * @param t The tape to serialize.
+     * Write a tape to persistent storage, in the BinaryTapeFormat.
+     * @param t The tape to save.
      * @param file The file to write to.
-     * @return true if the tape is saved successfully, false otherwise.
      * @throws IOException If an underlying stream exception occurs.
      */
     public static void saveTape(Tape t, File file) throws IOException
     {
-        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
-        out.writeObject(t);
-        out.close();
+        BinaryTapeFormat.write(t, file);
     }
 
     /**
-     * Load and deserialize a tape from persistent storage.
-     * @param file The file where the tape was serialized and written to.
-     * @return The deserialized tape, or null if the tape was not successfully loaded.
+     * Load a tape from persistent storage. Both the BinaryTapeFormat and serialized tapes written
+     * by earlier versions are accepted.
+     * @param file The file where the tape was written to.
+     * @return The loaded tape.
      * @throws IOException If an underlying stream exception occurs.
      * @throws ClassNotFoundException If the serialized object is not recognized.
      */
     public static Tape loadTape(File file) throws IOException, ClassNotFoundException
     {
-        ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+        if (BinaryTapeFormat.isBinaryFile(file))
+        {
+            return BinaryTapeFormat.read(file);
+        }
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
         Tape result = (Tape)in.readObject();
         in.close();
         return result;
@@ -0,0 +1,198 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import javax.swing.filechooser.FileFilter;
+
+/**
+ * Imports and exports tapes as plain text, one character per cell, for generating large inputs
+ * with other tools. Text is streamed in blocks of BLOCK_SIZE cells in both directions, straight
+ * into or out of the tape, so the only memory needed beyond the tape itself is a single block.
+ *
+ * When importing, letters are converted to upper case as when typing on the tape, spaces and
+ * BLANK_SYMBOL become blanks, and line breaks are ignored, so text may be wrapped freely. Any other
+ * character, including letters and digits outside of A-Z and 0-9, is an error. As with
+ * BinaryTapeFormat, the tape is cleared before reading, so after an error it holds only the blocks
+ * read before the one containing the invalid character. When exporting, blanks are written as
+ * BLANK_SYMBOL, and the text is ended with a single line break.
+ */
+public abstract class TextTapeFormat
+{
+    /**
+     * File extension for plain text tapes.
+     */
+    public static final String TEXT_EXTENSION = ".txt";
+
+    /**
+     * Plain text tape file chooser.
+     */
+    public static final FileFilter FILE_FILTER = new FileFilter()
+    {
+        public boolean accept(File f)
+        {
+            return f.isDirectory() || f.getName().endsWith(TEXT_EXTENSION);
+        }
+
+        public String getDescription()
+        {
+            return String.format("Text files (*%s)", TEXT_EXTENSION);
+        }
+    };
+
+    /**
+     * The number of cells read or written at a time.
+     */
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Import a text file into a tape, replacing its contents. If an error occurs, the tape holds
+     * the blocks read before it.
+     * @param file The file to read from.
+     * @param tape The tape to read into; its read/write head is reset to the start of the tape.
+     * @throws IOException If the file cannot be read, or contains a character which is not a
+     *                     valid symbol.
+     */
+    public static void read(File file, Tape tape) throws IOException
+    {
+        Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+        try
+        {
+            read(in, tape);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Import text from a stream into a tape, replacing its contents. The stream is not closed. The
+     * tape is cleared first and each block is written to it as it is read, so if an error occurs,
+     * the tape holds the blocks read before it.
+     * @param in The stream to read from.
+     * @param tape The tape to read into; its read/write head is reset to the start of the tape.
+     * @throws IOException If the stream cannot be read, or contains a character which is not a
+     *                     valid symbol.
+     */
+    public static void read(Reader in, Tape tape) throws IOException
+    {
+        tape.clearTape();
+        char[] buffer = new char[BLOCK_SIZE];
+        long pos = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            // Convert in place, dropping line breaks
+            int count = 0;
+            for (int i = 0; i < read; i++)
+            {
+                char c = buffer[i];
+                if (c == '\n' || c == '\r')
+                {
+                    continue;
+                }
+                if (c == ' ' || c == Tape.BLANK_SYMBOL)
+                {
+                    buffer[count++] = Tape.BLANK_SYMBOL;
+                    continue;
+                }
+                // Only symbols which an Alphabet can hold are accepted
+                c = Character.toUpperCase(c);
+                if (!(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9'))
+                {
+                    throw new IOException(String.format("Invalid symbol '%c' at cell %d", c,
+                                                        pos + count));
+                }
+                buffer[count++] = c;
+            }
+            if (pos + count > Integer.MAX_VALUE)
+            {
+                throw new IOException("Tape is too long");
+            }
+            tape.setSymbols((int)pos, buffer, 0, count);
+            pos += count;
+        }
+        tape.resetRWHead();
+    }
+
+    /**
+     * Export the non-blank part of a tape to a text file.
+     * @param tape The tape to export.
+     * @param file The file to write to.
+     * @throws IOException If an underlying stream exception occurs.
+     */
+    public static void write(Tape tape, File file) throws IOException
+    {
+        write(tape, file, 0, tape.getLength());
+    }
+
+    /**
+     * Export a region of a tape to a text file.
+     * @param tape The tape to export.
+     * @param file The file to write to.
+     * @param begin The offset from the start of the tape.
+     * @param length How many cells to export.
+     * @throws IOException If an underlying stream exception occurs.
+     */
+    public static void write(Tape tape, File file, int begin, int length) throws IOException
+    {
+        Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+        try
+        {
+            write(tape, out, begin, length);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Export a region of a tape to a stream. The stream is flushed, but not closed. The tape must
+     * not be modified while it is being written.
+     * @param tape The tape to export.
+     * @param out The stream to write to.
+     * @param begin The offset from the start of the tape.
+     * @param length How many cells to export.
+     * @throws IOException If an underlying stream exception occurs.
+     */
+    public static void write(Tape tape, Writer out, int begin, int length) throws IOException
+    {
+        char[] buffer = new char[Math.max(0, Math.min(BLOCK_SIZE, length))];
+        for (int pos = 0; pos < length; )
+        {
+            int count = Math.min(buffer.length, length - pos);
+            tape.getSymbols(begin + pos, buffer, 0, count);
+            out.write(buffer, 0, count);
+            pos += count;
+        }
+        out.write('\n');
+        out.flush();
+    }
+}
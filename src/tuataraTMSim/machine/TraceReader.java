@@ -0,0 +1,528 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads a trace written by TraceRecorder, one record at a time. Each call to next() advances to
+ * the next record, after which the getters describe the configuration following that record: the
+ * step count, current state, location of the read/write head, and, for step records, the
+ * transition taken, the movement of the head, and the symbol written.
+ *
+ * The contents of the tape are only decompressed when getCheckpointCells() is called, so
+ * scanning a trace costs a few operations per step.
+ */
+public class TraceReader implements Closeable
+{
+    /**
+     * Size of the input buffer, in bytes.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Opens a trace file for reading.
+     * @param file The file to read.
+     * @throws IOException If the file cannot be read, or is not a trace file.
+     */
+    public TraceReader(File file) throws IOException
+    {
+        m_channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        m_buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        m_buffer.flip();
+        try
+        {
+            if (readInt() != TraceRecorder.MAGIC)
+            {
+                throw new IOException("Not a trace file");
+            }
+            int version = readByte();
+            if (version != TraceRecorder.VERSION)
+            {
+                throw new IOException(String.format("Unsupported trace version %d", version));
+            }
+            m_stateCount = readVarint();
+            m_targets = new int[readVarint()];
+            for (int i = 0; i < m_targets.length; i++)
+            {
+                m_targets[i] = readVarint() - 1;
+            }
+        }
+        catch (IOException e)
+        {
+            m_channel.close();
+            throw e;
+        }
+        m_state = -1;
+        m_transition = -1;
+    }
+
+    /**
+     * Get the number of states in the traced machine.
+     * @return The number of states.
+     */
+    public int getStateCount()
+    {
+        return m_stateCount;
+    }
+
+    /**
+     * Get the number of transitions in the traced machine.
+     * @return The number of transitions.
+     */
+    public int getTransitionCount()
+    {
+        return m_targets.length;
+    }
+
+    /**
+     * Get the state which a transition leads to.
+     * @param transition The index of the transition.
+     * @return The index of the state the transition leads to.
+     */
+    public int getTargetState(int transition)
+    {
+        return m_targets[transition];
+    }
+
+    /**
+     * Advance to the next record.
+     * @return true if a record was read, false if the end of the trace has been reached.
+     * @throws IOException If the trace cannot be read, or is malformed.
+     */
+    public boolean next() throws IOException
+    {
+        if (m_ended)
+        {
+            return false;
+        }
+        m_checkpoint = false;
+        m_written = false;
+        m_move = 0;
+        m_compressed = null;
+
+        int tag = readByte();
+        switch (tag & TraceRecorder.KIND_MASK)
+        {
+            case TraceRecorder.KIND_STEP:
+                readStep(tag);
+                return true;
+
+            case TraceRecorder.KIND_CHECKPOINT:
+                m_checkpoint = true;
+                m_step = readVarlong();
+                m_state = readVarint() - 1;
+                m_transition = readVarint() - 1;
+                m_head = readVarint();
+                m_length = readVarint();
+                m_compressed = new byte[readVarint()];
+                read(m_compressed);
+                return true;
+
+            case TraceRecorder.KIND_END:
+                if (readVarlong() != m_step)
+                {
+                    throw new IOException("Trace is truncated");
+                }
+                m_ended = true;
+                return false;
+
+            default:
+                throw new IOException(String.format("Unknown record 0x%02x", tag));
+        }
+    }
+
+    /**
+     * Read the body of a step record.
+     * @param tag The tag of the record.
+     * @throws IOException If the trace cannot be read.
+     */
+    private void readStep(int tag) throws IOException
+    {
+        m_writeLocation = m_head;
+        switch (tag & TraceRecorder.MOVE_MASK)
+        {
+            case TraceRecorder.MOVE_LEFT:  m_move = -1; break;
+            case TraceRecorder.MOVE_RIGHT: m_move = 1;  break;
+            case TraceRecorder.MOVE_OTHER: m_move = unzigzag(readVarint()); break;
+            default: break;
+        }
+        m_head += m_move;
+        if ((tag & TraceRecorder.FLAG_WRITE) != 0)
+        {
+            m_written = true;
+            m_symbol = (char)readVarint();
+        }
+        if ((tag & TraceRecorder.FLAG_TRANSITION) != 0)
+        {
+            m_transition += unzigzag(readVarint());
+        }
+        if ((tag & TraceRecorder.FLAG_STATE) != 0)
+        {
+            m_state = readVarint() - 1;
+        }
+        else if (m_transition >= 0)
+        {
+            m_state = m_targets[m_transition];
+        }
+        m_step++;
+    }
+
+    /**
+     * Determine if the current record is a checkpoint.
+     * @return true if the current record is a checkpoint, false if it is a step.
+     */
+    public boolean isCheckpoint()
+    {
+        return m_checkpoint;
+    }
+
+    /**
+     * Get the number of steps taken, as of the current record.
+     * @return The step count.
+     */
+    public long getStep()
+    {
+        return m_step;
+    }
+
+    /**
+     * Get the current state, as of the current record.
+     * @return The index of the current state, or -1 if the machine was not started.
+     */
+    public int getState()
+    {
+        return m_state;
+    }
+
+    /**
+     * Get the last transition taken, as of the current record.
+     * @return The index of the transition, or -1 if no transition was taken.
+     */
+    public int getTransition()
+    {
+        return m_transition;
+    }
+
+    /**
+     * Get the location of the read/write head, as of the current record.
+     * @return The location of the read/write head.
+     */
+    public int getHeadLocation()
+    {
+        return m_head;
+    }
+
+    /**
+     * Get the movement of the read/write head in the current step.
+     * @return The offset the head moved by; 0 for checkpoints.
+     */
+    public int getMove()
+    {
+        return m_move;
+    }
+
+    /**
+     * Determine if a symbol was written in the current step.
+     * @return true if a symbol was written, false otherwise.
+     */
+    public boolean isWrite()
+    {
+        return m_written;
+    }
+
+    /**
+     * Get the symbol written in the current step.
+     * @return The symbol written, if isWrite() is true.
+     */
+    public char getWrittenSymbol()
+    {
+        return m_symbol;
+    }
+
+    /**
+     * Get the location of the cell written in the current step: the location of the read/write
+     * head before it moved.
+     * @return The location of the written cell, if isWrite() is true.
+     */
+    public int getWriteLocation()
+    {
+        return m_writeLocation;
+    }
+
+    /**
+     * Get the contents of the tape stored by the current checkpoint.
+     * @return The cells of the tape, from the first cell to the end of the string on the tape.
+     * @throws IllegalStateException If the current record is not a checkpoint.
+     * @throws IOException If the checkpoint is malformed.
+     */
+    public char[] getCheckpointCells() throws IOException
+    {
+        if (!m_checkpoint)
+        {
+            throw new IllegalStateException("Not a checkpoint");
+        }
+        char[] cells = new char[m_length];
+        InputStream in = new BufferedInputStream(
+            new InflaterInputStream(new ByteArrayInputStream(m_compressed)), BUFFER_SIZE);
+        try
+        {
+            for (int i = 0; i < cells.length; i++)
+            {
+                int value = 0;
+                for (int shift = 0; ; shift += 7)
+                {
+                    int b = in.read();
+                    if (b < 0 || shift > 14)
+                    {
+                        throw new IOException("Malformed checkpoint");
+                    }
+                    value |= (b & 0x7F) << shift;
+                    if ((b & 0x80) == 0)
+                    {
+                        break;
+                    }
+                }
+                cells[i] = (char)value;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return cells;
+    }
+
+    /**
+     * Close the trace file.
+     * @throws IOException If an underlying stream exception occurs.
+     */
+    public void close() throws IOException
+    {
+        m_channel.close();
+    }
+
+    /**
+     * Ensure the buffer holds at least one unread byte.
+     * @throws IOException If the end of the file is reached, or it cannot be read.
+     */
+    private void fill() throws IOException
+    {
+        if (m_buffer.hasRemaining())
+        {
+            return;
+        }
+        m_buffer.clear();
+        int n;
+        do
+        {
+            n = m_channel.read(m_buffer);
+        }
+        while (n == 0);
+        m_buffer.flip();
+        if (n < 0)
+        {
+            throw new EOFException("Trace is truncated");
+        }
+    }
+
+    /**
+     * Read a byte.
+     * @return The byte read, from 0 to 255.
+     * @throws IOException If the trace cannot be read.
+     */
+    private int readByte() throws IOException
+    {
+        fill();
+        return m_buffer.get() & 0xFF;
+    }
+
+    /**
+     * Read a big-endian int.
+     * @return The value read.
+     * @throws IOException If the trace cannot be read.
+     */
+    private int readInt() throws IOException
+    {
+        int value = 0;
+        for (int i = 0; i < 4; i++)
+        {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    /**
+     * Read bytes into an array, filling it.
+     * @param dest The array to fill.
+     * @throws IOException If the trace cannot be read.
+     */
+    private void read(byte[] dest) throws IOException
+    {
+        for (int offset = 0; offset < dest.length; )
+        {
+            fill();
+            int n = Math.min(m_buffer.remaining(), dest.length - offset);
+            m_buffer.get(dest, offset, n);
+            offset += n;
+        }
+    }
+
+    /**
+     * Read an unsigned varint.
+     * @return The value read.
+     * @throws IOException If the trace cannot be read, or the value does not fit in an int.
+     */
+    private int readVarint() throws IOException
+    {
+        long value = readVarlong();
+        if (value > Integer.MAX_VALUE)
+        {
+            throw new IOException("Malformed varint");
+        }
+        return (int)value;
+    }
+
+    /**
+     * Read an unsigned varint.
+     * @return The value read.
+     * @throws IOException If the trace cannot be read, or the value does not fit in a long.
+     */
+    private long readVarlong() throws IOException
+    {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = readByte();
+            result |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Decode a zigzag encoded value.
+     * @param value The encoded value.
+     * @return The signed value.
+     */
+    private static int unzigzag(int value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * The trace file.
+     */
+    private final FileChannel m_channel;
+
+    /**
+     * Buffer of bytes read from the file.
+     */
+    private final ByteBuffer m_buffer;
+
+    /**
+     * The number of states in the machine.
+     */
+    private final int m_stateCount;
+
+    /**
+     * The state each transition leads to.
+     */
+    private final int[] m_targets;
+
+    /**
+     * Whether the end record has been read.
+     */
+    private boolean m_ended;
+
+    /**
+     * Whether the current record is a checkpoint.
+     */
+    private boolean m_checkpoint;
+
+    /**
+     * The step count.
+     */
+    private long m_step;
+
+    /**
+     * The index of the current state, or -1.
+     */
+    private int m_state;
+
+    /**
+     * The index of the last transition taken, or -1.
+     */
+    private int m_transition;
+
+    /**
+     * The location of the read/write head.
+     */
+    private int m_head;
+
+    /**
+     * The movement of the head in the current step.
+     */
+    private int m_move;
+
+    /**
+     * Whether a symbol was written in the current step.
+     */
+    private boolean m_written;
+
+    /**
+     * The symbol written in the current step.
+     */
+    private char m_symbol;
+
+    /**
+     * The location of the cell written in the current step.
+     */
+    private int m_writeLocation;
+
+    /**
+     * The length of the tape stored by the current checkpoint.
+     */
+    private int m_length;
+
+    /**
+     * The compressed tape stored by the current checkpoint, or null.
+     */
+    private byte[] m_compressed;
+}
@@ -0,0 +1,706 @@
+//  ------------------------------------------------------------------
+//
+//  Copyright (c) 2006-2007 James Foulds and the University of Waikato
+//
+//  ------------------------------------------------------------------
+//  This file is part of Tuatara Turing Machine Simulator.
+//
+//  Tuatara Turing Machine Simulator is free software: you can redistribute
+//  it and/or modify it under the terms of the GNU General Public License as
+//  published by the Free Software Foundation, either version 3 of the License,
+//  or (at your option) any later version.
+//
+//  Tuatara Turing Machine Simulator is distributed in the hope that it will be
+//  useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with Tuatara Turing Machine Simulator.  If not, see
+//  <http://www.gnu.org/licenses/>.
+//
+//  author email: jf47 (at) waikato (dot) ac (dot) nz
+//
+//  ------------------------------------------------------------------
+
+package tuataraTMSim.machine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Records every step of a simulation to a compact binary trace file, which may be read back with
+ * TraceReader. A recorder is attached to a simulator with Simulator.setTraceRecorder(), and must
+ * be closed once recording is finished.
+ *
+ * The file consists of a header, followed by a sequence of records, and ends with an end record.
+ * All integers are written as varints, and signed quantities are zigzag encoded. The header holds
+ * MAGIC, VERSION, the number of states and transitions in the machine, and the state each
+ * transition leads to, so that a reader can follow the current state without the machine.
+ *
+ * A step record begins with a tag byte, whose low bits describe the step:
+ *  - MOVE_MASK: how the read/write head moved; if MOVE_OTHER, the offset follows.
+ *  - FLAG_WRITE: the cell under the head was written; the symbol follows.
+ *  - FLAG_TRANSITION: a different transition was taken than by the previous step; the difference
+ *    in transition indices follows. Otherwise the same transition was taken again.
+ *  - FLAG_STATE: the state changed other than by taking a transition; the new state follows.
+ * Most steps of a Turing machine therefore take one to three bytes.
+ *
+ * A checkpoint record holds the whole configuration: the step count, state, last transition, head
+ * location, and the compressed contents of the tape. Checkpoints are written at the start of the
+ * trace, whenever the tape or state is changed other than by a step, and periodically: every
+ * checkpoint interval steps, but no more often than every tape length bytes of trace, so that
+ * checkpoints of a long tape do not dominate the trace.
+ *
+ * States and transitions are numbered when recording begins, so a trace cannot describe those
+ * added to the machine later. If the simulation reaches one, the trace is ended at that point and
+ * recording stops, as for a write error.
+ */
+public class TraceRecorder implements StepObserver, Closeable
+{
+    /**
+     * Extension used by trace files.
+     */
+    public static final String TRACE_EXTENSION = ".trc";
+
+    /**
+     * Number of steps between checkpoints, if not otherwise specified.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1 << 16;
+
+    /**
+     * Magic number identifying a trace file; the ASCII characters "TTTR".
+     */
+    static final int MAGIC = 0x54545452;
+
+    /**
+     * Version of the trace format written by this class.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Mask of the tag bits giving the kind of record.
+     */
+    static final int KIND_MASK = 0xE0;
+
+    /**
+     * Kind of a step record.
+     */
+    static final int KIND_STEP = 0x00;
+
+    /**
+     * Kind of a checkpoint record.
+     */
+    static final int KIND_CHECKPOINT = 0x20;
+
+    /**
+     * Kind of the record which ends the trace.
+     */
+    static final int KIND_END = 0x40;
+
+    /**
+     * Mask of the tag bits giving the movement of the read/write head.
+     */
+    static final int MOVE_MASK = 0x03;
+
+    /**
+     * The read/write head did not move.
+     */
+    static final int MOVE_NONE = 0;
+
+    /**
+     * The read/write head moved one cell to the left.
+     */
+    static final int MOVE_LEFT = 1;
+
+    /**
+     * The read/write head moved one cell to the right.
+     */
+    static final int MOVE_RIGHT = 2;
+
+    /**
+     * The read/write head moved by some other offset, which follows the tag.
+     */
+    static final int MOVE_OTHER = 3;
+
+    /**
+     * Tag bit set if the cell under the read/write head was written.
+     */
+    static final int FLAG_WRITE = 0x04;
+
+    /**
+     * Tag bit set if the transition taken differs from that of the previous step.
+     */
+    static final int FLAG_TRANSITION = 0x08;
+
+    /**
+     * Tag bit set if the state changed other than by taking a transition.
+     */
+    static final int FLAG_STATE = 0x10;
+
+    /**
+     * Size of the output buffer, in bytes.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The largest number of bytes in a step record.
+     */
+    private static final int MAX_STEP_SIZE = 32;
+
+    /**
+     * Creates a new instance of TraceRecorder, writing checkpoints every
+     * DEFAULT_CHECKPOINT_INTERVAL steps.
+     * @param file The file to write to. Any existing file is overwritten.
+     * @param sim The simulation to record. The current configuration is written as the first
+     *            checkpoint.
+     * @throws IOException If the file cannot be written.
+     */
+    public TraceRecorder(File file, Simulator sim) throws IOException
+    {
+        this(file, sim, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Creates a new instance of TraceRecorder.
+     * @param file The file to write to. Any existing file is overwritten.
+     * @param sim The simulation to record. The current configuration is written as the first
+     *            checkpoint.
+     * @param interval The number of steps between checkpoints.
+     * @throws IOException If the file cannot be written.
+     */
+    public TraceRecorder(File file, Simulator sim, int interval) throws IOException
+    {
+        m_file = file;
+        m_interval = Math.max(1, interval);
+        m_channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        m_buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        // Number the states and transitions of the machine
+        Machine machine = sim.getMachine();
+        int index = 0;
+        for (Object s : machine.getStates())
+        {
+            m_stateIds.put(s, index++);
+        }
+        index = 0;
+        for (Object t : machine.getTransitions())
+        {
+            m_transitionIds.put(t, index++);
+        }
+
+        // Header
+        m_buffer.putInt(MAGIC);
+        m_buffer.put((byte)VERSION);
+        putVarint(m_stateIds.size());
+        putVarint(m_transitionIds.size());
+        for (Object t : machine.getTransitions())
+        {
+            ensure(MAX_STEP_SIZE);
+            putVarint(stateId(((Transition)t).getToState()) + 1);
+        }
+
+        m_state = stateId(sim.getCurrentState());
+        m_transition = -1;
+        checkpoint(sim.getTape());
+    }
+
+    /**
+     * Get the file being written to.
+     * @return The trace file.
+     */
+    public File getFile()
+    {
+        return m_file;
+    }
+
+    /**
+     * Get the number of steps recorded.
+     * @return The number of steps recorded.
+     */
+    public synchronized long getStepCount()
+    {
+        return m_steps;
+    }
+
+    /**
+     * Get the size of the trace.
+     * @return The number of bytes written to the trace, including those still buffered.
+     */
+    public synchronized long getByteCount()
+    {
+        return m_written + m_buffer.position();
+    }
+
+    /**
+     * Note the configuration of a simulation before it performs a step. If the tape or state has
+     * changed since the last step, a checkpoint is written.
+     * @param sim The simulation about to step.
+     */
+    public synchronized void beforeStep(Simulator sim)
+    {
+        if (m_channel == null)
+        {
+            return;
+        }
+        // The tape or state may have been changed by the user since the last step
+        Tape tape = sim.getTape();
+        int state = stateId(sim.getCurrentState());
+        if (state == -1 && sim.getCurrentState() != null)
+        {
+            stopChanged();
+            return;
+        }
+        if (tape != m_tape || tape.getVersion() != m_version || state != m_state)
+        {
+            m_state = state;
+            write(new WriteAction()
+            {
+                public void run(Tape t) throws IOException
+                {
+                    checkpoint(t);
+                }
+            }, tape);
+        }
+        m_head = tape.headLocation();
+        m_symbol = tape.read();
+    }
+
+    /**
+     * Record the effects of a step of a simulation.
+     * @param sim The simulation which has stepped.
+     * @param taken The transition taken by the step, or null if no transition was taken.
+     */
+    public synchronized void afterStep(Simulator sim, final Transition taken)
+    {
+        if (m_channel == null)
+        {
+            return;
+        }
+        final Tape tape = sim.getTape();
+        final int state = stateId(sim.getCurrentState());
+        if ((state == -1 && sim.getCurrentState() != null) ||
+            (taken != null && !m_transitionIds.containsKey(taken)))
+        {
+            stopChanged();
+            return;
+        }
+        // Steps which failed without doing anything are not recorded
+        if (taken == null && state == m_state && tape.getVersion() == m_version)
+        {
+            return;
+        }
+        write(new WriteAction()
+        {
+            public void run(Tape t) throws IOException
+            {
+                recordStep(t, taken, state);
+            }
+        }, tape);
+    }
+
+    /**
+     * Write a step record.
+     * @param tape The tape after the step.
+     * @param taken The transition taken by the step, or null.
+     * @param state The index of the state after the step, or -1.
+     * @throws IOException If the trace cannot be written.
+     */
+    private void recordStep(Tape tape, Transition taken, int state) throws IOException
+    {
+        ensure(MAX_STEP_SIZE);
+        int tagPosition = m_buffer.position();
+        m_buffer.put((byte)0);
+        int tag = KIND_STEP;
+
+        // Head movement
+        int move = tape.headLocation() - m_head;
+        switch (move)
+        {
+            case 0:  tag |= MOVE_NONE;  break;
+            case -1: tag |= MOVE_LEFT;  break;
+            case 1:  tag |= MOVE_RIGHT; break;
+            default:
+                tag |= MOVE_OTHER;
+                putVarint(zigzag(move));
+                break;
+        }
+
+        // Symbol written to the cell which was under the head
+        char written = m_symbol;
+        if (move == 0)
+        {
+            written = tape.read();
+        }
+        else if (m_head < tape.getLength())
+        {
+            tape.getSymbols(m_head, m_cell, 0, 1);
+            written = m_cell[0];
+        }
+        if (written != m_symbol)
+        {
+            tag |= FLAG_WRITE;
+            putVarint(written);
+        }
+
+        // Transition taken, as the difference from the last one
+        int transition = taken == null? -1 : m_transitionIds.get(taken);
+        if (transition != m_transition)
+        {
+            tag |= FLAG_TRANSITION;
+            putVarint(zigzag(transition - m_transition));
+            m_transition = transition;
+        }
+
+        // State, if it cannot be inferred from the transition
+        int expected = taken == null? m_state : stateId(taken.getToState());
+        if (state != expected)
+        {
+            tag |= FLAG_STATE;
+            putVarint(state + 1);
+        }
+
+        m_buffer.put(tagPosition, (byte)tag);
+        m_state = state;
+        m_steps++;
+        m_version = tape.getVersion();
+
+        // Periodic checkpoint, amortized against the length of the tape
+        if (m_steps - m_checkpointStep >= m_interval
+            && getByteCount() - m_checkpointBytes >= tape.getLength())
+        {
+            checkpoint(tape);
+        }
+    }
+
+    /**
+     * Write a checkpoint record, holding the whole configuration of the simulation.
+     * @param tape The tape being simulated.
+     * @throws IOException If the trace cannot be written.
+     */
+    private void checkpoint(Tape tape) throws IOException
+    {
+        // Compress the tape, a block of cells at a time
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int length = tape.getLength();
+        DeflaterOutputStream out = new DeflaterOutputStream(bytes);
+        char[] cells = new char[Math.min(length, BUFFER_SIZE)];
+        byte[] encoded = new byte[cells.length * 3];
+        for (int begin = 0; begin < length; begin += cells.length)
+        {
+            int n = Math.min(cells.length, length - begin);
+            tape.getSymbols(begin, cells, 0, n);
+            int size = 0;
+            for (int i = 0; i < n; i++)
+            {
+                size = putVarint(encoded, size, cells[i]);
+            }
+            out.write(encoded, 0, size);
+        }
+        out.close();
+
+        ensure(MAX_STEP_SIZE * 2);
+        m_buffer.put((byte)KIND_CHECKPOINT);
+        putVarlong(m_steps);
+        putVarint(m_state + 1);
+        putVarint(m_transition + 1);
+        putVarint(tape.headLocation());
+        putVarint(length);
+        putVarint(bytes.size());
+        put(bytes.toByteArray());
+
+        m_tape = tape;
+        m_version = tape.getVersion();
+        m_checkpointStep = m_steps;
+        m_checkpointBytes = getByteCount();
+    }
+
+    /**
+     * Write the end record, and close the trace file. Further steps are not recorded.
+     * @throws IOException If the trace cannot be written.
+     */
+    public synchronized void close() throws IOException
+    {
+        if (m_channel == null)
+        {
+            return;
+        }
+        try
+        {
+            ensure(MAX_STEP_SIZE);
+            m_buffer.put((byte)KIND_END);
+            putVarlong(m_steps);
+            flush();
+        }
+        finally
+        {
+            m_channel.close();
+            m_channel = null;
+        }
+    }
+
+    /**
+     * Get the error which stopped recording, if any.
+     * @return The error which stopped recording, or null if none has occurred.
+     */
+    public synchronized IOException getError()
+    {
+        return m_error;
+    }
+
+    /**
+     * A write to the trace, which may fail.
+     */
+    private interface WriteAction
+    {
+        /**
+         * Perform the write.
+         * @param tape The tape being simulated.
+         * @throws IOException If the trace cannot be written.
+         */
+        void run(Tape tape) throws IOException;
+    }
+
+    /**
+     * Perform a write to the trace. Simulations must not fail because their trace cannot be
+     * written, so if an error occurs, it is kept for getError() and recording stops.
+     * @param action The write to perform.
+     * @param tape The tape being simulated.
+     */
+    private void write(WriteAction action, Tape tape)
+    {
+        try
+        {
+            action.run(tape);
+        }
+        catch (IOException e)
+        {
+            m_error = e;
+            try
+            {
+                m_channel.close();
+            }
+            catch (IOException ex) { }
+            m_channel = null;
+        }
+    }
+
+    /**
+     * End the trace, and stop recording, once the simulation reaches a state or transition which
+     * was added after recording began. The error is kept for getError().
+     */
+    private void stopChanged()
+    {
+        m_error = new IOException(String.format(
+                    "The machine was changed while recording; the trace ends at step %d", m_steps));
+        try
+        {
+            close();
+        }
+        catch (IOException e) { }
+    }
+
+    /**
+     * Get the index of a state.
+     * @param state The state, or null.
+     * @return The index of the state, or -1 if state is null.
+     */
+    private int stateId(Object state)
+    {
+        Integer id = m_stateIds.get(state);
+        return id == null? -1 : id;
+    }
+
+    /**
+     * Flush the buffer if it has less than the given number of bytes remaining.
+     * @param size The number of bytes required.
+     * @throws IOException If the trace cannot be written.
+     */
+    private void ensure(int size) throws IOException
+    {
+        if (m_buffer.remaining() < size)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Write the contents of the buffer to the file.
+     * @throws IOException If the trace cannot be written.
+     */
+    private void flush() throws IOException
+    {
+        m_buffer.flip();
+        while (m_buffer.hasRemaining())
+        {
+            m_written += m_channel.write(m_buffer);
+        }
+        m_buffer.clear();
+    }
+
+    /**
+     * Write an array of bytes, through the buffer.
+     * @param bytes The bytes to write.
+     * @throws IOException If the trace cannot be written.
+     */
+    private void put(byte[] bytes) throws IOException
+    {
+        for (int offset = 0; offset < bytes.length; )
+        {
+            ensure(1);
+            int n = Math.min(m_buffer.remaining(), bytes.length - offset);
+            m_buffer.put(bytes, offset, n);
+            offset += n;
+        }
+    }
+
+    /**
+     * Write an unsigned varint to the buffer, which must have room for it.
+     * @param value The value to write; must not be negative.
+     */
+    private void putVarint(int value)
+    {
+        putVarlong(value);
+    }
+
+    /**
+     * Write an unsigned varint to the buffer, which must have room for it.
+     * @param value The value to write; must not be negative.
+     */
+    private void putVarlong(long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            m_buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        m_buffer.put((byte)value);
+    }
+
+    /**
+     * Encode an unsigned varint into an array.
+     * @param dest The array to write to.
+     * @param offset The offset to write at.
+     * @param value The value to write; must not be negative.
+     * @return The offset after the value.
+     */
+    private static int putVarint(byte[] dest, int offset, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            dest[offset++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dest[offset++] = (byte)value;
+        return offset;
+    }
+
+    /**
+     * Zigzag encode a signed value, so that values of small magnitude have short varints.
+     * @param value The value to encode.
+     * @return The encoded value.
+     */
+    static int zigzag(int value)
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * The file being written to.
+     */
+    private final File m_file;
+
+    /**
+     * The number of steps between checkpoints.
+     */
+    private final int m_interval;
+
+    /**
+     * The trace file, or null once closed.
+     */
+    private FileChannel m_channel;
+
+    /**
+     * Buffer of bytes waiting to be written.
+     */
+    private final ByteBuffer m_buffer;
+
+    /**
+     * The index of each state in the machine.
+     */
+    private final IdentityHashMap<Object, Integer> m_stateIds = new IdentityHashMap<Object, Integer>();
+
+    /**
+     * The index of each transition in the machine.
+     */
+    private final IdentityHashMap<Object, Integer> m_transitionIds =
+        new IdentityHashMap<Object, Integer>();
+
+    /**
+     * Buffer for reading a single cell.
+     */
+    private final char[] m_cell = new char[1];
+
+    /**
+     * The number of bytes written to the file.
+     */
+    private long m_written;
+
+    /**
+     * The number of steps recorded.
+     */
+    private long m_steps;
+
+    /**
+     * The step count as of the last checkpoint.
+     */
+    private long m_checkpointStep;
+
+    /**
+     * The size of the trace as of the last checkpoint.
+     */
+    private long m_checkpointBytes;
+
+    /**
+     * The tape as of the last record.
+     */
+    private Tape m_tape;
+
+    /**
+     * The version of the tape as of the last record.
+     */
+    private long m_version;
+
+    /**
+     * The index of the current state, or -1.
+     */
+    private int m_state;
+
+    /**
+     * The index of the last transition taken, or -1.
+     */
+    private int m_transition;
+
+    /**
+     * The location of the read/write head before the current step.
+     */
+    private int m_head;
+
+    /**
+     * The symbol under the read/write head before the current step.
+     */
+    private char m_symbol;
+
+    /**
+     * The error which stopped recording, if any.
+     */
+    private IOException m_error;
+}
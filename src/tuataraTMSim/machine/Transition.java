@@ -152,6 +152,10 @@ public abstract class Transition<
     {
         m_controlPtX = x;
         m_controlPtY = y;
+        if (m_index != null)
+        {
+            m_index.moved(this);
+        }
     }
 
     /**
@@ -161,7 +165,8 @@ public abstract class Transition<
      */
     public Point2D getMidpoint()
     {
-        return Spline.getMidPointFromControlPoint(getControlPoint(), m_fromState, m_toState);
+        Point2D mid = getGeometry().midpoint;
+        return new Point2D.Double(mid.getX(), mid.getY());
     }
 
     /**
@@ -181,90 +186,116 @@ public abstract class Transition<
      * Render the transition to a graphics object.
      * @param g The graphics object on which to render.
      * @param selectedTransitions The set of transitions selected by the user.
-     * @param simulator The current simulator.
+     * @param nextTransitions The set of transitions the simulator may take in its next step.
      */
     public void paint(Graphics g, Collection<? extends Transition> selectedTransitions, 
-                      SIMULATOR simulator)
+                      Collection<? extends Transition> nextTransitions)
+    {
+        paint(g, selectedTransitions, nextTransitions, true);
+    }
+
+    /**
+     * Render the transition to a graphics object, optionally omitting its arrowhead and action.
+     * @param g The graphics object on which to render.
+     * @param selectedTransitions The set of transitions selected by the user.
+     * @param nextTransitions The set of transitions the simulator may take in its next step.
+     * @param detailed true to render the arrowhead and action, false to render only the curve.
+     */
+    public void paint(Graphics g, Collection<? extends Transition> selectedTransitions, 
+                      Collection<? extends Transition> nextTransitions, boolean detailed)
     {
         // Get a 2d graphics object
         Graphics2D g2d = (Graphics2D)g;
 
         // Choose color based off of this transitions state
-        g2d.setPaint(getPaint(selectedTransitions.contains(this),
-                              simulator.getNextTransitions().contains(this)));
-       
-        // An arc
-        if (m_fromState != m_toState)
-        {
-            // Build and render the arc spline
-            QuadCurve2D curve = Spline.buildArcSpline(getControlPoint(), m_fromState, m_toState);
-            g2d.draw(curve);
-        }
-        // A loop
-        else
+        g2d.setPaint(getPaint(selectedTransitions.contains(this), nextTransitions.contains(this)));
+
+        // Render the arc or loop
+        Geometry geom = getGeometry();
+        g2d.draw(geom.curve);
+
+        if (!detailed)
         {
-            // Get a perpendicular vector
-            Point2D perp = new Point2D.Double(
-                    -m_controlPtY + (m_fromState.getY() + STATE.STATE_RENDERING_WIDTH / 2),
-                     m_controlPtX - (m_fromState.getX() + STATE.STATE_RENDERING_WIDTH / 2));
-
-            // Rescale our perpendicular vector by the scaling factor
-            double scaleFactor = 
-                State.STATE_RENDERING_WIDTH * 1.5 / perp.distance(new Point2D.Float(0,0));
-            AffineTransform scale = AffineTransform.getScaleInstance(scaleFactor, scaleFactor);
-            scale.transform(perp, perp);
-
-            // Build the two control points for the rendered arc
-            Point2D controlPoint1 = new Point2D.Double(
-                    m_controlPtX + perp.getX(), 
-                    m_controlPtY + perp.getY());
-            Point2D controlPoint2 = new Point2D.Double(
-                    m_controlPtX - perp.getX(),
-                    m_controlPtY - perp.getY());
-           
-            // Build and render the loop spline
-            CubicCurve2D curve = Spline.buildLoopSpline(controlPoint1, controlPoint2, m_fromState);
-            g2d.draw(curve);
+            return;
         }
 
-        boolean startEqualsEnd = 
-            ((int)m_fromState.getX() == (int)m_toState.getX() &&
-            ((int)m_fromState.getY() == (int)m_toState.getY()));
-        
-        // TODO: Justify this conditional
-        if (!startEqualsEnd || (m_fromState == m_toState))
+        if (geom.showArrowHead)
         {
             // Change the line style 
             Stroke originalStroke = g2d.getStroke();
-            g2d.setStroke(new BasicStroke(1, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
-
-            // Get the arrowhead
-            GeneralPath triangle = buildArrowHead();
+            g2d.setStroke(ARROWHEAD_STROKE);
 
             // Render and fill the path
-            g2d.draw(triangle);
-            g2d.fill(triangle);
+            g2d.draw(geom.arrowHead);
+            g2d.fill(geom.arrowHead);
 
             // Reset
             g2d.setStroke(originalStroke);
         }
 
-        // Get the location of the action associated with this transition
-        Point2D actionLocation = getActionLocation();
-
         // Render the action
-        m_action.paint(g, (int)actionLocation.getX(), (int)actionLocation.getY());
+        m_action.paint(g, (int)geom.actionLocation.getX(), (int)geom.actionLocation.getY());
+    }
+
+    /**
+     * Get the geometry of this transition, rebuilding it if either end state or the control point
+     * has moved since it was last built.
+     * @return The current geometry of this transition.
+     */
+    protected Geometry getGeometry()
+    {
+        Geometry geom = m_geometry;
+        if (geom == null || !geom.isValidFor(this))
+        {
+            geom = new Geometry(this);
+            m_geometry = geom;
+        }
+        return geom;
+    }
+
+    /**
+     * Build the curve representing this transition; a quadratic arc between distinct states, or a
+     * cubic loop on a single state.
+     * @return The curve representing this transition.
+     */
+    protected Shape buildCurve()
+    {
+        // An arc
+        if (m_fromState != m_toState)
+        {
+            return Spline.buildArcSpline(getControlPoint(), m_fromState, m_toState);
+        }
+
+        // A loop; get a perpendicular vector
+        Point2D perp = new Point2D.Double(
+                -m_controlPtY + (m_fromState.getY() + STATE.STATE_RENDERING_WIDTH / 2),
+                 m_controlPtX - (m_fromState.getX() + STATE.STATE_RENDERING_WIDTH / 2));
+
+        // Rescale our perpendicular vector by the scaling factor
+        double scaleFactor = 
+            State.STATE_RENDERING_WIDTH * 1.5 / perp.distance(new Point2D.Float(0,0));
+        AffineTransform scale = AffineTransform.getScaleInstance(scaleFactor, scaleFactor);
+        scale.transform(perp, perp);
+
+        // Build the two control points for the rendered arc
+        Point2D controlPoint1 = new Point2D.Double(
+                m_controlPtX + perp.getX(), 
+                m_controlPtY + perp.getY());
+        Point2D controlPoint2 = new Point2D.Double(
+                m_controlPtX - perp.getX(),
+                m_controlPtY - perp.getY());
+
+        return Spline.buildLoopSpline(controlPoint1, controlPoint2, m_fromState);
     }
 
     /**
      * Build a path with three vertices which represents our arrowhead.
+     * @param arrowLoc The midpoint of the curve, where the arrowhead is centered.
      * @return A path representing our arrowhead.
      */
-    protected GeneralPath buildArrowHead()
+    protected GeneralPath buildArrowHead(Point2D arrowLoc)
     {
-        // Get the midpoint of the curve
-        Point2D arrowLoc = getMidpoint();
-        // and the tangent vector associated with the midpoint
+        // Get the tangent vector associated with the midpoint
         Point2D tangentVector = 
             Spline.getMidPointTangentVector(getControlPoint(), arrowLoc, m_fromState, m_toState);
 
@@ -311,18 +342,45 @@ public abstract class Transition<
      */
     public boolean arrowContainsPoint(int x, int y, Graphics g)
     {
-        return buildArrowHead().contains(new Point2D.Float(x, y));
+        return getGeometry().arrowHead.contains(x, y);
     }
        
     /**
-     * Get the midpoint of the spline, represented by the arrow on the transition..
-     * @return The location of the midpoint.
+     * Get a rectangle which contains everything painted for this transition. The curve lies within
+     * the bounds of its end states and control point; the margin covers the bulge of loops and the
+     * text of the action.
+     * @return A rectangle containing the rendered transition.
+     */
+    public Rectangle getBounds()
+    {
+        Rectangle result = new Rectangle(m_fromState.getX(), m_fromState.getY(),
+                                         STATE.STATE_RENDERING_WIDTH, STATE.STATE_RENDERING_WIDTH);
+        result.add(new Rectangle(m_toState.getX(), m_toState.getY(),
+                                 STATE.STATE_RENDERING_WIDTH, STATE.STATE_RENDERING_WIDTH));
+        result.add(getControlPoint());
+        result.add(getGeometry().actionLocation);
+        result.grow(STATE.STATE_RENDERING_WIDTH * 2, STATE.STATE_RENDERING_WIDTH * 2);
+        return result;
+    }
+
+    /**
+     * Get the location the action of this transition is centered on, near the arrow on the
+     * transition.
+     * @return The location of the action.
      */
     protected Point2D getActionLocation()
     {
-        // Compute the location of the arrow, i.e. the midpoint
-        Point2D arrowLoc = getMidpoint();
-        
+        Point2D loc = getGeometry().actionLocation;
+        return new Point2D.Double(loc.getX(), loc.getY());
+    }
+
+    /**
+     * Compute the location the action of this transition is centered on.
+     * @param arrowLoc The midpoint of the curve, where the arrow is located.
+     * @return The location of the action.
+     */
+    protected Point2D buildActionLocation(Point2D arrowLoc)
+    {
         // An arc 
         if (m_fromState != m_toState)
         {
@@ -363,6 +421,110 @@ public abstract class Transition<
      * @return A string representation of this transition.
      */
     public abstract String toString();
+
+    /**
+     * The geometry of a transition, built from the positions of its end states and its control
+     * point, and cached until either of them moves. A geometry is never modified once built.
+     */
+    protected static class Geometry
+    {
+        /**
+         * Creates the geometry of a transition at its current position.
+         * @param t The transition.
+         */
+        public Geometry(Transition t)
+        {
+            fromX = t.m_fromState.getX();
+            fromY = t.m_fromState.getY();
+            toX = t.m_toState.getX();
+            toY = t.m_toState.getY();
+            controlX = t.m_controlPtX;
+            controlY = t.m_controlPtY;
+
+            curve = t.buildCurve();
+            midpoint = Spline.getMidPointFromControlPoint(t.getControlPoint(), t.m_fromState,
+                                                          t.m_toState);
+            arrowHead = t.buildArrowHead(midpoint);
+            actionLocation = t.buildActionLocation(midpoint);
+
+            // TODO: Justify this conditional
+            showArrowHead = t.m_fromState == t.m_toState || fromX != toX || fromY != toY;
+        }
+
+        /**
+         * Determine if this geometry is still that of a transition.
+         * @param t The transition.
+         * @return true if the end states and control point of the transition have not moved since
+         *         this geometry was built, false otherwise.
+         */
+        public boolean isValidFor(Transition t)
+        {
+            return fromX == t.m_fromState.getX() && fromY == t.m_fromState.getY() &&
+                   toX == t.m_toState.getX() && toY == t.m_toState.getY() &&
+                   controlX == t.m_controlPtX && controlY == t.m_controlPtY;
+        }
+
+        /**
+         * The X ordinate of the state the transition leaves, when built.
+         */
+        public final int fromX;
+
+        /**
+         * The Y ordinate of the state the transition leaves, when built.
+         */
+        public final int fromY;
+
+        /**
+         * The X ordinate of the state the transition arrives at, when built.
+         */
+        public final int toX;
+
+        /**
+         * The Y ordinate of the state the transition arrives at, when built.
+         */
+        public final int toY;
+
+        /**
+         * The X ordinate of the control point, when built.
+         */
+        public final int controlX;
+
+        /**
+         * The Y ordinate of the control point, when built.
+         */
+        public final int controlY;
+
+        /**
+         * The curve representing the transition.
+         */
+        public final Shape curve;
+
+        /**
+         * The midpoint of the curve.
+         */
+        public final Point2D midpoint;
+
+        /**
+         * The arrowhead at the midpoint of the curve.
+         */
+        public final GeneralPath arrowHead;
+
+        /**
+         * Whether the arrowhead is rendered; it is hidden for an arc between coincident states.
+         */
+        public final boolean showArrowHead;
+
+        /**
+         * The location the action is centered on.
+         */
+        public final Point2D actionLocation;
+    }
+
+    /**
+     * The stroke used to render arrowheads.
+     */
+    protected static final Stroke ARROWHEAD_STROKE = 
+        new BasicStroke(1, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL);
    
     /**
      * The state this transition leaves.
@@ -388,4 +550,15 @@ public abstract class Transition<
      * The Y ordinate of the control point for the curve, i.e. the point used to build the spline.
      */
     protected int m_controlPtY;
+
+    /**
+     * The spatial index holding this transition, notified when it moves, or null if it is not
+     * indexed.
+     */
+    transient SpatialIndex m_index;
+
+    /**
+     * The cached geometry of this transition, or null if it has not been built.
+     */
+    private transient volatile Geometry m_geometry;
 }